@@ -0,0 +1,69 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+
+package com.bbn.openmap.benchmark;
+
+/**
+ * A single timed operation. The BenchmarkRunner calls setUp once, run over and
+ * over while timing it, and then tearDown. Anything that shouldn't be counted
+ * against the operation, like creating data or opening files that are meant
+ * to be held open, belongs in setUp.
+ * 
+ * @author dietrick
+ */
+public abstract class Benchmark {
+
+    protected final String name;
+
+    /**
+     * @param name dotted name for the benchmark, like proj.forward.Mercator,
+     *        used for filtering runs and comparing against a baseline.
+     */
+    public Benchmark(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Called once before the benchmark is timed.
+     * 
+     * @throws Exception if the benchmark can't be run, it will be skipped.
+     */
+    public void setUp() throws Exception {}
+
+    /**
+     * Perform one operation. The return value should be derived from the
+     * results of the operation, the runner adds it up so the JIT can't decide
+     * the work isn't needed.
+     * 
+     * @return something computed from the results.
+     * @throws Exception
+     */
+    public abstract long run() throws Exception;
+
+    /**
+     * Called once after the benchmark is timed.
+     * 
+     * @throws Exception
+     */
+    public void tearDown() throws Exception {}
+
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,404 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+
+package com.bbn.openmap.benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+
+import com.bbn.openmap.util.ComponentFactory;
+
+/**
+ * Runs benchmarks and reports the average time per operation. Each benchmark
+ * is warmed up for a while so the JIT settles, then timed over a number of
+ * fixed length iterations. The results can be saved to a file and later runs
+ * compared against it, with the runner exiting with an error if anything got
+ * slower than the allowed threshold.
+ * <p>
+ * 
+ * <pre>
+ * java com.bbn.openmap.benchmark.BenchmarkRunner [options] [name patterns]
+ * 
+ *   -w &lt;ms&gt;          warmup time for each benchmark (default 2000)
+ *   -t &lt;ms&gt;          time for each iteration (default 1000)
+ *   -i &lt;count&gt;       number of timed iterations (default 5)
+ *   -d &lt;dir&gt;         directory for generated data files
+ *   -seed &lt;long&gt;     seed for generated data
+ *   -suite &lt;class&gt;   add a BenchmarkSuite class to the run
+ *   -o &lt;file&gt;        write results to a file
+ *   -baseline &lt;file&gt; compare against results written earlier
+ *   -threshold &lt;%&gt;   slowdown allowed against the baseline (default 10)
+ *   -list            list the benchmarks and exit
+ * </pre>
+ * 
+ * Name patterns are regular expressions, and a benchmark runs if its name
+ * contains a match for any of them. With no patterns, everything runs.
+ * 
+ * @author dietrick
+ */
+public class BenchmarkRunner {
+
+    public static Logger logger = Logger.getLogger("com.bbn.openmap.benchmark.BenchmarkRunner");
+
+    /** The suites that are run by default. */
+    public final static String[] DEFAULT_SUITES = new String[] {
+            "com.bbn.openmap.benchmark.ProjectionBenchmarks",
+            "com.bbn.openmap.benchmark.OMGraphicBenchmarks",
+            "com.bbn.openmap.benchmark.DataBenchmarks",
+            "com.bbn.openmap.benchmark.ImageBenchmarks" };
+
+    protected long warmupMillis = 2000;
+    protected long iterationMillis = 1000;
+    protected int iterations = 5;
+    protected List<Pattern> patterns = new ArrayList<Pattern>();
+
+    /**
+     * Sum of the values returned by the benchmarks, printed at the end so it
+     * has to be computed.
+     */
+    protected long sink;
+
+    /**
+     * The result for one benchmark.
+     */
+    public static class Result {
+        public final String name;
+        /** Mean nanoseconds per operation. */
+        public final double mean;
+        /** Standard deviation of the iteration means. */
+        public final double stdDev;
+
+        public Result(String name, double mean, double stdDev) {
+            this.name = name;
+            this.mean = mean;
+            this.stdDev = stdDev;
+        }
+    }
+
+    public void setWarmupMillis(long warmupMillis) {
+        this.warmupMillis = warmupMillis;
+    }
+
+    public void setIterationMillis(long iterationMillis) {
+        this.iterationMillis = iterationMillis;
+    }
+
+    public void setIterations(int iterations) {
+        this.iterations = iterations;
+    }
+
+    public void addPattern(String pattern) {
+        patterns.add(Pattern.compile(pattern));
+    }
+
+    /**
+     * @return true if the benchmark matches one of the name patterns, or
+     *         there aren't any.
+     */
+    public boolean isSelected(Benchmark benchmark) {
+        if (patterns.isEmpty()) {
+            return true;
+        }
+        for (Pattern pattern : patterns) {
+            if (pattern.matcher(benchmark.getName()).find()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Time a benchmark.
+     * 
+     * @param benchmark
+     * @return Result, or null if the benchmark failed.
+     */
+    public Result run(Benchmark benchmark) {
+        try {
+            benchmark.setUp();
+        } catch (Exception e) {
+            logger.warning("skipping " + benchmark + ", setUp failed: " + e);
+            return null;
+        }
+
+        try {
+            time(benchmark, warmupMillis);
+
+            double[] means = new double[iterations];
+            double sum = 0;
+            for (int i = 0; i < iterations; i++) {
+                means[i] = time(benchmark, iterationMillis);
+                sum += means[i];
+            }
+
+            double mean = sum / iterations;
+            double var = 0;
+            for (int i = 0; i < iterations; i++) {
+                var += (means[i] - mean) * (means[i] - mean);
+            }
+            double stdDev = iterations > 1 ? Math.sqrt(var / (iterations - 1)) : 0;
+            return new Result(benchmark.getName(), mean, stdDev);
+
+        } catch (Exception e) {
+            logger.log(Level.WARNING, benchmark + " failed", e);
+            return null;
+        } finally {
+            try {
+                benchmark.tearDown();
+            } catch (Exception e) {
+                logger.fine(benchmark + " tearDown failed: " + e);
+            }
+        }
+    }
+
+    /**
+     * Run the benchmark over and over for about the given time.
+     * 
+     * @return mean nanoseconds per operation.
+     */
+    protected double time(Benchmark benchmark, long millis) throws Exception {
+        long limit = millis * 1000000L;
+        long ops = 0;
+        long batch = 1;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            for (long i = 0; i < batch; i++) {
+                sink += benchmark.run();
+            }
+            ops += batch;
+            elapsed = System.nanoTime() - start;
+            // Check the clock less often for fast operations.
+            if (elapsed < limit / 100) {
+                batch *= 2;
+            }
+        } while (elapsed < limit);
+        return (double) elapsed / ops;
+    }
+
+    /**
+     * Run the selected benchmarks, printing results as they finish.
+     * 
+     * @param benchmarks
+     * @param baseline results to compare against, may be null.
+     * @return the results.
+     */
+    public List<Result> runAll(List<Benchmark> benchmarks, Map<String, Result> baseline) {
+        List<Result> results = new ArrayList<Result>();
+        System.out.println(format("Benchmark", 40) + format("ns/op", 16) + format("+/-", 12)
+                + (baseline != null ? format("change", 10) : ""));
+        for (Benchmark benchmark : benchmarks) {
+            if (!isSelected(benchmark)) {
+                continue;
+            }
+            Result result = run(benchmark);
+            if (result != null) {
+                results.add(result);
+                StringBuffer line = new StringBuffer();
+                line.append(format(result.name, 40));
+                line.append(format(String.format("%.1f", result.mean), 16));
+                line.append(format(String.format("%.1f", result.stdDev), 12));
+                if (baseline != null) {
+                    Result base = baseline.get(result.name);
+                    if (base != null) {
+                        line.append(format(String.format("%+.1f%%", getChange(base, result)), 10));
+                    }
+                }
+                System.out.println(line);
+            }
+        }
+        System.out.println("(" + sink + ")");
+        return results;
+    }
+
+    /**
+     * @return the percentage the result is slower than the baseline, negative
+     *         if it's faster.
+     */
+    public static double getChange(Result base, Result result) {
+        return (result.mean - base.mean) * 100 / base.mean;
+    }
+
+    protected static String format(String s, int width) {
+        StringBuffer sb = new StringBuffer(s);
+        while (sb.length() < width) {
+            sb.append(' ');
+        }
+        if (sb.length() > width) {
+            sb.append(' ');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Write results as name,mean,stdDev lines.
+     */
+    public static void writeResults(List<Result> results, File file) throws IOException {
+        PrintWriter pw = new PrintWriter(new FileWriter(file));
+        try {
+            for (Result result : results) {
+                pw.println(result.name + "," + result.mean + "," + result.stdDev);
+            }
+        } finally {
+            pw.close();
+        }
+    }
+
+    /**
+     * Read results written by writeResults.
+     */
+    public static Map<String, Result> readResults(File file) throws IOException {
+        Map<String, Result> results = new HashMap<String, Result>();
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split(",");
+                if (fields.length == 3) {
+                    try {
+                        results.put(fields[0], new Result(fields[0], Double.parseDouble(fields[1]), Double.parseDouble(fields[2])));
+                    } catch (NumberFormatException nfe) {
+                        logger.warning("bad baseline line: " + line);
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return results;
+    }
+
+    public static void printUsage() {
+        System.out.println("Usage: java com.bbn.openmap.benchmark.BenchmarkRunner [options] [name patterns]");
+        System.out.println("  -w <ms>          warmup time for each benchmark (default 2000)");
+        System.out.println("  -t <ms>          time for each iteration (default 1000)");
+        System.out.println("  -i <count>       number of timed iterations (default 5)");
+        System.out.println("  -d <dir>         directory for generated data files");
+        System.out.println("  -seed <long>     seed for generated data");
+        System.out.println("  -suite <class>   add a BenchmarkSuite class to the run");
+        System.out.println("  -o <file>        write results to a file");
+        System.out.println("  -baseline <file> compare against results written earlier");
+        System.out.println("  -threshold <%>   slowdown allowed against the baseline (default 10)");
+        System.out.println("  -list            list the benchmarks and exit");
+    }
+
+    public static void main(String[] argv) throws IOException {
+        BenchmarkRunner runner = new BenchmarkRunner();
+        File dataDir = new File(System.getProperty("java.io.tmpdir"), "openmap-benchmark");
+        long seed = SyntheticData.DEFAULT_SEED;
+        List<String> suites = new ArrayList<String>();
+        File output = null;
+        File baselineFile = null;
+        double threshold = 10;
+        boolean list = false;
+
+        try {
+            for (int i = 0; i < argv.length; i++) {
+                String arg = argv[i];
+                if (arg.equals("-w")) {
+                    runner.setWarmupMillis(Long.parseLong(argv[++i]));
+                } else if (arg.equals("-t")) {
+                    runner.setIterationMillis(Long.parseLong(argv[++i]));
+                } else if (arg.equals("-i")) {
+                    runner.setIterations(Integer.parseInt(argv[++i]));
+                } else if (arg.equals("-d")) {
+                    dataDir = new File(argv[++i]);
+                } else if (arg.equals("-seed")) {
+                    seed = Long.parseLong(argv[++i]);
+                } else if (arg.equals("-suite")) {
+                    suites.add(argv[++i]);
+                } else if (arg.equals("-o")) {
+                    output = new File(argv[++i]);
+                } else if (arg.equals("-baseline")) {
+                    baselineFile = new File(argv[++i]);
+                } else if (arg.equals("-threshold")) {
+                    threshold = Double.parseDouble(argv[++i]);
+                } else if (arg.equals("-list")) {
+                    list = true;
+                } else if (arg.startsWith("-")) {
+                    printUsage();
+                    System.exit(1);
+                } else {
+                    runner.addPattern(arg);
+                }
+            }
+        } catch (RuntimeException re) {
+            // missing or bad option values
+            printUsage();
+            System.exit(1);
+        }
+
+        if (suites.isEmpty()) {
+            for (int i = 0; i < DEFAULT_SUITES.length; i++) {
+                suites.add(DEFAULT_SUITES[i]);
+            }
+        }
+
+        SyntheticData data = new SyntheticData(dataDir, seed);
+        List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+        for (String suiteName : suites) {
+            Object obj = ComponentFactory.create(suiteName);
+            if (obj instanceof BenchmarkSuite) {
+                ((BenchmarkSuite) obj).addBenchmarks(benchmarks, data);
+            } else {
+                logger.warning("couldn't create BenchmarkSuite " + suiteName);
+            }
+        }
+
+        if (list) {
+            for (Benchmark benchmark : benchmarks) {
+                if (runner.isSelected(benchmark)) {
+                    System.out.println(benchmark.getName());
+                }
+            }
+            return;
+        }
+
+        Map<String, Result> baseline = baselineFile != null ? readResults(baselineFile) : null;
+        List<Result> results = runner.runAll(benchmarks, baseline);
+
+        if (output != null) {
+            writeResults(results, output);
+        }
+
+        if (baseline != null) {
+            boolean regressed = false;
+            for (Iterator<Result> it = results.iterator(); it.hasNext();) {
+                Result result = it.next();
+                Result base = baseline.get(result.name);
+                if (base != null && getChange(base, result) > threshold) {
+                    System.out.println("REGRESSION: " + result.name + " "
+                            + String.format("%+.1f%%", getChange(base, result)));
+                    regressed = true;
+                }
+            }
+            if (regressed) {
+                System.exit(2);
+            }
+        }
+    }
+}
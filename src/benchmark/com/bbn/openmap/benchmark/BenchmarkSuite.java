@@ -0,0 +1,35 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+
+package com.bbn.openmap.benchmark;
+
+import java.util.List;
+
+/**
+ * A group of related benchmarks. Suites are named on the BenchmarkRunner
+ * command line, or added to its default list.
+ * 
+ * @author dietrick
+ */
+public interface BenchmarkSuite {
+
+    /**
+     * Add this suite's benchmarks to the list.
+     * 
+     * @param benchmarks list to add to.
+     * @param data the synthetic data files to use.
+     */
+    public void addBenchmarks(List<Benchmark> benchmarks, SyntheticData data);
+}
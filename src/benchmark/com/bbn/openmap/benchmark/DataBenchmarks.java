@@ -0,0 +1,194 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+
+package com.bbn.openmap.benchmark;
+
+import java.util.List;
+import java.util.Random;
+
+import com.bbn.openmap.dataAccess.dted.DTEDFrame;
+import com.bbn.openmap.layer.rpf.RpfFrame;
+import com.bbn.openmap.layer.rpf.SyntheticRpfFrame;
+import com.bbn.openmap.layer.shape.ESRIRecord;
+import com.bbn.openmap.layer.shape.SpatialIndex;
+import com.bbn.openmap.omGraphics.DrawingAttributes;
+import com.bbn.openmap.omGraphics.OMGraphicList;
+
+/**
+ * Data access benchmarks: shape file queries, DTED frame reading and
+ * elevation lookups, and RPF subframe decompression. The shape file and DTED
+ * frame are created by SyntheticData, the RPF frame is held in memory.
+ * 
+ * @author dietrick
+ */
+public class DataBenchmarks implements BenchmarkSuite {
+
+    /** Number of query boxes the shape benchmarks cycle through. */
+    public final static int NUM_BOXES = 64;
+
+    public void addBenchmarks(List<Benchmark> benchmarks, SyntheticData data) {
+        double[][] boxes = new double[NUM_BOXES][];
+        Random random = data.getRandom("shape.boxes");
+        for (int i = 0; i < NUM_BOXES; i++) {
+            double width = 5 + random.nextDouble() * 40;
+            double height = width * .75;
+            double xmin = random.nextDouble() * (340 - width) - 170;
+            double ymin = random.nextDouble() * (120 - height) - 60;
+            boxes[i] = new double[] { xmin, ymin, xmin + width, ymin + height };
+        }
+
+        benchmarks.add(new ShapeLocate("shape.locateRecords", data, boxes));
+        benchmarks.add(new ShapeGraphics("shape.getOMGraphics", data, boxes));
+        benchmarks.add(new DTEDRead("dted.read", data));
+        benchmarks.add(new DTEDElevations("dted.getElevations", data));
+        benchmarks.add(new RpfDecompress("rpf.decompress.indexed", data, false));
+        benchmarks.add(new RpfDecompress("rpf.decompress.rgb", data, true));
+    }
+
+    public abstract static class ShapeBenchmark extends Benchmark {
+        protected final SyntheticData data;
+        protected final double[][] boxes;
+        protected SpatialIndex spatialIndex;
+        protected int count = 0;
+
+        public ShapeBenchmark(String name, SyntheticData data, double[][] boxes) {
+            super(name);
+            this.data = data;
+            this.boxes = boxes;
+        }
+
+        public void setUp() throws Exception {
+            spatialIndex = new SpatialIndex(data.getShapeFile());
+        }
+
+        protected double[] nextBox() {
+            return boxes[count++ % boxes.length];
+        }
+
+        public void tearDown() {
+            spatialIndex.close(true);
+            spatialIndex = null;
+        }
+    }
+
+    public static class ShapeLocate extends ShapeBenchmark {
+        public ShapeLocate(String name, SyntheticData data, double[][] boxes) {
+            super(name, data, boxes);
+        }
+
+        public long run() throws Exception {
+            double[] box = nextBox();
+            ESRIRecord[] records = spatialIndex.locateRecords(box[0], box[1], box[2], box[3]);
+            return records == null ? 0 : records.length;
+        }
+    }
+
+    public static class ShapeGraphics extends ShapeBenchmark {
+        protected final DrawingAttributes drawingAttributes = DrawingAttributes.getDefaultClone();
+
+        public ShapeGraphics(String name, SyntheticData data, double[][] boxes) {
+            super(name, data, boxes);
+        }
+
+        public long run() throws Exception {
+            double[] box = nextBox();
+            OMGraphicList list = spatialIndex.getOMGraphics(box[0], box[1], box[2], box[3], null, drawingAttributes, null, null);
+            return list.size();
+        }
+    }
+
+    public static class DTEDRead extends Benchmark {
+        protected final SyntheticData data;
+        protected String path;
+
+        public DTEDRead(String name, SyntheticData data) {
+            super(name);
+            this.data = data;
+        }
+
+        public void setUp() throws Exception {
+            path = data.getDTEDFile();
+        }
+
+        public long run() {
+            DTEDFrame frame = new DTEDFrame(path, true);
+            long ret = frame.frame_is_valid ? frame.elevationAt(40.5f, -69.5f) : 0;
+            frame.dispose();
+            return ret;
+        }
+    }
+
+    public static class DTEDElevations extends Benchmark {
+        protected final SyntheticData data;
+        protected DTEDFrame frame;
+        protected int count = 0;
+
+        public DTEDElevations(String name, SyntheticData data) {
+            super(name);
+            this.data = data;
+        }
+
+        public void setUp() throws Exception {
+            frame = new DTEDFrame(data.getDTEDFile(), true);
+            if (!frame.frame_is_valid) {
+                throw new Exception("synthetic DTED frame isn't valid");
+            }
+        }
+
+        public long run() {
+            // Quarter degree windows, walking across the frame.
+            int step = count++ % 16;
+            float ullat = 41f - (step / 4) * .25f;
+            float ullon = -70f + (step % 4) * .25f;
+            short[][] elevations = frame.getElevations(ullat, ullon, ullat - .25f, ullon + .25f);
+            return elevations.length;
+        }
+
+        public void tearDown() {
+            frame.dispose();
+            frame = null;
+        }
+    }
+
+    public static class RpfDecompress extends Benchmark {
+        protected final SyntheticData data;
+        protected final boolean rgb;
+        protected RpfFrame frame;
+        protected int count = 0;
+
+        public RpfDecompress(String name, SyntheticData data, boolean rgb) {
+            super(name);
+            this.data = data;
+            this.rgb = rgb;
+        }
+
+        public void setUp() {
+            frame = new SyntheticRpfFrame(data.getSeed());
+        }
+
+        public long run() {
+            int index = count++ % 36;
+            if (rgb) {
+                return frame.decompressSubframe(index % 6, index / 6, null).length;
+            } else {
+                return frame.decompressSubframe(index % 6, index / 6).length;
+            }
+        }
+
+        public void tearDown() {
+            frame = null;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+
+package com.bbn.openmap.benchmark;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+import com.bbn.openmap.image.ImageFormatter;
+import com.bbn.openmap.omGraphics.OMGraphicList;
+import com.bbn.openmap.proj.Mercator;
+import com.bbn.openmap.proj.coords.LatLonPoint;
+import com.bbn.openmap.util.ComponentFactory;
+
+/**
+ * Image encoding benchmarks, one for each ImageFormatter that can be created.
+ * Each operation encodes the same map image of the synthetic polygons.
+ * 
+ * @author dietrick
+ */
+public class ImageBenchmarks implements BenchmarkSuite {
+
+    public final static int SIZE = 512;
+
+    public final static String[] FORMATTERS = new String[] {
+            "com.bbn.openmap.image.PNGImageIOFormatter", "com.bbn.openmap.image.PNG32ImageFormatter",
+            "com.bbn.openmap.image.PNG8ImageFormatter", "com.bbn.openmap.image.GIFImageIOFormatter",
+            "com.bbn.openmap.image.AcmeGifFormatter", "com.bbn.openmap.image.SunJPEGFormatter" };
+
+    public void addBenchmarks(List<Benchmark> benchmarks, SyntheticData data) {
+        for (String formatterClass : FORMATTERS) {
+            Object obj = ComponentFactory.create(formatterClass);
+            if (obj instanceof ImageFormatter) {
+                ImageFormatter formatter = (ImageFormatter) obj;
+                benchmarks.add(new Encode("image." + obj.getClass().getSimpleName(), data, formatter));
+            } else {
+                BenchmarkRunner.logger.fine("couldn't create " + formatterClass);
+            }
+        }
+    }
+
+    public static class Encode extends Benchmark {
+        protected final SyntheticData data;
+        protected final ImageFormatter formatter;
+        protected BufferedImage image;
+
+        public Encode(String name, SyntheticData data, ImageFormatter formatter) {
+            super(name);
+            this.data = data;
+            this.formatter = formatter;
+        }
+
+        public void setUp() throws Exception {
+            OMGraphicList list = OMGraphicBenchmarks.createList(data);
+            list.generate(new Mercator(new LatLonPoint.Double(20, 0), 30000000f, SIZE, SIZE));
+
+            // Make sure the formatter works here before timing it. Formats
+            // without transparency, like JPEG, may need an opaque image.
+            image = createImage(list, BufferedImage.TYPE_INT_ARGB);
+            byte[] bytes = formatter.formatImage(image);
+            if (bytes == null || bytes.length == 0) {
+                image = createImage(list, BufferedImage.TYPE_INT_RGB);
+                bytes = formatter.formatImage(image);
+            }
+            if (bytes == null || bytes.length == 0) {
+                throw new Exception(formatter.getFormatLabel() + " didn't create an image");
+            }
+        }
+
+        protected BufferedImage createImage(OMGraphicList list, int imageType) {
+            BufferedImage bi = new BufferedImage(SIZE, SIZE, imageType);
+            Graphics2D g = bi.createGraphics();
+            g.setColor(Color.white);
+            g.fillRect(0, 0, SIZE, SIZE);
+            list.render(g);
+            g.dispose();
+            return bi;
+        }
+
+        public long run() {
+            return formatter.formatImage(image).length;
+        }
+
+        public void tearDown() {
+            image = null;
+        }
+    }
+}
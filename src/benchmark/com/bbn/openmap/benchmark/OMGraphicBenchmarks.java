@@ -0,0 +1,133 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+
+package com.bbn.openmap.benchmark;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.List;
+
+import com.bbn.openmap.omGraphics.OMGraphic;
+import com.bbn.openmap.omGraphics.OMGraphicList;
+import com.bbn.openmap.omGraphics.OMPoly;
+import com.bbn.openmap.proj.LLXY;
+import com.bbn.openmap.proj.Mercator;
+import com.bbn.openmap.proj.Orthographic;
+import com.bbn.openmap.proj.Proj;
+import com.bbn.openmap.proj.coords.LatLonPoint;
+
+/**
+ * OMGraphicList generate and render benchmarks, using the synthetic polygons.
+ * Mercator and LLXY generate with a view that pans a little every operation,
+ * which lets OMPoly move its cached coordinates, while Orthographic projects
+ * every vertex each time.
+ * 
+ * @author dietrick
+ */
+public class OMGraphicBenchmarks implements BenchmarkSuite {
+
+    public final static int WIDTH = 1024;
+    public final static int HEIGHT = 768;
+    public final static float SCALE = 60000000f;
+
+    public void addBenchmarks(List<Benchmark> benchmarks, SyntheticData data) {
+        benchmarks.add(new Generate("omgraphics.generate.Mercator", data, new Mercator(new LatLonPoint.Double(0, 0), SCALE, WIDTH, HEIGHT)));
+        benchmarks.add(new Generate("omgraphics.generate.LLXY", data, new LLXY(new LatLonPoint.Double(0, 0), SCALE, WIDTH, HEIGHT)));
+        benchmarks.add(new Generate("omgraphics.generate.Orthographic", data, new Orthographic(new LatLonPoint.Double(0, 0), SCALE, WIDTH, HEIGHT)));
+        benchmarks.add(new Render("omgraphics.render", data, false));
+        benchmarks.add(new Render("omgraphics.render.antialias", data, true));
+    }
+
+    /**
+     * Create an OMGraphicList of the synthetic polygons.
+     */
+    public static OMGraphicList createList(SyntheticData data) {
+        double[][] polys = data.getPolygons();
+        OMGraphicList list = new OMGraphicList();
+        for (int i = 0; i < polys.length; i++) {
+            OMPoly poly = new OMPoly(polys[i].clone(), OMGraphic.DECIMAL_DEGREES, OMGraphic.LINETYPE_STRAIGHT);
+            poly.setLinePaint(Color.black);
+            poly.setFillPaint(new Color(i * 0x10101));
+            list.add(poly);
+        }
+        return list;
+    }
+
+    public static class Generate extends Benchmark {
+        protected final SyntheticData data;
+        protected final Proj proj;
+        protected OMGraphicList list;
+        protected int count = 0;
+
+        public Generate(String name, SyntheticData data, Proj proj) {
+            super(name);
+            this.data = data;
+            this.proj = proj;
+        }
+
+        public void setUp() {
+            list = createList(data);
+        }
+
+        public long run() {
+            Proj p = (Proj) proj.makeClone();
+            p.setCenter(0, (count++ % 20) - 10);
+            list.generate(p);
+            return list.size();
+        }
+
+        public void tearDown() {
+            list = null;
+        }
+    }
+
+    public static class Render extends Benchmark {
+        protected final SyntheticData data;
+        protected final boolean antialias;
+        protected OMGraphicList list;
+        protected BufferedImage image;
+
+        public Render(String name, SyntheticData data, boolean antialias) {
+            super(name);
+            this.data = data;
+            this.antialias = antialias;
+        }
+
+        public void setUp() {
+            list = createList(data);
+            list.generate(new Mercator(new LatLonPoint.Double(0, 0), SCALE, WIDTH, HEIGHT));
+            image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB);
+        }
+
+        public long run() {
+            Graphics2D g = image.createGraphics();
+            if (antialias) {
+                g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            }
+            g.setColor(Color.white);
+            g.fillRect(0, 0, WIDTH, HEIGHT);
+            list.render(g);
+            g.dispose();
+            return image.getRGB(WIDTH / 2, HEIGHT / 2);
+        }
+
+        public void tearDown() {
+            list = null;
+            image = null;
+        }
+    }
+}
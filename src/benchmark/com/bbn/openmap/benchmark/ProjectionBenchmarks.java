@@ -0,0 +1,189 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+
+package com.bbn.openmap.benchmark;
+
+import java.awt.geom.Point2D;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import com.bbn.openmap.omGraphics.OMGraphic;
+import com.bbn.openmap.proj.GeoProj;
+import com.bbn.openmap.proj.ProjMath;
+import com.bbn.openmap.proj.Projection;
+import com.bbn.openmap.proj.ProjectionFactory;
+import com.bbn.openmap.proj.ProjectionLoader;
+import com.bbn.openmap.proj.coords.LatLonPoint;
+
+/**
+ * Projection benchmarks, run for every projection the ProjectionFactory loads
+ * by default. Each operation of the forward, forwardPoints and inverse
+ * benchmarks handles NUM_POINTS points spread across the view, and each
+ * forwardPoly operation
+ * projects a POLY_POINTS vertex poly for each line type.
+ * 
+ * @author dietrick
+ */
+public class ProjectionBenchmarks implements BenchmarkSuite {
+
+    public final static int NUM_POINTS = 1024;
+    public final static int POLY_POINTS = 256;
+    public final static int WIDTH = 800;
+    public final static int HEIGHT = 600;
+
+    /** Line types for forwardPoly, with the names used in the benchmarks. */
+    protected final static int[] LINE_TYPES = new int[] { OMGraphic.LINETYPE_STRAIGHT,
+            OMGraphic.LINETYPE_RHUMB, OMGraphic.LINETYPE_GREATCIRCLE };
+    protected final static String[] LINE_TYPE_NAMES = new String[] { "straight", "rhumb",
+            "greatcircle" };
+
+    public void addBenchmarks(List<Benchmark> benchmarks, SyntheticData data) {
+        ProjectionFactory factory = ProjectionFactory.loadDefaultProjections();
+        for (Iterator<ProjectionLoader> it = factory.iterator(); it.hasNext();) {
+            ProjectionLoader loader = it.next();
+            Projection proj;
+            try {
+                proj = factory.makeProjection(loader, new LatLonPoint.Double(40, -70), 10000000f, WIDTH, HEIGHT);
+            } catch (RuntimeException re) {
+                proj = null;
+            }
+            if (proj == null) {
+                BenchmarkRunner.logger.warning("couldn't make " + loader.getPrettyName() + " projection");
+                continue;
+            }
+
+            String projName = proj.getClass().getSimpleName();
+            Random random = data.getRandom("proj." + projName);
+
+            // Pick points from random pixels, so they're all on the map for
+            // every projection.
+            double[] pixels = new double[NUM_POINTS * 2];
+            double[] coords = new double[NUM_POINTS * 2];
+            for (int i = 0; i < NUM_POINTS; i++) {
+                pixels[i * 2] = random.nextDouble() * WIDTH;
+                pixels[i * 2 + 1] = random.nextDouble() * HEIGHT;
+                Point2D ll = proj.inverse(pixels[i * 2], pixels[i * 2 + 1]);
+                coords[i * 2] = ll.getY();
+                coords[i * 2 + 1] = ll.getX();
+            }
+
+            benchmarks.add(new Forward("proj.forward." + projName, proj, coords));
+            benchmarks.add(new Inverse("proj.inverse." + projName, proj, pixels));
+            benchmarks.add(new ForwardPoints("proj.forwardPoints." + projName, proj, coords));
+
+            if (proj instanceof GeoProj) {
+                double[] poly = new double[POLY_POINTS * 2];
+                for (int i = 0; i < POLY_POINTS; i++) {
+                    double angle = 2 * Math.PI * i / POLY_POINTS;
+                    double r = HEIGHT / 3 * (.75 + random.nextDouble() * .25);
+                    Point2D ll = proj.inverse(WIDTH / 2 + r * Math.cos(angle), HEIGHT / 2 + r
+                            * Math.sin(angle));
+                    poly[i * 2] = ProjMath.degToRad(ll.getY());
+                    poly[i * 2 + 1] = ProjMath.degToRad(ll.getX());
+                }
+
+                for (int i = 0; i < LINE_TYPES.length; i++) {
+                    benchmarks.add(new ForwardPoly("proj.forwardPoly." + projName + "."
+                            + LINE_TYPE_NAMES[i], (GeoProj) proj, poly, LINE_TYPES[i]));
+                }
+            }
+        }
+    }
+
+    public static class Forward extends Benchmark {
+        protected final Projection proj;
+        protected final double[] coords;
+        protected final Point2D pnt = new Point2D.Double();
+
+        public Forward(String name, Projection proj, double[] coords) {
+            super(name);
+            this.proj = proj;
+            this.coords = coords;
+        }
+
+        public long run() {
+            long ret = 0;
+            for (int i = 0; i < coords.length; i += 2) {
+                proj.forward(coords[i], coords[i + 1], pnt);
+                ret += (long) pnt.getX();
+            }
+            return ret;
+        }
+    }
+
+    public static class ForwardPoints extends Benchmark {
+        protected final Projection proj;
+        protected final double[] coords;
+        protected final double[] xypts;
+        protected final boolean[] visible;
+
+        public ForwardPoints(String name, Projection proj, double[] coords) {
+            super(name);
+            this.proj = proj;
+            this.coords = coords;
+            this.xypts = new double[coords.length];
+            this.visible = new boolean[coords.length / 2];
+        }
+
+        public long run() {
+            proj.forwardPoints(coords, 0, xypts, 0, visible, 0, visible.length);
+            return (long) xypts[0];
+        }
+    }
+
+    public static class Inverse extends Benchmark {
+        protected final Projection proj;
+        protected final double[] pixels;
+        protected final LatLonPoint llp = new LatLonPoint.Double();
+
+        public Inverse(String name, Projection proj, double[] pixels) {
+            super(name);
+            this.proj = proj;
+            this.pixels = pixels;
+        }
+
+        public long run() {
+            long ret = 0;
+            for (int i = 0; i < pixels.length; i += 2) {
+                proj.inverse(pixels[i], pixels[i + 1], llp);
+                ret += (long) llp.getY();
+            }
+            return ret;
+        }
+    }
+
+    public static class ForwardPoly extends Benchmark {
+        protected final GeoProj proj;
+        protected final double[] rawllpts;
+        protected final int lineType;
+
+        public ForwardPoly(String name, GeoProj proj, double[] rawllpts, int lineType) {
+            super(name);
+            this.proj = proj;
+            this.rawllpts = rawllpts;
+            this.lineType = lineType;
+        }
+
+        public long run() {
+            List<float[]> polys = proj.forwardPoly(rawllpts, lineType, -1, true);
+            long ret = 0;
+            for (float[] pts : polys) {
+                ret += pts.length;
+            }
+            return ret;
+        }
+    }
+}
@@ -0,0 +1,239 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+
+package com.bbn.openmap.benchmark;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import com.bbn.openmap.dataAccess.dted.DTEDFrame;
+import com.bbn.openmap.dataAccess.shape.EsriPolygon;
+import com.bbn.openmap.dataAccess.shape.EsriPolygonList;
+import com.bbn.openmap.dataAccess.shape.output.ShpOutputStream;
+import com.bbn.openmap.dataAccess.shape.output.ShxOutputStream;
+import com.bbn.openmap.layer.shape.SpatialIndex;
+import com.bbn.openmap.omGraphics.OMGraphic;
+import com.bbn.openmap.proj.ProjMath;
+
+/**
+ * Creates the data the benchmarks run against, so results don't depend on
+ * which data sets happen to be installed. Everything is generated from a
+ * seed, and files are written to a data directory the first time they are
+ * asked for, and reused after that. Files include the seed in their names, so
+ * different seeds don't collide.
+ * 
+ * @author dietrick
+ */
+public class SyntheticData {
+
+    public static Logger logger = Logger.getLogger("com.bbn.openmap.benchmark.SyntheticData");
+
+    public final static long DEFAULT_SEED = 5151515L;
+
+    /** Number of polygons created for shape and OMGraphic benchmarks. */
+    public final static int NUM_POLYGONS = 2000;
+
+    /** Posts per side of the DTED level 1 frame. */
+    public final static int DTED_POSTS = 1201;
+
+    protected final File dir;
+    protected final long seed;
+    protected double[][] polygons;
+
+    /**
+     * @param dir directory for generated files, created if needed.
+     * @param seed random seed for all generated data.
+     */
+    public SyntheticData(File dir, long seed) {
+        this.dir = dir;
+        this.seed = seed;
+    }
+
+    public File getDir() {
+        return dir;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Get a Random for a particular use, so each data set is the same no
+     * matter which others were made first.
+     * 
+     * @param purpose name of the data set.
+     * @return Random
+     */
+    public Random getRandom(String purpose) {
+        return new Random(seed ^ purpose.hashCode());
+    }
+
+    /**
+     * Star shaped polygons spread over the world, with 8 to 512 vertices each.
+     * 
+     * @return array of closed polygons, lat, lon, lat, lon... in decimal
+     *         degrees.
+     */
+    public synchronized double[][] getPolygons() {
+        if (polygons == null) {
+            Random random = getRandom("polygons");
+            polygons = new double[NUM_POLYGONS][];
+            for (int i = 0; i < NUM_POLYGONS; i++) {
+                double lat = random.nextDouble() * 120 - 60;
+                double lon = random.nextDouble() * 340 - 170;
+                double radius = .05 + random.nextDouble() * 4;
+                int numPoints = 8 << random.nextInt(7);
+
+                double[] coords = new double[(numPoints + 1) * 2];
+                for (int p = 0; p < numPoints; p++) {
+                    double angle = 2 * Math.PI * p / numPoints;
+                    double r = radius * (.5 + random.nextDouble() * .5);
+                    coords[p * 2] = lat + r * Math.sin(angle);
+                    coords[p * 2 + 1] = lon + r * Math.cos(angle);
+                }
+                coords[numPoints * 2] = coords[0];
+                coords[numPoints * 2 + 1] = coords[1];
+                polygons[i] = coords;
+            }
+        }
+        return polygons;
+    }
+
+    /**
+     * Get a shape file of the polygons, with the shx and ssx files.
+     * 
+     * @return path to the shp file.
+     * @throws IOException
+     */
+    public synchronized String getShapeFile() throws IOException {
+        File shp = new File(dir, "polygons-" + seed + ".shp");
+        File shx = new File(dir, "polygons-" + seed + ".shx");
+        File ssx = new File(SpatialIndex.ssx(shp.getPath()));
+        if (!shp.exists() || !shx.exists() || !ssx.exists()) {
+            dir.mkdirs();
+            double[][] polys = getPolygons();
+            EsriPolygonList list = new EsriPolygonList(polys.length);
+            for (int i = 0; i < polys.length; i++) {
+                double[] coords = polys[i].clone();
+                ProjMath.arrayDegToRad(coords);
+                list.add(new EsriPolygon(coords, OMGraphic.RADIANS, OMGraphic.LINETYPE_STRAIGHT));
+            }
+
+            int[][] index = new ShpOutputStream(new FileOutputStream(shp)).writeGeometry(list);
+            new ShxOutputStream(new FileOutputStream(shx)).writeIndex(index, list.getType(), list.getExtents());
+            SpatialIndex.FileIndex.create(shp.getPath());
+            logger.info("created " + shp);
+        }
+        return shp.getPath();
+    }
+
+    /**
+     * Get a DTED level 1 frame, n40.dt1 for the cell from 70W to 69W, with
+     * rolling terrain.
+     * 
+     * @return path to the frame file.
+     * @throws IOException
+     */
+    public synchronized String getDTEDFile() throws IOException {
+        File frame = new File(dir, "dted-" + seed + File.separator + "w070" + File.separator + "n40.dt1");
+        if (!frame.exists()) {
+            frame.getParentFile().mkdirs();
+            Random random = getRandom("dted");
+            double[] phase = new double[4];
+            for (int i = 0; i < phase.length; i++) {
+                phase[i] = random.nextDouble() * Math.PI * 2;
+            }
+
+            String numPosts = pad(Integer.toString(DTED_POSTS), 4, '0', true);
+            DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(frame)));
+            try {
+                StringBuffer uhl = new StringBuffer();
+                uhl.append("UHL1").append("0700000W").append("0400000N");
+                uhl.append("0030").append("0030").append("NA  ").append("U  ");
+                uhl.append(pad("", 12, ' ', false)).append(numPosts).append(numPosts);
+                writeRecord(dos, uhl, DTEDFrame.UHL_SIZE);
+
+                StringBuffer dsi = new StringBuffer();
+                dsi.append("DSIU");
+                dsi.append(pad("", 2 + 27 + 26 + 5 + 15 + 8, ' ', false));
+                dsi.append("01").append("A");
+                dsi.append(pad("", 4 + 4 + 4 + 8 + 16 + 9, ' ', false));
+                dsi.append("00");
+                dsi.append(pad("", 4, ' ', false)).append("E96").append("WGS84");
+                dsi.append(pad("", 10 + 4 + 22, ' ', false));
+                dsi.append("400000.0N").append("0700000.0W");
+                dsi.append("400000N").append("0700000W");
+                dsi.append("410000N").append("0700000W");
+                dsi.append("410000N").append("0690000W");
+                dsi.append("400000N").append("0690000W");
+                dsi.append("0000000.0").append("0030").append("0030");
+                dsi.append(numPosts).append(numPosts).append("00");
+                writeRecord(dos, dsi, DTEDFrame.DSI_SIZE);
+
+                StringBuffer acc = new StringBuffer();
+                acc.append("ACC").append("NA  NA  NA  NA  ");
+                writeRecord(dos, acc, DTEDFrame.ACC_SIZE);
+
+                for (int x = 0; x < DTED_POSTS; x++) {
+                    dos.writeByte(0xaa);
+                    dos.writeByte(0);
+                    dos.writeShort(x);
+                    dos.writeShort(x);
+                    dos.writeShort(0);
+                    int checksum = 0;
+                    for (int y = 0; y < DTED_POSTS; y++) {
+                        double fx = (double) x / DTED_POSTS;
+                        double fy = (double) y / DTED_POSTS;
+                        int elevation = (int) (600 + 400 * Math.sin(fx * 7 + phase[0]) * Math.cos(fy * 5 + phase[1])
+                                + 150 * Math.sin(fx * 31 + phase[2]) + 100 * Math.cos(fy * 43 + phase[3]));
+                        dos.writeShort(elevation);
+                        checksum += (elevation >> 8) & 0xff;
+                        checksum += elevation & 0xff;
+                    }
+                    dos.writeInt(checksum);
+                }
+            } finally {
+                dos.close();
+            }
+            logger.info("created " + frame);
+        }
+        return frame.getPath();
+    }
+
+    /**
+     * Write a fixed length header record, padded with spaces.
+     */
+    protected void writeRecord(DataOutputStream dos, StringBuffer record, int length) throws IOException {
+        if (record.length() > length) {
+            throw new IOException("record longer than " + length + ": " + record);
+        }
+        dos.writeBytes(pad(record.toString(), length, ' ', false));
+    }
+
+    protected static String pad(String s, int length, char c, boolean left) {
+        if (s.length() >= length) {
+            return s;
+        }
+        char[] fill = new char[length - s.length()];
+        Arrays.fill(fill, c);
+        return left ? new String(fill) + s : s + new String(fill);
+    }
+}
@@ -0,0 +1,70 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+
+package com.bbn.openmap.layer.rpf;
+
+import java.awt.Color;
+import java.util.Random;
+
+/**
+ * An RpfFrame with random compressed subframes, lookup tables and colors, so
+ * subframe decompression can be benchmarked without real RPF data. The frame
+ * path is the seed for the random data. This class lives in the rpf package
+ * so it can fill in the frame's package-level data.
+ * 
+ * @author dietrick
+ */
+public class SyntheticRpfFrame extends RpfFrame {
+
+    /**
+     * @param seed used to create the frame contents.
+     */
+    public SyntheticRpfFrame(long seed) {
+        super(Long.toString(seed));
+    }
+
+    /**
+     * Fills in the frame data instead of reading a file. Called from the
+     * RpfFrame constructor.
+     */
+    protected boolean initFile(String framePath) {
+        Random random = new Random(Long.parseLong(framePath));
+
+        for (int y = 0; y < 6; y++) {
+            for (int x = 0; x < 6; x++) {
+                compressedSubframe[y][x] = new byte[6144];
+                random.nextBytes(compressedSubframe[y][x]);
+            }
+        }
+
+        for (int t = 0; t < 4; t++) {
+            for (int i = 0; i < 4096; i++) {
+                for (int e = 0; e < 4; e++) {
+                    table[t][i][e] = (byte) random.nextInt(RpfColortable.CADRG_COLORS);
+                }
+            }
+        }
+
+        colortable = new RpfColortable();
+        Color[] colors = new Color[RpfColortable.CADRG_COLORS];
+        for (int i = 0; i < colors.length; i++) {
+            colors[i] = new Color(random.nextInt(0x1000000));
+        }
+        colortable.colors = colors;
+
+        valid = true;
+        return valid;
+    }
+}
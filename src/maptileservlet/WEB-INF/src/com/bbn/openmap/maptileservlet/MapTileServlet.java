@@ -1,14 +1,20 @@
 package com.bbn.openmap.maptileservlet;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -51,12 +57,38 @@ import com.bbn.openmap.util.wanderer.WandererCallback;
  * doesn't have. Each MapTileSet has configuration information in its javadoc.
  * See the web.xml file for more information about configuring this
  * MapTileServlet.
+ * <p>
+ * Tiles from MapTileSets that keep them in files (StreamingMapTileSets) are
+ * streamed from the file to the client. Tiles are sent with ETag and
+ * Last-Modified headers, and requests with matching If-None-Match or
+ * If-Modified-Since headers get a 304 (Not Modified) response. The
+ * TileCacheSize context parameter sets the megabytes of popular tiles to keep
+ * in memory, and TileMaxAge sets the seconds clients can use a tile without
+ * checking back (the Cache-Control max-age).
  * 
  * @author dietrick
  */
 public class MapTileServlet extends HttpServlet {
     public final static String TILE_SET_DESCRIPTION_ATTRIBUTE = "TileSetDefinitions";
+    /**
+     * Context parameter for megabytes of tiles to keep in memory, 0 to turn
+     * the cache off.
+     */
+    public final static String TILE_CACHE_SIZE_ATTRIBUTE = "TileCacheSize";
+    /**
+     * Context parameter for the Cache-Control max-age, in seconds, sent with
+     * tiles. No Cache-Control header is sent if it isn't set.
+     */
+    public final static String TILE_MAX_AGE_ATTRIBUTE = "TileMaxAge";
+    public final static int DEFAULT_TILE_CACHE_SIZE = 32;
+    /**
+     * Tiles bigger than this number of bytes are not kept in memory.
+     */
+    public final static int MAX_CACHED_TILE_BYTES = 256 * 1024;
+
     protected Map<String, MapTileSet> mapTileSets;
+    protected TileCache tileCache = new TileCache(DEFAULT_TILE_CACHE_SIZE * 1024L * 1024L, MAX_CACHED_TILE_BYTES);
+    protected int tileMaxAge = -1;
 
     /**
      * A do-nothing constructor - init does all the work.
@@ -77,6 +109,11 @@ public class MapTileServlet extends HttpServlet {
         String descriptions = context.getInitParameter(TILE_SET_DESCRIPTION_ATTRIBUTE);
         Logger logger = getLogger();
         logger.info("Looking for Tile Set Descriptions at: " + descriptions);
+
+        Properties initParameters = getInitParameters(context);
+        int cacheSize = PropUtils.intFromProperties(initParameters, TILE_CACHE_SIZE_ATTRIBUTE, DEFAULT_TILE_CACHE_SIZE);
+        tileCache = new TileCache(cacheSize * 1024L * 1024L, MAX_CACHED_TILE_BYTES);
+        tileMaxAge = PropUtils.intFromProperties(initParameters, TILE_MAX_AGE_ATTRIBUTE, tileMaxAge);
         if (descriptions != null) {
 
             // Changing descriptions to a folder containing properties files
@@ -207,11 +244,11 @@ public class MapTileServlet extends HttpServlet {
             }
 
             try {
-                resp.setContentType(HttpConnection.CONTENT_PNG);
-                byte[] imageData = mts.getImageData(pathInfo);
-                OutputStreamWriter osw = new OutputStreamWriter(out);
-                out.write(imageData, 0, imageData.length);
-                osw.flush();
+                if (mts instanceof StreamingMapTileSet) {
+                    writeTileFile(req, resp, (StreamingMapTileSet) mts, pathInfo);
+                } else {
+                    writeTileData(req, resp, mts, pathInfo);
+                }
             } catch (Exception e) {
                 if (logger.isLoggable(Level.FINE)) {
                     getLogger().fine("Tile not found: " + pathInfo);
@@ -225,6 +262,186 @@ public class MapTileServlet extends HttpServlet {
         }
     }
 
+    /**
+     * Send a tile from a StreamingMapTileSet. The tile comes from the memory
+     * cache if it's there and still matches the file, and is streamed from
+     * the file otherwise.
+     * 
+     * @param req request.
+     * @param resp response.
+     * @param mts the tile set the tile belongs to.
+     * @param pathInfo request path for tile.
+     * @throws Exception if the tile can't be found or sent.
+     */
+    protected void writeTileFile(HttpServletRequest req, HttpServletResponse resp,
+                                 StreamingMapTileSet mts, String pathInfo)
+            throws Exception {
+        File file = mts.getTileFile(pathInfo);
+        if (file == null) {
+            writeTileData(req, resp, mts, pathInfo);
+            return;
+        }
+
+        long lastModified = file.lastModified();
+        long length = file.length();
+        String etag = TileCache.createETag(lastModified, length);
+
+        setCacheHeaders(resp, etag, lastModified);
+        if (isNotModified(req, etag, lastModified)) {
+            resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        resp.setContentType(HttpConnection.CONTENT_PNG);
+        OutputStream out = resp.getOutputStream();
+
+        TileCache.Entry entry = tileCache.get(pathInfo);
+        if (entry != null && etag.equals(entry.etag)) {
+            resp.setContentLength(entry.data.length);
+            out.write(entry.data);
+            out.flush();
+            return;
+        }
+
+        if (tileCache.admit(pathInfo, length)) {
+            byte[] data = TileCache.readFile(file);
+            tileCache.put(pathInfo, new TileCache.Entry(data, etag, lastModified));
+            resp.setContentLength(data.length);
+            out.write(data);
+            out.flush();
+            return;
+        }
+
+        resp.setContentLength((int) length);
+        FileInputStream fis = new FileInputStream(file);
+        try {
+            FileChannel channel = fis.getChannel();
+            WritableByteChannel target = Channels.newChannel(out);
+            long position = 0;
+            while (position < length) {
+                long count = channel.transferTo(position, length - position, target);
+                if (count <= 0) {
+                    break;
+                }
+                position += count;
+            }
+        } finally {
+            fis.close();
+        }
+        out.flush();
+    }
+
+    /**
+     * Send a tile from a MapTileSet that provides the tile bytes.
+     * 
+     * @param req request.
+     * @param resp response.
+     * @param mts the tile set the tile belongs to.
+     * @param pathInfo request path for tile.
+     * @throws Exception if the tile can't be found or sent.
+     */
+    protected void writeTileData(HttpServletRequest req, HttpServletResponse resp,
+                                 MapTileSet mts, String pathInfo)
+            throws Exception {
+        TileCache.Entry entry = tileCache.get(pathInfo);
+        if (entry == null) {
+            byte[] imageData = mts.getImageData(pathInfo);
+            if (imageData == null) {
+                throw new FileNotFoundException(pathInfo);
+            }
+            // No modification time, the ETag will have to do.
+            entry = new TileCache.Entry(imageData, TileCache.createETag(imageData), -1);
+            if (tileCache.admit(pathInfo, imageData.length)) {
+                tileCache.put(pathInfo, entry);
+            }
+        }
+
+        setCacheHeaders(resp, entry.etag, entry.lastModified);
+        if (isNotModified(req, entry.etag, entry.lastModified)) {
+            resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        resp.setContentType(HttpConnection.CONTENT_PNG);
+        resp.setContentLength(entry.data.length);
+        OutputStream out = resp.getOutputStream();
+        out.write(entry.data);
+        out.flush();
+    }
+
+    /**
+     * Set the ETag, Last-Modified and Cache-Control headers for a tile.
+     * 
+     * @param resp response.
+     * @param etag tile ETag.
+     * @param lastModified tile modification time, -1 if unknown.
+     */
+    protected void setCacheHeaders(HttpServletResponse resp, String etag, long lastModified) {
+        resp.setHeader("ETag", etag);
+        if (lastModified >= 0) {
+            resp.setDateHeader("Last-Modified", lastModified);
+        }
+        if (tileMaxAge >= 0) {
+            resp.setHeader("Cache-Control", "max-age=" + tileMaxAge);
+        }
+    }
+
+    /**
+     * Check the request's If-None-Match and If-Modified-Since headers against
+     * the tile. If-None-Match is used if both are present.
+     * 
+     * @param req request.
+     * @param etag tile ETag.
+     * @param lastModified tile modification time, -1 if unknown.
+     * @return true if the client already has the tile.
+     */
+    protected boolean isNotModified(HttpServletRequest req, String etag, long lastModified) {
+        String ifNoneMatch = req.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            String[] tags = ifNoneMatch.split(",");
+            for (int i = 0; i < tags.length; i++) {
+                String tag = tags[i].trim();
+                if (tag.startsWith("W/")) {
+                    tag = tag.substring(2);
+                }
+                if (tag.equals("*") || tag.equals(etag)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        if (lastModified >= 0) {
+            try {
+                long ifModifiedSince = req.getDateHeader("If-Modified-Since");
+                // HTTP dates only have second resolution.
+                return ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+            } catch (IllegalArgumentException iae) {
+                // Bad date, send the tile.
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Collect the context init parameters into a Properties object.
+     * 
+     * @param context servlet context
+     * @return Properties with init parameters.
+     */
+    protected Properties getInitParameters(ServletContext context) {
+        Properties props = new Properties();
+        Enumeration<?> names = context.getInitParameterNames();
+        while (names.hasMoreElements()) {
+            String name = (String) names.nextElement();
+            String value = context.getInitParameter(name);
+            if (value != null) {
+                props.put(name, value.trim());
+            }
+        }
+        return props;
+    }
+
     protected MapTileSet getMapTileSetForRequest(String pathInfo) {
         if (pathInfo.startsWith("/")) {
             pathInfo = pathInfo.substring(1);
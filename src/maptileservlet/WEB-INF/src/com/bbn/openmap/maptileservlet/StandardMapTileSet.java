@@ -8,12 +8,16 @@ import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 import java.util.logging.Level;
 
 import com.bbn.openmap.dataAccess.mapTile.StandardMapTileFactory;
 import com.bbn.openmap.image.PNGImageIOFormatter;
-import com.bbn.openmap.io.BinaryBufferedFile;
 import com.bbn.openmap.io.FormatException;
 import com.bbn.openmap.util.PropUtils;
 
@@ -41,7 +45,7 @@ import com.bbn.openmap.util.PropUtils;
  * 
  * @author dietrick
  */
-public class StandardMapTileSet extends StandardMapTileFactory implements MapTileSet {
+public class StandardMapTileSet extends StandardMapTileFactory implements StreamingMapTileSet {
 
     public final static String NAME_ATTRIBUTE = "name";
     public final static String DESCRIPTION_ATTRIBUTE = "description";
@@ -49,6 +53,11 @@ public class StandardMapTileSet extends StandardMapTileFactory implements MapTil
     protected String name;
     protected String description = null;
 
+    /**
+     * Missing tiles being created, by file path.
+     */
+    protected final ConcurrentHashMap<String, FutureTask<File>> pendingTiles = new ConcurrentHashMap<String, FutureTask<File>>();
+
     // To allow the component factory to create it.
     public StandardMapTileSet() {
     }
@@ -74,58 +83,135 @@ public class StandardMapTileSet extends StandardMapTileFactory implements MapTil
     }
 
     public byte[] getImageData(String pathInfo) throws IOException, FormatException {
-        byte[] imageData = null;
-
-        // We're assuming that all queries are coming in with the name in front,
-        // along with a slash
-        if (name != null) {
-            int index = pathInfo.indexOf(name, 1);
-            pathInfo = pathInfo.substring(index + name.length());
+        File file = getTileFile(pathInfo);
+        if (file == null) {
+            return null;
         }
+        return TileCache.readFile(file);
+    }
 
-        String filePath = rootDir + pathInfo;
+    /**
+     * Get the tile file for the path. If the file doesn't exist and there's an
+     * EmptyTileHandler, the tile is created and written to the file. Requests
+     * for the same missing tile at the same time wait for a single tile to be
+     * created.
+     */
+    public File getTileFile(String pathInfo) throws IOException, FormatException {
+        final String filePath = getFilePath(pathInfo);
         if (logger.isLoggable(Level.FINE)) {
             logger.fine("looking for " + filePath);
         }
 
+        File file = new File(filePath);
+        if (file.isFile()) {
+            return file;
+        }
+
+        // The file wasn't found.
+        if (emptyTileHandler == null) {
+            logger.fine("no empty file handler");
+            return null;
+        }
+
+        FutureTask<File> task = new FutureTask<File>(new Callable<File>() {
+            public File call() throws Exception {
+                return createTileFile(filePath);
+            }
+        });
+
+        FutureTask<File> pending = pendingTiles.putIfAbsent(filePath, task);
+        if (pending == null) {
+            pending = task;
+            try {
+                task.run();
+            } finally {
+                pendingTiles.remove(filePath, task);
+            }
+        }
+
         try {
+            return pending.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for " + filePath);
+        } catch (ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("Problem creating " + filePath + ": " + cause);
+        }
+    }
 
-            BinaryBufferedFile file = new BinaryBufferedFile(filePath);
-            imageData = file.readBytes(100000, true);
-            file.close();
-
-        } catch (IOException ioe) {
-            logger.fine("Problem fetching the file");
-            // The file wasn't found.
-            if (emptyTileHandler != null) {
-                if (logger.isLoggable(Level.FINE)) {
-                    logger.fine("Creating " + filePath + " since it wasn't found from the server.");
-                }
-                
-                TileInfo ti = new TileInfo(filePath);// FPBT: used to be
-                                                     // pathInfo
-                ti.setMtcTransform(getMtcTransform());
-                BufferedImage bufferedImage = ti.getBufferedImage(emptyTileHandler);
-
-                if (bufferedImage != null) {
-                    imageData = new PNGImageIOFormatter().formatImage(bufferedImage);
-                    logger.fine("buffered image created, writing file to disk too");
-                    File newFile = new File(filePath);
-                    newFile.getParentFile().mkdirs();
-                    // Write the image data to the local cache location
-                    FileOutputStream fos = new FileOutputStream(newFile);
-                    fos.write(imageData);
-                    fos.flush();
-                    fos.close();
-                } else {
-                    logger.fine("null buffered image back from EmptyTileHandler");
-                }
-            } else {
-                logger.fine("no empty file handler");
+    /**
+     * Create the image for a missing tile with the EmptyTileHandler, and write
+     * it to the tile file. The image is written to a temporary file first, so
+     * other requests never see a partial tile.
+     * 
+     * @param filePath the path of the tile file.
+     * @return the tile File, or null if the EmptyTileHandler didn't provide an
+     *         image.
+     * @throws IOException
+     */
+    protected File createTileFile(String filePath) throws IOException {
+        File file = new File(filePath);
+        if (file.isFile()) {
+            // Created by another request while this one was on its way.
+            return file;
+        }
+
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Creating " + filePath + " since it wasn't found from the server.");
+        }
+
+        TileInfo ti = new TileInfo(filePath);// FPBT: used to be
+                                             // pathInfo
+        ti.setMtcTransform(getMtcTransform());
+        BufferedImage bufferedImage = ti.getBufferedImage(emptyTileHandler);
+
+        if (bufferedImage == null) {
+            logger.fine("null buffered image back from EmptyTileHandler");
+            return null;
+        }
+
+        byte[] imageData = new PNGImageIOFormatter().formatImage(bufferedImage);
+        logger.fine("buffered image created, writing file to disk too");
+        File parent = file.getAbsoluteFile().getParentFile();
+        parent.mkdirs();
+        // Write the image data to the local cache location
+        File tmpFile = File.createTempFile("tile", ".tmp", parent);
+        try {
+            FileOutputStream fos = new FileOutputStream(tmpFile);
+            try {
+                fos.write(imageData);
+                fos.flush();
+            } finally {
+                fos.close();
+            }
+            if (!tmpFile.renameTo(file) && !file.isFile()) {
+                throw new IOException("Unable to write " + filePath);
             }
+        } finally {
+            tmpFile.delete();
+        }
+
+        return file;
+    }
+
+    /**
+     * @param pathInfo the request path, with the name of the tile set in
+     *        front.
+     * @return the path of the tile file under the root directory.
+     */
+    protected String getFilePath(String pathInfo) {
+        // We're assuming that all queries are coming in with the name in front,
+        // along with a slash
+        if (name != null) {
+            int index = pathInfo.indexOf(name, 1);
+            pathInfo = pathInfo.substring(index + name.length());
         }
 
-        return imageData;
+        return rootDir + pathInfo;
     }
 
     public String getName() {
@@ -0,0 +1,35 @@
+/* 
+ * <copyright>
+ *  Copyright 2012 BBN Technologies
+ * </copyright>
+ */
+package com.bbn.openmap.maptileservlet;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.bbn.openmap.io.FormatException;
+
+/**
+ * A MapTileSet that keeps its tiles in files. The MapTileServlet can stream
+ * those files straight to the client instead of loading them into memory, and
+ * use their modification times for HTTP caching headers.
+ * 
+ * @author dietrick
+ */
+public interface StreamingMapTileSet extends MapTileSet {
+
+   /**
+    * Get the file holding the tile image. If the tile is missing and the
+    * MapTileSet can create it, it should be created and written to the file
+    * before it's returned.
+    * 
+    * @param pathInfo path for file, in z/x/y format.
+    * @return File for image data, null if not found or if the tile isn't
+    *         kept in a file. The MapTileServlet uses getImageData() when null
+    *         is returned.
+    * @throws IOException
+    * @throws FormatException
+    */
+   File getTileFile(String pathInfo) throws IOException, FormatException;
+}
@@ -0,0 +1,206 @@
+/* 
+ * <copyright>
+ *  Copyright 2012 BBN Technologies
+ * </copyright>
+ */
+package com.bbn.openmap.maptileservlet;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * The TileCache holds the bytes of popular tiles in memory, so the
+ * MapTileServlet doesn't have to go to the disk for them. A tile is only
+ * admitted to the cache the second time it's asked for, so tiles that are only
+ * asked for once don't push the popular ones out. The least recently used
+ * tiles are dropped when the cache gets bigger than its maximum size.
+ * 
+ * @author dietrick
+ */
+public class TileCache {
+
+    /**
+     * The number of tile keys remembered for admitting tiles into the cache.
+     */
+    public final static int SEEN_KEY_LIMIT = 4096;
+
+    /**
+     * The bytes of a tile, with the validators for HTTP caching.
+     */
+    public static class Entry {
+        public final byte[] data;
+        public final String etag;
+        /** Modification time of the tile, -1 if unknown. */
+        public final long lastModified;
+
+        public Entry(byte[] data, String etag, long lastModified) {
+            this.data = data;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+    }
+
+    protected long maxBytes;
+    protected int maxTileBytes;
+    protected long currentBytes = 0;
+
+    protected LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(64, .75f, true);
+
+    protected LinkedHashMap<String, Boolean> seenKeys = new LinkedHashMap<String, Boolean>(64, .75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > SEEN_KEY_LIMIT;
+        }
+    };
+
+    /**
+     * @param maxBytes the most tile bytes to hold in the cache, 0 turns it
+     *        off.
+     * @param maxTileBytes tiles bigger than this are never held.
+     */
+    public TileCache(long maxBytes, int maxTileBytes) {
+        this.maxBytes = maxBytes;
+        this.maxTileBytes = maxTileBytes;
+    }
+
+    /**
+     * @param key tile key.
+     * @return the cached Entry, or null if the tile isn't in the cache.
+     */
+    public synchronized Entry get(String key) {
+        return entries.get(key);
+    }
+
+    /**
+     * Check if a tile should be put in the cache after it is read.
+     * 
+     * @param key tile key.
+     * @param size the number of bytes in the tile.
+     * @return true if the tile has been asked for recently and fits.
+     */
+    public synchronized boolean admit(String key, long size) {
+        if (maxBytes <= 0 || size > maxTileBytes || size > maxBytes) {
+            return false;
+        }
+
+        if (seenKeys.remove(key) != null) {
+            return true;
+        }
+
+        seenKeys.put(key, Boolean.TRUE);
+        return false;
+    }
+
+    /**
+     * Add a tile to the cache, replacing any older version, and drop the least
+     * recently used tiles if needed.
+     * 
+     * @param key tile key.
+     * @param entry tile bytes and validators.
+     */
+    public synchronized void put(String key, Entry entry) {
+        if (maxBytes <= 0 || entry.data.length > maxTileBytes) {
+            return;
+        }
+
+        Entry old = entries.put(key, entry);
+        if (old != null) {
+            currentBytes -= old.data.length;
+        }
+        currentBytes += entry.data.length;
+
+        Iterator<Entry> it = entries.values().iterator();
+        while (currentBytes > maxBytes && it.hasNext()) {
+            currentBytes -= it.next().data.length;
+            it.remove();
+        }
+    }
+
+    /**
+     * Remove a tile from the cache.
+     * 
+     * @param key tile key.
+     */
+    public synchronized void remove(String key) {
+        Entry old = entries.remove(key);
+        if (old != null) {
+            currentBytes -= old.data.length;
+        }
+    }
+
+    /**
+     * Empty the cache.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        seenKeys.clear();
+        currentBytes = 0;
+    }
+
+    /**
+     * @return the number of tile bytes in the cache.
+     */
+    public synchronized long getCurrentBytes() {
+        return currentBytes;
+    }
+
+    /**
+     * Create an ETag for a tile file, from its modification time and size.
+     * 
+     * @param lastModified file modification time.
+     * @param length file size.
+     * @return quoted ETag value.
+     */
+    public static String createETag(long lastModified, long length) {
+        return "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(length) + "\"";
+    }
+
+    /**
+     * Create an ETag for tile bytes, from their checksum and size.
+     * 
+     * @param data tile bytes.
+     * @return quoted ETag value.
+     */
+    public static String createETag(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return "\"" + Long.toHexString(crc.getValue()) + "-" + Integer.toHexString(data.length)
+                + "\"";
+    }
+
+    /**
+     * Read all of a file into memory.
+     * 
+     * @param file the file to read.
+     * @return the bytes in the file.
+     * @throws IOException
+     */
+    public static byte[] readFile(File file) throws IOException {
+        FileInputStream fis = new FileInputStream(file);
+        try {
+            long length = fis.getChannel().size();
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException(file + " is too big to load");
+            }
+            byte[] data = new byte[(int) length];
+            int offset = 0;
+            while (offset < data.length) {
+                int count = fis.read(data, offset, data.length - offset);
+                if (count < 0) {
+                    throw new EOFException("Unexpected end of " + file);
+                }
+                offset += count;
+            }
+            return data;
+        } finally {
+            fis.close();
+        }
+    }
+}
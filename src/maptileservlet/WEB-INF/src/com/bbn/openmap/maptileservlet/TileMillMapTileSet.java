@@ -3,17 +3,14 @@
 package com.bbn.openmap.maptileservlet;
 
 import java.awt.image.BufferedImage;
+import java.io.File;
 import java.io.IOException;
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.ResultSet;
-import java.sql.Statement;
 import java.util.Properties;
 import java.util.logging.Logger;
 
 import javax.swing.ImageIcon;
 
-import com.bbn.openmap.dataAccess.mapTile.TileMillMapTileFactory;
+import com.bbn.openmap.dataAccess.mapTile.MBTilesTileStore;
 import com.bbn.openmap.image.BufferedImageHelper;
 import com.bbn.openmap.image.PNGImageIOFormatter;
 import com.bbn.openmap.io.FormatException;
@@ -26,7 +23,7 @@ import com.bbn.openmap.util.PropUtils;
  * name=the-name-of-dataset
  * class=com.bbn.openmap.maptileservlet.TileMillMapTileSet
  * rootDir=the path to the mbtiles file.
- *  * </pre>
+ * </pre>
  * 
  * As an example, a url for accessing a tile from this server would be:
  * 
@@ -41,6 +38,11 @@ import com.bbn.openmap.util.PropUtils;
  */
 public class TileMillMapTileSet extends StandardMapTileSet {
 
+    /**
+     * The store for reading tiles, its connections are pooled and shared.
+     */
+    protected MBTilesTileStore tileStore;
+
     public TileMillMapTileSet() {
     }
 
@@ -56,35 +58,56 @@ public class TileMillMapTileSet extends StandardMapTileSet {
         return props;
     }
 
+    public void setProperties(String prefix, Properties props) {
+        super.setProperties(prefix, props);
+        synchronized (this) {
+            tileStore = null;
+        }
+    }
+
+    /**
+     * Get the MBTilesTileStore for the rootDir, creating it the first time.
+     * 
+     * @return MBTilesTileStore, null if the JDBC driver isn't available.
+     */
+    protected synchronized MBTilesTileStore getTileStore() {
+        if (tileStore == null && rootDir != null) {
+            try {
+                tileStore = new MBTilesTileStore(rootDir);
+            } catch (IOException ioe) {
+                getLogger().warning("can't locate sqlite JDBC components");
+            }
+        }
+        return tileStore;
+    }
+
+    /**
+     * The tiles are in the database, not in files.
+     * 
+     * @return null
+     */
+    public File getTileFile(String pathInfo) throws IOException, FormatException {
+        return null;
+    }
+
     public byte[] getImageData(String pathInfo) throws IOException, FormatException {
 
         byte[] imageData = null;
 
-        try {
-            Class.forName(TileMillMapTileFactory.DEFAULT_TEST_CLASS);
-        } catch (Exception e) {
-            getLogger().warning("can't locate sqlite JDBC components");
+        MBTilesTileStore store = getTileStore();
+        if (store == null) {
             return null;
         }
 
         try {
 
             TileInfo ti = new TileInfo(pathInfo);
+            if (!ti.valid) {
+                return null;
+            }
 
-            Connection conn = DriverManager.getConnection(rootDir);
-            Statement stat = conn.createStatement();
-
-            // "select zoom_level, tile_column, tile_row, tile_data from map, images where map.tile_id = images.tile_id";
-            StringBuilder statement = new StringBuilder("select tile_data from map, images where");
-            statement.append(" zoom_level = ").append(ti.zoomLevel);
-            statement.append(" and tile_column = ").append(ti.x);
-            statement.append(" and tile_row = ").append((int) (Math.pow(2, ti.zoomLevel)) - ti.y
-                    - 1);
-            statement.append(" and map.tile_id = images.tile_id;");
-
-            ResultSet rs = stat.executeQuery(statement.toString());
-            while (rs.next()) {
-                byte[] imageBytes = rs.getBytes("tile_data");
+            byte[] imageBytes = store.getTile(ti.x, ti.y, ti.zoomLevel);
+            if (imageBytes != null) {
                 ImageIcon ii = new ImageIcon(imageBytes);
                 BufferedImage bi = BufferedImageHelper.getBufferedImage(ii.getImage(), 0, 0, -1, -1);
 
@@ -93,8 +116,6 @@ public class TileMillMapTileSet extends StandardMapTileSet {
                 // specification of map image format.
                 imageData = new PNGImageIOFormatter().formatImage(bi);
             }
-            rs.close();
-            conn.close();
         } catch (Exception e) {
             getLogger().warning("something went wrong fetching image from database: "
                     + e.getMessage());
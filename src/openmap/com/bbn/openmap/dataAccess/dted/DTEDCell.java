@@ -0,0 +1,311 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.dataAccess.dted;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+
+import com.bbn.openmap.io.BinaryBufferedFile;
+import com.bbn.openmap.io.BinaryFile;
+import com.bbn.openmap.util.Debug;
+
+/**
+ * A DTEDCell is the fully decoded elevation matrix of one DTED file, held in a
+ * single array so that lookups don't have to check whether a column has been
+ * read. The posts of files on the local file system are read straight out of a
+ * memory-mapped view of the data records, other files (in jars, for instance)
+ * are read through a DTEDFrame. A DTEDCell doesn't change after it has been
+ * loaded, so it can be used by several threads at once.
+ * 
+ * @author dietrick
+ */
+public class DTEDCell {
+
+    /** The offset of the first data record in a DTED file. */
+    public final static int DATA_START = DTEDFrame.UHL_SIZE + DTEDFrame.DSI_SIZE + DTEDFrame.ACC_SIZE;
+    /**
+     * The number of bytes in a data record around the posts - sentinel, block
+     * count, longitude count, latitude count and checksum.
+     */
+    public final static int RECORD_OVERHEAD = 12;
+
+    protected final String path;
+    protected final double swLat;
+    protected final double swLon;
+    protected final double neLat;
+    protected final double neLon;
+    /** Number of posts per degree of latitude. */
+    protected final double latPostsPerDegree;
+    /** Number of posts per degree of longitude. */
+    protected final double lonPostsPerDegree;
+    protected final int numLatPoints;
+    protected final int numLonLines;
+    /**
+     * The posts, one longitude column after another, starting at the south
+     * west corner.
+     */
+    protected final short[] posts;
+
+    protected DTEDCell(String path, DTEDFrameDSI dsi, DTEDFrameUHL uhl, short[] posts) {
+        this.path = path;
+        this.swLat = dsi.sw_lat;
+        this.swLon = dsi.sw_lon;
+        this.neLat = dsi.ne_lat;
+        this.neLon = dsi.ne_lon;
+        // post intervals are in tenths of seconds
+        this.latPostsPerDegree = 36000.0 / uhl.lat_post_interval;
+        this.lonPostsPerDegree = 36000.0 / uhl.lon_post_interval;
+        this.numLatPoints = uhl.num_lat_points;
+        this.numLonLines = uhl.num_lon_lines;
+        this.posts = posts;
+    }
+
+    /**
+     * Load a DTED file.
+     * 
+     * @param path the path to the DTED file.
+     * @return DTEDCell, or null if the file couldn't be read.
+     */
+    public static DTEDCell load(String path) {
+        DTEDFrameDSI dsi;
+        DTEDFrameUHL uhl;
+        try {
+            BinaryFile binFile = new BinaryBufferedFile(path);
+            try {
+                binFile.byteOrder(true);
+                dsi = new DTEDFrameDSI(binFile);
+                uhl = new DTEDFrameUHL(binFile);
+            } finally {
+                binFile.close();
+            }
+        } catch (IOException ioe) {
+            Debug.error("DTEDCell: problem reading " + path + ": " + ioe.getMessage());
+            return null;
+        }
+
+        if (uhl.num_lat_points < 2 || uhl.num_lon_lines < 2 || uhl.lat_post_interval <= 0
+                || uhl.lon_post_interval <= 0) {
+            Debug.error("DTEDCell: bad header in " + path);
+            return null;
+        }
+
+        short[] posts = null;
+        File file = new File(path);
+        if (file.isFile()) {
+            posts = readMapped(file, uhl.num_lon_lines, uhl.num_lat_points);
+        }
+
+        if (posts == null) {
+            posts = readFrame(path, uhl.num_lon_lines, uhl.num_lat_points);
+        }
+
+        return posts != null ? new DTEDCell(path, dsi, uhl, posts) : null;
+    }
+
+    /**
+     * Read the posts out of a memory-mapped view of the data records.
+     * 
+     * @return posts, or null if the file couldn't be mapped or is too short.
+     */
+    protected static short[] readMapped(File file, int numLonLines, int numLatPoints) {
+        long recordLength = RECORD_OVERHEAD + 2L * numLatPoints;
+        long dataLength = recordLength * numLonLines;
+        if (file.length() < DATA_START + dataLength) {
+            Debug.error("DTEDCell: " + file + " is too short for its posts");
+            return null;
+        }
+
+        RandomAccessFile raf = null;
+        try {
+            raf = new RandomAccessFile(file, "r");
+            FileChannel channel = raf.getChannel();
+            // Big endian, like the file. Record lengths are even, so
+            // the posts all line up with the short view.
+            ShortBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, DATA_START, dataLength).asShortBuffer();
+
+            short[] posts = new short[numLonLines * numLatPoints];
+            for (int col = 0; col < numLonLines; col++) {
+                // skip sentinel, block count and lon/lat counts
+                data.position((int) ((col * recordLength + 8) / 2));
+                data.get(posts, col * numLatPoints, numLatPoints);
+            }
+
+            // Posts are signed magnitude, not two's complement.
+            for (int i = 0; i < posts.length; i++) {
+                short post = posts[i];
+                if (post < 0) {
+                    posts[i] = (short) -(post & 0x7fff);
+                }
+            }
+            return posts;
+
+        } catch (IOException ioe) {
+            Debug.message("dted", "DTEDCell: couldn't map " + file + ": " + ioe.getMessage());
+            return null;
+        } finally {
+            if (raf != null) {
+                try {
+                    raf.close();
+                } catch (IOException ioe) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Read the posts through a DTEDFrame, for files that can't be mapped.
+     */
+    protected static short[] readFrame(String path, int numLonLines, int numLatPoints) {
+        DTEDFrame frame = new DTEDFrame(path, true);
+        if (!frame.frame_is_valid) {
+            return null;
+        }
+
+        short[] posts = new short[numLonLines * numLatPoints];
+        for (int col = 0; col < numLonLines; col++) {
+            short[] column = frame.elevations[col];
+            if (column == null) {
+                return null;
+            }
+            System.arraycopy(column, 0, posts, col * numLatPoints, numLatPoints);
+        }
+        frame.dispose();
+        return posts;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public double getSWLat() {
+        return swLat;
+    }
+
+    public double getSWLon() {
+        return swLon;
+    }
+
+    public double getNELat() {
+        return neLat;
+    }
+
+    public double getNELon() {
+        return neLon;
+    }
+
+    public int getNumLatPoints() {
+        return numLatPoints;
+    }
+
+    public int getNumLonLines() {
+        return numLonLines;
+    }
+
+    /**
+     * @return the number of bytes used by the posts.
+     */
+    public long getByteSize() {
+        return 2L * posts.length;
+    }
+
+    /**
+     * @return true if the cell covers the lat/lon.
+     */
+    public boolean contains(double lat, double lon) {
+        return lat >= swLat && lat <= neLat && lon >= swLon && lon <= neLon;
+    }
+
+    /**
+     * Get a post by index.
+     * 
+     * @param col the longitude index, 0 is the west edge.
+     * @param row the latitude index, 0 is the south edge.
+     * @return elevation in meters.
+     */
+    public short getPost(int col, int row) {
+        return posts[col * numLatPoints + row];
+    }
+
+    /**
+     * The elevation of the post closest to the lat/lon, the same answer
+     * DTEDFrame.elevationAt() gives.
+     * 
+     * @param lat latitude in decimal degrees.
+     * @param lon longitude in decimal degrees.
+     * @return elevation in meters, or DTEDFrameCache.NO_DATA if the cell
+     *         doesn't cover the location.
+     */
+    public short getElevation(double lat, double lon) {
+        if (!contains(lat, lon)) {
+            return DTEDFrameCache.NO_DATA;
+        }
+
+        int row = clamp((int) Math.round((lat - swLat) * latPostsPerDegree), numLatPoints - 1);
+        int col = clamp((int) Math.round((lon - swLon) * lonPostsPerDegree), numLonLines - 1);
+        return posts[col * numLatPoints + row];
+    }
+
+    /**
+     * The elevation at the lat/lon, bilinearly interpolated from the four
+     * surrounding posts. If one of those posts doesn't have data, the closest
+     * post is used instead.
+     * 
+     * @param lat latitude in decimal degrees.
+     * @param lon longitude in decimal degrees.
+     * @return elevation in meters, or DTEDFrameCache.NO_DATA if the cell
+     *         doesn't cover the location.
+     */
+    public float getInterpolatedElevation(double lat, double lon) {
+        if (!contains(lat, lon)) {
+            return DTEDFrameCache.NO_DATA;
+        }
+
+        double y = (lat - swLat) * latPostsPerDegree;
+        double x = (lon - swLon) * lonPostsPerDegree;
+        int row = clamp((int) Math.floor(y), numLatPoints - 2);
+        int col = clamp((int) Math.floor(x), numLonLines - 2);
+        double fy = Math.min(Math.max(y - row, 0), 1);
+        double fx = Math.min(Math.max(x - col, 0), 1);
+
+        int index = col * numLatPoints + row;
+        short ll = posts[index];
+        short ul = posts[index + 1];
+        short lr = posts[index + numLatPoints];
+        short ur = posts[index + numLatPoints + 1];
+
+        if (ll == DTEDFrameCache.NO_DATA || ul == DTEDFrameCache.NO_DATA || lr == DTEDFrameCache.NO_DATA
+                || ur == DTEDFrameCache.NO_DATA) {
+            return getElevation(lat, lon);
+        }
+
+        double west = ll + (ul - ll) * fy;
+        double east = lr + (ur - lr) * fy;
+        return (float) (west + (east - west) * fx);
+    }
+
+    private static int clamp(int index, int max) {
+        if (index < 0) {
+            return 0;
+        }
+        return index > max ? max : index;
+    }
+
+    public String toString() {
+        return "DTEDCell[" + path + ", " + numLonLines + "x" + numLatPoints + "]";
+    }
+}
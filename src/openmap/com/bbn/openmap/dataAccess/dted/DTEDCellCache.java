@@ -0,0 +1,182 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.dataAccess.dted;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+
+/**
+ * The DTEDCellCache holds on to decoded DTEDCells, keyed by file path. The
+ * cache is limited by the number of bytes of posts it holds, and the least
+ * recently used cells are dropped first. There's one shared cache for the
+ * application, so layers and terrain tools that look at the same area don't
+ * each decode the same files.
+ * <p>
+ * Cells are loaded outside of the cache lock. If a cell is being loaded by one
+ * thread, other threads asking for it wait for that load instead of starting
+ * their own.
+ * 
+ * @author dietrick
+ */
+public class DTEDCellCache {
+
+    /** The default maximum size of the cache, 128MB. */
+    public final static long DEFAULT_MAX_BYTES = 128L * 1024L * 1024L;
+
+    protected static DTEDCellCache sharedCache;
+
+    protected final LinkedHashMap<String, DTEDCell> cells = new LinkedHashMap<String, DTEDCell>(16, .75f, true);
+    /** Paths of cells being loaded right now. */
+    protected final Set<String> loading = new HashSet<String>();
+    /** Paths of files that couldn't be read, so they aren't tried again. */
+    protected final Set<String> badPaths = new HashSet<String>();
+    protected long maxBytes;
+    protected long numBytes = 0;
+
+    /**
+     * Create a cache that isn't shared.
+     * 
+     * @param maxBytes the maximum number of bytes of posts to hold.
+     */
+    public DTEDCellCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Get the cache shared across the application, creating it if needed.
+     */
+    public synchronized static DTEDCellCache getSharedCache() {
+        if (sharedCache == null) {
+            sharedCache = new DTEDCellCache(DEFAULT_MAX_BYTES);
+        }
+        return sharedCache;
+    }
+
+    /**
+     * Get the cell for a DTED file, loading it if it isn't in the cache.
+     * 
+     * @param path the path to the DTED file.
+     * @return DTEDCell, or null if the file couldn't be read.
+     */
+    public DTEDCell get(String path) {
+        if (path == null) {
+            return null;
+        }
+
+        synchronized (this) {
+            while (true) {
+                DTEDCell cell = cells.get(path);
+                if (cell != null || badPaths.contains(path)) {
+                    return cell;
+                }
+                if (loading.add(path)) {
+                    break;
+                }
+                try {
+                    wait();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+        }
+
+        DTEDCell cell = null;
+        try {
+            cell = DTEDCell.load(path);
+        } finally {
+            synchronized (this) {
+                loading.remove(path);
+                if (cell != null) {
+                    put(cell);
+                } else {
+                    badPaths.add(path);
+                }
+                notifyAll();
+            }
+        }
+        return cell;
+    }
+
+    /**
+     * @return the cell for the path if it's in the cache, without loading it.
+     */
+    public synchronized DTEDCell getIfCached(String path) {
+        return cells.get(path);
+    }
+
+    /**
+     * Add a cell to the cache.
+     */
+    public synchronized void put(DTEDCell cell) {
+        DTEDCell old = cells.put(cell.getPath(), cell);
+        if (old != null) {
+            numBytes -= old.getByteSize();
+        }
+        numBytes += cell.getByteSize();
+        trim();
+    }
+
+    /**
+     * Drop the least recently used cells until the cache fits in its byte
+     * limit. The most recently used cell is always kept, even if it's bigger
+     * than the limit by itself.
+     */
+    protected void trim() {
+        Iterator<DTEDCell> it = cells.values().iterator();
+        while (numBytes > maxBytes && cells.size() > 1 && it.hasNext()) {
+            DTEDCell cell = it.next();
+            it.remove();
+            numBytes -= cell.getByteSize();
+        }
+    }
+
+    /**
+     * Set the maximum number of bytes of posts to hold.
+     */
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        trim();
+    }
+
+    public synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return the number of bytes of posts held.
+     */
+    public synchronized long getNumBytes() {
+        return numBytes;
+    }
+
+    /**
+     * @return the number of cells held.
+     */
+    public synchronized int size() {
+        return cells.size();
+    }
+
+    /**
+     * Empty the cache, and forget about files that couldn't be read.
+     */
+    public synchronized void clear() {
+        cells.clear();
+        badPaths.clear();
+        numBytes = 0;
+    }
+}
@@ -0,0 +1,230 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.dataAccess.dted;
+
+import java.util.Arrays;
+
+import com.bbn.openmap.omGraphics.OMGrid;
+import com.bbn.openmap.omGraphics.grid.OMGridData;
+import com.bbn.openmap.proj.Length;
+
+/**
+ * A DTEDElevationGrid is a regular lat/lon grid of elevation posts fetched
+ * ahead of time from a DTEDElevationService, so analysis code (viewsheds,
+ * shading) can walk over the elevations without going back to the DTED files
+ * for every sample. The posts are held row after row, starting with the
+ * southern row, west to east in each row.
+ * 
+ * @author dietrick
+ */
+public class DTEDElevationGrid {
+
+    protected final double swLat;
+    protected final double swLon;
+    /** Decimal degrees between rows. */
+    protected final double latSpacing;
+    /** Decimal degrees between columns. */
+    protected final double lonSpacing;
+    protected final int numRows;
+    protected final int numCols;
+    protected final short[] posts;
+
+    /**
+     * Create an empty grid, filled with DTEDFrameCache.NO_DATA. Use fetch to
+     * fill it.
+     * 
+     * @param swLat latitude of the south west post, in decimal degrees.
+     * @param swLon longitude of the south west post, in decimal degrees.
+     * @param latSpacing decimal degrees between rows.
+     * @param lonSpacing decimal degrees between columns.
+     * @param numRows number of rows.
+     * @param numCols number of columns.
+     */
+    public DTEDElevationGrid(double swLat, double swLon, double latSpacing, double lonSpacing, int numRows, int numCols) {
+        this.swLat = swLat;
+        this.swLon = swLon;
+        this.latSpacing = latSpacing;
+        this.lonSpacing = lonSpacing;
+        this.numRows = numRows;
+        this.numCols = numCols;
+        this.posts = new short[numRows * numCols];
+        Arrays.fill(posts, (short) DTEDFrameCache.NO_DATA);
+    }
+
+    /**
+     * Create an empty grid covering an area.
+     * 
+     * @param swLat southern latitude in decimal degrees.
+     * @param swLon western longitude in decimal degrees.
+     * @param neLat northern latitude in decimal degrees.
+     * @param neLon eastern longitude in decimal degrees.
+     * @param latSpacing decimal degrees between rows.
+     * @param lonSpacing decimal degrees between columns.
+     * @return DTEDElevationGrid with posts on the south west corner, reaching
+     *         at least to the north east corner.
+     */
+    public static DTEDElevationGrid create(double swLat, double swLon, double neLat, double neLon, double latSpacing,
+                                           double lonSpacing) {
+        int numRows = (int) Math.ceil((neLat - swLat) / latSpacing) + 1;
+        int numCols = (int) Math.ceil((neLon - swLon) / lonSpacing) + 1;
+        return new DTEDElevationGrid(swLat, swLon, latSpacing, lonSpacing, numRows, numCols);
+    }
+
+    /**
+     * Fill the grid with the elevations of the closest posts.
+     * 
+     * @param service provides the elevations.
+     * @param level the DTED level to use, or -1 for the highest resolution
+     *        available.
+     */
+    public void fetch(DTEDElevationService service, int level) {
+        fetchRows(service, 0, numRows, level);
+    }
+
+    /**
+     * Fill some of the rows of the grid. Different rows can be fetched by
+     * different threads at the same time.
+     * 
+     * @param service provides the elevations.
+     * @param startRow the first row to fetch.
+     * @param endRow one past the last row to fetch.
+     * @param level the DTED level to use, or -1 for the highest resolution
+     *        available.
+     */
+    public void fetchRows(DTEDElevationService service, int startRow, int endRow, int level) {
+        double[] lats = new double[numCols];
+        double[] lons = new double[numCols];
+        short[] row = new short[numCols];
+        for (int col = 0; col < numCols; col++) {
+            lons[col] = getLon(col);
+        }
+
+        for (int r = startRow; r < endRow; r++) {
+            Arrays.fill(lats, getLat(r));
+            service.getElevations(lats, lons, row, level);
+            System.arraycopy(row, 0, posts, r * numCols, numCols);
+        }
+    }
+
+    public double getSWLat() {
+        return swLat;
+    }
+
+    public double getSWLon() {
+        return swLon;
+    }
+
+    public double getNELat() {
+        return getLat(numRows - 1);
+    }
+
+    public double getNELon() {
+        return getLon(numCols - 1);
+    }
+
+    public double getLatSpacing() {
+        return latSpacing;
+    }
+
+    public double getLonSpacing() {
+        return lonSpacing;
+    }
+
+    public int getNumRows() {
+        return numRows;
+    }
+
+    public int getNumCols() {
+        return numCols;
+    }
+
+    /**
+     * The posts, row after row from the south, west to east in each row. This
+     * is the grid's array, not a copy.
+     */
+    public short[] getPosts() {
+        return posts;
+    }
+
+    /**
+     * @return the latitude of a row, in decimal degrees.
+     */
+    public double getLat(int row) {
+        return swLat + row * latSpacing;
+    }
+
+    /**
+     * @return the longitude of a column, in decimal degrees.
+     */
+    public double getLon(int col) {
+        return swLon + col * lonSpacing;
+    }
+
+    /**
+     * @return the row closest to a latitude, may be outside of the grid.
+     */
+    public int getRow(double lat) {
+        return (int) Math.round((lat - swLat) / latSpacing);
+    }
+
+    /**
+     * @return the column closest to a longitude, may be outside of the grid.
+     */
+    public int getCol(double lon) {
+        return (int) Math.round((lon - swLon) / lonSpacing);
+    }
+
+    /**
+     * @return the elevation at a post, in meters.
+     */
+    public short getElevation(int row, int col) {
+        return posts[row * numCols + col];
+    }
+
+    /**
+     * @return the elevation of the post closest to a lat/lon, in meters, or
+     *         DTEDFrameCache.NO_DATA if the location is off the grid.
+     */
+    public short getElevation(double lat, double lon) {
+        int row = getRow(lat);
+        int col = getCol(lon);
+        if (row < 0 || row >= numRows || col < 0 || col >= numCols) {
+            return DTEDFrameCache.NO_DATA;
+        }
+        return posts[row * numCols + col];
+    }
+
+    /**
+     * Create an OMGrid for the elevations, so they can be handed to the
+     * OMGridGenerators.
+     */
+    public OMGrid toOMGrid() {
+        short[][] data = new short[numCols][numRows];
+        for (int row = 0; row < numRows; row++) {
+            int index = row * numCols;
+            for (int col = 0; col < numCols; col++) {
+                data[col][row] = posts[index++];
+            }
+        }
+
+        OMGrid grid = new OMGrid(swLat, swLon, latSpacing, lonSpacing, new OMGridData.Short(data));
+        grid.setUnits(Length.METER);
+        return grid;
+    }
+
+    public String toString() {
+        return "DTEDElevationGrid[" + swLat + ", " + swLon + ", " + numRows + "x" + numCols + "]";
+    }
+}
@@ -0,0 +1,298 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.dataAccess.dted;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The DTEDElevationService answers elevation questions for lots of points at
+ * once. It finds DTED files with the DTEDDirectoryHandlers of a DTEDFrameCache,
+ * and reads the posts from DTEDCells held in the shared DTEDCellCache, so all
+ * the services in an application share the decoded data. The file found for a
+ * one degree square is remembered, so the file system is only searched the
+ * first time a square is asked about.
+ * <p>
+ * The batch methods remember the last cell used, so runs of points that fall
+ * in the same cell (profiles, grids, LOS rings) don't go back to the cache for
+ * every point. A DTEDFrameCache provides a service with
+ * getElevationService().
+ * 
+ * @author dietrick
+ */
+public class DTEDElevationService {
+
+    /** Marks a square the directory handlers don't have a file for. */
+    protected final static String NO_FILE = "";
+
+    protected final DTEDFrameCache frameCache;
+    protected DTEDCellCache cellCache;
+    /** File paths for level/lat/lon squares, NO_FILE if there isn't one. */
+    protected final Map<Long, String> locations = new HashMap<Long, String>();
+
+    /**
+     * Create a service that uses the shared DTEDCellCache.
+     * 
+     * @param frameCache provides the DTEDDirectoryHandlers and the highest
+     *        resolution DTED level to look for.
+     */
+    public DTEDElevationService(DTEDFrameCache frameCache) {
+        this(frameCache, DTEDCellCache.getSharedCache());
+    }
+
+    /**
+     * Create a service with a specific cell cache.
+     * 
+     * @param frameCache provides the DTEDDirectoryHandlers and the highest
+     *        resolution DTED level to look for.
+     * @param cellCache holds the decoded cells.
+     */
+    public DTEDElevationService(DTEDFrameCache frameCache, DTEDCellCache cellCache) {
+        this.frameCache = frameCache;
+        this.cellCache = cellCache;
+    }
+
+    public DTEDFrameCache getFrameCache() {
+        return frameCache;
+    }
+
+    public DTEDCellCache getCellCache() {
+        return cellCache;
+    }
+
+    public void setCellCache(DTEDCellCache cellCache) {
+        this.cellCache = cellCache;
+    }
+
+    /**
+     * Forget the files found for squares, so the directory handlers get asked
+     * again. Called when the directory handlers change.
+     */
+    public void clearLocations() {
+        synchronized (locations) {
+            locations.clear();
+        }
+    }
+
+    /**
+     * The elevation of the post closest to a lat/lon, from the highest
+     * resolution DTED available.
+     * 
+     * @param lat latitude in decimal degrees.
+     * @param lon longitude in decimal degrees.
+     * @return elevation in meters, or DTEDFrameCache.NO_DATA.
+     */
+    public int getElevation(double lat, double lon) {
+        return getElevation(lat, lon, -1);
+    }
+
+    /**
+     * The elevation of the post closest to a lat/lon.
+     * 
+     * @param lat latitude in decimal degrees.
+     * @param lon longitude in decimal degrees.
+     * @param level the DTED level to use, or -1 for the highest resolution
+     *        available.
+     * @return elevation in meters, or DTEDFrameCache.NO_DATA.
+     */
+    public int getElevation(double lat, double lon, int level) {
+        DTEDCell cell = findCell(lat, lon, level);
+        return cell != null ? cell.getElevation(lat, lon) : DTEDFrameCache.NO_DATA;
+    }
+
+    /**
+     * The elevation at a lat/lon interpolated between the surrounding posts,
+     * from the highest resolution DTED available.
+     * 
+     * @param lat latitude in decimal degrees.
+     * @param lon longitude in decimal degrees.
+     * @return elevation in meters, or DTEDFrameCache.NO_DATA.
+     */
+    public float getInterpolatedElevation(double lat, double lon) {
+        return getInterpolatedElevation(lat, lon, -1);
+    }
+
+    /**
+     * The elevation at a lat/lon interpolated between the surrounding posts.
+     * 
+     * @param lat latitude in decimal degrees.
+     * @param lon longitude in decimal degrees.
+     * @param level the DTED level to use, or -1 for the highest resolution
+     *        available.
+     * @return elevation in meters, or DTEDFrameCache.NO_DATA.
+     */
+    public float getInterpolatedElevation(double lat, double lon, int level) {
+        DTEDCell cell = findCell(lat, lon, level);
+        return cell != null ? cell.getInterpolatedElevation(lat, lon) : DTEDFrameCache.NO_DATA;
+    }
+
+    /**
+     * Get the elevations of the posts closest to a set of points, from the
+     * highest resolution DTED available.
+     * 
+     * @param lats latitudes in decimal degrees.
+     * @param lons longitudes in decimal degrees, the same length as lats.
+     * @param out filled with elevations in meters, or DTEDFrameCache.NO_DATA
+     *        for points without data. At least as long as lats.
+     */
+    public void getElevations(double[] lats, double[] lons, short[] out) {
+        getElevations(lats, lons, out, -1);
+    }
+
+    /**
+     * Get the elevations of the posts closest to a set of points.
+     * 
+     * @param lats latitudes in decimal degrees.
+     * @param lons longitudes in decimal degrees, the same length as lats.
+     * @param out filled with elevations in meters, or DTEDFrameCache.NO_DATA
+     *        for points without data. At least as long as lats.
+     * @param level the DTED level to use, or -1 for the highest resolution
+     *        available.
+     */
+    public void getElevations(double[] lats, double[] lons, short[] out, int level) {
+        CellFinder finder = new CellFinder(level);
+        for (int i = 0; i < lats.length; i++) {
+            DTEDCell cell = finder.find(lats[i], lons[i]);
+            out[i] = cell != null ? cell.getElevation(lats[i], lons[i]) : DTEDFrameCache.NO_DATA;
+        }
+    }
+
+    /**
+     * Get the elevations at a set of points, interpolated between the
+     * surrounding posts, from the highest resolution DTED available.
+     * 
+     * @param lats latitudes in decimal degrees.
+     * @param lons longitudes in decimal degrees, the same length as lats.
+     * @param out filled with elevations in meters, or DTEDFrameCache.NO_DATA
+     *        for points without data. At least as long as lats.
+     */
+    public void getInterpolatedElevations(double[] lats, double[] lons, float[] out) {
+        getInterpolatedElevations(lats, lons, out, -1);
+    }
+
+    /**
+     * Get the elevations at a set of points, interpolated between the
+     * surrounding posts.
+     * 
+     * @param lats latitudes in decimal degrees.
+     * @param lons longitudes in decimal degrees, the same length as lats.
+     * @param out filled with elevations in meters, or DTEDFrameCache.NO_DATA
+     *        for points without data. At least as long as lats.
+     * @param level the DTED level to use, or -1 for the highest resolution
+     *        available.
+     */
+    public void getInterpolatedElevations(double[] lats, double[] lons, float[] out, int level) {
+        CellFinder finder = new CellFinder(level);
+        for (int i = 0; i < lats.length; i++) {
+            DTEDCell cell = finder.find(lats[i], lons[i]);
+            out[i] = cell != null ? cell.getInterpolatedElevation(lats[i], lons[i]) : DTEDFrameCache.NO_DATA;
+        }
+    }
+
+    /**
+     * Find the cell covering a lat/lon.
+     * 
+     * @param level the DTED level to use, or -1 to start at the highest
+     *        resolution level of the frame cache and work down to level 0.
+     * @return DTEDCell, or null if there isn't one.
+     */
+    public DTEDCell findCell(double lat, double lon, int level) {
+        if (level >= 0) {
+            return findCell(lat, lon, level, (int) Math.floor(lat), (int) Math.floor(lon));
+        }
+
+        int latIndex = (int) Math.floor(lat);
+        int lonIndex = (int) Math.floor(lon);
+        for (int i = frameCache.getHighestResLevel(); i >= 0; i--) {
+            DTEDCell cell = findCell(lat, lon, i, latIndex, lonIndex);
+            if (cell != null) {
+                return cell;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Find the cell for a level in the one degree square with the given south
+     * west corner. Points on the edge of a square are also covered by the cell
+     * next door, which is tried if the square doesn't have a file.
+     */
+    protected DTEDCell findCell(double lat, double lon, int level, int latIndex, int lonIndex) {
+        DTEDCell cell = findCellInSquare(lat, lon, level, latIndex, lonIndex);
+        if (cell == null && lat == latIndex) {
+            cell = findCellInSquare(lat, lon, level, latIndex - 1, lonIndex);
+        }
+        if (cell == null && lon == lonIndex) {
+            cell = findCellInSquare(lat, lon, level, latIndex, lonIndex - 1);
+            if (cell == null && lat == latIndex) {
+                cell = findCellInSquare(lat, lon, level, latIndex - 1, lonIndex - 1);
+            }
+        }
+        return cell;
+    }
+
+    protected DTEDCell findCellInSquare(double lat, double lon, int level, int latIndex, int lonIndex) {
+        Long key = new Long(((long) level << 32) | ((latIndex + 90) << 16) | (lonIndex + 180));
+
+        String path;
+        // The name translators aren't thread safe, so the lookup is done
+        // under the lock. It only happens once per square.
+        synchronized (locations) {
+            path = locations.get(key);
+            if (path == null) {
+                // Ask about the middle of the square, so points on
+                // its edges get the same answer.
+                path = frameCache.findFileName(latIndex + .5, lonIndex + .5, level);
+                if (path == null) {
+                    path = NO_FILE;
+                }
+                locations.put(key, path);
+            }
+        }
+
+        if (path == NO_FILE) {
+            return null;
+        }
+
+        DTEDCell cell = cellCache.get(path);
+        return cell != null && cell.contains(lat, lon) ? cell : null;
+    }
+
+    /**
+     * Remembers the cell for the last one degree square asked about during a
+     * batch.
+     */
+    protected class CellFinder {
+        final int level;
+        int lastLatIndex = Integer.MIN_VALUE;
+        int lastLonIndex = Integer.MIN_VALUE;
+        DTEDCell lastCell;
+
+        CellFinder(int level) {
+            this.level = level;
+        }
+
+        DTEDCell find(double lat, double lon) {
+            int latIndex = (int) Math.floor(lat);
+            int lonIndex = (int) Math.floor(lon);
+            if (latIndex != lastLatIndex || lonIndex != lastLonIndex) {
+                lastCell = findCell(lat, lon, level);
+                lastLatIndex = latIndex;
+                lastLonIndex = lonIndex;
+            }
+            return lastCell;
+        }
+    }
+}
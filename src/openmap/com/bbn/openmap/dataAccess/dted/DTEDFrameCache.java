@@ -32,8 +32,8 @@ import com.bbn.openmap.io.BinaryFile;
 import com.bbn.openmap.proj.EqualArc;
 import com.bbn.openmap.util.Debug;
 import com.bbn.openmap.util.PropUtils;
-import com.bbn.openmap.util.cacheHandler.CacheHandler;
 import com.bbn.openmap.util.cacheHandler.CacheObject;
+import com.bbn.openmap.util.cacheHandler.ConcurrentCacheHandler;
 
 /**
  * The DTEDFrameCache is an object that retrieves DTED paths, frames or
@@ -51,6 +51,9 @@ import com.bbn.openmap.util.cacheHandler.CacheObject;
  * 
  * 
  *         frameCache.cacheSize=40
+ *         # Optional, limit on memory used by frames in MB, and LRU, LFU or TinyLFU
+ *         frameCache.cacheMemory=128
+ *         frameCache.cachePolicy=LRU
  *         frameCache.directoryHandlers=dteddir1 dteddir2
  *         frameCache.dteddir1.translator=com.bbn.openmap.dataAccess.dted.StandardDTEDNameTranslator
  *         frameCache.dteddir1.path=/data/dted
@@ -66,8 +69,13 @@ import com.bbn.openmap.util.cacheHandler.CacheObject;
  * that doesn't conform to the naming conventions specified in the Military
  * Standard, you can use a different DTEDNameTranslator instead for your
  * particular directory handler.
+ * <P>
+ * 
+ * Elevation lookups go through a DTEDElevationService, which reads decoded
+ * cells from the shared DTEDCellCache. Use getElevationService() to get
+ * elevations for many points at once, or interpolated elevations.
  */
-public class DTEDFrameCache extends CacheHandler implements PropertyConsumer {
+public class DTEDFrameCache extends ConcurrentCacheHandler implements PropertyConsumer {
     /**
      * The elevation value returned if there is no data at a lat/lon (-32767).
      */
@@ -84,6 +92,8 @@ public class DTEDFrameCache extends CacheHandler implements PropertyConsumer {
 
     protected int highestResLevel = 2;
 
+    protected DTEDElevationService elevationService;
+
     public DTEDFrameCache() {
         super();
     }
@@ -104,6 +114,7 @@ public class DTEDFrameCache extends CacheHandler implements PropertyConsumer {
      */
     public void addDTEDDirectoryHandler(DTEDDirectoryHandler handler) {
         directories.add(handler);
+        clearElevationLocations();
     }
 
     /**
@@ -111,6 +122,7 @@ public class DTEDFrameCache extends CacheHandler implements PropertyConsumer {
      */
     public void removeDTEDDirectoryHandler(DTEDDirectoryHandler handler) {
         directories.remove(handler);
+        clearElevationLocations();
     }
 
     /**
@@ -127,6 +139,27 @@ public class DTEDFrameCache extends CacheHandler implements PropertyConsumer {
      */
     public void setDTEDDirectoryHandlers(Vector handlers) {
         directories = handlers;
+        clearElevationLocations();
+    }
+
+    /**
+     * Get the service that answers elevation questions for this cache's
+     * directories, creating it if needed.
+     */
+    public synchronized DTEDElevationService getElevationService() {
+        if (elevationService == null) {
+            elevationService = new DTEDElevationService(this);
+        }
+        return elevationService;
+    }
+
+    /**
+     * Let the elevation service know the directories have changed.
+     */
+    protected synchronized void clearElevationLocations() {
+        if (elevationService != null) {
+            elevationService.clearLocations();
+        }
     }
 
     /**
@@ -228,58 +261,15 @@ public class DTEDFrameCache extends CacheHandler implements PropertyConsumer {
     }
 
     /**
-     * This version of resizeCache is for screen size changes, where the number
-     * of frames kept on hand in the cache must change, but the images
-     * themselves don't have to because the pixel/posting spacing hasn't changed
-     * in the projection. The frames already in the cache are re-added to the
-     * new cache, if the cache size is increasing. If the cache size is
-     * shrinking, then as many as will fit are added to the new cache.
-     * 
-     * @param max_size the new size of the cache.
+     * Estimates the memory used by a frame's elevation posts, 2 bytes per
+     * post.
      */
-    public void resizeCache(int max_size) {
-
-        CacheObject[] oldObjs = objs;
-
-        if (max_size != objs.length && max_size > 0) {
-            objs = new CacheObject[max_size];
-        }
-
-        for (int i = 0; i < objs.length; i++) {
-
-            if (i >= oldObjs.length) {
-                break;
-            }
-
-            DTEDCacheObject dco = (DTEDCacheObject) oldObjs[i];
-
-            if (dco == null) {
-                // We load from the front to the back 0 -> length - 1;
-                // Once you hit a null, the rest should be null, too.
-                objs[i] = null;
-                continue;
-            }
-
-            DTEDFrame frame = (DTEDFrame) (dco.obj);
-            dco.cachedTime = 0;
-
-            if (frame == null) {
-                Debug.output("DTEDFrameCache: No Frame for key!");
-                continue;
-            }
-
-            if (oldObjs == objs) {
-                continue;
-            }
-
-            if (i < oldObjs.length) {
-                objs[i] = oldObjs[i];
-            } else {
-                objs[i] = null;
-            }
+    protected long weigh(CacheObject co) {
+        DTEDFrame frame = (DTEDFrame) co.obj;
+        if (frame != null && frame.uhl != null) {
+            return 2L * frame.uhl.num_lon_lines * frame.uhl.num_lat_points;
         }
-
-        oldObjs = null;
+        return 0;
     }
 
     public int getHighestResLevel() {
@@ -288,6 +278,7 @@ public class DTEDFrameCache extends CacheHandler implements PropertyConsumer {
 
     public void setHighestResLevel(int highestResLevel) {
         this.highestResLevel = highestResLevel;
+        clearElevationLocations();
     }
 
     /**
@@ -302,19 +293,7 @@ public class DTEDFrameCache extends CacheHandler implements PropertyConsumer {
      * @param lon in decimal degrees.
      */
     public int getElevation(float lat, float lon) {
-        for (int i = /* dted level */highestResLevel; i >= /* dted level */0; i--) {
-            String dtedFileName = findFileName((double) lat, (double) lon, i);
-
-            if (dtedFileName != null) {
-                DTEDFrame frame = (DTEDFrame) get(dtedFileName);
-
-                if (frame != null) {
-                    return (int) frame.elevationAt(lat, lon);
-                }
-            }
-        }
-
-        return NO_DATA;
+        return getElevationService().getElevation(lat, lon);
     }
 
     /**
@@ -326,17 +305,7 @@ public class DTEDFrameCache extends CacheHandler implements PropertyConsumer {
      * @param level the dted level.
      */
     public int getElevation(float lat, float lon, int level) {
-        String dtedFileName = findFileName((double) lat, (double) lon, level);
-
-        if (dtedFileName != null) {
-            DTEDFrame frame = (DTEDFrame) get(dtedFileName);
-
-            if (frame != null) {
-                return (int) frame.elevationAt(lat, lon);
-            }
-        }
-
-        return NO_DATA;
+        return getElevationService().getElevation(lat, lon, level);
     }
 
     /**
@@ -619,6 +588,7 @@ public class DTEDFrameCache extends CacheHandler implements PropertyConsumer {
 
         resetCache(PropUtils.intFromProperties(props, prefix
                 + DTEDFrameCacheSizeProperty, DEFAULT_CACHE_SIZE));
+        setCacheProperties(prefix, props);
     }
 
     /**
@@ -632,6 +602,7 @@ public class DTEDFrameCache extends CacheHandler implements PropertyConsumer {
         String prefix = PropUtils.getScopedPropertyPrefix(this);
         props.put(prefix + DTEDFrameCacheSizeProperty,
                 Integer.toString(getCacheSize()));
+        getCacheProperties(prefix, props);
 
         // Directory handler properties...
         if (directories != null) {
@@ -665,6 +636,7 @@ public class DTEDFrameCache extends CacheHandler implements PropertyConsumer {
         }
 
         props.put(DTEDFrameCacheSizeProperty, "Size of the frame cache");
+        getCachePropertyInfo(props);
 
         // Not sure how to handle setting up a DTEDDirectoryHandler
         // yet.
@@ -0,0 +1,622 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.dataAccess.dted;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.bbn.openmap.omGraphics.OMGrid;
+import com.bbn.openmap.omGraphics.OMScalingRaster;
+import com.bbn.openmap.omGraphics.grid.OMGridData;
+import com.bbn.openmap.proj.Planet;
+
+/**
+ * The DTEDViewshed figures out which parts of the terrain can be seen from one
+ * or more observers. It works on a DTEDElevationGrid fetched ahead of time,
+ * and uses a radial sweep (the R2 algorithm): a ray is cast from the observer
+ * to every cell on the edge of the area of interest, and each cell the ray
+ * passes through is visible if it sticks up above the highest slope seen so
+ * far along the ray. The rays are split up among a pool of worker threads.
+ * <p>
+ * Heights are corrected for the curvature of the earth and atmospheric
+ * refraction, which matters over ranges of tens of kilometers. The drop of
+ * the terrain at a distance d is d*d*(1-k)/(2R), where k is the refraction
+ * coefficient.
+ * <p>
+ * Nothing here needs a map or a GUI, so it can be used from servers as well
+ * as from the TerrainLayer. The Result can be turned into an OMGrid or an
+ * OMScalingRaster.
+ * 
+ * @author dietrick
+ */
+public class DTEDViewshed {
+
+    public static Logger logger = Logger.getLogger("com.bbn.openmap.dataAccess.dted.DTEDViewshed");
+
+    /** The time idle worker threads stick around, in seconds. */
+    public final static long KEEP_ALIVE_TIME = 30L;
+    /** A commonly used coefficient of refraction for visible light. */
+    public final static double DEFAULT_REFRACTION = 0.13;
+    /** The number of jobs the rays for an observer are split into, per thread. */
+    protected final static int JOBS_PER_THREAD = 4;
+
+    protected final ThreadPoolExecutor executor;
+    protected boolean earthCurvature = true;
+    protected double refraction = DEFAULT_REFRACTION;
+    protected double earthRadius = Planet.wgs84_earthEquatorialRadiusMeters_D;
+
+    /**
+     * Create a DTEDViewshed.
+     * 
+     * @param numThreads the number of worker threads, if less than 1 the
+     *        number of available processors is used.
+     */
+    public DTEDViewshed(int numThreads) {
+        if (numThreads < 1) {
+            numThreads = Runtime.getRuntime().availableProcessors();
+        }
+
+        executor = new ThreadPoolExecutor(numThreads, numThreads, KEEP_ALIVE_TIME, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ViewshedThreadFactory());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @return the number of worker threads.
+     */
+    public int getNumThreads() {
+        return executor.getMaximumPoolSize();
+    }
+
+    public boolean isEarthCurvature() {
+        return earthCurvature;
+    }
+
+    /**
+     * Set whether the curvature of the earth (and refraction) should be taken
+     * into account. True by default.
+     */
+    public void setEarthCurvature(boolean earthCurvature) {
+        this.earthCurvature = earthCurvature;
+    }
+
+    public double getRefraction() {
+        return refraction;
+    }
+
+    /**
+     * Set the coefficient of refraction, 0 for none. Only used if earth
+     * curvature is on.
+     */
+    public void setRefraction(double refraction) {
+        this.refraction = refraction;
+    }
+
+    public double getEarthRadius() {
+        return earthRadius;
+    }
+
+    /**
+     * Set the radius of the earth used for the curvature correction, in
+     * meters.
+     */
+    public void setEarthRadius(double earthRadius) {
+        this.earthRadius = earthRadius;
+    }
+
+    /**
+     * Get the spacing between posts for a DTED level, in decimal degrees of
+     * latitude.
+     */
+    public static double getPostSpacing(int level) {
+        switch (level) {
+        case DTEDConstants.LEVEL_0:
+            return 30.0 / 3600.0;
+        case DTEDConstants.LEVEL_1:
+            return 3.0 / 3600.0;
+        default:
+            return 1.0 / 3600.0;
+        }
+    }
+
+    /**
+     * Fetch the elevations needed for a set of observers and compute the
+     * viewshed. The grid spacing matches the DTED level in latitude, and is
+     * stretched in longitude to keep the cells about square on the ground.
+     * 
+     * @param service provides the elevations.
+     * @param observers the observers.
+     * @param level the DTED level to use, or -1 for the highest resolution
+     *        available.
+     * @return Result, or null if the calling thread was interrupted.
+     */
+    public Result compute(DTEDElevationService service, List<Observer> observers, int level) {
+        double spacing = getPostSpacing(level < 0 ? service.getFrameCache().getHighestResLevel() : level);
+        DTEDElevationGrid grid = fetchGrid(service, observers, spacing, level);
+        return grid != null ? compute(grid, observers) : null;
+    }
+
+    /**
+     * Fetch a grid covering the areas of interest of a set of observers, with
+     * the rows split up among the worker threads.
+     * 
+     * @param service provides the elevations.
+     * @param observers the observers.
+     * @param latSpacing decimal degrees between rows. The spacing between
+     *        columns is stretched to keep the cells about square on the
+     *        ground.
+     * @param level the DTED level to use, or -1 for the highest resolution
+     *        available.
+     * @return DTEDElevationGrid, or null if the calling thread was
+     *         interrupted.
+     */
+    public DTEDElevationGrid fetchGrid(final DTEDElevationService service, List<Observer> observers, double latSpacing,
+                                       final int level) {
+        double south = Double.POSITIVE_INFINITY;
+        double north = Double.NEGATIVE_INFINITY;
+        double west = Double.POSITIVE_INFINITY;
+        double east = Double.NEGATIVE_INFINITY;
+        for (Observer obs : observers) {
+            double latRadius = obs.radius / getMetersPerDegree();
+            double lonRadius = latRadius / Math.max(Math.cos(Math.toRadians(obs.lat)), .01);
+            south = Math.min(south, obs.lat - latRadius);
+            north = Math.max(north, obs.lat + latRadius);
+            west = Math.min(west, obs.lon - lonRadius);
+            east = Math.max(east, obs.lon + lonRadius);
+        }
+
+        double midLat = Math.max(Math.abs(south), Math.abs(north));
+        double lonSpacing = latSpacing / Math.max(Math.cos(Math.toRadians(Math.min(midLat, 89))), .01);
+        // Keep the posts on the spacing, so grids for nearby areas line up.
+        south = Math.floor(south / latSpacing) * latSpacing;
+        west = Math.floor(west / lonSpacing) * lonSpacing;
+
+        final DTEDElevationGrid grid = DTEDElevationGrid.create(south, west, north, east, latSpacing, lonSpacing);
+        int numRows = grid.getNumRows();
+        int step = Math.max(1, numRows / (getNumThreads() * JOBS_PER_THREAD));
+        List<Callable<Object>> jobs = new ArrayList<Callable<Object>>();
+        for (int start = 0; start < numRows; start += step) {
+            final int startRow = start;
+            final int endRow = Math.min(start + step, numRows);
+            jobs.add(new Callable<Object>() {
+                public Object call() {
+                    grid.fetchRows(service, startRow, endRow, level);
+                    return null;
+                }
+            });
+        }
+
+        return run(jobs) ? grid : null;
+    }
+
+    /**
+     * Compute the viewshed of a set of observers over a grid.
+     * 
+     * @param grid the elevations.
+     * @param observers the observers.
+     * @return Result holding the number of observers that can see each grid
+     *         cell, or null if the calling thread was interrupted.
+     */
+    public Result compute(DTEDElevationGrid grid, List<Observer> observers) {
+        Result result = new Result(grid, observers.size());
+        for (Observer obs : observers) {
+            Sweep sweep = new Sweep(grid, obs);
+            if (sweep.isEmpty()) {
+                continue;
+            }
+
+            int numEdgeCells = sweep.getNumEdgeCells();
+            int step = Math.max(1, numEdgeCells / (getNumThreads() * JOBS_PER_THREAD));
+            List<Callable<Object>> jobs = new ArrayList<Callable<Object>>();
+            for (int start = 0; start < numEdgeCells; start += step) {
+                jobs.add(sweep.createJob(start, Math.min(start + step, numEdgeCells)));
+            }
+
+            if (!run(jobs)) {
+                return null;
+            }
+            sweep.addTo(result);
+        }
+        return result;
+    }
+
+    /**
+     * Run jobs on the worker threads and wait for them to finish.
+     * 
+     * @return false if the calling thread was interrupted while waiting, in
+     *         which case the jobs that haven't started are cancelled.
+     */
+    protected boolean run(List<? extends Callable<?>> jobs) {
+        List<Future<?>> results = new ArrayList<Future<?>>(jobs.size());
+        for (Callable<?> job : jobs) {
+            results.add(executor.submit(job));
+        }
+
+        int done = 0;
+        try {
+            for (Future<?> result : results) {
+                try {
+                    result.get();
+                } catch (ExecutionException ee) {
+                    logger.log(Level.WARNING, "problem computing viewshed", ee.getCause());
+                }
+                done++;
+            }
+            return true;
+        } catch (InterruptedException ie) {
+            for (Future<?> result : results.subList(done, results.size())) {
+                result.cancel(false);
+            }
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Stop the worker threads. The DTEDViewshed can't be used after this.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    protected double getMetersPerDegree() {
+        return earthRadius * Math.PI / 180.0;
+    }
+
+    /**
+     * An observer, with the area it's looking over.
+     */
+    public static class Observer {
+        /** Latitude in decimal degrees. */
+        public double lat;
+        /** Longitude in decimal degrees. */
+        public double lon;
+        /** Height of the observer above the ground, in meters. */
+        public double height;
+        /** Height above the ground of the things being looked for, in meters. */
+        public double targetHeight;
+        /** How far the observer can see, in meters. */
+        public double radius;
+
+        /**
+         * @param lat latitude in decimal degrees.
+         * @param lon longitude in decimal degrees.
+         * @param height height of the observer above the ground, in meters.
+         * @param radius how far the observer can see, in meters.
+         */
+        public Observer(double lat, double lon, double height, double radius) {
+            this(lat, lon, height, 0, radius);
+        }
+
+        /**
+         * @param lat latitude in decimal degrees.
+         * @param lon longitude in decimal degrees.
+         * @param height height of the observer above the ground, in meters.
+         * @param targetHeight height above the ground of the things being
+         *        looked for, in meters.
+         * @param radius how far the observer can see, in meters.
+         */
+        public Observer(double lat, double lon, double height, double targetHeight, double radius) {
+            this.lat = lat;
+            this.lon = lon;
+            this.height = height;
+            this.targetHeight = targetHeight;
+            this.radius = radius;
+        }
+
+        public String toString() {
+            return "Observer[" + lat + ", " + lon + ", height " + height + "m, radius " + radius + "m]";
+        }
+    }
+
+    /**
+     * The rays for one observer. The cells the observer can see are marked in
+     * a mask covering the observer's area of interest. The rays cross near
+     * the observer, but they only ever set cells in the mask, so they don't
+     * need to be coordinated.
+     */
+    protected class Sweep {
+        final DTEDElevationGrid grid;
+        final Observer obs;
+        final int obsRow;
+        final int obsCol;
+        final double obsHeight;
+        final double rowMeters;
+        final double colMeters;
+        final double radius2;
+        final double dropFactor;
+        // area of interest, inclusive
+        final int minRow;
+        final int maxRow;
+        final int minCol;
+        final int maxCol;
+        final int width;
+        final byte[] mask;
+
+        Sweep(DTEDElevationGrid grid, Observer obs) {
+            this.grid = grid;
+            this.obs = obs;
+            obsRow = grid.getRow(obs.lat);
+            obsCol = grid.getCol(obs.lon);
+
+            double metersPerDegree = getMetersPerDegree();
+            rowMeters = grid.getLatSpacing() * metersPerDegree;
+            colMeters = grid.getLonSpacing() * metersPerDegree * Math.cos(Math.toRadians(obs.lat));
+            radius2 = obs.radius * obs.radius;
+            dropFactor = earthCurvature ? (1 - refraction) / (2 * earthRadius) : 0;
+
+            int rowReach = (int) Math.ceil(obs.radius / rowMeters);
+            int colReach = (int) Math.ceil(obs.radius / colMeters);
+            minRow = Math.max(0, obsRow - rowReach);
+            maxRow = Math.min(grid.getNumRows() - 1, obsRow + rowReach);
+            minCol = Math.max(0, obsCol - colReach);
+            maxCol = Math.min(grid.getNumCols() - 1, obsCol + colReach);
+
+            if (isEmpty()) {
+                obsHeight = 0;
+                width = 0;
+                mask = null;
+                return;
+            }
+
+            short ground = grid.getElevation(obsRow, obsCol);
+            obsHeight = (ground == DTEDFrameCache.NO_DATA ? 0 : ground) + obs.height;
+            width = maxCol - minCol + 1;
+            mask = new byte[width * (maxRow - minRow + 1)];
+            mask[(obsRow - minRow) * width + obsCol - minCol] = 1;
+        }
+
+        /**
+         * @return true if the observer isn't on the grid.
+         */
+        boolean isEmpty() {
+            return obsRow < 0 || obsRow >= grid.getNumRows() || obsCol < 0 || obsCol >= grid.getNumCols();
+        }
+
+        /**
+         * @return the number of cells around the edge of the area of interest,
+         *         one ray per cell.
+         */
+        int getNumEdgeCells() {
+            int w = maxCol - minCol;
+            int h = maxRow - minRow;
+            return (w == 0 || h == 0) ? (w + 1) * (h + 1) : 2 * (w + h);
+        }
+
+        /**
+         * Get the row and column of an edge cell, going clockwise from the
+         * south west corner.
+         */
+        void getEdgeCell(int index, int[] rowCol) {
+            int w = maxCol - minCol;
+            int h = maxRow - minRow;
+            if (w == 0 || h == 0) {
+                rowCol[0] = minRow + (w == 0 ? index : 0);
+                rowCol[1] = minCol + (w == 0 ? 0 : index);
+            } else if (index < h) {
+                rowCol[0] = minRow + index;
+                rowCol[1] = minCol;
+            } else if ((index -= h) < w) {
+                rowCol[0] = maxRow;
+                rowCol[1] = minCol + index;
+            } else if ((index -= w) < h) {
+                rowCol[0] = maxRow - index;
+                rowCol[1] = maxCol;
+            } else {
+                rowCol[0] = minRow;
+                rowCol[1] = maxCol - (index - h);
+            }
+        }
+
+        Callable<Object> createJob(final int start, final int end) {
+            return new Callable<Object>() {
+                public Object call() {
+                    int[] rowCol = new int[2];
+                    for (int i = start; i < end && !Thread.currentThread().isInterrupted(); i++) {
+                        getEdgeCell(i, rowCol);
+                        castRay(rowCol[0], rowCol[1]);
+                    }
+                    return null;
+                }
+            };
+        }
+
+        /**
+         * Walk from the observer to a cell on the edge of the area of
+         * interest, marking the cells that can be seen.
+         */
+        void castRay(int endRow, int endCol) {
+            int dRow = endRow - obsRow;
+            int dCol = endCol - obsCol;
+            int steps = Math.max(Math.abs(dRow), Math.abs(dCol));
+            short[] posts = grid.getPosts();
+            int numCols = grid.getNumCols();
+            double targetHeight = obs.targetHeight;
+            double maxSlope = Double.NEGATIVE_INFINITY;
+
+            for (int i = 1; i <= steps; i++) {
+                int row = obsRow + (int) Math.round((double) dRow * i / steps);
+                int col = obsCol + (int) Math.round((double) dCol * i / steps);
+
+                double dy = (row - obsRow) * rowMeters;
+                double dx = (col - obsCol) * colMeters;
+                double dist2 = dx * dx + dy * dy;
+                if (dist2 > radius2) {
+                    break;
+                }
+
+                short elevation = posts[row * numCols + col];
+                if (elevation == DTEDFrameCache.NO_DATA) {
+                    continue;
+                }
+
+                double dist = Math.sqrt(dist2);
+                double surface = elevation - dist2 * dropFactor - obsHeight;
+                if ((surface + targetHeight) / dist >= maxSlope) {
+                    mask[(row - minRow) * width + col - minCol] = 1;
+                }
+
+                double slope = surface / dist;
+                if (slope > maxSlope) {
+                    maxSlope = slope;
+                }
+            }
+        }
+
+        /**
+         * Add the cells this observer can see to the counts in a result.
+         */
+        void addTo(Result result) {
+            byte[] counts = result.counts;
+            int numCols = grid.getNumCols();
+            for (int row = minRow; row <= maxRow; row++) {
+                int m = (row - minRow) * width;
+                int c = row * numCols + minCol;
+                for (int col = minCol; col <= maxCol; col++, m++, c++) {
+                    if (mask[m] != 0 && counts[c] != (byte) 0xff) {
+                        counts[c]++;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The result of a viewshed computation, the number of observers that can
+     * see each cell of the grid (up to 255).
+     */
+    public static class Result {
+        protected final DTEDElevationGrid grid;
+        protected final int numObservers;
+        /** Counts, laid out like the posts in the grid, unsigned. */
+        protected final byte[] counts;
+
+        protected Result(DTEDElevationGrid grid, int numObservers) {
+            this.grid = grid;
+            this.numObservers = numObservers;
+            this.counts = new byte[grid.getNumRows() * grid.getNumCols()];
+        }
+
+        public DTEDElevationGrid getGrid() {
+            return grid;
+        }
+
+        public int getNumObservers() {
+            return numObservers;
+        }
+
+        /**
+         * The number of observers that can see each cell, laid out like the
+         * posts in the grid. Read them with (counts[i] &amp; 0xff).
+         */
+        public byte[] getCounts() {
+            return counts;
+        }
+
+        /**
+         * @return the number of observers that can see a grid cell.
+         */
+        public int getCount(int row, int col) {
+            return counts[row * grid.getNumCols() + col] & 0xff;
+        }
+
+        /**
+         * @return the number of observers that can see the cell closest to a
+         *         lat/lon, 0 if the location is off the grid.
+         */
+        public int getCount(double lat, double lon) {
+            int row = grid.getRow(lat);
+            int col = grid.getCol(lon);
+            if (row < 0 || row >= grid.getNumRows() || col < 0 || col >= grid.getNumCols()) {
+                return 0;
+            }
+            return counts[row * grid.getNumCols() + col] & 0xff;
+        }
+
+        /**
+         * @return true if any observer can see the cell closest to a lat/lon.
+         */
+        public boolean isVisible(double lat, double lon) {
+            return getCount(lat, lon) > 0;
+        }
+
+        /**
+         * Create an OMGrid of the counts, column major.
+         */
+        public OMGrid toOMGrid() {
+            int numRows = grid.getNumRows();
+            int numCols = grid.getNumCols();
+            byte[][] data = new byte[numCols][numRows];
+            for (int row = 0; row < numRows; row++) {
+                int index = row * numCols;
+                for (int col = 0; col < numCols; col++) {
+                    data[col][row] = counts[index++];
+                }
+            }
+            return new OMGrid(grid.getSWLat(), grid.getSWLon(), grid.getLatSpacing(), grid.getLonSpacing(), new OMGridData.Byte(data));
+        }
+
+        /**
+         * Create a raster covering the grid, one pixel per cell.
+         * 
+         * @param visibleColor ARGB color for cells that can be seen.
+         * @param hiddenColor ARGB color for cells that can't be seen.
+         * @return OMScalingRaster
+         */
+        public OMScalingRaster toOMRaster(int visibleColor, int hiddenColor) {
+            int numRows = grid.getNumRows();
+            int numCols = grid.getNumCols();
+            int[] pixels = new int[numRows * numCols];
+            int p = 0;
+            for (int row = numRows - 1; row >= 0; row--) {
+                int index = row * numCols;
+                for (int col = 0; col < numCols; col++) {
+                    pixels[p++] = counts[index++] != 0 ? visibleColor : hiddenColor;
+                }
+            }
+
+            // The posts are at the middle of the pixels.
+            double halfLat = grid.getLatSpacing() / 2;
+            double halfLon = grid.getLonSpacing() / 2;
+            return new OMScalingRaster(grid.getNELat() + halfLat, grid.getSWLon() - halfLon, grid.getSWLat() - halfLat, grid.getNELon()
+                    + halfLon, numCols, numRows, pixels);
+        }
+    }
+
+    /**
+     * Makes daemon threads, so idle workers don't hold up the application
+     * exiting.
+     */
+    protected static class ViewshedThreadFactory implements ThreadFactory {
+        private static final AtomicInteger poolCount = new AtomicInteger(1);
+        private final AtomicInteger threadCount = new AtomicInteger(1);
+        private final String namePrefix = "DTEDViewshed-" + poolCount.getAndIncrement() + "-";
+
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, namePrefix + threadCount.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
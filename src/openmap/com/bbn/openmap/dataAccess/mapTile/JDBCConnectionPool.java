@@ -0,0 +1,152 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+
+package com.bbn.openmap.dataAccess.mapTile;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * A small pool of JDBC connections to one database. Opening a connection to a
+ * database file costs a lot more than asking it for a tile, so connections are
+ * handed back to the pool when a query is done and reused for the next one.
+ * There is one pool for each database URL, shared by everything in the VM that
+ * reads or writes that database.
+ * 
+ * @author dietrick
+ */
+public class JDBCConnectionPool {
+
+    public static Logger logger = Logger.getLogger("com.bbn.openmap.dataAccess.mapTile.JDBCConnectionPool");
+
+    /**
+     * The most idle connections kept open by default.
+     */
+    public final static int DEFAULT_MAX_IDLE = 4;
+
+    protected static Map<String, JDBCConnectionPool> pools = new HashMap<String, JDBCConnectionPool>();
+
+    protected String url;
+    protected int maxIdle = DEFAULT_MAX_IDLE;
+    protected LinkedList<Connection> idle = new LinkedList<Connection>();
+
+    /**
+     * Get the shared pool for a database URL, creating it if needed.
+     * 
+     * @param url JDBC URL of the database.
+     * @return JDBCConnectionPool for the URL.
+     */
+    public static synchronized JDBCConnectionPool getPool(String url) {
+        JDBCConnectionPool pool = pools.get(url);
+        if (pool == null) {
+            pool = new JDBCConnectionPool(url);
+            pools.put(url, pool);
+        }
+        return pool;
+    }
+
+    protected JDBCConnectionPool(String url) {
+        this.url = url;
+    }
+
+    /**
+     * Get a connection from the pool, or open a new one if none are idle.
+     * Hand it back with release() when done.
+     * 
+     * @return Connection to the database.
+     * @throws SQLException
+     */
+    public Connection getConnection() throws SQLException {
+        synchronized (this) {
+            while (!idle.isEmpty()) {
+                Connection conn = idle.removeFirst();
+                if (!conn.isClosed()) {
+                    return conn;
+                }
+            }
+        }
+        return DriverManager.getConnection(url);
+    }
+
+    /**
+     * Hand a connection back to the pool. Any transaction left open on it is
+     * rolled back. The connection is closed if there are already enough idle
+     * connections.
+     * 
+     * @param conn the connection from getConnection(), may be null.
+     */
+    public void release(Connection conn) {
+        if (conn == null) {
+            return;
+        }
+
+        try {
+            if (conn.isClosed()) {
+                return;
+            }
+
+            if (!conn.getAutoCommit()) {
+                conn.rollback();
+                conn.setAutoCommit(true);
+            }
+
+            synchronized (this) {
+                if (idle.size() < maxIdle) {
+                    idle.addLast(conn);
+                    return;
+                }
+            }
+
+            conn.close();
+        } catch (SQLException sqle) {
+            logger.fine("problem releasing connection to " + url + ": " + sqle.getMessage());
+            try {
+                conn.close();
+            } catch (SQLException e) {
+            }
+        }
+    }
+
+    /**
+     * Close all of the idle connections.
+     */
+    public synchronized void close() {
+        for (Connection conn : idle) {
+            try {
+                conn.close();
+            } catch (SQLException sqle) {
+                logger.fine("problem closing connection to " + url + ": " + sqle.getMessage());
+            }
+        }
+        idle.clear();
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public synchronized int getMaxIdle() {
+        return maxIdle;
+    }
+
+    public synchronized void setMaxIdle(int maxIdle) {
+        this.maxIdle = maxIdle;
+    }
+}
@@ -0,0 +1,427 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+
+package com.bbn.openmap.dataAccess.mapTile;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A MapTileStore that keeps tiles in an MBTiles file, the sqlite database
+ * format used by TileMill and others. The sqlitejdbc driver (ext/sqlitejdbc)
+ * needs to be on the classpath.
+ * <p>
+ * 
+ * New MBTiles files are created with the deduplicating layout: the image bytes
+ * go in an images table keyed by their MD5 hash, and the map table points each
+ * tile at its image, so the identical tiles that cover oceans and empty land
+ * are only stored once. A tiles view makes the file look like any other
+ * MBTiles file to readers. Files that already have a plain tiles table are
+ * written to as they are.
+ * <p>
+ * 
+ * Tiles put in the store are held until there are batchSize of them, or
+ * flush() is called, and are then written in a single transaction.
+ * Connections come from the JDBCConnectionPool for the file, so stores for
+ * the same file share them.
+ * 
+ * @author dietrick
+ */
+public class MBTilesTileStore implements MapTileStore {
+
+    public static Logger logger = Logger.getLogger("com.bbn.openmap.dataAccess.mapTile.MBTilesTileStore");
+
+    public final static String JDBC_PREFIX = "jdbc:sqlite:";
+    public final static String DRIVER_CLASS = "org.sqlite.JDBC";
+    public final static String FILE_EXTENSION = ".mbtiles";
+    public final static int DEFAULT_BATCH_SIZE = 256;
+
+    protected String url;
+    protected JDBCConnectionPool pool;
+    protected int batchSize = DEFAULT_BATCH_SIZE;
+    /**
+     * Tiles waiting to be written, by tile key.
+     */
+    protected Map<String, PendingTile> pending = new LinkedHashMap<String, PendingTile>();
+    /**
+     * Set when the schema has been checked, true if tiles are written to
+     * separate map and images tables.
+     */
+    protected Boolean deduplicating;
+
+    /**
+     * Create a store for an MBTiles file.
+     * 
+     * @param path the path to the file, or a jdbc:sqlite: URL.
+     * @throws IOException if the sqlite JDBC driver isn't available.
+     */
+    public MBTilesTileStore(String path) throws IOException {
+        this(path, DRIVER_CLASS);
+    }
+
+    /**
+     * Create a store for an MBTiles database.
+     * 
+     * @param path the path to the file, or a JDBC URL.
+     * @param driverClass the JDBC driver class to load.
+     * @throws IOException if the JDBC driver isn't available.
+     */
+    public MBTilesTileStore(String path, String driverClass) throws IOException {
+        try {
+            Class.forName(driverClass);
+        } catch (ClassNotFoundException cnfe) {
+            throw new IOException("can't locate JDBC driver " + driverClass);
+        }
+
+        url = toURL(path);
+        pool = JDBCConnectionPool.getPool(url);
+    }
+
+    /**
+     * @param path file path or JDBC URL.
+     * @return JDBC URL, jdbc:sqlite: is added to file paths.
+     */
+    public static String toURL(String path) {
+        if (path.startsWith("jdbc:")) {
+            return path;
+        }
+        return JDBC_PREFIX + path;
+    }
+
+    /**
+     * @param path the path to check.
+     * @return true if the path looks like it's for an MBTiles file.
+     */
+    public static boolean isMBTilesPath(String path) {
+        return path != null && (path.startsWith(JDBC_PREFIX) || path.endsWith(FILE_EXTENSION));
+    }
+
+    /**
+     * MBTiles files count tile rows up from the bottom of the map.
+     */
+    protected static int flipY(int y, int zoomLevel) {
+        return (1 << zoomLevel) - 1 - y;
+    }
+
+    protected static String getKey(int x, int y, int zoomLevel) {
+        return zoomLevel + "/" + x + "/" + y;
+    }
+
+    public byte[] getTile(int x, int y, int zoomLevel) throws IOException {
+        synchronized (this) {
+            PendingTile pt = pending.get(getKey(x, y, zoomLevel));
+            if (pt != null) {
+                return pt.imageBytes;
+            }
+        }
+
+        Connection conn = null;
+        try {
+            conn = pool.getConnection();
+            PreparedStatement ps = conn.prepareStatement("select tile_data from tiles where zoom_level = ? and tile_column = ? and tile_row = ?");
+            try {
+                ps.setInt(1, zoomLevel);
+                ps.setInt(2, x);
+                ps.setInt(3, flipY(y, zoomLevel));
+                ResultSet rs = ps.executeQuery();
+                byte[] imageBytes = null;
+                if (rs.next()) {
+                    imageBytes = rs.getBytes(1);
+                }
+                rs.close();
+                return imageBytes;
+            } finally {
+                ps.close();
+            }
+        } catch (SQLException sqle) {
+            throw createIOException("problem reading tile " + getKey(x, y, zoomLevel), sqle);
+        } finally {
+            pool.release(conn);
+        }
+    }
+
+    public Map<Point, byte[]> getTiles(int zoomLevel, Rectangle tileBounds) throws IOException {
+        Map<Point, byte[]> tiles = new HashMap<Point, byte[]>();
+        if (tileBounds.isEmpty()) {
+            return tiles;
+        }
+
+        int minx = tileBounds.x;
+        int maxx = tileBounds.x + tileBounds.width - 1;
+        // Flipping y swaps the top and bottom rows.
+        int minRow = flipY(tileBounds.y + tileBounds.height - 1, zoomLevel);
+        int maxRow = flipY(tileBounds.y, zoomLevel);
+
+        Connection conn = null;
+        try {
+            conn = pool.getConnection();
+            PreparedStatement ps = conn.prepareStatement("select tile_column, tile_row, tile_data from tiles where zoom_level = ? and tile_column between ? and ? and tile_row between ? and ?");
+            try {
+                ps.setInt(1, zoomLevel);
+                ps.setInt(2, minx);
+                ps.setInt(3, maxx);
+                ps.setInt(4, minRow);
+                ps.setInt(5, maxRow);
+                ResultSet rs = ps.executeQuery();
+                while (rs.next()) {
+                    int x = rs.getInt(1);
+                    int y = flipY(rs.getInt(2), zoomLevel);
+                    tiles.put(new Point(x, y), rs.getBytes(3));
+                }
+                rs.close();
+            } finally {
+                ps.close();
+            }
+        } catch (SQLException sqle) {
+            throw createIOException("problem reading tiles for zoom level " + zoomLevel, sqle);
+        } finally {
+            pool.release(conn);
+        }
+
+        // Tiles not written to the file yet.
+        synchronized (this) {
+            for (PendingTile pt : pending.values()) {
+                if (pt.zoomLevel == zoomLevel && tileBounds.contains(pt.x, pt.y)) {
+                    tiles.put(new Point(pt.x, pt.y), pt.imageBytes);
+                }
+            }
+        }
+
+        return tiles;
+    }
+
+    public void putTile(int x, int y, int zoomLevel, byte[] imageBytes) throws IOException {
+        boolean full;
+        synchronized (this) {
+            pending.put(getKey(x, y, zoomLevel), new PendingTile(x, y, zoomLevel, imageBytes));
+            full = pending.size() >= batchSize;
+        }
+
+        if (full) {
+            flush();
+        }
+    }
+
+    /**
+     * Write the pending tiles in one transaction.
+     */
+    public synchronized void flush() throws IOException {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        Connection conn = null;
+        try {
+            conn = pool.getConnection();
+            checkSchema(conn);
+            conn.setAutoCommit(false);
+
+            if (deduplicating.booleanValue()) {
+                writeDeduplicated(conn);
+            } else {
+                writeTiles(conn);
+            }
+
+            conn.commit();
+            conn.setAutoCommit(true);
+
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("wrote " + pending.size() + " tiles to " + url);
+            }
+            pending.clear();
+        } catch (SQLException sqle) {
+            throw createIOException("problem writing tiles to " + url, sqle);
+        } finally {
+            pool.release(conn);
+        }
+    }
+
+    protected void writeDeduplicated(Connection conn) throws SQLException, IOException {
+        PreparedStatement imagePS = conn.prepareStatement("insert or ignore into images (tile_data, tile_id) values (?, ?)");
+        PreparedStatement mapPS = conn.prepareStatement("insert or replace into map (zoom_level, tile_column, tile_row, tile_id) values (?, ?, ?, ?)");
+        try {
+            MessageDigest digest = getDigest();
+            for (PendingTile pt : pending.values()) {
+                String tileId = toHex(digest.digest(pt.imageBytes));
+
+                imagePS.setBytes(1, pt.imageBytes);
+                imagePS.setString(2, tileId);
+                imagePS.addBatch();
+
+                mapPS.setInt(1, pt.zoomLevel);
+                mapPS.setInt(2, pt.x);
+                mapPS.setInt(3, flipY(pt.y, pt.zoomLevel));
+                mapPS.setString(4, tileId);
+                mapPS.addBatch();
+            }
+            imagePS.executeBatch();
+            mapPS.executeBatch();
+        } finally {
+            imagePS.close();
+            mapPS.close();
+        }
+    }
+
+    protected void writeTiles(Connection conn) throws SQLException {
+        PreparedStatement ps = conn.prepareStatement("insert or replace into tiles (zoom_level, tile_column, tile_row, tile_data) values (?, ?, ?, ?)");
+        try {
+            for (PendingTile pt : pending.values()) {
+                ps.setInt(1, pt.zoomLevel);
+                ps.setInt(2, pt.x);
+                ps.setInt(3, flipY(pt.y, pt.zoomLevel));
+                ps.setBytes(4, pt.imageBytes);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        } finally {
+            ps.close();
+        }
+    }
+
+    /**
+     * Create the MBTiles tables if they aren't there, and figure out whether
+     * the file has a plain tiles table or the map/images tables.
+     */
+    protected void checkSchema(Connection conn) throws SQLException {
+        if (deduplicating != null) {
+            return;
+        }
+
+        Statement stat = conn.createStatement();
+        try {
+            ResultSet rs = stat.executeQuery("select type from sqlite_master where name = 'tiles'");
+            String tilesType = rs.next() ? rs.getString(1) : null;
+            rs.close();
+
+            stat.executeUpdate("create table if not exists metadata (name text, value text)");
+            stat.executeUpdate("create unique index if not exists name on metadata (name)");
+
+            if ("table".equalsIgnoreCase(tilesType)) {
+                stat.executeUpdate("create unique index if not exists tile_index on tiles (zoom_level, tile_column, tile_row)");
+                deduplicating = Boolean.FALSE;
+                return;
+            }
+
+            stat.executeUpdate("create table if not exists map (zoom_level integer, tile_column integer, tile_row integer, tile_id text)");
+            stat.executeUpdate("create unique index if not exists map_index on map (zoom_level, tile_column, tile_row)");
+            stat.executeUpdate("create table if not exists images (tile_data blob, tile_id text)");
+            stat.executeUpdate("create unique index if not exists images_id on images (tile_id)");
+            stat.executeUpdate("create view if not exists tiles as select map.zoom_level as zoom_level, map.tile_column as tile_column, map.tile_row as tile_row, images.tile_data as tile_data from map join images on images.tile_id = map.tile_id");
+            deduplicating = Boolean.TRUE;
+        } finally {
+            stat.close();
+        }
+    }
+
+    /**
+     * Set a value in the metadata table, like name, format, bounds or
+     * description.
+     * 
+     * @param name metadata name.
+     * @param value metadata value.
+     * @throws IOException
+     */
+    public synchronized void setMetadata(String name, String value) throws IOException {
+        Connection conn = null;
+        try {
+            conn = pool.getConnection();
+            checkSchema(conn);
+            PreparedStatement ps = conn.prepareStatement("insert or replace into metadata (name, value) values (?, ?)");
+            try {
+                ps.setString(1, name);
+                ps.setString(2, value);
+                ps.executeUpdate();
+            } finally {
+                ps.close();
+            }
+        } catch (SQLException sqle) {
+            throw createIOException("problem writing metadata to " + url, sqle);
+        } finally {
+            pool.release(conn);
+        }
+    }
+
+    public void close() throws IOException {
+        flush();
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public synchronized int getBatchSize() {
+        return batchSize;
+    }
+
+    public synchronized void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    protected MessageDigest getDigest() throws IOException {
+        try {
+            return MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException nsae) {
+            throw createIOException("MD5 not available", nsae);
+        }
+    }
+
+    protected static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (int i = 0; i < bytes.length; i++) {
+            int b = bytes[i] & 0xff;
+            if (b < 0x10) {
+                sb.append('0');
+            }
+            sb.append(Integer.toHexString(b));
+        }
+        return sb.toString();
+    }
+
+    protected static IOException createIOException(String message, Exception cause) {
+        IOException ioe = new IOException(message + ": " + cause.getMessage());
+        ioe.initCause(cause);
+        return ioe;
+    }
+
+    /**
+     * A tile waiting to be written.
+     */
+    protected static class PendingTile {
+        protected int x;
+        protected int y;
+        protected int zoomLevel;
+        protected byte[] imageBytes;
+
+        protected PendingTile(int x, int y, int zoomLevel, byte[] imageBytes) {
+            this.x = x;
+            this.y = y;
+            this.zoomLevel = zoomLevel;
+            this.imageBytes = imageBytes;
+        }
+    }
+}
@@ -28,9 +28,10 @@ import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.GraphicsEnvironment;
 import java.awt.Paint;
+import java.awt.RenderingHints;
 import java.awt.geom.Point2D;
-import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -38,7 +39,6 @@ import java.io.InputStream;
 import java.io.PrintStream;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -47,15 +47,15 @@ import java.util.Properties;
 import java.util.TreeMap;
 import java.util.logging.Level;
 
+import javax.imageio.ImageIO;
+
 import com.bbn.openmap.Environment;
 import com.bbn.openmap.Layer;
 import com.bbn.openmap.image.ImageFormatter;
 import com.bbn.openmap.image.ImageServer;
 import com.bbn.openmap.image.PNG32ImageFormatter;
 import com.bbn.openmap.image.SunJPEGFormatter;
-import com.bbn.openmap.layer.imageTile.MapTileLayer;
 import com.bbn.openmap.layer.shape.ShapeLayer;
-import com.bbn.openmap.omGraphics.OMColor;
 import com.bbn.openmap.proj.Mercator;
 import com.bbn.openmap.proj.Proj;
 import com.bbn.openmap.proj.Projection;
@@ -84,8 +84,14 @@ import com.bbn.openmap.util.PropUtils;
  * formatters=formatter1
  * # Layer definitions for layers that are available for zoom levels
  * layers=layer1 layer2 ...
+ * # Path to top level directory for tiles, or to an .mbtiles file
  * rootDir=Path to top level directory for tiles
  * zoomLevels=zoom1 zoom2
+ * # Number of threads creating tiles, number of processors by default. Each
+ * # thread creates its own copy of the layers.
+ * threads=4
+ * # Skip tiles written by an earlier, interrupted run (true by default)
+ * resume=true
  * 
  * formatter1=.class=com.bbn.openmap.image.PNGImageIOFormatter
  * layer1.class=com.bbn.openmap.layer.shape.ShapeLayer
@@ -106,14 +112,29 @@ import com.bbn.openmap.util.PropUtils;
  * # and repeat for every zoomLevel defined
  * </pre>
  * 
+ * The tiles are created by a MapTileSeeder, which spreads the work over
+ * several threads and keeps track of progress in the root directory so an
+ * interrupted run can be resumed.
+ * 
  * @author dietrick
  */
 public class MapTileMaker extends ImageServer implements EmptyTileHandler {
 
     public final static String ROOT_DIRECTORY_PROPERTY = "rootDir";
     public final static String ZOOM_LEVELS_PROPERTY = "zoomLevels";
+    public final static String THREADS_PROPERTY = "threads";
+    public final static String RESUME_PROPERTY = "resume";
 
     protected String rootDir;
+    protected MapTileStore tileStore;
+    protected int numThreads = Runtime.getRuntime().availableProcessors();
+    protected boolean resume = true;
+    /**
+     * The properties used to configure this MapTileMaker, kept so copies can
+     * be made for rendering threads.
+     */
+    protected String configPrefix;
+    protected Properties configProperties;
     protected List<ZoomLevelMaker> zoomLevels;
     protected MapTileCoordinateTransform mtcTransform = new OSMMapTileCoordinateTransform();
     protected int TILE_SIZE = mtcTransform.getTileSize();
@@ -168,9 +189,13 @@ public class MapTileMaker extends ImageServer implements EmptyTileHandler {
     @SuppressWarnings("unchecked")
     public void setProperties(String prefix, Properties props) {
         super.setProperties(prefix, props);
+        configPrefix = prefix;
+        configProperties = props;
         prefix = PropUtils.getScopedPropertyPrefix(prefix);
 
         rootDir = props.getProperty(prefix + ROOT_DIRECTORY_PROPERTY, rootDir);
+        numThreads = PropUtils.intFromProperties(props, prefix + THREADS_PROPERTY, numThreads);
+        resume = PropUtils.booleanFromProperties(props, prefix + RESUME_PROPERTY, resume);
         List<ZoomLevelMaker> zoomLevels = (List<ZoomLevelMaker>) PropUtils.objectsFromProperties(props, prefix
                 + ZOOM_LEVELS_PROPERTY, ComponentFactory.ClassNameProperty);
         getZoomLevels().addAll(zoomLevels);
@@ -180,6 +205,8 @@ public class MapTileMaker extends ImageServer implements EmptyTileHandler {
         props = super.getProperties(props);
         String prefix = PropUtils.getScopedPropertyPrefix(this);
         props.put(prefix + ROOT_DIRECTORY_PROPERTY, PropUtils.unnull(rootDir));
+        props.put(prefix + THREADS_PROPERTY, Integer.toString(numThreads));
+        props.put(prefix + RESUME_PROPERTY, Boolean.toString(resume));
 
         StringBuffer buf = new StringBuffer();
         for (ZoomLevelMaker zfi : getZoomLevels()) {
@@ -197,6 +224,8 @@ public class MapTileMaker extends ImageServer implements EmptyTileHandler {
     public Properties getPropertyInfo(Properties props) {
         props = super.getPropertyInfo(props);
         PropUtils.setI18NPropertyInfo(Environment.getI18n(), props, com.bbn.openmap.dataAccess.mapTile.MapTileMaker.class, ROOT_DIRECTORY_PROPERTY, "Tile Directory", "Root directory for holding tile files.", "com.bbn.openmap.util.propertyEditor.DirectoryPropertyEditor");
+        PropUtils.setI18NPropertyInfo(Environment.getI18n(), props, com.bbn.openmap.dataAccess.mapTile.MapTileMaker.class, THREADS_PROPERTY, "Threads", "Number of threads used to create tiles.", null);
+        PropUtils.setI18NPropertyInfo(Environment.getI18n(), props, com.bbn.openmap.dataAccess.mapTile.MapTileMaker.class, RESUME_PROPERTY, "Resume", "Pick up where an interrupted run left off.", "com.bbn.openmap.util.propertyEditor.YesNoPropertyEditor");
         return props;
     }
 
@@ -360,145 +389,229 @@ public class MapTileMaker extends ImageServer implements EmptyTileHandler {
      * have a List of Strings corresponding to the property prefixes of the
      * layers already set on the MapTileMaker, or it can have a List of Layer
      * objects to use. The root output directory has to be set in the
-     * MapTileMaker. The image formatter also needs to be set.
+     * MapTileMaker. The image formatter also needs to be set. A MapTileStore
+     * created here for an .mbtiles root directory is closed when the tiles are
+     * done, a MapTileStore set with setTileStore() is left open for the
+     * caller.
      */
     public void makeTiles() {
 
-        if (rootDir != null) {
+        MapTileStore createdStore = null;
+        if (tileStore == null && MBTilesTileStore.isMBTilesPath(rootDir)) {
+            try {
+                MBTilesTileStore mbtiles = new MBTilesTileStore(rootDir);
+                mbtiles.setMetadata("name", new File(rootDir).getName());
+                mbtiles.setMetadata("type", "baselayer");
+                mbtiles.setMetadata("version", "1.0");
+                mbtiles.setMetadata("format", getImageFileExtension().substring(1));
+                tileStore = mbtiles;
+                createdStore = mbtiles;
+            } catch (IOException ioe) {
+                logger.warning("can't write tiles to " + rootDir + ": " + ioe.getMessage());
+                return;
+            }
+        } else if (tileStore == null && rootDir != null) {
             File rd = new File(rootDir);
             if (!rd.exists()) {
                 rd.mkdir();
             }
         }
 
-        Proj proj = new Mercator(new LatLonPoint.Double(), 10000, MapTileCoordinateTransform.TILE_SIZE, MapTileCoordinateTransform.TILE_SIZE);
-
-        List<ZoomLevelMaker> zoomLevels = getZoomLevels();
-        for (ZoomLevelMaker zfi : zoomLevels) {
-            logger.info("writing zoom level " + zfi.getName() + " tiles...");
-            int zoomLevel = zfi.getZoomLevel();
-            for (Rectangle2D bounds : zfi.getUVBounds(mtcTransform, zoomLevel)) {
-                if (logger.isLoggable(Level.FINE)) {
-                    logger.fine(" creating tiles " + bounds);
+        try {
+            new MapTileSeeder(this).makeTiles();
+        } finally {
+            if (createdStore != null) {
+                if (tileStore == createdStore) {
+                    tileStore = null;
                 }
-                int startx = (int) bounds.getX();
-                int starty = (int) bounds.getY();
-                int xofflimit = (int) bounds.getWidth();
-                int yofflimit = (int) bounds.getHeight();
-
-                for (int xoff = 0; xoff < xofflimit; xoff++) {
-                    int x = startx + xoff;
-
-                    // Reset every x loop for first time check through y loop
-                    String parentDirPath = null;
-
-                    for (int yoff = 0; yoff < yofflimit; yoff++) {
-                        int y = starty + yoff;
-
-                        if (parentDirPath == null) {
-                            parentDirPath = zfi.formatParentDirectoryName(getRootDir(), x, y);
-                            File parentDir = new File(parentDirPath);
-                            if (!parentDir.exists()) {
-                                parentDir.mkdirs();
-                            }
-                        }
-
-                        try {
-                            String outputFile = makeTileFile(x, y, zfi, proj);
-                            if (logger.isLoggable(Level.FINER)) {
-                                logger.finer("wrote: " + outputFile);
-                            }
-                        } catch (IOException ioe) {
-                            logger.warning("Caught IOException writing " + x + ", " + y + ", "
-                                    + zfi);
-                        }
-                    }
-
+                try {
+                    createdStore.close();
+                } catch (IOException ioe) {
+                    logger.warning("problem finishing tiles in " + rootDir + ": " + ioe.getMessage());
                 }
             }
+        }
+    }
+
+    /**
+     * Write a tile to the MapTileStore, if there is one, or to a file in the
+     * root directory.
+     * 
+     * @param imageBytes the formatted image for the tile.
+     * @param levelInfo the zoom level of the tile.
+     * @param uvx uv x coordinate of the tile.
+     * @param uvy uv y coordinate of the tile.
+     * @return the file path or z/x/y location of the tile.
+     * @throws IOException
+     */
+    public String writeTile(byte[] imageBytes, ZoomLevelInfo levelInfo, int uvx, int uvy)
+            throws IOException {
+        if (tileStore != null) {
+            tileStore.putTile(uvx, uvy, levelInfo.getZoomLevel(), imageBytes);
+            return levelInfo.getZoomLevel() + "/" + uvx + "/" + uvy;
+        }
+
+        return writeImageFile(imageBytes, levelInfo.formatImageFilePath(getRootDir(), uvx, uvy), true);
+    }
+
+    /**
+     * Read a tile written earlier, from the MapTileStore if there is one, or
+     * from a file in the root directory.
+     * 
+     * @param uvx uv x coordinate of the tile.
+     * @param uvy uv y coordinate of the tile.
+     * @param zoomLevel zoom level of the tile.
+     * @return BufferedImage for the tile, null if it's not there.
+     */
+    protected BufferedImage readTile(int uvx, int uvy, int zoomLevel) {
+        try {
+            if (tileStore != null) {
+                byte[] imageBytes = tileStore.getTile(uvx, uvy, zoomLevel);
+                return imageBytes == null ? null : ImageIO.read(new ByteArrayInputStream(imageBytes));
+            }
+
+            ZoomLevelInfo zfi = new ZoomLevelInfo();
+            zfi.setZoomLevel(zoomLevel);
+            File tileFile = new File(zfi.formatImageFilePath(getRootDir(), uvx, uvy)
+                    + getImageFileExtension());
+            return tileFile.exists() ? ImageIO.read(tileFile) : null;
+        } catch (IOException ioe) {
+            logger.warning("couldn't read tile " + zoomLevel + "/" + uvx + "/" + uvy + ": "
+                    + ioe.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Create a copy of this MapTileMaker with its own set of layers, so tiles
+     * can be rendered in another thread at the same time as this one. Only
+     * works if this MapTileMaker was configured with properties.
+     * 
+     * @return MapTileMaker, or null if one couldn't be created.
+     */
+    protected MapTileMaker createRenderer() {
+        if (configProperties == null) {
+            return null;
+        }
+
+        try {
+            MapTileMaker renderer = new MapTileMaker();
+            renderer.setProperties(configPrefix, configProperties);
+            renderer.setTransparent(getTransparent());
+            return renderer;
+        } catch (Exception e) {
+            logger.warning("couldn't create layers for tile rendering thread: " + e.getMessage());
+            return null;
+        }
+    }
 
-            // At this point, for a specific ZoomLevelInfo, the basic tiles for
-            // it have been created. Now we can check the range and create tiles
-            // for the range out of the new tiles.
-            int range = zfi.getRange();
-            if (range < zoomLevel) {
-                Properties rangeProps = new Properties();
-                MapTileLayer tileLayer = new MapTileLayer();
-                StandardMapTileFactory tileFactory = new StandardMapTileFactory();
-                tileFactory.setRootDir(getRootDir());
-                tileFactory.setFileExt(getFormatter().getFormatLabel());
-                tileLayer.setTileFactory(tileFactory);
-
-                List<Layer> subLayers = new ArrayList<Layer>();
-                subLayers.add(tileLayer);
-
-                for (int rangeZoomLevel = zoomLevel - 1; rangeZoomLevel >= range; rangeZoomLevel--) {
-                    tileLayer.setZoomLevel(rangeZoomLevel);
-                    ZoomLevelInfo rangeZFI = new ZoomLevelInfo();
-                    rangeZFI.setZoomLevel(rangeZoomLevel);
-                    rangeZFI.setScale(mtcTransform.getScaleForZoom(rangeZoomLevel));
-                    // Create new tiles from the tiles one zoom level up
-                    tileLayer.setZoomLevel(rangeZoomLevel + 1);
-
-                    for (Rectangle2D rawBounds : zfi.getBounds()) {
-                        Rectangle2D bounds = rangeZFI.getUVBounds(rawBounds, mtcTransform, rangeZoomLevel);
-                        if (logger.isLoggable(Level.INFO)) {
-                            logger.fine(" creating subtiles " + bounds);
-                        }
-                        int startx = (int) bounds.getX();
-                        int starty = (int) bounds.getY();
-                        int xofflimit = (int) bounds.getWidth();
-                        int yofflimit = (int) bounds.getHeight();
-
-                        for (int xoff = 0; xoff < xofflimit; xoff++) {
-                            int x = startx + xoff;
-
-                            // Reset every x loop for first time check through y
-                            // loop
-                            String parentDirPath = null;
-
-                            for (int yoff = 0; yoff < yofflimit; yoff++) {
-                                int y = starty + yoff;
-
-                                if (parentDirPath == null) {
-                                    parentDirPath = rangeZFI.formatParentDirectoryName(getRootDir(), x, y);
-                                    File parentDir = new File(parentDirPath);
-                                    if (!parentDir.exists()) {
-                                        parentDir.mkdirs();
-                                    }
-                                }
-
-                                try {
-
-                                    byte[] imageBytes = makeTile(x, y, rangeZoomLevel, subLayers, proj, OMColor.clear);
-
-                                    String filePath = rangeZFI.formatImageFilePath(getRootDir(), (int) x, (int) y);
-                                    String outputFile = writeImageFile(imageBytes, filePath, true);
-
-                                    if (logger.isLoggable(Level.INFO)) {
-                                        logger.finer("wrote: " + outputFile);
-                                    }
-                                } catch (IOException ioe) {
-                                    logger.warning("Caught IOException writing " + x + ", " + y
-                                            + ", " + zfi);
-                                }
-                            }
-
-                        }
+    /**
+     * Create a tile by scaling down the four tiles covering the same area at
+     * the next zoom level in. The sub tiles have to have been written already.
+     * 
+     * @param uvx uv x coordinate of the tile.
+     * @param uvy uv y coordinate of the tile.
+     * @param zoomLevel zoom level of the tile.
+     * @return byte[] for raw image bytes, or null if none of the sub tiles
+     *         exist.
+     */
+    public byte[] makeTileFromSubTiles(int uvx, int uvy, int zoomLevel) {
+        ImageFormatter formatter = getFormatter();
+        if (formatter == null) {
+            logger.warning("no formatter set! Can't create image.");
+            return null;
+        }
+
+        int half = TILE_SIZE / 2;
+
+        ImageFormatter imageFormatter = null;
+        Graphics2D graphics = null;
+
+        for (int xoff = 0; xoff < 2; xoff++) {
+            for (int yoff = 0; yoff < 2; yoff++) {
+                BufferedImage subImage = readTile(uvx * 2 + xoff, uvy * 2 + yoff, zoomLevel + 1);
+
+                if (subImage == null) {
+                    continue;
+                }
 
+                if (graphics == null) {
+                    imageFormatter = formatter.makeClone();
+                    graphics = (Graphics2D) createGraphics(imageFormatter, TILE_SIZE, TILE_SIZE);
+                    if (graphics == null) {
+                        return null;
                     }
+                    graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
                 }
 
+                graphics.drawImage(subImage, xoff * half, yoff * half, half, half, null);
             }
         }
 
-        logger.info("done writing tiles");
+        if (graphics == null) {
+            return null;
+        }
+
+        byte[] formattedImage = getFormattedImage(imageFormatter, -1, -1);
+        graphics.dispose();
+        return formattedImage;
+    }
+
+    /**
+     * @return the number of threads used to create tiles.
+     */
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    /**
+     * Set the number of threads used to create tiles. Each thread gets its
+     * own copy of the layers if this MapTileMaker was configured with
+     * properties.
+     */
+    public void setNumThreads(int numThreads) {
+        this.numThreads = numThreads;
+    }
+
+    /**
+     * @return whether an interrupted run of makeTiles will pick up where it
+     *         left off.
+     */
+    public boolean isResume() {
+        return resume;
+    }
+
+    /**
+     * Set whether an interrupted run of makeTiles should pick up where it left
+     * off, skipping the tiles already written.
+     */
+    public void setResume(boolean resume) {
+        this.resume = resume;
     }
 
     public String getRootDir() {
         return rootDir;
     }
 
+    /**
+     * @return the MapTileStore tiles are written to, or null if they are
+     *         written to files under the root directory.
+     */
+    public MapTileStore getTileStore() {
+        return tileStore;
+    }
+
+    /**
+     * Set a MapTileStore to write tiles to, instead of the root directory.
+     * An MBTilesTileStore is created automatically if the root directory is
+     * an .mbtiles file.
+     * 
+     * @param tileStore
+     */
+    public void setTileStore(MapTileStore tileStore) {
+        this.tileStore = tileStore;
+    }
+
     public void setRootDir(String rootDir) {
         this.rootDir = rootDir;
     }
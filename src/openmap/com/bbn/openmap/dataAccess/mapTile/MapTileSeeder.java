@@ -0,0 +1,507 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.dataAccess.mapTile;
+
+import java.awt.geom.Rectangle2D;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.bbn.openmap.Layer;
+import com.bbn.openmap.image.ImageServer;
+import com.bbn.openmap.proj.Mercator;
+import com.bbn.openmap.proj.Proj;
+import com.bbn.openmap.proj.coords.LatLonPoint;
+
+/**
+ * The MapTileSeeder does the work for MapTileMaker.makeTiles(). The UV tile
+ * bounds for each zoom level are split into blocks of BLOCK_SIZE x BLOCK_SIZE
+ * tiles, and the blocks are handed to a pool of worker threads. Each worker
+ * has its own projection. If the layers have concurrent rendering turned on,
+ * the workers all render with them at the same time. If not, and the
+ * MapTileMaker can be copied from its properties, each worker gets its own set
+ * of layers to render into. Otherwise, the workers take turns rendering with
+ * the MapTileMaker's layers, and only the image encoding and file writing are
+ * done in parallel.
+ * <p>
+ * 
+ * The tiles for zoom levels within the range of a ZoomLevelMaker are created
+ * by scaling down the four tiles of the next zoom level in, instead of
+ * rendering the layers again.
+ * <p>
+ * 
+ * As each block of tiles is completed, a line is written to a checkpoint file
+ * in the root directory. If the tile creation is interrupted, running it again
+ * will skip the completed blocks if the MapTileMaker's resume flag is set. The
+ * checkpoint file is deleted when all of the tiles have been written. If the
+ * MapTileMaker has a MapTileStore, the tiles of a block are flushed to it
+ * together before the block is checkpointed. The
+ * number of tiles written per second is logged as the tiles are created.
+ * 
+ * @author dietrick
+ */
+public class MapTileSeeder {
+
+    public static Logger logger = Logger.getLogger("com.bbn.openmap.dataAccess.mapTile.MapTileSeeder");
+
+    /**
+     * The name of the checkpoint file written in the root tile directory.
+     */
+    public final static String CHECKPOINT_FILE_NAME = ".mapTileMaker.progress";
+    /**
+     * The number of tiles across and down for each block of work.
+     */
+    public final static int BLOCK_SIZE = 16;
+    /**
+     * How often progress is logged, in milliseconds.
+     */
+    public final static long REPORT_INTERVAL = 10000;
+
+    protected MapTileMaker mapTileMaker;
+    protected int numThreads;
+    /**
+     * True if the layers of the MapTileMaker can all render tiles at the same
+     * time.
+     */
+    protected boolean concurrentRendering;
+    protected Set<String> completedBlocks = new HashSet<String>();
+    protected PrintStream checkpoint;
+    protected AtomicLong tileCount = new AtomicLong();
+    protected long startTime;
+    protected long lastReportTime;
+    protected volatile boolean failures = false;
+
+    /**
+     * Each worker thread gets its own projection and renderer.
+     */
+    protected ThreadLocal<RenderContext> renderContext = new ThreadLocal<RenderContext>() {
+        protected RenderContext initialValue() {
+            return new RenderContext();
+        }
+    };
+
+    /**
+     * Create a seeder for a MapTileMaker, using the number of threads set in
+     * the MapTileMaker.
+     * 
+     * @param mapTileMaker the configured MapTileMaker.
+     */
+    public MapTileSeeder(MapTileMaker mapTileMaker) {
+        this.mapTileMaker = mapTileMaker;
+        this.numThreads = Math.max(1, mapTileMaker.getNumThreads());
+        this.concurrentRendering = mapTileMaker.isConcurrentRendering();
+    }
+
+    /**
+     * Create all of the tiles for the ZoomLevelMakers of the MapTileMaker.
+     * 
+     * @return true if all of the tiles were written, false if the process was
+     *         interrupted or some tiles couldn't be written.
+     */
+    public boolean makeTiles() {
+        startTime = System.currentTimeMillis();
+        lastReportTime = startTime;
+        openCheckpoint();
+
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        boolean finished = false;
+
+        try {
+            for (ZoomLevelMaker zfi : mapTileMaker.getZoomLevels()) {
+                logger.info("writing zoom level " + zfi.getName() + " tiles...");
+                int zoomLevel = zfi.getZoomLevel();
+
+                if (!runAll(executor, getTileBlocks(zfi))) {
+                    return false;
+                }
+
+                // Now the basic tiles for the ZoomLevelMaker have been created,
+                // the tiles for the range levels can be built from them, one
+                // level at a time.
+                int range = zfi.getRange();
+                for (int rangeZoomLevel = zoomLevel - 1; rangeZoomLevel >= range; rangeZoomLevel--) {
+                    if (!runAll(executor, getOverviewBlocks(zfi, rangeZoomLevel))) {
+                        return false;
+                    }
+                }
+            }
+
+            finished = true;
+        } finally {
+            executor.shutdownNow();
+            closeCheckpoint(finished && !failures);
+        }
+
+        long elapsed = System.currentTimeMillis() - startTime;
+        logger.info("done writing tiles, " + tileCount.get() + " tiles in " + (elapsed / 1000)
+                + " seconds (" + getTilesPerSecond() + " tiles/sec)");
+        return !failures;
+    }
+
+    /**
+     * @return the number of tiles written so far.
+     */
+    public long getTileCount() {
+        return tileCount.get();
+    }
+
+    /**
+     * @return the average number of tiles written per second.
+     */
+    public float getTilesPerSecond() {
+        long elapsed = System.currentTimeMillis() - startTime;
+        return elapsed > 0 ? tileCount.get() * 1000f / elapsed : 0f;
+    }
+
+    /**
+     * Run a set of blocks on the executor and wait for them to finish.
+     * 
+     * @return false if the thread was interrupted while waiting.
+     */
+    protected boolean runAll(ExecutorService executor, List<TileBlock> blocks) {
+        List<Future<?>> futures = new ArrayList<Future<?>>(blocks.size());
+        for (TileBlock block : blocks) {
+            if (completedBlocks.contains(block.getKey())) {
+                if (logger.isLoggable(Level.FINE)) {
+                    logger.fine("skipping completed block " + block.getKey());
+                }
+                continue;
+            }
+            futures.add(executor.submit(block));
+        }
+
+        try {
+            for (Future<?> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException ee) {
+                    failures = true;
+                    logger.warning("problem creating tiles: " + ee.getCause());
+                }
+            }
+        } catch (InterruptedException ie) {
+            logger.info("interrupted, " + tileCount.get() + " tiles written");
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Break up the UV bounds of a ZoomLevelMaker into blocks of tiles to be
+     * rendered.
+     */
+    protected List<TileBlock> getTileBlocks(ZoomLevelMaker zfi) {
+        List<TileBlock> blocks = new LinkedList<TileBlock>();
+        int zoomLevel = zfi.getZoomLevel();
+        int boundsIndex = 0;
+        for (Rectangle2D bounds : zfi.getUVBounds(mapTileMaker.mtcTransform, zoomLevel)) {
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine(" creating tiles " + bounds);
+            }
+            addBlocks(blocks, zfi, zfi, bounds, "tiles " + zoomLevel + " " + boundsIndex++);
+        }
+        return blocks;
+    }
+
+    /**
+     * Break up the bounds of a ZoomLevelMaker into blocks of tiles to be made
+     * at one of its range zoom levels.
+     */
+    protected List<TileBlock> getOverviewBlocks(ZoomLevelMaker zfi, int rangeZoomLevel) {
+        List<TileBlock> blocks = new LinkedList<TileBlock>();
+        ZoomLevelInfo rangeZFI = new ZoomLevelInfo();
+        rangeZFI.setZoomLevel(rangeZoomLevel);
+        rangeZFI.setScale(mapTileMaker.mtcTransform.getScaleForZoom(rangeZoomLevel));
+
+        List<Rectangle2D> uvBounds = new LinkedList<Rectangle2D>();
+        for (Rectangle2D rawBounds : zfi.getBounds()) {
+            uvBounds.add(rangeZFI.getUVBounds(rawBounds, mapTileMaker.mtcTransform, rangeZoomLevel));
+        }
+        if (uvBounds.isEmpty()) {
+            int etc = rangeZFI.getEdgeTileCount();
+            uvBounds.add(new Rectangle2D.Double(0, 0, etc, etc));
+        }
+
+        int boundsIndex = 0;
+        for (Rectangle2D bounds : uvBounds) {
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine(" creating subtiles " + bounds);
+            }
+            addBlocks(blocks, zfi, rangeZFI, bounds, "overview " + zfi.getZoomLevel() + " "
+                    + rangeZoomLevel + " " + boundsIndex++);
+        }
+        return blocks;
+    }
+
+    protected void addBlocks(List<TileBlock> blocks, ZoomLevelMaker zfi, ZoomLevelInfo levelInfo,
+                             Rectangle2D bounds, String keyPrefix) {
+        int startx = (int) bounds.getX();
+        int starty = (int) bounds.getY();
+        int endx = startx + (int) bounds.getWidth();
+        int endy = starty + (int) bounds.getHeight();
+
+        for (int x = startx; x < endx; x += BLOCK_SIZE) {
+            for (int y = starty; y < endy; y += BLOCK_SIZE) {
+                blocks.add(new TileBlock(zfi, levelInfo, x, y, Math.min(x + BLOCK_SIZE, endx), Math.min(y
+                        + BLOCK_SIZE, endy), keyPrefix));
+            }
+        }
+    }
+
+    /**
+     * Read the checkpoint file, if resuming, and open it for appending.
+     */
+    protected void openCheckpoint() {
+        File checkpointFile = getCheckpointFile();
+        if (checkpointFile == null) {
+            return;
+        }
+
+        if (checkpointFile.exists()) {
+            if (mapTileMaker.isResume()) {
+                try {
+                    BufferedReader reader = new BufferedReader(new FileReader(checkpointFile));
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        completedBlocks.add(line.trim());
+                    }
+                    reader.close();
+                    logger.info("resuming, " + completedBlocks.size()
+                            + " blocks of tiles already completed");
+                } catch (IOException ioe) {
+                    logger.warning("couldn't read checkpoint file " + checkpointFile + ": "
+                            + ioe.getMessage());
+                }
+            } else {
+                checkpointFile.delete();
+            }
+        }
+
+        try {
+            checkpoint = new PrintStream(new FileOutputStream(checkpointFile, true), true);
+        } catch (IOException ioe) {
+            logger.warning("couldn't write checkpoint file " + checkpointFile
+                    + ", tile creation won't be resumable: " + ioe.getMessage());
+        }
+    }
+
+    /**
+     * The checkpoint file goes in the root directory, or next to the tile
+     * file if the tiles are written to a MapTileStore.
+     * 
+     * @return the checkpoint File, or null if the root directory isn't set.
+     */
+    protected File getCheckpointFile() {
+        String rootDir = mapTileMaker.getRootDir();
+        if (rootDir == null) {
+            return null;
+        }
+
+        if (mapTileMaker.getTileStore() != null) {
+            if (rootDir.startsWith(MBTilesTileStore.JDBC_PREFIX)) {
+                rootDir = rootDir.substring(MBTilesTileStore.JDBC_PREFIX.length());
+            }
+            return new File(rootDir + CHECKPOINT_FILE_NAME);
+        }
+
+        return new File(rootDir, CHECKPOINT_FILE_NAME);
+    }
+
+    /**
+     * Close the checkpoint file, deleting it if all the tiles are done.
+     */
+    protected synchronized void closeCheckpoint(boolean delete) {
+        if (checkpoint != null) {
+            checkpoint.close();
+            checkpoint = null;
+            if (delete) {
+                getCheckpointFile().delete();
+            }
+        }
+    }
+
+    /**
+     * Note a finished block in the checkpoint file, and log progress if it's
+     * time to.
+     */
+    protected synchronized void blockCompleted(TileBlock block) {
+        if (checkpoint != null) {
+            checkpoint.println(block.getKey());
+        }
+
+        long now = System.currentTimeMillis();
+        if (now - lastReportTime >= REPORT_INTERVAL) {
+            lastReportTime = now;
+            logger.info("wrote " + tileCount.get() + " tiles, " + getTilesPerSecond() + " tiles/sec");
+        }
+    }
+
+    /**
+     * The projection and MapTileMaker used by a worker thread.
+     */
+    protected class RenderContext {
+        protected Proj proj;
+        /**
+         * A copy of the MapTileMaker with its own layers, or null if the
+         * layers of the MapTileMaker have to be shared.
+         */
+        protected MapTileMaker renderer;
+
+        protected RenderContext() {
+            proj = new Mercator(new LatLonPoint.Double(), 10000, MapTileCoordinateTransform.TILE_SIZE, MapTileCoordinateTransform.TILE_SIZE);
+            if (numThreads > 1 && !concurrentRendering) {
+                renderer = mapTileMaker.createRenderer();
+            }
+        }
+
+        /**
+         * Render a tile, using the thread's own layers if possible.
+         */
+        protected byte[] makeTile(int x, int y, ZoomLevelMaker zfi) {
+            List<Layer> layerList = zfi.getLayerList();
+            if (layerList != null) {
+                if (ImageServer.isConcurrentRendering(layerList)) {
+                    return zfi.makeTile(x, y, mapTileMaker, proj);
+                }
+            } else if (renderer != null) {
+                return zfi.makeTile(x, y, renderer, proj);
+            } else if (concurrentRendering) {
+                return zfi.makeTile(x, y, mapTileMaker, proj);
+            }
+
+            // Layer objects are shared, so only one thread can use them at a
+            // time.
+            synchronized (mapTileMaker) {
+                return zfi.makeTile(x, y, mapTileMaker, proj);
+            }
+        }
+    }
+
+    /**
+     * A block of tiles at one zoom level, either rendered from layers or
+     * scaled down from the next zoom level.
+     */
+    protected class TileBlock implements Runnable {
+        protected ZoomLevelMaker zfi;
+        protected ZoomLevelInfo levelInfo;
+        protected int startx;
+        protected int starty;
+        protected int endx;
+        protected int endy;
+        protected String key;
+
+        /**
+         * @param zfi the ZoomLevelMaker the tiles are being made for.
+         * @param levelInfo the zoom level of the tiles in this block. If it's
+         *        zfi, the tiles are rendered, otherwise they are made from
+         *        the tiles one level in.
+         */
+        protected TileBlock(ZoomLevelMaker zfi, ZoomLevelInfo levelInfo, int startx, int starty,
+                int endx, int endy, String keyPrefix) {
+            this.zfi = zfi;
+            this.levelInfo = levelInfo;
+            this.startx = startx;
+            this.starty = starty;
+            this.endx = endx;
+            this.endy = endy;
+            this.key = keyPrefix + " " + startx + " " + starty;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public void run() {
+            RenderContext context = renderContext.get();
+            String rootDir = mapTileMaker.getRootDir();
+            MapTileStore tileStore = mapTileMaker.getTileStore();
+            boolean overview = levelInfo != zfi;
+            boolean complete = true;
+
+            for (int x = startx; x < endx; x++) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+
+                if (tileStore == null) {
+                    File parentDir = new File(levelInfo.formatParentDirectoryName(rootDir, x, starty));
+                    if (!parentDir.exists()) {
+                        parentDir.mkdirs();
+                    }
+                }
+
+                for (int y = starty; y < endy; y++) {
+                    try {
+                        byte[] imageBytes;
+                        if (overview) {
+                            imageBytes = mapTileMaker.makeTileFromSubTiles(x, y, levelInfo.getZoomLevel());
+                        } else {
+                            imageBytes = context.makeTile(x, y, zfi);
+                        }
+
+                        if (imageBytes == null) {
+                            // No sub tiles, nothing to write.
+                            continue;
+                        }
+
+                        String outputFile = mapTileMaker.writeTile(imageBytes, levelInfo, x, y);
+                        tileCount.incrementAndGet();
+
+                        if (logger.isLoggable(Level.FINER)) {
+                            logger.finer("wrote: " + outputFile);
+                        }
+                    } catch (IOException ioe) {
+                        complete = false;
+                        failures = true;
+                        logger.warning("Caught IOException writing " + x + ", " + y + ", " + zfi);
+                    }
+                }
+            }
+
+            // The block can't be checkpointed until its tiles are in the
+            // store.
+            if (complete && tileStore != null) {
+                try {
+                    tileStore.flush();
+                } catch (IOException ioe) {
+                    complete = false;
+                    failures = true;
+                    logger.warning("Caught IOException writing tiles for " + zfi + ": "
+                            + ioe.getMessage());
+                }
+            }
+
+            if (complete) {
+                blockCompleted(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+
+package com.bbn.openmap.dataAccess.mapTile;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * A MapTileStore holds the image bytes for map tiles somewhere other than in a
+ * z/x/y directory tree, like a database file. Tiles are addressed by their
+ * zoom level and x, y tile coordinates, with y counting down from the top of
+ * the map (OSM-style), no matter how the store keeps them.
+ * <p>
+ * 
+ * Tiles put in a store may be held until flush() is called, so a lot of them
+ * can be written at once.
+ * 
+ * @author dietrick
+ */
+public interface MapTileStore {
+
+    /**
+     * Get the image bytes for a tile.
+     * 
+     * @param x tile x coordinate.
+     * @param y tile y coordinate.
+     * @param zoomLevel tile zoom level.
+     * @return image bytes, or null if the store doesn't have the tile.
+     * @throws IOException
+     */
+    byte[] getTile(int x, int y, int zoomLevel) throws IOException;
+
+    /**
+     * Get the image bytes for all of the tiles in an area, in one go.
+     * 
+     * @param zoomLevel tile zoom level.
+     * @param tileBounds the tile x, y coordinates to fetch, from x, y up to
+     *        but not including x + width, y + height.
+     * @return Map of tile bytes, keyed by tile x, y coordinates. Tiles the
+     *         store doesn't have are left out.
+     * @throws IOException
+     */
+    Map<Point, byte[]> getTiles(int zoomLevel, Rectangle tileBounds) throws IOException;
+
+    /**
+     * Add a tile to the store, replacing any tile already there.
+     * 
+     * @param x tile x coordinate.
+     * @param y tile y coordinate.
+     * @param zoomLevel tile zoom level.
+     * @param imageBytes the image bytes for the tile.
+     * @throws IOException
+     */
+    void putTile(int x, int y, int zoomLevel, byte[] imageBytes) throws IOException;
+
+    /**
+     * Make sure all of the tiles put in the store have been written.
+     * 
+     * @throws IOException
+     */
+    void flush() throws IOException;
+
+    /**
+     * Flush the store and let go of its resources.
+     * 
+     * @throws IOException
+     */
+    void close() throws IOException;
+}
@@ -34,9 +34,22 @@ import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Properties;
+import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.jar.JarEntry;
 import java.util.jar.JarInputStream;
 import java.util.logging.Level;
@@ -50,6 +63,7 @@ import com.bbn.openmap.PropertyConsumer;
 import com.bbn.openmap.image.BufferedImageHelper;
 import com.bbn.openmap.omGraphics.OMGraphic;
 import com.bbn.openmap.omGraphics.OMGraphicList;
+import com.bbn.openmap.omGraphics.OMRasterObject;
 import com.bbn.openmap.omGraphics.OMScalingRaster;
 import com.bbn.openmap.omGraphics.OMText;
 import com.bbn.openmap.omGraphics.OMTextLabeler;
@@ -61,8 +75,8 @@ import com.bbn.openmap.util.ClasspathHacker;
 import com.bbn.openmap.util.ComponentFactory;
 import com.bbn.openmap.util.DataBounds;
 import com.bbn.openmap.util.PropUtils;
-import com.bbn.openmap.util.cacheHandler.CacheHandler;
 import com.bbn.openmap.util.cacheHandler.CacheObject;
+import com.bbn.openmap.util.cacheHandler.ConcurrentCacheHandler;
 
 /**
  * The StandardImageTileFactory is a TileFactory implementation that retrieves
@@ -79,6 +93,13 @@ import com.bbn.openmap.util.cacheHandler.CacheObject;
  * rootDir=the path to the parent directory of the tiles. The factory will construct specific file paths that are appended to this value.
  * fileExt=the file extension to append to the tile names
  * cacheSize=the number of mapTiles the factory should hold on to. The default is 100.
+ * # Optional limit on the memory used by cached tiles, in megabytes, and how to pick tiles to drop (LRU, LFU, TinyLFU)
+ * cacheMemory=256
+ * cachePolicy=TinyLFU
+ * # Load tiles missing from the cache in background threads, closest to the center of the map first (false by default)
+ * asyncLoading=true
+ * # The number of threads used to load tiles, if asyncLoading is true. The default is 4.
+ * loadThreads=4
  * # default is OSMMapTileCoordinateTransform, but it depends on the source of tiles.  GDAL is TSMMapTileCoordinateTransform
  * mapTileTransform=com.bbn.openmap.dataAccess.mapTile.OSMMapTileCoordinateTransform, or com.bbn.openmap.dataAccess.mapTile.TSMMapTileCoordinateTransform
  * # what to do about missing tiles?
@@ -91,7 +112,7 @@ import com.bbn.openmap.util.cacheHandler.CacheObject;
  * 
  * @author dietrick
  */
-public class StandardMapTileFactory extends CacheHandler implements MapTileFactory,
+public class StandardMapTileFactory extends ConcurrentCacheHandler implements MapTileFactory,
         PropertyConsumer {
     protected String prefix = null;
     protected final static Logger logger = Logger.getLogger("com.bbn.openmap.dataAccess.mapTile.StandardMapTileFactory");
@@ -104,6 +125,8 @@ public class StandardMapTileFactory extends CacheHandler implements MapTileFacto
     public final static String ZOOM_LEVEL_INFO_PROPERTY = "zoomLevelInfo";
     public final static String ZOOM_LEVEL_TILE_SIZE_PROPERTY = "zoomLevelTileSize";
     public final static String TILE_IMAGE_PREPARER_PROPERTY = "tileImagePreparer";
+    public final static String ASYNC_LOADING_PROPERTY = "asyncLoading";
+    public final static String LOAD_THREADS_PROPERTY = "loadThreads";
     /**
      * Inserted into properties loaded via tiles.omp, so that the
      * EmptyTileHandler can know where the tile set is located, in case it needs
@@ -150,6 +173,29 @@ public class StandardMapTileFactory extends CacheHandler implements MapTileFacto
      * sources have different origins for tile coordinates.
      */
     protected MapTileCoordinateTransform mtcTransform = new OSMMapTileCoordinateTransform();
+    /**
+     * If true, tiles missing from the cache are loaded by a pool of threads,
+     * instead of one at a time in the thread calling getTiles().
+     */
+    protected boolean asyncLoading = false;
+    /**
+     * The number of threads used to load tiles in async mode.
+     */
+    protected int loadThreads = 4;
+    /**
+     * The thread pool loading tiles, created when first needed.
+     */
+    protected ThreadPoolExecutor loadExecutor;
+    /**
+     * The tile loads that are queued or running, by cache key, so requests for
+     * the same tile share one load.
+     */
+    protected final ConcurrentHashMap<String, TileLoad> tileLoads = new ConcurrentHashMap<String, TileLoad>();
+    /**
+     * How long the getTiles() thread waits for a tile load before checking
+     * with the MapTileRequester, in milliseconds.
+     */
+    protected final static long LOAD_POLL_INTERVAL = 100;
 
     public StandardMapTileFactory() {
         super(100);
@@ -169,6 +215,19 @@ public class StandardMapTileFactory extends CacheHandler implements MapTileFacto
         return null;
     }
 
+    /**
+     * Estimates the memory used by a tile's image, 4 bytes per pixel.
+     */
+    @Override
+    protected long weigh(CacheObject co) {
+        if (co.obj instanceof OMRasterObject) {
+            OMRasterObject raster = (OMRasterObject) co.obj;
+            return 4L * raster.getWidth() * raster.getHeight();
+        }
+        // A typical 256x256 tile.
+        return 4L * 256 * 256;
+    }
+
     /**
      * Tell the factory to dump the cache.
      */
@@ -397,7 +456,12 @@ public class StandardMapTileFactory extends CacheHandler implements MapTileFacto
         EmptyTileHandler empTileHandler = getEmptyTileHandler();
         if (empTileHandler != null) {
 
-            BufferedImage bi = empTileHandler.getImageForEmptyTile((String) key, x, y, zoomLevel, mtcTransform, proj);
+            BufferedImage bi;
+            // Tiles may be loaded by several threads, and the handler may be
+            // rendering layers.
+            synchronized (empTileHandler) {
+                bi = empTileHandler.getImageForEmptyTile((String) key, x, y, zoomLevel, mtcTransform, proj);
+            }
 
             OMGraphic raster;
             try {
@@ -561,6 +625,16 @@ public class StandardMapTileFactory extends CacheHandler implements MapTileFacto
             this.y = y;
             this.zoomLevel = z;
         }
+
+        /**
+         * @return the squared distance from the middle of the tile to a uv
+         *         point.
+         */
+        double distanceSq(double uvx, double uvy) {
+            double dx = x + .5 - uvx;
+            double dy = y + .5 - uvy;
+            return dx * dx + dy * dy;
+        }
     }
 
     protected void getTiles(int uvleft, int uvright, int uvup, int uvbottom,
@@ -626,10 +700,31 @@ public class StandardMapTileFactory extends CacheHandler implements MapTileFacto
                     + " others now...");
         }
 
+        prepareToLoad(reloads, zoomLevel);
+
         if (mapTileRequester != null) {
             mapTileRequester.listUpdated();
         }
 
+        if (asyncLoading) {
+            // Load the tiles closest to the middle of the map first.
+            final double centerX = (uvleftM + uvrightM) / 2.0;
+            final double centerY = (uvupM + uvbottomM) / 2.0;
+            Collections.sort(reloads, new Comparator<LoadObj>() {
+                public int compare(LoadObj lo1, LoadObj lo2) {
+                    return Double.compare(lo1.distanceSq(centerX, centerY), lo2.distanceSq(centerX, centerY));
+                }
+            });
+
+            // Edge tiles go after the tiles on the map.
+            if (doExtraTiles) {
+                reloads.addAll(getEdgeTiles(uvleft, uvright, uvup, uvbottom, zoomLevelInfo));
+            }
+
+            loadTilesAsync(reloads, proj, list);
+            return;
+        }
+
         /*
          * Load the tiles that are not already in the cache, that need to be
          * fetched from the source.
@@ -659,6 +754,37 @@ public class StandardMapTileFactory extends CacheHandler implements MapTileFacto
 
         // Just for giggles, lets go ahead and walk around the edge of the area
         // and prefetch tiles to load them into memory...
+        for (LoadObj edgeTile : getEdgeTiles(uvleft, uvright, uvup, uvbottom, zoomLevelInfo)) {
+            loadTile(edgeTile.imagePath, edgeTile.x, edgeTile.y, edgeTile.zoomLevel, proj, list);
+        }
+
+        if (verbose) {
+            logger.fine("finished loading all tiles (" + list.size() + ")");
+        }
+    }
+
+    /**
+     * Called with the tiles for the screen that aren't in the cache, before
+     * they are loaded. Subclasses that can fetch a lot of tiles at once more
+     * cheaply than one at a time can get ready for the load() calls here.
+     * 
+     * @param reloads the tiles that are about to be loaded.
+     * @param zoomLevel the zoom level of the tiles.
+     */
+    protected void prepareToLoad(List<LoadObj> reloads, int zoomLevel) {
+    }
+
+    /**
+     * Figure out the tiles around the outside of a uv area, the corners first
+     * and then the sides.
+     * 
+     * @return List of LoadObj for the tiles, in the order they should be
+     *         loaded.
+     */
+    protected List<LoadObj> getEdgeTiles(int uvleft, int uvright, int uvup, int uvbottom,
+                                         ZoomLevelInfo zoomLevelInfo) {
+        List<LoadObj> edgeTiles = new ArrayList<LoadObj>();
+        int zoomLevel = zoomLevelInfo.getZoomLevel();
 
         // int uvleft, int uvright, int uvup, int uvbottom
         int x1 = uvleft;
@@ -689,44 +815,219 @@ public class StandardMapTileFactory extends CacheHandler implements MapTileFacto
 
         // Get the corners
         if (top && left) {
-            loadTile(x1, y1, zoomLevel, proj, list);
+            edgeTiles.add(createEdgeTile(x1, y1, zoomLevel));
         }
         if (bottom && left) {
-            loadTile(x1, y2, zoomLevel, proj, list);
+            edgeTiles.add(createEdgeTile(x1, y2, zoomLevel));
         }
         if (bottom && right) {
-            loadTile(x2, y2, zoomLevel, proj, list);
+            edgeTiles.add(createEdgeTile(x2, y2, zoomLevel));
         }
         if (top && right) {
-            loadTile(x2, y1, zoomLevel, proj, list);
+            edgeTiles.add(createEdgeTile(x2, y1, zoomLevel));
         }
         // Now go along the sides
         if (top) {
             for (int x = uvleft; x < uvright; x++) {
-                loadTile(x, y1, zoomLevel, proj, list);
+                edgeTiles.add(createEdgeTile(x, y1, zoomLevel));
             }
         }
 
         if (bottom) {
             for (int x = uvleft; x < uvright; x++) {
-                loadTile(x, y2, zoomLevel, proj, list);
+                edgeTiles.add(createEdgeTile(x, y2, zoomLevel));
             }
         }
 
         if (right) {
             for (int y = uvup; y < uvbottom; y++) {
-                loadTile(x2, y, zoomLevel, proj, list);
+                edgeTiles.add(createEdgeTile(x2, y, zoomLevel));
             }
         }
 
         if (left) {
             for (int y = uvup; y < uvbottom; y++) {
-                loadTile(x1, y, zoomLevel, proj, list);
+                edgeTiles.add(createEdgeTile(x1, y, zoomLevel));
             }
         }
 
-        if (verbose) {
-            logger.fine("finished loading all tiles (" + list.size() + ")");
+        return edgeTiles;
+    }
+
+    private LoadObj createEdgeTile(int x, int y, int zoomLevel) {
+        return new LoadObj(buildFilePath(x, y, zoomLevel, getFileExt()), x, y, zoomLevel);
+    }
+
+    /**
+     * Load tiles using the thread pool, adding them to the list as they come
+     * in. Returns when all of the tiles have been loaded, or when the
+     * MapTileRequester says the tiles aren't wanted anymore. Loads that no
+     * other getTiles() call is waiting for are cancelled then.
+     * 
+     * @param reloads the tiles to load, in the order they should be loaded.
+     * @param proj the current projection.
+     * @param list the OMGraphicList to add the tiles to.
+     */
+    protected void loadTilesAsync(List<LoadObj> reloads, Projection proj, OMGraphicList list) {
+        BlockingQueue<TileLoad> finished = new LinkedBlockingQueue<TileLoad>();
+        Set<TileLoad> pending = new HashSet<TileLoad>();
+
+        try {
+            for (LoadObj reload : reloads) {
+                pending.add(requestLoad(reload, proj, finished));
+            }
+
+            while (!pending.isEmpty()) {
+                if (mapTileRequester != null && !mapTileRequester.shouldContinue()) {
+                    return;
+                }
+
+                TileLoad tileLoad = finished.poll(LOAD_POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                if (tileLoad == null || !pending.remove(tileLoad) || tileLoad.isCancelled()) {
+                    continue;
+                }
+
+                CacheObject ret = null;
+                try {
+                    ret = tileLoad.get();
+                } catch (ExecutionException ee) {
+                    logger.fine("problem loading " + tileLoad.key + ": " + ee.getCause());
+                }
+
+                if (ret != null && ret.obj instanceof OMGraphic) {
+                    OMGraphic raster = (OMGraphic) ret.obj;
+                    raster.generate(proj);
+                    list.add(raster);
+
+                    if (logger.isLoggable(Level.FINE)) {
+                        raster.putAttribute(OMGraphic.TOOLTIP, tileLoad.key);
+                    }
+
+                    if (mapTileRequester != null) {
+                        mapTileRequester.listUpdated();
+                    }
+                }
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } finally {
+            for (TileLoad tileLoad : pending) {
+                tileLoad.release(finished);
+            }
+        }
+    }
+
+    /**
+     * Get a TileLoad for a tile, joining one already queued or running if
+     * there is one, and queueing a new one if there isn't.
+     * 
+     * @param reload the tile to load.
+     * @param proj the current projection.
+     * @param finished where the TileLoad will be put when it's done.
+     * @return TileLoad for the tile.
+     */
+    protected TileLoad requestLoad(LoadObj reload, Projection proj, BlockingQueue<TileLoad> finished) {
+        while (true) {
+            TileLoad tileLoad = tileLoads.get(reload.imagePath);
+            if (tileLoad == null) {
+                TileLoad newLoad = new TileLoad(reload, proj);
+                tileLoad = tileLoads.putIfAbsent(reload.imagePath, newLoad);
+                if (tileLoad == null) {
+                    newLoad.join(finished);
+                    getLoadExecutor().execute(newLoad);
+                    return newLoad;
+                }
+            }
+
+            if (tileLoad.join(finished)) {
+                return tileLoad;
+            }
+
+            // Cancelled, make a new one.
+            tileLoads.remove(reload.imagePath, tileLoad);
+        }
+    }
+
+    /**
+     * @return the thread pool for loading tiles, created if needed.
+     */
+    protected synchronized ThreadPoolExecutor getLoadExecutor() {
+        if (loadExecutor == null) {
+            int numThreads = Math.max(1, loadThreads);
+            loadExecutor = new ThreadPoolExecutor(numThreads, numThreads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "MapTileLoader");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            loadExecutor.allowCoreThreadTimeOut(true);
+        }
+        return loadExecutor;
+    }
+
+    /**
+     * A tile being loaded by the thread pool. Any number of getTiles() calls
+     * can wait for it, each providing a queue that the TileLoad is put on when
+     * it's done. The load is cancelled if all of them stop waiting.
+     */
+    protected class TileLoad extends FutureTask<CacheObject> {
+        protected final String key;
+        protected int waiters = 0;
+        protected List<BlockingQueue<TileLoad>> listeners = new ArrayList<BlockingQueue<TileLoad>>(1);
+
+        protected TileLoad(final LoadObj reload, final Projection proj) {
+            super(new Callable<CacheObject>() {
+                public CacheObject call() {
+                    CacheObject ret = load(reload.imagePath, reload.x, reload.y, reload.zoomLevel, proj);
+                    if (ret == null) {
+                        ret = getEmptyTile(reload.imagePath, reload.x, reload.y, reload.zoomLevel, proj);
+                    }
+                    if (ret != null) {
+                        replaceLeastUsed(ret);
+                    }
+                    return ret;
+                }
+            });
+            this.key = reload.imagePath;
+        }
+
+        /**
+         * Add a waiter for this load.
+         * 
+         * @return false if the load has been cancelled.
+         */
+        protected synchronized boolean join(BlockingQueue<TileLoad> finished) {
+            if (isCancelled()) {
+                return false;
+            }
+            waiters++;
+            if (isDone()) {
+                finished.add(this);
+            } else {
+                listeners.add(finished);
+            }
+            return true;
+        }
+
+        /**
+         * Remove a waiter, cancelling the load if no one else is waiting.
+         */
+        protected synchronized void release(BlockingQueue<TileLoad> finished) {
+            listeners.remove(finished);
+            if (--waiters <= 0) {
+                cancel(true);
+            }
+        }
+
+        protected void done() {
+            tileLoads.remove(key, this);
+            synchronized (this) {
+                for (BlockingQueue<TileLoad> finished : listeners) {
+                    finished.add(this);
+                }
+                listeners.clear();
+            }
         }
     }
 
@@ -770,26 +1071,6 @@ public class StandardMapTileFactory extends CacheHandler implements MapTileFacto
         }
     }
 
-    /**
-     * Handles going to the cache, getting the cache to load the tile, and then
-     * manage the resulting OMRaster tile. Adds the tile to the list after
-     * generating it with the projection, and calls the repaintCallback if there
-     * is one. Handles creating the image file path given the other info.
-     * 
-     * @param x the x uv coordinate of the tile
-     * @param y the y uv coordinate of the tile
-     * @param zoomLevel the zoomLevel of the tile
-     * @param proj the current projection.
-     * @param list the OMGraphicList to add the tile to.
-     * @throws InterruptedException
-     */
-    private void loadTile(int x, int y, int zoomLevel, Projection proj, OMGraphicList list) {
-        // String imagePath = zoomLevelInfo.formatImageFilePath(rootDir, x, y) +
-        // fileExt;
-        String imagePath = buildFilePath(x, y, zoomLevel, getFileExt());
-        loadTile(imagePath, x, y, zoomLevel, proj, list);
-    }
-
     /**
      * Build an image path to load, based on specified tile coordinates, zoom
      * level and file extension settings.
@@ -912,6 +1193,7 @@ public class StandardMapTileFactory extends CacheHandler implements MapTileFacto
         getList.put(prefix + ROOT_DIR_PROPERTY, PropUtils.unnull(rootDirProperty));
         getList.put(prefix + FILE_EXT_PROPERTY, PropUtils.unnull(getFileExt()));
         getList.put(prefix + CACHE_SIZE_PROPERTY, Integer.toString(getCacheSize()));
+        getCacheProperties(prefix, getList);
         getList.put(prefix + MTCTRANSFORM_PROPERTY, mtcTransform.getClass().toString());
         if (emptyTileHandler != null) {
             getList.put(prefix + EMPTY_TILE_HANDLER_PROPERTY, emptyTileHandler.getClass().toString());
@@ -926,6 +1208,8 @@ public class StandardMapTileFactory extends CacheHandler implements MapTileFacto
         }
 
         getList.put(prefix + ZOOM_LEVEL_TILE_SIZE_PROPERTY, Integer.toString(zoomLevelTileSize));
+        getList.put(prefix + ASYNC_LOADING_PROPERTY, Boolean.toString(asyncLoading));
+        getList.put(prefix + LOAD_THREADS_PROPERTY, Integer.toString(loadThreads));
         TileImagePreparer tip = getTileImagePreparer();
         if (!(tip instanceof StandardImagePreparer)) {
             getList.put(prefix + TILE_IMAGE_PREPARER_PROPERTY, tip.getClass().getName());
@@ -942,7 +1226,11 @@ public class StandardMapTileFactory extends CacheHandler implements MapTileFacto
         PropUtils.setI18NPropertyInfo(i18n, list, com.bbn.openmap.dataAccess.mapTile.StandardMapTileFactory.class, ROOT_DIR_PROPERTY, "Tile URL or Path", "Root directory containing image tiles, or URL (http://tileserver/{z}/{x}/{y}.png)", null);
         PropUtils.setI18NPropertyInfo(i18n, list, com.bbn.openmap.dataAccess.mapTile.StandardMapTileFactory.class, FILE_EXT_PROPERTY, "Image File Extension", "Extension of image files (.jpg, .png, etc)", null);
         PropUtils.setI18NPropertyInfo(i18n, list, com.bbn.openmap.dataAccess.mapTile.StandardMapTileFactory.class, CACHE_SIZE_PROPERTY, "Cache Size", "Number of tile images held in memory", null);
+        PropUtils.setI18NPropertyInfo(i18n, list, com.bbn.openmap.dataAccess.mapTile.StandardMapTileFactory.class, CACHE_MEMORY_PROPERTY, "Cache Memory", "Maximum memory used by tile images, in megabytes (0 for no limit)", null);
+        PropUtils.setI18NPropertyInfo(i18n, list, com.bbn.openmap.dataAccess.mapTile.StandardMapTileFactory.class, CACHE_POLICY_PROPERTY, "Cache Policy", "How tiles are dropped from the cache (LRU, LFU, TinyLFU)", null);
         PropUtils.setI18NPropertyInfo(i18n, list, com.bbn.openmap.dataAccess.mapTile.StandardMapTileFactory.class, ZOOM_LEVEL_TILE_SIZE_PROPERTY, "Zoom Level Tile Size", "The maximum pixel size of a tile before switching to a higher zoom level (350 is default)", null);
+        PropUtils.setI18NPropertyInfo(i18n, list, com.bbn.openmap.dataAccess.mapTile.StandardMapTileFactory.class, ASYNC_LOADING_PROPERTY, "Load Tiles in Background", "Load missing tiles in several threads, center of the map first", "com.bbn.openmap.util.propertyEditor.YesNoPropertyEditor");
+        PropUtils.setI18NPropertyInfo(i18n, list, com.bbn.openmap.dataAccess.mapTile.StandardMapTileFactory.class, LOAD_THREADS_PROPERTY, "Load Threads", "Number of threads loading tiles in the background (4 is default)", null);
         return list;
     }
     
@@ -1010,15 +1298,55 @@ public class StandardMapTileFactory extends CacheHandler implements MapTileFacto
         }
 
         super.resetCache(PropUtils.intFromProperties(setList, prefix + CACHE_SIZE_PROPERTY, getCacheSize()));
+        setCacheProperties(prefix, setList);
 
         zoomLevelTileSize = PropUtils.intFromProperties(setList, prefix
                 + ZOOM_LEVEL_TILE_SIZE_PROPERTY, zoomLevelTileSize);
+        asyncLoading = PropUtils.booleanFromProperties(setList, prefix + ASYNC_LOADING_PROPERTY, asyncLoading);
+        setLoadThreads(PropUtils.intFromProperties(setList, prefix + LOAD_THREADS_PROPERTY, loadThreads));
     }
 
     public void setPropertyPrefix(String prefix) {
         this.prefix = prefix;
     }
 
+    /**
+     * @return true if tiles are being loaded by a thread pool.
+     */
+    public boolean isAsyncLoading() {
+        return asyncLoading;
+    }
+
+    /**
+     * Set whether tiles missing from the cache should be loaded by a pool of
+     * threads, closest to the middle of the map first, instead of one at a
+     * time.
+     */
+    public void setAsyncLoading(boolean asyncLoading) {
+        this.asyncLoading = asyncLoading;
+    }
+
+    public int getLoadThreads() {
+        return loadThreads;
+    }
+
+    /**
+     * Set the number of threads used to load tiles in async mode.
+     */
+    public synchronized void setLoadThreads(int loadThreads) {
+        this.loadThreads = loadThreads;
+        if (loadExecutor != null) {
+            int numThreads = Math.max(1, loadThreads);
+            if (numThreads > loadExecutor.getMaximumPoolSize()) {
+                loadExecutor.setMaximumPoolSize(numThreads);
+                loadExecutor.setCorePoolSize(numThreads);
+            } else {
+                loadExecutor.setCorePoolSize(numThreads);
+                loadExecutor.setMaximumPoolSize(numThreads);
+            }
+        }
+    }
+
     public String getRootDir() {
         return rootDir;
     }
@@ -24,12 +24,14 @@
 
 package com.bbn.openmap.dataAccess.mapTile;
 
+import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.ResultSet;
-import java.sql.Statement;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 
 import javax.swing.ImageIcon;
@@ -63,6 +65,9 @@ import com.bbn.openmap.util.cacheHandler.CacheObject;
  *
  * </pre>
  *
+ * Tiles are read through an MBTilesTileStore, which keeps its database connections in a pool. The tiles for a screen
+ * that aren't in the cache are fetched with one query before they're loaded.
+ *
  * @author dietrick
  */
 public class TileMillMapTileFactory
@@ -74,6 +79,14 @@ public class TileMillMapTileFactory
      * Test class to use for existence of JDBC drivers.
      */
     protected String testClass = DEFAULT_TEST_CLASS;
+    /**
+     * The store for reading tiles, created from the rootDir.
+     */
+    protected MBTilesTileStore tileStore;
+    /**
+     * Tile bytes fetched for the current screen, by cache key.
+     */
+    protected ConcurrentHashMap<String, byte[]> prefetched = new ConcurrentHashMap<String, byte[]>();
 
     public TileMillMapTileFactory() {
         this(null);
@@ -85,34 +98,72 @@ public class TileMillMapTileFactory
         verbose = logger.isLoggable(Level.FINE);
     }
 
+    /**
+     * Get the MBTilesTileStore for the rootDir, creating it the first time.
+     * 
+     * @return MBTilesTileStore, null if the JDBC driver isn't available.
+     */
+    protected synchronized MBTilesTileStore getTileStore() {
+        if (tileStore == null && rootDir != null) {
+            try {
+                tileStore = new MBTilesTileStore(rootDir, testClass);
+            } catch (IOException ioe) {
+                logger.warning("can't locate sqlite JDBC components");
+            }
+        }
+        return tileStore;
+    }
+
+    /**
+     * Fetch all of the tiles for the screen with one query, so load() doesn't
+     * have to go to the database for each one.
+     */
+    protected void prepareToLoad(List<LoadObj> reloads, int zoomLevel) {
+        prefetched.clear();
+        MBTilesTileStore store = getTileStore();
+        if (store == null || reloads.size() < 2) {
+            return;
+        }
+
+        Rectangle bounds = null;
+        for (LoadObj reload : reloads) {
+            if (bounds == null) {
+                bounds = new Rectangle(reload.x, reload.y, 1, 1);
+            } else {
+                bounds.add(new Rectangle(reload.x, reload.y, 1, 1));
+            }
+        }
+
+        try {
+            Map<Point, byte[]> tiles = store.getTiles(zoomLevel, bounds);
+            for (LoadObj reload : reloads) {
+                byte[] imageBytes = tiles.get(new Point(reload.x, reload.y));
+                if (imageBytes != null) {
+                    prefetched.put(reload.imagePath, imageBytes);
+                }
+            }
+        } catch (IOException ioe) {
+            logger.warning("something went wrong fetching images from database: " + ioe.getMessage());
+        }
+    }
+
     /**
      * Fetches a new tile from the database.
      */
     public CacheObject load(Object key, int x, int y, int zoomLevel, Projection proj) {
 
-        try {
-            Class.forName(testClass);
-        } catch (Exception e) {
-            logger.warning("can't locate sqlite JDBC components");
+        MBTilesTileStore store = getTileStore();
+        if (store == null) {
             return null;
         }
 
         try {
-            Connection conn =
-                DriverManager.getConnection(rootDir);
-            Statement stat = conn.createStatement();
-
-            //"select zoom_level, tile_column, tile_row, tile_data from map, images where map.tile_id = images.tile_id";
-            StringBuilder statement = new StringBuilder("select tile_data from map, images where");
-            statement.append(" zoom_level = ").append(zoomLevel);
-            statement.append(" and tile_column = ").append(x);
-            statement.append(" and tile_row = ").append(Math.pow(2, zoomLevel) - y - 1);
-            statement.append(" and map.tile_id = images.tile_id;");
-
-            ResultSet rs = stat.executeQuery(statement.toString());
-            while (rs.next()) {
-                byte[] imageBytes = rs.getBytes("tile_data");
+            byte[] imageBytes = prefetched.remove(key);
+            if (imageBytes == null) {
+                imageBytes = store.getTile(x, y, zoomLevel);
+            }
 
+            if (imageBytes != null) {
                 ImageIcon ii = new ImageIcon(imageBytes);
 
                 BufferedImage bi = BufferedImageHelper.getBufferedImage(ii.getImage(), 0, 0, -1, -1);
@@ -122,10 +173,7 @@ public class TileMillMapTileFactory
                 if (raster != null) {
                     return new CacheObject((String) key, raster);
                 }
-
             }
-            rs.close();
-            conn.close();
         } catch (Exception e) {
             logger.warning("something went wrong fetching image from database: " + e.getMessage());
             e.printStackTrace();
@@ -157,5 +205,8 @@ public class TileMillMapTileFactory
         prefix = PropUtils.getScopedPropertyPrefix(prefix);
 
         testClass = setList.getProperty(prefix + TEST_CLASS_PROPERTY, testClass);
+        synchronized (this) {
+            tileStore = null;
+        }
     }
 }
\ No newline at end of file
@@ -34,6 +34,7 @@ import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Hashtable;
 import java.util.List;
 import java.util.Map;
@@ -46,6 +47,7 @@ import com.bbn.openmap.Environment;
 import com.bbn.openmap.Layer;
 import com.bbn.openmap.MapBean;
 import com.bbn.openmap.PropertyConsumer;
+import com.bbn.openmap.layer.OMGraphicHandlerLayer;
 import com.bbn.openmap.plugin.PlugIn;
 import com.bbn.openmap.plugin.PlugInLayer;
 import com.bbn.openmap.proj.GeoProj;
@@ -341,6 +343,28 @@ public class ImageServer
      * @return a byte[] representing the formatted image.
      */
     public byte[] createImage(Projection proj, int scaledWidth, int scaledHeight, List<String> showLayers, Paint background) {
+        return createImage(proj, scaledWidth, scaledHeight, showLayers, background, getFormatter());
+    }
+
+    /**
+     * Create an image with a particular ImageFormatter, instead of the one set
+     * as the default in this ImageServer. Handy for servers handling requests
+     * for different image formats at the same time.
+     * 
+     * @param proj projection of map.
+     * @param scaledWidth scaled pixel width of final image. If you don't want
+     *        it scaled, use -1.
+     * @param scaledHeight scaled pixel height of final image. If you don't want
+     *        it scaled, use -1.
+     * @param showLayers Layer marker names reflecting the layers that should be
+     *        part of this image.
+     * @param background the Paint to be used for the background of this image.
+     * @param formatter the ImageFormatter to use for the image, a copy of it is
+     *        made.
+     * @return a byte[] representing the formatted image.
+     */
+    public byte[] createImage(Projection proj, int scaledWidth, int scaledHeight, List<String> showLayers, Paint background,
+                              ImageFormatter formatter) {
 
         logger.fine("using the new ProjectionPainter interface!  createImage with layer string array.");
 
@@ -443,6 +467,36 @@ public class ImageServer
         return formattedImage;
     }
 
+    /**
+     * Check if the layers of this ImageServer can render images for several
+     * requests at the same time.
+     * 
+     * @return true if all of the layers can render concurrently.
+     * @see com.bbn.openmap.layer.OMGraphicHandlerLayer#ConcurrentRenderingProperty
+     */
+    public boolean isConcurrentRendering() {
+        Layer[] layers = getLayers();
+        return layers == null || isConcurrentRendering(Arrays.asList(layers));
+    }
+
+    /**
+     * Check if a list of layers can render images for several requests at the
+     * same time.
+     * 
+     * @param layers the layers to check.
+     * @return true if all of the layers are OMGraphicHandlerLayers with
+     *         concurrent rendering turned on.
+     */
+    public static boolean isConcurrentRendering(List<Layer> layers) {
+        for (Layer layer : layers) {
+            if (!(layer instanceof OMGraphicHandlerLayer)
+                    || !((OMGraphicHandlerLayer) layer).isConcurrentRendering()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * This method returns a integer representing a mask created from the
      * visibility settings of the layers.
@@ -1033,17 +1087,7 @@ public class ImageServer
         String appendix = "";
 
         if (checkFormatterForExtension) {
-            ImageFormatter formatter = getFormatter();
-            if (formatter == null) {
-                appendix = ".jpg";
-            } else {
-                String fileType = formatter.getFormatLabel();
-                if (fileType.equals(WMTConstants.IMAGEFORMAT_JPEG)) {
-                    appendix = ".jpg";
-                } else {
-                    appendix = "." + fileType.toLowerCase();
-                }
-            }
+            appendix = getImageFileExtension();
 
             // If the file output path already ends properly, don't bother
             // changing
@@ -1064,6 +1108,26 @@ public class ImageServer
         return finalOutputPath;
     }
 
+    /**
+     * Get the file extension used for image files written with the current
+     * formatter, with the leading period.
+     * 
+     * @return .jpg if the formatter isn't set or is a JPEG formatter, the
+     *         lower case format label otherwise.
+     */
+    public String getImageFileExtension() {
+        ImageFormatter formatter = getFormatter();
+        if (formatter == null) {
+            return ".jpg";
+        }
+
+        String fileType = formatter.getFormatLabel();
+        if (fileType.equals(WMTConstants.IMAGEFORMAT_JPEG)) {
+            return ".jpg";
+        }
+        return "." + fileType.toLowerCase();
+    }
+
     /**
      * For convenience, to create an image file based on the contents of a
      * properties file (like an openmap.properties file).
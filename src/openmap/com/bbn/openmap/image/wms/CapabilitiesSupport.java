@@ -325,6 +325,13 @@ public class CapabilitiesSupport {
         wmslayers.add(wmsLayer);
     }
 
+    /**
+     * Remove all of the layers added to the capabilities.
+     */
+    public void clearLayers() {
+        wmslayers.clear();
+    }
+
     public void setLayersTitle(String title) {
         this.layersTitle = title;
     }
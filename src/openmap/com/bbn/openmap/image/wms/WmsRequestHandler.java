@@ -44,6 +44,14 @@ import com.bbn.openmap.util.http.IHttpResponse;
  *          /wms/WmsRequestHandler.java,v 1.2 2006/03/27 10:51:13 tomrak Exp $
  * @author Adam Dawidowski
  * @author wachu
+ * <P>
+ * A WmsRequestHandler can be kept and reused for many requests, from several
+ * threads at the same time. GetMap requests are rendered in parallel when all
+ * of the layers support concurrent rendering and none of them are IWmsLayers
+ * that hold per-request state. All other requests are handled one at a time.
+ * The capabilities document is created the first time it is asked for, and
+ * then kept for each WMS version until the layers change.
+ * 
  * @author pitek
  */
 public class WmsRequestHandler extends ImageServer implements ImageServerConstants {
@@ -56,6 +64,9 @@ public class WmsRequestHandler extends ImageServer implements ImageServerConstan
     private WmsLayerFactory wmsLayerFactory;
     private Map<String, ImageFormatter> imageFormatterByContentType = new HashMap<String, ImageFormatter>();
     private FeatureInfoResponse featureInfoResponse;
+    private Map<Version, String> capabilitiesXmlByVersion = new HashMap<Version, String>();
+    private boolean capabilitiesLayersAdded = false;
+    private volatile boolean statelessWmsLayers = false;
     public static final String WMSPrefix = CapabilitiesSupport.WMSPrefix;
     private static final String FeatureInfoResponseClassNameProperty = "featureInfoResponse.class";
 
@@ -115,13 +126,32 @@ public class WmsRequestHandler extends ImageServer implements ImageServerConstan
      * For Layers that already implement IWmsLayer, the instances will be the
      * same.
      */
-    protected void createWmsLayers() {
+    protected synchronized void createWmsLayers() {
         wmsLayerByName.clear();
         wmsLayers.clear();
         for (int i = 0; i < layers.length; i++) {
             Layer layer = layers[i];
             createWmsLayers(wmsLayerFactory.createWmsLayer(layer));
         }
+
+        // DefaultLayerAdapters don't keep anything from the request
+        // parameters, so the layers can be shared by concurrent GetMap
+        // requests.
+        boolean stateless = true;
+        for (IWmsLayer wmsLayer : wmsLayers) {
+            if (!(wmsLayer instanceof DefaultLayerAdapter)) {
+                stateless = false;
+                break;
+            }
+        }
+        statelessWmsLayers = stateless;
+
+        // Have the next GetCapabilities request add the new layers.
+        if (capabilities != null) {
+            capabilities.clearLayers();
+        }
+        capabilitiesLayersAdded = false;
+        clearCapabilitiesCache();
     }
 
     private void createWmsLayers(IWmsLayer layer) {
@@ -205,21 +235,16 @@ public class WmsRequestHandler extends ImageServer implements ImageServerConstan
             if (requestType == null) {
                 throw new WMSException("Missing REQUEST type parameter");
             }
-            setRequestParametersOnLayers(requestProperties);
-            if (requestType.equalsIgnoreCase(GETMAP)) {
-                Debug.message("ms", "OGCMRH: GetMap request...");
+            if (requestType.equalsIgnoreCase(GETMAP) && isConcurrentRequests()) {
+                Debug.message("ms", "OGCMRH: GetMap request (concurrent)...");
                 handleGetMapRequest(requestProperties, httpResponse);
-            } else if (requestType.equals(GETCAPABILITIES)) {
-                Debug.message("ms", "OGCMRH: GetCapabilities request...");
-                handleGetCapabilitiesRequest(requestProperties, httpResponse);
-            } else if (requestType.equalsIgnoreCase(GETFEATUREINFO)) {
-                Debug.message("ms", "OGCMRH: GetFeatureInfo request...");
-                handleGetFeatureInfoRequest(requestProperties, httpResponse);
-            } else if (requestType.equalsIgnoreCase(GETLEGENDGRAPHIC)) {
-                Debug.message("ms", "OGCMRH: GetFeatureInfo request...");
-                handleGetLegendGraphicRequest(requestProperties, httpResponse);
             } else {
-                throw new WMSException("Invalid REQUEST parameter: " + requestType, WMSException.OPERATIONNOTSUPPORTED);
+                // The request parameters and styles are set on the shared
+                // layers, so only one request can use them at a time.
+                synchronized (this) {
+                    setRequestParametersOnLayers(requestProperties);
+                    handleRequest(requestType, requestProperties, httpResponse);
+                }
             }
         } catch (WMSException e) {
             Debug.output("WMSException(" + e.getCode() + "): " + e.getMessage());
@@ -227,6 +252,50 @@ public class WmsRequestHandler extends ImageServer implements ImageServerConstan
         }
     }
 
+    /**
+     * Hand the request off to the method for its type. Called while holding
+     * the lock on this WmsRequestHandler, after the request parameters have
+     * been set on the layers.
+     * 
+     * @param requestType the REQUEST parameter
+     * @param requestProperties
+     * @param httpResponse output
+     * @throws IOException
+     * @throws MapRequestFormatException
+     * @throws WMSException
+     */
+    protected void handleRequest(String requestType, Properties requestProperties,
+                                 IHttpResponse httpResponse)
+            throws IOException, MapRequestFormatException, WMSException {
+        if (requestType.equalsIgnoreCase(GETMAP)) {
+            Debug.message("ms", "OGCMRH: GetMap request...");
+            handleGetMapRequest(requestProperties, httpResponse);
+        } else if (requestType.equals(GETCAPABILITIES)) {
+            Debug.message("ms", "OGCMRH: GetCapabilities request...");
+            handleGetCapabilitiesRequest(requestProperties, httpResponse);
+        } else if (requestType.equalsIgnoreCase(GETFEATUREINFO)) {
+            Debug.message("ms", "OGCMRH: GetFeatureInfo request...");
+            handleGetFeatureInfoRequest(requestProperties, httpResponse);
+        } else if (requestType.equalsIgnoreCase(GETLEGENDGRAPHIC)) {
+            Debug.message("ms", "OGCMRH: GetFeatureInfo request...");
+            handleGetLegendGraphicRequest(requestProperties, httpResponse);
+        } else {
+            throw new WMSException("Invalid REQUEST parameter: " + requestType, WMSException.OPERATIONNOTSUPPORTED);
+        }
+    }
+
+    /**
+     * Check if GetMap requests can be handled without holding the lock on
+     * this WmsRequestHandler. That is the case when all of the layers can
+     * render concurrently, and none of the IWmsLayers keep request parameters
+     * or styles between calls.
+     * 
+     * @return true if GetMap requests can run at the same time.
+     */
+    public boolean isConcurrentRequests() {
+        return statelessWmsLayers && isConcurrentRendering();
+    }
+
     /**
      * @param requestProperties
      * @param httpResponse output
@@ -236,11 +305,12 @@ public class WmsRequestHandler extends ImageServer implements ImageServerConstan
      */
     public void handleGetMapRequest(Properties requestProperties, IHttpResponse httpResponse)
             throws IOException, MapRequestFormatException, WMSException {
-        byte[] image = handleGetMapRequest(requestProperties);
+        GetMapRequestParameters parameters = new GetMapRequestParameters();
+        byte[] image = handleGetMapRequest(requestProperties, parameters);
         if (Debug.debugging("imageserver")) {
             Debug.output("OGCMRH: have completed image, size " + image.length);
         }
-        String contentType = getFormatter().getContentType();
+        String contentType = parameters.formatter.getContentType();
         if (contentType == null) {
             contentType = HttpConnection.CONTENT_PLAIN;
         }
@@ -256,12 +326,28 @@ public class WmsRequestHandler extends ImageServer implements ImageServerConstan
      */
     public byte[] handleGetMapRequest(Properties requestProperties)
             throws IOException, MapRequestFormatException, WMSException {
-        GetMapRequestParameters parameters = new GetMapRequestParameters();
+        return handleGetMapRequest(requestProperties, new GetMapRequestParameters());
+    }
+
+    /**
+     * Create the image for a GetMap request. The formatter for the request is
+     * kept in the parameters rather than set on the handler, so requests for
+     * different formats can be handled at the same time.
+     * 
+     * @param requestProperties
+     * @param parameters filled in from the request properties.
+     * @return byte array for image, formatted
+     * @throws IOException
+     * @throws MapRequestFormatException
+     * @throws WMSException
+     */
+    protected byte[] handleGetMapRequest(Properties requestProperties,
+                                         GetMapRequestParameters parameters)
+            throws IOException, MapRequestFormatException, WMSException {
 
         checkVersion(requestProperties, parameters);
         checkExceptions(requestProperties, parameters);
         checkFormat(requestProperties, parameters);
-        setFormatter(parameters.formatter);
 
         checkBackground(requestProperties, parameters);
         Paint bgPaint = parameters.background;
@@ -275,25 +361,39 @@ public class WmsRequestHandler extends ImageServer implements ImageServerConstan
 
         Debug.message("ms", "handleGetMapRequest: createImage layers:"
                 + parameters.topLayerNames.toString());
-        return createImage(projection, parameters.width, parameters.height, parameters.topLayerNames, bgPaint);
+        return createImage(projection, parameters.width, parameters.height, parameters.topLayerNames, bgPaint, parameters.formatter);
     }
 
     public byte[] handleGetLegendGraphicRequest(Properties requestProperties)
             throws IOException, MapRequestFormatException, WMSException {
-        GetLegendGraphicRequestParameters parameters = new GetLegendGraphicRequestParameters();
+        return handleGetLegendGraphicRequest(requestProperties, new GetLegendGraphicRequestParameters());
+    }
+
+    /**
+     * Create the legend image for a GetLegendGraphic request.
+     * 
+     * @param requestProperties
+     * @param parameters filled in from the request properties.
+     * @return byte array for image, formatted
+     * @throws IOException
+     * @throws MapRequestFormatException
+     * @throws WMSException
+     */
+    protected byte[] handleGetLegendGraphicRequest(Properties requestProperties,
+                                                   GetLegendGraphicRequestParameters parameters)
+            throws IOException, MapRequestFormatException, WMSException {
 
         checkVersion(requestProperties, parameters);
         checkExceptions(requestProperties, parameters);
         checkWidthAndHeight(requestProperties, parameters);
         checkFormat(requestProperties, parameters);
-        setFormatter(parameters.getFormatter());
         checkLayerAndStyle(requestProperties, parameters);
 
         Debug.message("ms", "handleGetLegendGraphic: createImage layer:" + parameters.layerName);
 
         IWmsLayer layer = wmsLayerByName.get(parameters.layerName);
 
-        ImageFormatter imageFormatter = formatter.makeClone();
+        ImageFormatter imageFormatter = parameters.getFormatter().makeClone();
         java.awt.Graphics graphics = createGraphics(imageFormatter, parameters.getWidth(), parameters.getHeight());
 
         if (graphics == null) {
@@ -337,6 +437,15 @@ public class WmsRequestHandler extends ImageServer implements ImageServerConstan
         return capabilities;
     }
 
+    /**
+     * Forget the capabilities documents created so far, so they get created
+     * again for the next GetCapabilities request. Call this after modifying the
+     * {@link CapabilitiesSupport} object.
+     */
+    public synchronized void clearCapabilitiesCache() {
+        capabilitiesXmlByVersion.clear();
+    }
+
     /**
      * @param requestProperties
      * @return String describing capabilities
@@ -344,7 +453,7 @@ public class WmsRequestHandler extends ImageServer implements ImageServerConstan
      * @throws MapRequestFormatException
      * @throws WMSException
      */
-    public String handleGetCapabilitiesRequest(Properties requestProperties)
+    public synchronized String handleGetCapabilitiesRequest(Properties requestProperties)
             throws IOException, MapRequestFormatException, WMSException {
 
         GetCapabilitiesRequestParameters parameters = new GetCapabilitiesRequestParameters();
@@ -354,19 +463,29 @@ public class WmsRequestHandler extends ImageServer implements ImageServerConstan
             throw new WMSException("Invalid FORMAT parameter.", WMSException.INVALIDFORMAT);
         }
 
-        Layer[] layers = getLayers();
-        for (int i = 0; i < layers.length; i++) {
-            if (layers[i].getPropertyPrefix() != null) {
-                getCapabilities().addLayer(wmsLayerFactory.createWmsLayer(layers[i]));
+        String xml = capabilitiesXmlByVersion.get(parameters.getVersion());
+        if (xml != null) {
+            return xml;
+        }
+
+        if (!capabilitiesLayersAdded) {
+            Layer[] layers = getLayers();
+            for (int i = 0; i < layers.length; i++) {
+                if (layers[i].getPropertyPrefix() != null) {
+                    getCapabilities().addLayer(wmsLayerFactory.createWmsLayer(layers[i]));
+                }
             }
+            capabilitiesLayersAdded = true;
         }
 
         try {
-            return getCapabilities().generateXMLString(parameters.getVersion());
+            xml = getCapabilities().generateXMLString(parameters.getVersion());
         } catch (Exception e) {
             e.printStackTrace();
             throw new WMSException("Unable to compile a response due to server misconfiguration.", WMSException.INTERNALERROR);
         }
+        capabilitiesXmlByVersion.put(parameters.getVersion(), xml);
+        return xml;
     }
 
     /**
@@ -379,8 +498,9 @@ public class WmsRequestHandler extends ImageServer implements ImageServerConstan
     public void handleGetLegendGraphicRequest(Properties requestProperties,
                                               IHttpResponse httpResponse)
             throws IOException, MapRequestFormatException, WMSException {
-        byte[] image = handleGetLegendGraphicRequest(requestProperties);
-        String contentType = getFormatter().getContentType();
+        GetLegendGraphicRequestParameters parameters = new GetLegendGraphicRequestParameters();
+        byte[] image = handleGetLegendGraphicRequest(requestProperties, parameters);
+        String contentType = parameters.getFormatter().getContentType();
         httpResponse.writeHttpResponse(contentType, image);
     }
 
@@ -410,7 +530,6 @@ public class WmsRequestHandler extends ImageServer implements ImageServerConstan
         checkVersion(requestProperties, parameters);
         checkExceptions(requestProperties, parameters);
         checkFormat(requestProperties, parameters);
-        setFormatter(parameters.formatter);
         checkBackground(requestProperties, parameters);
         checkProjectionType(requestProperties, parameters);
         checkWidthAndHeight(requestProperties, parameters);
@@ -47,8 +47,28 @@ public class BinaryFile {
     private static int openCount = 0;
     private static int classCount = 0;
 
+    /**
+     * Property that can be set to true to have local files accessed through
+     * memory-mapped buffers instead of a RandomAccessFile
+     * (openmap.MemoryMapFiles). Can be set in the openmap.properties file or
+     * as a System property.
+     */
+    public final static String MemoryMapProperty = Environment.OpenMapPrefix + ".MemoryMapFiles";
+
+    /**
+     * Programmatic setting for memory-mapping, overrides the
+     * MemoryMapProperty if set.
+     */
+    private static Boolean useMemoryMap = null;
+
     private InputReader inputReader = null;
 
+    /**
+     * Set if the inputReader is a MappedByteBufferInputReader, so primitive
+     * reads can go straight to the mapped buffer.
+     */
+    private MappedByteBufferInputReader mappedReader = null;
+
     /**
      * The byte order of the underlying file. (<code>true</code>== MSB-First ==
      * big-endian)
@@ -66,7 +86,7 @@ public class BinaryFile {
      * @see java.io.RandomAccessFile
      */
     public BinaryFile(File f) throws IOException {
-        inputReader = new FileInputReader(f);
+        setInputReader(createFileInputReader(f));
         classCount++;
         openCount++;
     }
@@ -77,7 +97,7 @@ public class BinaryFile {
      * @param inputReader the input reader to be opened for reading
      */
     private BinaryFile(InputReader inputReader) {
-        this.inputReader = inputReader;
+        setInputReader(inputReader);
         classCount++;
         openCount++;
     }
@@ -117,7 +137,7 @@ public class BinaryFile {
             if (file != null && file.exists()) {
                 // If the string represents a file, then we want to
                 // use the RandomAccessFile aspect of the BinaryFile.
-                setInputReader(new FileInputReader(file));
+                setInputReader(createFileInputReader(file));
             } else {
                 // see JNLP deploy tip here
                 // http://java.sun.com/javase/6/docs/technotes/guides/jweb/deployment_advice.html#ClassLoader_and_Resources
@@ -162,7 +182,7 @@ public class BinaryFile {
                         if (file != null && file.exists()) {
                             // It's still a file, available directly.
                             // Access it with the RandomAccessFile
-                            setInputReader(new FileInputReader(file));
+                            setInputReader(createFileInputReader(file));
                         } else {
                             // Need to get it as a resource. Needs
                             // special handling if it's coming in a jar
@@ -402,6 +422,51 @@ public class BinaryFile {
             Debug.output("Setting inputReader");
         }
         inputReader = reader;
+        mappedReader = (reader instanceof MappedByteBufferInputReader) ? (MappedByteBufferInputReader) reader
+                : null;
+    }
+
+    /**
+     * Set whether local files should be memory-mapped, overriding the
+     * MemoryMapProperty. Affects BinaryFiles created after this call.
+     */
+    public static void setUseMemoryMap(boolean value) {
+        useMemoryMap = Boolean.valueOf(value);
+    }
+
+    /**
+     * @return true if local files are being memory-mapped.
+     */
+    public static boolean isUseMemoryMap() {
+        if (useMemoryMap != null) {
+            return useMemoryMap.booleanValue();
+        }
+        return Environment.getBoolean(MemoryMapProperty, Boolean.getBoolean(MemoryMapProperty));
+    }
+
+    /**
+     * Create the InputReader for a local file, a MappedByteBufferInputReader
+     * if memory-mapping is enabled, a FileInputReader otherwise. If the file
+     * can't be mapped, a FileInputReader is used.
+     */
+    protected static InputReader createFileInputReader(File f) throws IOException {
+        if (isUseMemoryMap()) {
+            try {
+                return new MappedByteBufferInputReader(f);
+            } catch (IOException ioe) {
+                if (Debug.debugging("binaryfile")) {
+                    Debug.output("BinaryFile: can't map " + f + ", " + ioe.getMessage());
+                }
+            }
+        }
+        return new FileInputReader(f);
+    }
+
+    /**
+     * @return true if the file is being read from a memory-mapped buffer.
+     */
+    protected boolean isMapped() {
+        return mappedReader != null;
     }
 
     /**
@@ -496,6 +561,7 @@ public class BinaryFile {
     public void dispose() throws IOException {
         close();
         inputReader = null;
+        mappedReader = null;
     }
 
     /**
@@ -598,6 +664,9 @@ public class BinaryFile {
      */
     public short readShort() throws EOFException, FormatException {
         // MSBFirst must be set when we are called
+        if (mappedReader != null) {
+            return mappedReader.readShort(MSBFirst);
+        }
         return MoreMath.BuildShort(readBytes(2, false), MSBFirst);
     }
 
@@ -642,6 +711,27 @@ public class BinaryFile {
         return MoreMath.signedToInt(readShort());
     }
 
+    /**
+     * Reads an array of shorts.
+     * 
+     * @param vec the array to write the shorts into
+     * @param offset the first array index to write to
+     * @param len the number of shorts to read
+     * @exception EOFException there were fewer bytes than needed in the file
+     * @exception FormatException rethrow of IOExceptions encountered while
+     *            reading the bytes for the array
+     */
+    public void readShortArray(short vec[], int offset, int len)
+            throws EOFException, FormatException {
+        if (mappedReader != null) {
+            mappedReader.readShortArray(vec, offset, len, MSBFirst);
+            return;
+        }
+        for (int i = 0; i < len; i++) {
+            vec[offset++] = readShort();
+        }
+    }
+
     /**
      * Reads and returns a long
      * 
@@ -654,11 +744,18 @@ public class BinaryFile {
      */
     public int readInteger() throws EOFException, FormatException {
         // MSBFirst must be set when we are called
+        if (mappedReader != null) {
+            return mappedReader.readInteger(MSBFirst);
+        }
         return MoreMath.BuildInteger(readBytes(4, false), MSBFirst);
     }
 
     public void readIntegerArray(int vec[], int offset, int len)
             throws EOFException, FormatException {
+        if (mappedReader != null) {
+            mappedReader.readIntegerArray(vec, offset, len, MSBFirst);
+            return;
+        }
         for (int i = 0; i < len; i++) {
             vec[offset++] = readInteger();
         }
@@ -675,6 +772,9 @@ public class BinaryFile {
      * @see #read(byte[])
      */
     public long readLong() throws EOFException, FormatException {
+        if (mappedReader != null) {
+            return mappedReader.readLong(MSBFirst);
+        }
         return MoreMath.BuildLong(readBytes(8, false), MSBFirst);
     }
 
@@ -694,6 +794,10 @@ public class BinaryFile {
 
     public void readFloatArray(float vec[], int offset, int len)
             throws EOFException, FormatException {
+        if (mappedReader != null) {
+            mappedReader.readFloatArray(vec, offset, len, MSBFirst);
+            return;
+        }
         for (int i = 0; i < len; i++) {
             vec[offset++] = readFloat();
         }
@@ -0,0 +1,371 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.io;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.bbn.openmap.util.Debug;
+
+/**
+ * An InputReader for local files that maps the file into memory instead of
+ * reading it through a RandomAccessFile, so reads don't need a system call or
+ * a buffer refill. Files larger than a single MappedByteBuffer can handle (2GB)
+ * are mapped in segments. Each segment overlaps the next one by OVERLAP bytes,
+ * so a primitive value never has to be pieced together from two segments.
+ * <p>
+ * 
+ * The file channel is closed as soon as the segments are mapped, so this
+ * reader doesn't hold on to a file descriptor. Calling close() doesn't drop
+ * the mappings, since BinaryFile users tend to close and reopen files between
+ * uses. The memory is released when the reader is garbage collected.
+ * <p>
+ * 
+ * BinaryFile uses this reader for local files when the
+ * openmap.MemoryMapFiles property is set to true.
+ */
+public class MappedByteBufferInputReader implements InputReader {
+
+    /** The size of each mapped segment, 1GB. */
+    public final static long SEGMENT_SIZE = 1L << 30;
+    /** How far each segment extends into the next. */
+    public final static int OVERLAP = 1 << 16;
+
+    protected String name;
+    protected String absolutePath;
+    protected long length;
+    protected long position = 0;
+    /**
+     * The mapped segments, mapped as they are needed.
+     */
+    protected MappedByteBuffer[] segments;
+
+    /**
+     * Create a MappedByteBufferInputReader for a file.
+     * 
+     * @param f the file to map.
+     * @throws IOException if the file can't be read.
+     */
+    public MappedByteBufferInputReader(File f) throws IOException {
+        if (Debug.debugging("binaryfile")) {
+            Debug.output("MappedByteBufferInputReader created from " + f.getAbsolutePath());
+        }
+        name = f.getName();
+        absolutePath = f.getAbsolutePath();
+        length = f.length();
+        segments = new MappedByteBuffer[(int) ((length + SEGMENT_SIZE - 1) / SEGMENT_SIZE)];
+        if (length > 0) {
+            // Make sure the file can be mapped now, rather than later.
+            segment(0);
+        }
+    }
+
+    /**
+     * Create a MappedByteBufferInputReader for a file path.
+     */
+    public MappedByteBufferInputReader(String path) throws IOException {
+        this(new File(path));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the absolute path of the file.
+     */
+    public String getAbsolutePath() {
+        return absolutePath;
+    }
+
+    /**
+     * Get the segment covering the given index, mapping it if necessary.
+     */
+    protected MappedByteBuffer segment(int index) throws IOException {
+        MappedByteBuffer seg = segments[index];
+        if (seg == null) {
+            long start = index * SEGMENT_SIZE;
+            long size = Math.min(length - start, SEGMENT_SIZE + OVERLAP);
+            RandomAccessFile raf = null;
+            try {
+                raf = new RandomAccessFile(absolutePath, "r");
+            } catch (IOException ioe) {
+                // Might be out of file descriptors, ask for some back.
+                BinaryFile.closeClosable();
+                raf = new RandomAccessFile(absolutePath, "r");
+            }
+            try {
+                seg = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, start, size);
+            } finally {
+                raf.close();
+            }
+            segments[index] = seg;
+        }
+        return seg;
+    }
+
+    /**
+     * Get a buffer view positioned at the current file pointer, with the
+     * requested byte order. The view covers at least the rest of the current
+     * segment, plus the overlap into the next one.
+     */
+    protected ByteBuffer view(boolean msbFirst) throws IOException {
+        int index = (int) (position / SEGMENT_SIZE);
+        ByteBuffer buf = segment(index).duplicate();
+        buf.position((int) (position - index * SEGMENT_SIZE));
+        buf.order(msbFirst ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+        return buf;
+    }
+
+    /**
+     * Make sure there are enough bytes left in the file for a read.
+     */
+    protected void check(long numBytes) throws EOFException {
+        if (position + numBytes > length) {
+            throw new EOFException("MappedByteBufferInputReader: trying to read " + numBytes
+                    + " bytes at " + position + " in file of " + length + " bytes");
+        }
+    }
+
+    public long skipBytes(long n) throws IOException {
+        long skip = Math.max(0, Math.min(n, length - position));
+        position += skip;
+        return skip;
+    }
+
+    public long getFilePointer() throws IOException {
+        return position;
+    }
+
+    public void seek(long pos) throws IOException {
+        position = pos;
+    }
+
+    public long length() throws IOException {
+        return length;
+    }
+
+    public long available() throws IOException {
+        return length - position;
+    }
+
+    /**
+     * Doesn't do anything, the file isn't open. The mappings are kept for
+     * when the file is read again.
+     */
+    public void close() throws IOException {
+    }
+
+    public int read() throws IOException {
+        if (position >= length) {
+            return -1;
+        }
+        int index = (int) (position / SEGMENT_SIZE);
+        int b = segment(index).get((int) (position - index * SEGMENT_SIZE)) & 0xff;
+        position++;
+        return b;
+    }
+
+    public int read(byte b[], int off, int len) throws IOException {
+        if (position >= length) {
+            return -1;
+        }
+        len = (int) Math.min(len, length - position);
+        int total = 0;
+        while (total < len) {
+            ByteBuffer buf = view(true);
+            int n = Math.min(len - total, buf.remaining());
+            buf.get(b, off + total, n);
+            total += n;
+            position += n;
+        }
+        return total;
+    }
+
+    public int read(byte b[]) throws IOException {
+        return read(b, 0, b.length);
+    }
+
+    public byte[] readBytes(int howmany, boolean allowless) throws EOFException, FormatException {
+        long left = length - position;
+        if (left < howmany) {
+            if (allowless) {
+                howmany = (int) Math.max(0, left);
+            } else if (left <= 0) {
+                throw new EOFException();
+            } else {
+                throw new FormatException("EOF while reading data");
+            }
+        }
+
+        byte[] ret = new byte[howmany];
+        try {
+            read(ret, 0, howmany);
+        } catch (IOException ioe) {
+            throw new FormatException("MappedByteBufferInputReader: readBytes IOException: "
+                    + ioe.getMessage());
+        }
+        return ret;
+    }
+
+    public short readShort(boolean msbFirst) throws EOFException, FormatException {
+        check(2);
+        try {
+            short s = view(msbFirst).getShort();
+            position += 2;
+            return s;
+        } catch (IOException ioe) {
+            throw new FormatException("MappedByteBufferInputReader: " + ioe.getMessage());
+        }
+    }
+
+    public int readInteger(boolean msbFirst) throws EOFException, FormatException {
+        check(4);
+        try {
+            int i = view(msbFirst).getInt();
+            position += 4;
+            return i;
+        } catch (IOException ioe) {
+            throw new FormatException("MappedByteBufferInputReader: " + ioe.getMessage());
+        }
+    }
+
+    public long readLong(boolean msbFirst) throws EOFException, FormatException {
+        check(8);
+        try {
+            long l = view(msbFirst).getLong();
+            position += 8;
+            return l;
+        } catch (IOException ioe) {
+            throw new FormatException("MappedByteBufferInputReader: " + ioe.getMessage());
+        }
+    }
+
+    public double readDouble(boolean msbFirst) throws EOFException, FormatException {
+        return Double.longBitsToDouble(readLong(msbFirst));
+    }
+
+    /**
+     * Read shorts straight from a ShortBuffer view of the mapped file.
+     */
+    public void readShortArray(short vec[], int offset, int len, boolean msbFirst)
+            throws EOFException, FormatException {
+        check(2L * len);
+        try {
+            while (len > 0) {
+                ByteBuffer buf = view(msbFirst);
+                int n = Math.min(len, buf.remaining() / 2);
+                buf.asShortBuffer().get(vec, offset, n);
+                offset += n;
+                len -= n;
+                position += 2L * n;
+            }
+        } catch (IOException ioe) {
+            throw new FormatException("MappedByteBufferInputReader: " + ioe.getMessage());
+        }
+    }
+
+    /**
+     * Read integers straight from an IntBuffer view of the mapped file.
+     */
+    public void readIntegerArray(int vec[], int offset, int len, boolean msbFirst)
+            throws EOFException, FormatException {
+        check(4L * len);
+        try {
+            while (len > 0) {
+                ByteBuffer buf = view(msbFirst);
+                int n = Math.min(len, buf.remaining() / 4);
+                buf.asIntBuffer().get(vec, offset, n);
+                offset += n;
+                len -= n;
+                position += 4L * n;
+            }
+        } catch (IOException ioe) {
+            throw new FormatException("MappedByteBufferInputReader: " + ioe.getMessage());
+        }
+    }
+
+    /**
+     * Read floats straight from a FloatBuffer view of the mapped file.
+     */
+    public void readFloatArray(float vec[], int offset, int len, boolean msbFirst)
+            throws EOFException, FormatException {
+        check(4L * len);
+        try {
+            while (len > 0) {
+                ByteBuffer buf = view(msbFirst);
+                int n = Math.min(len, buf.remaining() / 4);
+                buf.asFloatBuffer().get(vec, offset, n);
+                offset += n;
+                len -= n;
+                position += 4L * n;
+            }
+        } catch (IOException ioe) {
+            throw new FormatException("MappedByteBufferInputReader: " + ioe.getMessage());
+        }
+    }
+
+    /**
+     * Read doubles straight from a DoubleBuffer view of the mapped file.
+     */
+    public void readDoubleArray(double vec[], int offset, int len, boolean msbFirst)
+            throws EOFException, FormatException {
+        check(8L * len);
+        try {
+            while (len > 0) {
+                ByteBuffer buf = view(msbFirst);
+                int n = Math.min(len, buf.remaining() / 8);
+                buf.asDoubleBuffer().get(vec, offset, n);
+                offset += n;
+                len -= n;
+                position += 8L * n;
+            }
+        } catch (IOException ioe) {
+            throw new FormatException("MappedByteBufferInputReader: " + ioe.getMessage());
+        }
+    }
+
+    /**
+     * Get a read-only view of part of the file, without copying. The view
+     * must fit within OVERLAP bytes past the end of a segment, which is always
+     * true for files smaller than SEGMENT_SIZE.
+     * 
+     * @param pos the byte offset in the file.
+     * @param len the number of bytes.
+     * @param msbFirst byte order of the returned buffer.
+     * @return ByteBuffer positioned at 0, limited to len bytes.
+     * @throws IOException if the range can't be provided by one segment.
+     */
+    public ByteBuffer getView(long pos, int len, boolean msbFirst) throws IOException {
+        int index = (int) (pos / SEGMENT_SIZE);
+        ByteBuffer buf = segment(index).duplicate();
+        int start = (int) (pos - index * SEGMENT_SIZE);
+        if (start + len > buf.limit()) {
+            throw new IOException("MappedByteBufferInputReader: view of " + len + " bytes at " + pos
+                    + " crosses a segment boundary");
+        }
+        buf.position(start);
+        buf.limit(start + len);
+        ByteBuffer ret = buf.slice();
+        ret.order(msbFirst ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+        return ret;
+    }
+}
@@ -229,6 +229,16 @@ public class OMGraphicHandlerLayer extends Layer implements GestureResponsePolic
      * contacting servers. The default setting is, however, true.
      */
     public final static String InterruptableProperty = "interruptable";
+    /**
+     * The property to tell the layer that renderDataForProjection() can be
+     * called from several threads at once, for different projections, without
+     * waiting for each other. The layer's projection and list aren't touched,
+     * each call works with its own copies. For this to work, prepare() has to
+     * create a new OMGraphicList for the projection from getProjection(), and
+     * the RenderPolicy can't hold on to anything between prepare() and paint().
+     * The default setting is false.
+     */
+    public final static String ConcurrentRenderingProperty = "concurrentRendering";
 
     /**
      * Filter support that can be used to manage OMGraphics.
@@ -279,6 +289,18 @@ public class OMGraphicHandlerLayer extends Layer implements GestureResponsePolic
      */
     protected boolean interruptable = true;
 
+    /**
+     * Flag to let renderDataForProjection() calls run at the same time, for
+     * image servers handling several requests.
+     */
+    protected boolean concurrentRendering = false;
+
+    /**
+     * The projection and list for a renderDataForProjection() call in progress
+     * on the current thread, used when concurrentRendering is true.
+     */
+    protected transient ThreadLocal<RenderContext> renderContext = new ThreadLocal<RenderContext>();
+
     /**
      * Sets the interruptible flag, allowing the current swing worker thread to
      * have interrupt called on it.
@@ -297,6 +319,43 @@ public class OMGraphicHandlerLayer extends Layer implements GestureResponsePolic
         return interruptable;
     }
 
+    /**
+     * Set whether renderDataForProjection() calls can run at the same time.
+     * 
+     * @see #ConcurrentRenderingProperty
+     */
+    public void setConcurrentRendering(boolean concurrentRendering) {
+        this.concurrentRendering = concurrentRendering;
+    }
+
+    /**
+     * @return true if renderDataForProjection() calls can run at the same
+     *         time.
+     */
+    public boolean isConcurrentRendering() {
+        return concurrentRendering;
+    }
+
+    /**
+     * @return the RenderContext for a renderDataForProjection() call running
+     *         in the current thread, or null.
+     */
+    protected RenderContext getRenderContext() {
+        return renderContext != null ? renderContext.get() : null;
+    }
+
+    /**
+     * Returns the projection of a renderDataForProjection() call running in
+     * the current thread, if there is one, the layer's projection otherwise.
+     */
+    public Projection getProjection() {
+        RenderContext context = getRenderContext();
+        if (context != null) {
+            return context.projection;
+        }
+        return super.getProjection();
+    }
+
     // OMGraphicHandler methods, deferred to FilterSupport...
 
     /**
@@ -344,6 +403,10 @@ public class OMGraphicHandlerLayer extends Layer implements GestureResponsePolic
      * Get the OMGraphicList held by the layer. May be null.
      */
     public OMGraphicList getList() {
+        RenderContext context = getRenderContext();
+        if (context != null) {
+            return context.list;
+        }
         return filter.getList();
     }
 
@@ -359,6 +422,11 @@ public class OMGraphicHandlerLayer extends Layer implements GestureResponsePolic
      * canSetGraphicList == true.
      */
     public void setList(OMGraphicList omgl) {
+        RenderContext context = getRenderContext();
+        if (context != null) {
+            context.list = omgl;
+            return;
+        }
         filter.setList(omgl);
     }
 
@@ -522,15 +590,70 @@ public class OMGraphicHandlerLayer extends Layer implements GestureResponsePolic
      * @param proj Projection of the map.
      * @param g java.awt.Graphics to draw into.
      */
-    public synchronized void renderDataForProjection(Projection proj, Graphics g) {
+    public void renderDataForProjection(Projection proj, Graphics g) {
         if (proj == null) {
             logger.warning("Layer(" + getName() + ").renderDataForProjection: null projection!");
             return;
-        } else if (!proj.equals(getProjection())) {
-            setProjection(proj.makeClone());
-            setList(getRenderPolicy().prepare());
         }
-        paint(g);
+
+        if (isConcurrentRendering() && renderContext != null) {
+            // Leave the layer's projection and list alone, so other threads
+            // can render at the same time.
+            RenderContext previous = renderContext.get();
+            renderContext.set(new RenderContext(proj.makeClone()));
+            try {
+                setList(getRenderPolicy().prepare());
+                paint(g);
+            } finally {
+                renderContext.set(previous);
+            }
+            return;
+        }
+
+        synchronized (this) {
+            if (!proj.equals(getProjection())) {
+                setProjection(proj.makeClone());
+                setList(getRenderPolicy().prepare());
+            }
+            paint(g);
+        }
+    }
+
+    /**
+     * Create the OMGraphicList for a projection, without changing the
+     * projection or list held by the layer. The prepare() method is called
+     * with getProjection() returning the given projection, and getList()
+     * starting out null. Only works properly for layers that create a new
+     * OMGraphicList in prepare().
+     * 
+     * @param proj the projection to prepare the OMGraphics for.
+     * @return OMGraphicList ready to render for the projection.
+     */
+    public OMGraphicList prepare(Projection proj) {
+        ThreadLocal<RenderContext> context = renderContext;
+        if (context == null) {
+            context = renderContext = new ThreadLocal<RenderContext>();
+        }
+        RenderContext previous = context.get();
+        context.set(new RenderContext(proj));
+        try {
+            return getRenderPolicy().prepare();
+        } finally {
+            context.set(previous);
+        }
+    }
+
+    /**
+     * The projection and OMGraphicList used by a thread rendering the layer,
+     * in place of the layer's own projection and list.
+     */
+    protected static class RenderContext {
+        protected Projection projection;
+        protected OMGraphicList list;
+
+        protected RenderContext(Projection projection) {
+            this.projection = projection;
+        }
     }
 
     /**
@@ -896,6 +1019,7 @@ public class OMGraphicHandlerLayer extends Layer implements GestureResponsePolic
         setTransparency(PropUtils.floatFromProperties(props, realPrefix + TransparencyProperty, getTransparency()));
 
         setInterruptable(PropUtils.booleanFromProperties(props, realPrefix + InterruptableProperty, isInterruptable()));
+        setConcurrentRendering(PropUtils.booleanFromProperties(props, realPrefix + ConcurrentRenderingProperty, isConcurrentRendering()));
     }
 
     /**
@@ -968,6 +1092,7 @@ public class OMGraphicHandlerLayer extends Layer implements GestureResponsePolic
         props.put(prefix + TransparencyProperty, Float.toString(getTransparency()));
 
         props.put(prefix + InterruptableProperty, Boolean.toString(isInterruptable()));
+        props.put(prefix + ConcurrentRenderingProperty, Boolean.toString(isConcurrentRendering()));
 
         return props;
     }
@@ -1031,6 +1156,7 @@ public class OMGraphicHandlerLayer extends Layer implements GestureResponsePolic
         PropUtils.setI18NPropertyInfo(i18n, list, OMGraphicHandlerLayer.class, TransparencyProperty, "Transparency", "Transparency setting for layer, between 0 (clear) and 1", null);
 
         PropUtils.setI18NPropertyInfo(i18n, list, OMGraphicHandlerLayer.class, InterruptableProperty, "Interruptable", "Flat to set whether the layer should immediately stop performing current work when the projection changes.", "com.bbn.openmap.util.propertyEditor.YesNoPropertyEditor");
+        PropUtils.setI18NPropertyInfo(i18n, list, OMGraphicHandlerLayer.class, ConcurrentRenderingProperty, "Concurrent Rendering", "Flag to let image servers render the layer for several requests at the same time.", "com.bbn.openmap.util.propertyEditor.YesNoPropertyEditor");
 
         return list;
     }
@@ -1530,4 +1656,4 @@ public class OMGraphicHandlerLayer extends Layer implements GestureResponsePolic
 			}
 		}
 	}
-}
\ No newline at end of file
+}
\ No newline at end of file
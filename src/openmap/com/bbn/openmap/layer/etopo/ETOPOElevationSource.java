@@ -0,0 +1,162 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.layer.etopo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.bbn.openmap.io.BinaryBufferedFile;
+import com.bbn.openmap.io.BinaryFile;
+import com.bbn.openmap.io.FormatException;
+import com.bbn.openmap.layer.terrain.ElevationSource;
+
+/**
+ * An ElevationSource for the ETOPO data sets used by the ETOPOLayer. The
+ * coarsest data set in the directory that's still fine enough for the spacing
+ * of the points is used, and each data set is read into memory the first time
+ * it's needed.
+ * 
+ * @author dietrick
+ */
+public class ETOPOElevationSource implements ElevationSource {
+
+    public static Logger logger = Logger.getLogger("com.bbn.openmap.layer.etopo.ETOPOElevationSource");
+
+    /** The spacing of the data sets, in minutes, in file name order. */
+    protected final static int[] etopoMinutes = { 2, 5, 10, 15 };
+
+    protected final String path;
+    /** The data sets that have been read, null if not read yet. */
+    protected final short[][] data = new short[ETOPOLayer.etopoFileNames.length][];
+    /** Set for data sets that couldn't be read. */
+    protected final boolean[] missing = new boolean[ETOPOLayer.etopoFileNames.length];
+
+    /**
+     * @param path the directory containing the ETOPO files.
+     */
+    public ETOPOElevationSource(String path) {
+        this.path = path;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public void getElevations(double[] lats, double[] lons, short[] out, double postSpacing) {
+        int resIdx = getResolutionIndex(postSpacing);
+        short[] buffer = resIdx >= 0 ? getData(resIdx) : null;
+        if (buffer == null) {
+            for (int i = 0; i < lats.length; i++) {
+                out[i] = NO_DATA;
+            }
+            return;
+        }
+
+        int width = ETOPOLayer.etopoWidths[resIdx];
+        int height = ETOPOLayer.etopoHeights[resIdx];
+        double perDegree = 60.0 / etopoMinutes[resIdx];
+        // The 2 minute data starts at the date line, the others at the
+        // prime meridian.
+        double lonOffset = etopoMinutes[resIdx] == 2 ? 180 : 0;
+
+        for (int i = 0; i < lats.length; i++) {
+            int row = (int) ((90.0 - lats[i]) * perDegree);
+            if (row < 0) {
+                row = 0;
+            } else if (row >= height) {
+                row = height - 1;
+            }
+
+            double lon = lons[i] + lonOffset;
+            if (lon < 0) {
+                lon += 360;
+            }
+            int col = (int) (lon * perDegree) % width;
+            out[i] = buffer[row * width + col];
+        }
+    }
+
+    /**
+     * Pick the data set for a point spacing.
+     * 
+     * @return index of the coarsest data set in the directory that's fine
+     *         enough for the spacing, or the finest one there if none are fine
+     *         enough, or -1 if there aren't any.
+     */
+    protected int getResolutionIndex(double postSpacing) {
+        double minutes = postSpacing * 60;
+        int best = -1;
+        for (int i = 0; i < etopoMinutes.length; i++) {
+            if (!isAvailable(i)) {
+                continue;
+            }
+            if (best < 0 || etopoMinutes[i] <= minutes) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return true if the file for a data set is there and hasn't failed to
+     *         be read.
+     */
+    protected synchronized boolean isAvailable(int resIdx) {
+        if (data[resIdx] == null && !missing[resIdx]
+                && !BinaryFile.exists(path + ETOPOLayer.etopoFileNames[resIdx])) {
+            missing[resIdx] = true;
+        }
+        return !missing[resIdx];
+    }
+
+    /**
+     * Get a data set, reading it if it hasn't been read.
+     * 
+     * @return the elevations, row after row from the north, or null if the
+     *         file couldn't be read.
+     */
+    protected synchronized short[] getData(int resIdx) {
+        if (data[resIdx] == null && !missing[resIdx]) {
+            data[resIdx] = read(resIdx);
+            missing[resIdx] = data[resIdx] == null;
+        }
+        return data[resIdx];
+    }
+
+    protected short[] read(int resIdx) {
+        String fileName = path + ETOPOLayer.etopoFileNames[resIdx];
+        int numPosts = ETOPOLayer.etopoWidths[resIdx] * ETOPOLayer.etopoHeights[resIdx];
+        try {
+            BinaryBufferedFile binFile = new BinaryBufferedFile(fileName);
+            try {
+                byte[] bytes = binFile.readBytes(numPosts * 2, false);
+                short[] buffer = new short[numPosts];
+                // Same byte order the ETOPOLayer reads with.
+                ByteBuffer.wrap(bytes).order(ByteOrder.BIG_ENDIAN).asShortBuffer().get(buffer);
+                return buffer;
+            } finally {
+                binFile.close();
+            }
+        } catch (IOException ioe) {
+            logger.log(Level.WARNING, "problem reading " + fileName, ioe);
+        } catch (FormatException fe) {
+            logger.log(Level.WARNING, "problem reading " + fileName, fe);
+        }
+        return null;
+    }
+}
@@ -117,6 +117,18 @@ public class Link implements LinkConstants {
      * default.
      */
     protected boolean obeyCommandToExit = false;
+    /**
+     * Whether graphic and action lists written to the other side of the
+     * link should have their arrays written in bulk blocks. Set when a
+     * request comes in from a client that can read them.
+     */
+    protected boolean bulkEncoding = false;
+    /**
+     * The LPC_REQUEST_ID of the map request being responded to, echoed
+     * in the properties of the sections written until the response is
+     * ended.
+     */
+    protected String requestId = null;
 
     /**
      * Open up a link over a socket.
@@ -128,13 +140,25 @@ public class Link implements LinkConstants {
         this.socket = socket;
         InputStream is = socket.getInputStream();
         BufferedInputStream bis = new BufferedInputStream(is);
-        this.dis = new DataInputStream(bis);
+        this.dis = new LinkInputStream(bis);
 
         OutputStream os = socket.getOutputStream();
         BufferedOutputStream bos = new BufferedOutputStream(os);
         this.dos = new LinkOutputStream(bos);
     }
 
+    /**
+     * Open up a link over streams that have already been set up, like the
+     * buffers of a LinkSession. No socket is associated with the link.
+     * 
+     * @param dis the stream to read from.
+     * @param dos the stream to write to.
+     */
+    protected Link(LinkInputStream dis, LinkOutputStream dos) {
+        this.dis = dis;
+        this.dos = dos;
+    }
+
     /**
      * Should be called by the server and/or client to release
      * resources when the link is through being used.
@@ -177,6 +201,7 @@ public class Link implements LinkConstants {
     public void end(String endType) throws IOException {
         dos.write(endType.getBytes());
         if (END_TOTAL.equals(endType)) {
+            requestId = null;
             dos.flush();
         }
     }
@@ -238,6 +263,7 @@ public class Link implements LinkConstants {
         guiRequest = null;
         guiList = null;
         closeLink = false;
+        requestId = null;
 
         String delimiter = null;
 
@@ -278,9 +304,12 @@ public class Link implements LinkConstants {
                 delimiter = readDelimiter(true);
             } else if (delimiter == MAP_REQUEST_HEADER) {
                 mapRequest = new LinkMapRequest(this);
+                checkBulkEncoding(mapRequest.getProperties());
+                requestId = mapRequest.getProperties().getProperty(LinkPropertiesConstants.LPC_REQUEST_ID);
                 delimiter = mapRequest.getLinkStatus();
             } else if (delimiter == ACTION_REQUEST_HEADER) {
                 actionRequest = new LinkActionRequest(this);
+                checkBulkEncoding(actionRequest.getProperties());
                 delimiter = actionRequest.getLinkStatus();
             } else if (delimiter == GUI_REQUEST_HEADER) {
                 guiRequest = new LinkGUIRequest(this);
@@ -297,6 +326,66 @@ public class Link implements LinkConstants {
         }
     }
 
+    /**
+     * Check the properties of a request to see if the client can read
+     * arrays in bulk blocks.
+     */
+    protected void checkBulkEncoding(LinkProperties props) {
+        if (props != null
+                && LinkPropertiesConstants.LPC_BULK_ENCODING.equals(props.getProperty(LinkPropertiesConstants.LPC_ENCODING))) {
+            bulkEncoding = true;
+        }
+    }
+
+    /**
+     * Set whether the arrays in graphic and action lists written to the
+     * link should be written in bulk blocks. Only set this to true if
+     * the other side of the link can read them, it's set automatically
+     * when a client says it can in a request.
+     * 
+     * @see com.bbn.openmap.layer.link.LinkArrayCodec
+     */
+    public void setBulkEncoding(boolean value) {
+        bulkEncoding = value;
+    }
+
+    public boolean isBulkEncoding() {
+        return bulkEncoding;
+    }
+
+    /**
+     * Called when a graphic or action list section is started, to note
+     * the encoding of the section and the map request it responds to in
+     * its properties, and set up the output stream for it.
+     * 
+     * @param props the properties for the section.
+     * @return the properties to write for the section.
+     */
+    protected LinkProperties startSection(LinkProperties props) {
+        dos.setBulkEncoding(bulkEncoding);
+        if (bulkEncoding || requestId != null) {
+            props = new LinkProperties(props);
+            if (bulkEncoding) {
+                props.setProperty(LinkPropertiesConstants.LPC_ENCODING, LinkPropertiesConstants.LPC_BULK_ENCODING);
+            }
+            if (requestId != null) {
+                props.setProperty(LinkPropertiesConstants.LPC_REQUEST_ID, requestId);
+            }
+        }
+        return props;
+    }
+
+    /**
+     * Called when the properties of a graphic or action list section
+     * have been read, to set up the input stream for the encoding of the
+     * section.
+     */
+    protected void readSectionEncoding(LinkProperties props) {
+        if (dis instanceof LinkInputStream) {
+            ((LinkInputStream) dis).setBulkEncoding(LinkPropertiesConstants.LPC_BULK_ENCODING.equals(props.getProperty(LinkPropertiesConstants.LPC_ENCODING)));
+        }
+    }
+
     public void setObeyCommandToExit(boolean value) {
         obeyCommandToExit = value;
     }
@@ -82,7 +82,7 @@ public class LinkActionList implements LinkActionConstants,
         this.link = link;
         link.start(Link.ACTIONS_HEADER);
         link.dos.writeFloat(version);
-        properties.write(link);
+        link.startSection(properties).write(link);
     }
 
     /**
@@ -203,6 +203,7 @@ public class LinkActionList implements LinkActionConstants,
         }
         
         properties = LinkProperties.read(link.dis, properties);
+        link.readSectionEncoding(properties);
         LinkProperties graphicProperties = new LinkProperties();
 
         Debug.message("link", "LinkActionList: reading actions:");
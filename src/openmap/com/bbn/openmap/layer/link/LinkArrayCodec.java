@@ -0,0 +1,457 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.layer.link;
+
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The LinkArrayCodec reads and writes the arrays in link graphics - poly
+ * coordinates, grid data, raster pixels and bitmap bits. When the link is
+ * using bulk encoding (see Link.setBulkEncoding()), each array is written as
+ * one block, a mode byte, the number of values and the length of the encoded
+ * bytes, followed by the encoded bytes:
+ * <ul>
+ * <li>Lat/lon coordinates are sent as 1e-7 degree fixed point differences
+ * from the previous coordinate, as zigzag varints. Coordinates that don't fit
+ * are sent as floats.
+ * <li>Pixel coordinates are sent as zigzag varint differences.
+ * <li>Grid data, raster pixels and bitmaps are deflated. The bytes of int
+ * values are split into planes first, so that the alpha bytes, red bytes etc.
+ * are compressed together.
+ * </ul>
+ * When the link isn't using bulk encoding, the arrays are written the way
+ * they always have been, a count followed by the values.
+ * 
+ * @author dietrick
+ */
+public class LinkArrayCodec {
+
+    /** Block mode, values are written as big-endian floats or ints. */
+    public final static byte MODE_RAW = 0;
+    /** Block mode, values are written as zigzag varint differences. */
+    public final static byte MODE_DELTA = 1;
+    /** Block mode, the bytes of the values are deflated. */
+    public final static byte MODE_DEFLATE = 2;
+
+    /** The fixed point scale for lat/lon coordinates. */
+    public final static double COORDINATE_SCALE = 1e7;
+    /** Arrays with fewer bytes than this aren't worth deflating. */
+    public final static int MIN_DEFLATE_SIZE = 64;
+
+    protected static int compressionLevel = Deflater.BEST_SPEED;
+
+    protected static ThreadLocal<Deflater> deflaters = new ThreadLocal<Deflater>();
+    protected static ThreadLocal<Inflater> inflaters = new ThreadLocal<Inflater>();
+
+    /**
+     * Set the deflate compression level for grids, rasters and bitmaps,
+     * Deflater.BEST_SPEED by default.
+     */
+    public static void setCompressionLevel(int level) {
+        compressionLevel = level;
+    }
+
+    public static int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    /**
+     * @return true if arrays should be written to the stream as bulk blocks.
+     */
+    public static boolean isBulk(DataOutput dos) {
+        return dos instanceof LinkOutputStream && ((LinkOutputStream) dos).isBulkEncoding();
+    }
+
+    /**
+     * @return true if arrays should be read from the stream as bulk blocks.
+     */
+    public static boolean isBulk(DataInput dis) {
+        return dis instanceof LinkInputStream && ((LinkInputStream) dis).isBulkEncoding();
+    }
+
+    /**
+     * Write lat/lon coordinates, or other float values.
+     */
+    public static void writeFloats(double[] values, DataOutputStream dos) throws IOException {
+        if (!isBulk(dos)) {
+            dos.writeInt(values.length);
+            for (int i = 0; i < values.length; i++) {
+                dos.writeFloat((float) values[i]);
+            }
+            return;
+        }
+
+        VarintBuffer buf = new VarintBuffer(values.length * 2 + 8);
+        long[] last = new long[2];
+        for (int i = 0; i < values.length; i++) {
+            double scaled = values[i] * COORDINATE_SCALE;
+            if (!(Math.abs(scaled) < Integer.MAX_VALUE)) {
+                // Infinite, NaN or just too big, send them as floats.
+                byte[] raw = new byte[values.length * 4];
+                for (int j = 0, k = 0; j < values.length; j++, k += 4) {
+                    putInt(raw, k, Float.floatToIntBits((float) values[j]));
+                }
+                writeBlock(MODE_RAW, values.length, raw, raw.length, dos);
+                return;
+            }
+            long fixed = Math.round(scaled);
+            buf.putZigzag(fixed - last[i & 1]);
+            last[i & 1] = fixed;
+        }
+        writeBlock(MODE_DELTA, values.length, buf.bytes, buf.count, dos);
+    }
+
+    /**
+     * Read values written with writeFloats().
+     */
+    public static double[] readFloats(DataInputStream dis) throws IOException {
+        if (!isBulk(dis)) {
+            int length = dis.readInt();
+            double[] values = new double[length];
+            for (int i = 0; i < length; i++) {
+                values[i] = dis.readFloat();
+            }
+            return values;
+        }
+
+        int mode = dis.readByte();
+        int count = readVarint(dis);
+        byte[] payload = readPayload(dis);
+        double[] values = new double[count];
+        if (mode == MODE_RAW) {
+            for (int i = 0, k = 0; i < count; i++, k += 4) {
+                values[i] = Float.intBitsToFloat(getInt(payload, k));
+            }
+        } else if (mode == MODE_DELTA) {
+            long[] last = new long[2];
+            VarintReader reader = new VarintReader(payload);
+            for (int i = 0; i < count; i++) {
+                long fixed = last[i & 1] + reader.getZigzag();
+                last[i & 1] = fixed;
+                values[i] = fixed / COORDINATE_SCALE;
+            }
+        } else {
+            throw new IOException("LinkArrayCodec: unknown float block mode " + mode);
+        }
+        return values;
+    }
+
+    /**
+     * Write alternating x, y pixel coordinates.
+     */
+    public static void writeXY(int[] xy, DataOutputStream dos) throws IOException {
+        if (!isBulk(dos)) {
+            dos.writeInt(xy.length);
+            for (int i = 0; i < xy.length; i++) {
+                dos.writeInt(xy[i]);
+            }
+            return;
+        }
+
+        VarintBuffer buf = new VarintBuffer(xy.length * 2 + 8);
+        long[] last = new long[2];
+        for (int i = 0; i < xy.length; i++) {
+            buf.putZigzag(xy[i] - last[i & 1]);
+            last[i & 1] = xy[i];
+        }
+        writeBlock(MODE_DELTA, xy.length, buf.bytes, buf.count, dos);
+    }
+
+    /**
+     * Read pixel coordinates written with writeXY().
+     */
+    public static int[] readXY(DataInputStream dis) throws IOException {
+        if (!isBulk(dis)) {
+            int length = dis.readInt();
+            int[] xy = new int[length];
+            for (int i = 0; i < length; i++) {
+                xy[i] = dis.readInt();
+            }
+            return xy;
+        }
+
+        int mode = dis.readByte();
+        int count = readVarint(dis);
+        byte[] payload = readPayload(dis);
+        if (mode != MODE_DELTA) {
+            throw new IOException("LinkArrayCodec: unknown xy block mode " + mode);
+        }
+        int[] xy = new int[count];
+        long[] last = new long[2];
+        VarintReader reader = new VarintReader(payload);
+        for (int i = 0; i < count; i++) {
+            long value = last[i & 1] + reader.getZigzag();
+            last[i & 1] = value;
+            xy[i] = (int) value;
+        }
+        return xy;
+    }
+
+    /**
+     * Write grid data or raster pixels.
+     */
+    public static void writeInts(int[] values, DataOutputStream dos) throws IOException {
+        if (!isBulk(dos)) {
+            dos.writeInt(values.length);
+            for (int i = 0; i < values.length; i++) {
+                dos.writeInt(values[i]);
+            }
+            return;
+        }
+
+        // Split the ints into byte planes.
+        int n = values.length;
+        byte[] planes = new byte[n * 4];
+        for (int i = 0; i < n; i++) {
+            int v = values[i];
+            planes[i] = (byte) (v >>> 24);
+            planes[n + i] = (byte) (v >>> 16);
+            planes[2 * n + i] = (byte) (v >>> 8);
+            planes[3 * n + i] = (byte) v;
+        }
+        writeDeflated(planes, n, dos);
+    }
+
+    /**
+     * Read values written with writeInts().
+     */
+    public static int[] readInts(DataInputStream dis) throws IOException {
+        if (!isBulk(dis)) {
+            int length = dis.readInt();
+            int[] values = new int[length];
+            for (int i = 0; i < length; i++) {
+                values[i] = dis.readInt();
+            }
+            return values;
+        }
+
+        int mode = dis.readByte();
+        int n = readVarint(dis);
+        byte[] planes = readInflated(mode, n * 4, dis);
+        int[] values = new int[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = ((planes[i] & 0xff) << 24) | ((planes[n + i] & 0xff) << 16)
+                    | ((planes[2 * n + i] & 0xff) << 8) | (planes[3 * n + i] & 0xff);
+        }
+        return values;
+    }
+
+    /**
+     * Write raster or bitmap bytes.
+     */
+    public static void writeBytes(byte[] values, DataOutputStream dos) throws IOException {
+        if (!isBulk(dos)) {
+            dos.writeInt(values.length);
+            dos.write(values, 0, values.length);
+            return;
+        }
+        writeDeflated(values, values.length, dos);
+    }
+
+    /**
+     * Read bytes written with writeBytes().
+     */
+    public static byte[] readBytes(DataInputStream dis) throws IOException {
+        if (!isBulk(dis)) {
+            byte[] values = new byte[dis.readInt()];
+            dis.readFully(values);
+            return values;
+        }
+
+        int mode = dis.readByte();
+        int n = readVarint(dis);
+        return readInflated(mode, n, dis);
+    }
+
+    protected static void writeDeflated(byte[] bytes, int count, DataOutputStream dos) throws IOException {
+        if (bytes.length < MIN_DEFLATE_SIZE) {
+            writeBlock(MODE_RAW, count, bytes, bytes.length, dos);
+            return;
+        }
+
+        Deflater deflater = deflaters.get();
+        if (deflater == null) {
+            deflater = new Deflater(compressionLevel);
+            deflaters.set(deflater);
+        }
+        deflater.reset();
+        deflater.setLevel(compressionLevel);
+        deflater.setInput(bytes);
+        deflater.finish();
+
+        byte[] out = new byte[bytes.length / 2 + 64];
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == out.length) {
+                byte[] bigger = new byte[out.length * 2];
+                System.arraycopy(out, 0, bigger, 0, length);
+                out = bigger;
+            }
+            length += deflater.deflate(out, length, out.length - length);
+        }
+
+        if (length >= bytes.length) {
+            writeBlock(MODE_RAW, count, bytes, bytes.length, dos);
+        } else {
+            writeBlock(MODE_DEFLATE, count, out, length, dos);
+        }
+    }
+
+    protected static byte[] readInflated(int mode, int length, DataInputStream dis) throws IOException {
+        byte[] payload = readPayload(dis);
+        if (mode == MODE_RAW) {
+            if (payload.length != length) {
+                throw new IOException("LinkArrayCodec: expected " + length + " bytes, got " + payload.length);
+            }
+            return payload;
+        } else if (mode != MODE_DEFLATE) {
+            throw new IOException("LinkArrayCodec: unknown block mode " + mode);
+        }
+
+        Inflater inflater = inflaters.get();
+        if (inflater == null) {
+            inflater = new Inflater();
+            inflaters.set(inflater);
+        }
+        inflater.reset();
+        inflater.setInput(payload);
+        byte[] bytes = new byte[length];
+        try {
+            int read = 0;
+            while (read < length && !inflater.finished()) {
+                int n = inflater.inflate(bytes, read, length - read);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                read += n;
+            }
+            if (read != length) {
+                throw new IOException("LinkArrayCodec: expected " + length + " bytes, inflated " + read);
+            }
+        } catch (DataFormatException dfe) {
+            throw new IOException("LinkArrayCodec: bad deflated data, " + dfe.getMessage());
+        }
+        return bytes;
+    }
+
+    protected static void writeBlock(byte mode, int count, byte[] payload, int length, DataOutputStream dos)
+            throws IOException {
+        dos.writeByte(mode);
+        writeVarint(count, dos);
+        writeVarint(length, dos);
+        dos.write(payload, 0, length);
+    }
+
+    protected static byte[] readPayload(DataInputStream dis) throws IOException {
+        byte[] payload = new byte[readVarint(dis)];
+        dis.readFully(payload);
+        return payload;
+    }
+
+    protected static void writeVarint(int value, DataOutput dos) throws IOException {
+        while ((value & ~0x7f) != 0) {
+            dos.writeByte((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        dos.writeByte(value);
+    }
+
+    protected static int readVarint(DataInput dis) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = dis.readByte();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                if (value < 0) {
+                    throw new IOException("LinkArrayCodec: bad length");
+                }
+                return value;
+            }
+        }
+        throw new IOException("LinkArrayCodec: bad varint");
+    }
+
+    protected static void putInt(byte[] b, int off, int v) {
+        b[off] = (byte) (v >>> 24);
+        b[off + 1] = (byte) (v >>> 16);
+        b[off + 2] = (byte) (v >>> 8);
+        b[off + 3] = (byte) v;
+    }
+
+    protected static int getInt(byte[] b, int off) {
+        return ((b[off] & 0xff) << 24) | ((b[off + 1] & 0xff) << 16) | ((b[off + 2] & 0xff) << 8)
+                | (b[off + 3] & 0xff);
+    }
+
+    /**
+     * A growable byte array for writing zigzag varints.
+     */
+    protected static class VarintBuffer {
+        byte[] bytes;
+        int count = 0;
+
+        VarintBuffer(int size) {
+            bytes = new byte[size];
+        }
+
+        void putZigzag(long value) {
+            long v = (value << 1) ^ (value >> 63);
+            if (count + 10 > bytes.length) {
+                byte[] bigger = new byte[bytes.length * 2 + 10];
+                System.arraycopy(bytes, 0, bigger, 0, count);
+                bytes = bigger;
+            }
+            while ((v & ~0x7fL) != 0) {
+                bytes[count++] = (byte) ((v & 0x7f) | 0x80);
+                v >>>= 7;
+            }
+            bytes[count++] = (byte) v;
+        }
+    }
+
+    /**
+     * Reads zigzag varints out of a byte array.
+     */
+    protected static class VarintReader {
+        byte[] bytes;
+        int position = 0;
+
+        VarintReader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        long getZigzag() throws IOException {
+            long v = 0;
+            for (int shift = 0; shift < 70; shift += 7) {
+                if (position >= bytes.length) {
+                    throw new IOException("LinkArrayCodec: block too short");
+                }
+                int b = bytes[position++];
+                v |= (long) (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return (v >>> 1) ^ -(v & 1);
+                }
+            }
+            throw new IOException("LinkArrayCodec: bad varint");
+        }
+    }
+}
@@ -61,8 +61,7 @@ public class LinkBitmap implements LinkGraphicConstants,
         dos.writeInt(w);
         dos.writeInt(h);
 
-        dos.writeInt(bytes.length);
-        dos.write(bytes, 0, bytes.length);
+        LinkArrayCodec.writeBytes(bytes, dos);
 
         properties.write(dos);
     }
@@ -91,8 +90,7 @@ public class LinkBitmap implements LinkGraphicConstants,
         dos.writeInt(w);
         dos.writeInt(h);
 
-        dos.writeInt(bytes.length);
-        dos.write(bytes, 0, bytes.length);
+        LinkArrayCodec.writeBytes(bytes, dos);
 
         properties.write(dos);
     }
@@ -126,8 +124,7 @@ public class LinkBitmap implements LinkGraphicConstants,
         dos.writeInt(w);
         dos.writeInt(h);
 
-        dos.writeInt(bytes.length);
-        dos.write(bytes, 0, bytes.length);
+        LinkArrayCodec.writeBytes(bytes, dos);
 
         properties.write(dos);
     }
@@ -206,7 +203,6 @@ public class LinkBitmap implements LinkGraphicConstants,
         int y = 0;
         int w = 0;
         int h = 0;
-        int length;
 
         int renderType = dis.readByte();
 
@@ -227,10 +223,7 @@ public class LinkBitmap implements LinkGraphicConstants,
 
         w = dis.readInt();
         h = dis.readInt();
-        length = dis.readInt();
-
-        byte[] bytes = new byte[length];
-        dis.readFully(bytes);
+        byte[] bytes = LinkArrayCodec.readBytes(dis);
 
         switch (renderType) {
         case RENDERTYPE_OFFSET:
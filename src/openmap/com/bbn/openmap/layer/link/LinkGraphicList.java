@@ -70,7 +70,7 @@ public class LinkGraphicList implements LinkGraphicConstants {
         this.link = link;
         link.start(Link.GRAPHICS_HEADER);
         link.dos.writeFloat(version);
-        properties.write(link);
+        link.startSection(properties).write(link);
     }
 
     /**
@@ -208,6 +208,7 @@ public class LinkGraphicList implements LinkGraphicConstants {
         }
 
         properties = LinkProperties.read(link.dis, properties);
+        link.readSectionEncoding(properties);
 
         Debug.message("link", "LinkGraphicList: reading graphics:");
 
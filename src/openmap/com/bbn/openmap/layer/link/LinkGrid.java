@@ -74,10 +74,7 @@ public class LinkGrid implements LinkGraphicConstants {
         dos.writeFloat(hResolution);
         dos.writeByte(major);
 
-        dos.writeInt(data.length);
-        for (int i = 0; i < data.length; i++) {
-            dos.writeInt(data[i]);
-        }
+        LinkArrayCodec.writeInts(data, dos);
 
         properties.write(dos);
     }
@@ -119,10 +116,7 @@ public class LinkGrid implements LinkGraphicConstants {
         dos.writeFloat(hResolution);
         dos.writeByte(major);
 
-        dos.writeInt(data.length);
-        for (int i = 0; i < data.length; i++) {
-            dos.writeInt(data[i]);
-        }
+        LinkArrayCodec.writeInts(data, dos);
 
         properties.write(dos);
     }
@@ -168,10 +162,7 @@ public class LinkGrid implements LinkGraphicConstants {
         dos.writeFloat(hResolution);
         dos.writeByte(major);
 
-        dos.writeInt(data.length);
-        for (int i = 0; i < data.length; i++) {
-            dos.writeInt(data[i]);
-        }
+        LinkArrayCodec.writeInts(data, dos);
 
         properties.write(dos);
     }
@@ -312,7 +303,14 @@ public class LinkGrid implements LinkGraphicConstants {
         float hResolution = dis.readFloat();
         int major = dis.readByte();
 
-        int length = dis.readInt();
+        int length;
+        int[] values = null;
+        if (LinkArrayCodec.isBulk(dis)) {
+            values = LinkArrayCodec.readInts(dis);
+            length = values.length;
+        } else {
+            length = dis.readInt();
+        }
 
         Debug.message("linkdetail", "LinkGrid details: rows = "
                 + rows
@@ -335,20 +333,30 @@ public class LinkGrid implements LinkGraphicConstants {
             data = new int[rows][columns];
         }
 
-        for (int i = 0; i < data.length; i++) {
-            for (int j = 0; j < data[0].length; j++) {
-                data[i][j] = dis.readInt();
+        if (values != null) {
+            if (length < rows * columns) {
+                throw new IOException("LinkGrid: expected " + rows * columns
+                        + " values, got " + length);
+            }
+            for (int i = 0; i < data.length; i++) {
+                System.arraycopy(values, i * data[i].length, data[i], 0, data[i].length);
+            }
+        } else {
+            for (int i = 0; i < data.length; i++) {
+                for (int j = 0; j < data[0].length; j++) {
+                    data[i][j] = dis.readInt();
+                    // Debug.message("linkdetail", "LinkGrid reading " +
+                    // (rows*i + j) + " " +
+                    // (major !=
+                    // LinkGraphicConstants.COLUMN_MAJOR?"column":"row")+
+                    // " " + j + " = " + Integer.toHexString(data[i][j]) +
+                    // " (" + data[i][j] + ")");
+                }
                 // Debug.message("linkdetail", "LinkGrid reading " +
-                // (rows*i + j) + " " +
-                // (major !=
+                // (major ==
                 // LinkGraphicConstants.COLUMN_MAJOR?"column":"row")+
-                // " " + j + " = " + Integer.toHexString(data[i][j]) +
-                // " (" + data[i][j] + ")");
+                // " " + i);
             }
-            // Debug.message("linkdetail", "LinkGrid reading " +
-            // (major ==
-            // LinkGraphicConstants.COLUMN_MAJOR?"column":"row")+
-            // " " + i);
         }
 
         Debug.message("linkdetail", "LinkGrid read all the data.");
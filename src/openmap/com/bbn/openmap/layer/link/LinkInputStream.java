@@ -0,0 +1,50 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.layer.link;
+
+import java.io.DataInputStream;
+import java.io.InputStream;
+
+/**
+ * Extend DataInputStream so the link can note whether the section being read
+ * has its arrays in bulk blocks.
+ * 
+ * @see com.bbn.openmap.layer.link.LinkArrayCodec
+ */
+public class LinkInputStream extends DataInputStream {
+
+    protected boolean bulkEncoding = false;
+
+    /**
+     * Creates a new link input stream to read data from the specified
+     * underlying input stream.
+     * 
+     * @param in the underlying input stream.
+     */
+    public LinkInputStream(InputStream in) {
+        super(in);
+    }
+
+    /**
+     * @return true if arrays are being read as bulk blocks.
+     */
+    public boolean isBulkEncoding() {
+        return bulkEncoding;
+    }
+
+    public void setBulkEncoding(boolean bulkEncoding) {
+        this.bulkEncoding = bulkEncoding;
+    }
+}
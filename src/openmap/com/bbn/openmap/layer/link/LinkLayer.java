@@ -79,6 +79,23 @@ import com.bbn.openmap.util.PropUtils;
  *       # but non-applicable properties are ignored.
  *       link.propertiesURL=http://location.of.properties.file.com
  * 
+ *       # Optional, ask the server to only send graphic changes after the
+ *       # first map request, instead of all the graphics for every
+ *       # projection change.  The server has to support it (see
+ *       # LinkSubscription), a server that doesn't will send complete lists.
+ *       link.subscribe=true
+ * 
+ *       # Optional, ask the server to send poly coordinates, grids, rasters
+ *       # and bitmaps as compact bulk blocks (see LinkArrayCodec).  Servers
+ *       # that don't support it send the arrays as they always have.  True
+ *       # by default.
+ *       link.bulkEncoding=true
+ * 
+ *       # Optional, use separate connections to the server for map requests
+ *       # and gestures, so gestures don't wait for slow map requests.  The
+ *       # server will see the connections as different clients.  False by
+ *       # default.
+ *       link.pooled=true
  * 
  * 
  * 
@@ -95,9 +112,10 @@ public class LinkLayer extends OMGraphicHandlerLayer implements
      * The thread listener used to communicate asynchronously. The LinkLayer
      * sends out requests and notifications to the server, and the LinkListener
      * reads any input from the server, making calls on the LinkLayer as
-     * appropriate.
+     * appropriate. There is one listener for each LinkManager channel with
+     * its own link, indexed by channel.
      */
-    protected LinkListener listener;
+    protected LinkListener[] listeners = new LinkListener[LinkManager.NUM_CHANNELS];
     /**
      * A masked integer describing which gestures should be sent to the server.
      */
@@ -166,6 +184,42 @@ public class LinkLayer extends OMGraphicHandlerLayer implements
      */
     public final static String ExitOnCommandProperty = "exitOnCommand";
 
+    /**
+     * The property to set to true if the layer should subscribe to graphic
+     * changes from the server, instead of getting complete graphic lists for
+     * each projection. False by default. "subscribe"
+     */
+    public final static String SubscribeProperty = "subscribe";
+
+    /** Whether the layer subscribes to graphic changes from the server. */
+    protected boolean subscribe = false;
+
+    /**
+     * The property to set to false if the layer shouldn't ask the server for
+     * bulk encoded graphic arrays. True by default. "bulkEncoding"
+     */
+    public final static String BulkEncodingProperty = "bulkEncoding";
+
+    /** Whether the layer asks the server for bulk encoded graphic arrays. */
+    protected boolean bulkEncoding = true;
+
+    /**
+     * The property to set to true if the layer should use separate
+     * connections to the server for map requests and gestures. False by
+     * default. "pooled"
+     */
+    public final static String PooledProperty = "pooled";
+
+    /**
+     * The number of the last map request sent to the server, used to ignore
+     * responses to earlier map requests.
+     */
+    protected volatile int mapRequestCount = 0;
+    /**
+     * The version of the graphics received from the server, when subscribing.
+     */
+    protected String subscriptionVersion = "0";
+
     /**
      * The default constructor for the Layer. All of the attributes are set to
      * their default values.
@@ -342,6 +396,15 @@ public class LinkLayer extends OMGraphicHandlerLayer implements
         distanceLimit = PropUtils.intFromProperties(properties, realPrefix
                 + DistanceLimitProperty, distanceLimit);
 
+        setPooled(PropUtils.booleanFromProperties(properties, realPrefix
+                + PooledProperty, false));
+
+        setSubscribe(PropUtils.booleanFromProperties(properties, realPrefix
+                + SubscribeProperty, subscribe));
+
+        bulkEncoding = PropUtils.booleanFromProperties(properties, realPrefix
+                + BulkEncodingProperty, bulkEncoding);
+
         // listener = new LinkListener(linkManager, this,
         // currentGenerator);
     }
@@ -379,12 +442,112 @@ public class LinkLayer extends OMGraphicHandlerLayer implements
         }
     }
 
+    /**
+     * Set whether the layer should subscribe to graphic changes from the
+     * server. When subscribing, the layer keeps its graphics between
+     * projection changes, and the server sends the graphics that have been
+     * added, changed or removed since the last update.
+     */
+    public void setSubscribe(boolean subscribe) {
+        this.subscribe = subscribe;
+        setSubscriptionVersion("0");
+        if (subscribe) {
+            setProjectionChangePolicy(new com.bbn.openmap.layer.policy.StandardPCPolicy(this));
+        }
+    }
+
+    public boolean isSubscribe() {
+        return subscribe;
+    }
+
+    /**
+     * Set whether the layer should ask the server to send poly coordinates,
+     * grids, rasters and bitmaps as bulk blocks. Takes effect with the next
+     * map request.
+     */
+    public void setBulkEncoding(boolean bulkEncoding) {
+        this.bulkEncoding = bulkEncoding;
+    }
+
+    public boolean isBulkEncoding() {
+        return bulkEncoding;
+    }
+
+    /**
+     * Set whether the layer should use separate connections to the server for
+     * map requests and gestures. Should be set before the layer connects to
+     * the server.
+     */
+    public void setPooled(boolean pooled) {
+        linkManager.setPooled(pooled);
+    }
+
+    public boolean isPooled() {
+        return linkManager.isPooled();
+    }
+
+    /**
+     * Get the version of the graphics the layer has from the server, "0" if
+     * the layer should get a complete list.
+     */
+    public synchronized String getSubscriptionVersion() {
+        return subscriptionVersion;
+    }
+
+    protected synchronized void setSubscriptionVersion(String version) {
+        subscriptionVersion = version;
+    }
+
     protected void setListener(LinkListener ll) {
-        listener = ll;
+        setListener(LinkManager.MAP_CHANNEL, ll);
     }
 
     protected LinkListener getListener() {
-        return listener;
+        return getListener(LinkManager.MAP_CHANNEL);
+    }
+
+    protected void setListener(int channel, LinkListener ll) {
+        synchronized (listeners) {
+            listeners[channel] = ll;
+        }
+    }
+
+    protected LinkListener getListener(int channel) {
+        synchronized (listeners) {
+            return listeners[channel];
+        }
+    }
+
+    /**
+     * Get a link to write a request to, making sure there's a LinkListener
+     * reading the responses from it. The link has to be released with
+     * linkManager.finLink(channel).
+     * 
+     * @param channel the LinkManager channel for the request.
+     * @param waitForLock whether to wait for the link if another thread is
+     *        using it.
+     * @return the link, or null if it isn't available.
+     * @throws IOException
+     */
+    protected ClientLink getLink(int channel, boolean waitForLock)
+            throws IOException {
+        channel = linkManager.getLinkChannel(channel);
+
+        synchronized (listeners) {
+            LinkListener ll = listeners[channel];
+            if (ll == null) {
+                ll = new LinkListener(linkManager, this, currentGenerator, channel);
+                listeners[channel] = ll;
+            }
+
+            if (!ll.isListening()) {
+                // Call LinkListener to launch SwingWorker to kick off a
+                // thread for the listener.
+                ll.startUp();
+            }
+        }
+
+        return linkManager.getLink(channel, waitForLock);
     }
 
     /**
@@ -402,24 +565,6 @@ public class LinkLayer extends OMGraphicHandlerLayer implements
 
         OMGraphicList currentList = getList();
 
-        if (listener == null) {
-            listener = new LinkListener(linkManager, this, currentGenerator);
-        }
-
-        if (listener != null && !listener.isListening()) {
-            // Call LinkListener to launch SwingWorker to kick off a
-            // thread for the listener.
-            listener.startUp();
-        }
-
-        if (Debug.debugging("link")) {
-            Debug.output(getName() + "|LinkLayer.prepare(): Listener "
-                    + (listener == null ? "is null," : "is OK,")
-                    + " listening ("
-                    + (listener == null ? "nope" : "" + listener.isListening())
-                    + ")");
-        }
-
         Projection projection = getProjection();
         if (projection == null) {
             Debug
@@ -456,7 +601,7 @@ public class LinkLayer extends OMGraphicHandlerLayer implements
         try {
             // We do want the link object here... If another thread is
             // using the link, wait.
-            ClientLink l = linkManager.getLink(true);
+            ClientLink l = getLink(LinkManager.MAP_CHANNEL, true);
 
             if (l == null) {
                 System.err
@@ -464,12 +609,21 @@ public class LinkLayer extends OMGraphicHandlerLayer implements
                 return currentList;
             }
 
+            if (Debug.debugging("link")) {
+                LinkListener listener = getListener();
+                Debug.output(getName() + "|LinkLayer.prepare(): Listener "
+                        + (listener == null ? "is null," : "is OK,")
+                        + " listening ("
+                        + (listener == null ? "nope" : "" + listener.isListening())
+                        + ")");
+            }
+
             synchronized (l) {
                 // omGraphicList = getGraphics(l, projection);
                 sendMapRequest(l, projection);
             }
 
-            linkManager.finLink();
+            linkManager.finLink(LinkManager.MAP_CHANNEL);
 
         } catch (UnknownHostException uhe) {
             System.err.println("LinkLayer: unknown host!");
@@ -479,7 +633,7 @@ public class LinkLayer extends OMGraphicHandlerLayer implements
                     .println("LinkLayer: IOException contacting server for map request!");
             System.err.println(ioe);
 
-            linkManager.resetLink();
+            linkManager.resetLink(LinkManager.MAP_CHANNEL);
 
             if (!quiet) {
                 fireRequestMessage("Communication error between " + getName()
@@ -556,10 +710,19 @@ public class LinkLayer extends OMGraphicHandlerLayer implements
             boundingPolys[0] = new LinkBoundingPoly(ulLon, lrLat, lrLon, ulLat);
         }
 
+        LinkProperties requestArgs = new LinkProperties(args);
+        requestArgs.setProperty(LPC_REQUEST_ID, Integer.toString(++mapRequestCount));
+        if (subscribe) {
+            requestArgs.setProperty(LPC_SUBSCRIBE, getSubscriptionVersion());
+        }
+        if (bulkEncoding) {
+            requestArgs.setProperty(LPC_ENCODING, LPC_BULK_ENCODING);
+        }
+
         Point2D center = proj.getCenter();
         LinkMapRequest.write((float) center.getY(), (float) center.getX(), proj
                 .getScale(), proj.getHeight(), proj.getWidth(), boundingPolys,
-                             args, link);
+                             requestArgs, link);
 
         // ///////////////////////////////////////////////////
         // With asynchronous behavior, we don't listen to the reply
@@ -578,12 +741,43 @@ public class LinkLayer extends OMGraphicHandlerLayer implements
         // ///////////////////////////////////////////////////
     }
 
+    /**
+     * Check if the properties of a graphic or action list show that it was
+     * sent in response to a map request that has been replaced by a newer
+     * one. Servers that don't echo the LPC_REQUEST_ID aren't checked.
+     */
+    protected boolean isStaleResponse(LinkProperties props) {
+        String rid = props.getProperty(LPC_REQUEST_ID);
+        if (rid == null) {
+            return false;
+        }
+        try {
+            return Integer.parseInt(rid) < mapRequestCount;
+        } catch (NumberFormatException nfe) {
+            return false;
+        }
+    }
+
     public void handleLinkGraphicList(LinkGraphicList lgl) {
         Debug.message("link", "LinkLayer.handleLinkGraphicList()");
 
         if (lgl != null) {
+            // A complete list for an old projection, a newer one is on
+            // the way. Subscribers need every update to keep their
+            // version in step with the server.
+            if (!subscribe && isStaleResponse(lgl.getProperties())) {
+                Debug.message("link",
+                        "LinkLayer.handleLinkGraphicList(): ignoring response to old map request");
+                return;
+            }
+
             // Deal with all the messaging....
             handleMessages(lgl.getProperties());
+            if (subscribe) {
+                // A complete list, from a server that may not know about
+                // subscriptions.
+                setSubscriptionVersion(lgl.getProperties().getProperty(LPC_VERSION, "0"));
+            }
             LinkOMGraphicList lomgl = lgl.getGraphics();
             setGraphicList(lomgl);
             // Do we need to regenerate?
@@ -611,6 +805,19 @@ public class LinkLayer extends OMGraphicHandlerLayer implements
 
         handleMessages(lal.getProperties());
 
+        String baseVersion = lal.getProperties().getProperty(LPC_BASE_VERSION);
+        if (subscribe && baseVersion != null) {
+            if (!baseVersion.equals(getSubscriptionVersion())) {
+                // Changes to graphics we don't have, start over with a
+                // complete list.
+                Debug.message("link", "LinkLayer.handleLinkActionList: graphic updates out of sync, asking for new list");
+                setSubscriptionVersion("0");
+                doPrepare();
+                return;
+            }
+            setSubscriptionVersion(lal.getProperties().getProperty(LPC_VERSION, "0"));
+        }
+
         // The only thing we need to do is handle any gesture
         // changes...
         Vector updates = lal.getGraphicUpdates();
@@ -676,7 +883,16 @@ public class LinkLayer extends OMGraphicHandlerLayer implements
                 }
                 if (gug != null) {
                     gug.generate(proj);
-                    graphics.add(gug);
+                    // Replace a graphic with the same id, instead of
+                    // adding a copy of it.
+                    if (gu.id != null) {
+                        reactionGraphicIndex = graphics.getOMGraphicIndexWithId(gu.id);
+                    }
+                    if (reactionGraphicIndex == Link.UNKNOWN) {
+                        graphics.add(gug);
+                    } else {
+                        graphics.setOMGraphicAt(gug, reactionGraphicIndex);
+                    }
                     reactionGraphic = gug;
                 } else {
                     Debug.message("link",
@@ -1044,7 +1260,7 @@ public class LinkLayer extends OMGraphicHandlerLayer implements
             // LinkActionList lal;
             // LinkActionRequest lar;
 
-            ClientLink l = linkManager.getLink(false);
+            ClientLink l = getLink(LinkManager.ACTION_CHANNEL, false);
 
             // We'll check this here because we don't want to wait if
             // it is not available - it could be used for another
@@ -1058,18 +1274,18 @@ public class LinkLayer extends OMGraphicHandlerLayer implements
 
             // Using the link - carefully prevent others from using it
             // too!
-            synchronized (l) {
-                if (id != null) {
-                    args.setProperty(LPC_GRAPHICID, id);
-                } else {
-                    // Reset this to prevent sending the id of a previously
-                    // selected graphic when no graphic is clicked on.
-                    args.remove(LPC_GRAPHICID);
-                }
+            // The gesture gets its own copy of the arguments, since map
+            // requests can be reading args on the map channel at the same
+            // time.
+            LinkProperties gestureArgs = new LinkProperties(args);
+            if (id != null) {
+                gestureArgs.setProperty(LPC_GRAPHICID, id);
+            }
 
+            synchronized (l) {
                 // Send the query
                 LinkActionRequest.write(descriptor, e, (float) llpoint.getY(),
-                                        (float) llpoint.getX(), args, l);
+                                        (float) llpoint.getX(), gestureArgs, l);
 
                 // ///////////////////////////////////////////////////
                 // With asynchronous behavior, we don't listen to the
@@ -1090,7 +1306,7 @@ public class LinkLayer extends OMGraphicHandlerLayer implements
 
             }
 
-            linkManager.finLink();
+            linkManager.finLink(LinkManager.ACTION_CHANNEL);
 
             // ///////////////////////////////////////////////////
             // With asynchronous behavior, we don't listen to the
@@ -1122,7 +1338,7 @@ public class LinkLayer extends OMGraphicHandlerLayer implements
             System.err
                     .println("LinkLayer: IOException contacting server during gesture handling!");
             System.err.println(ioe);
-            linkManager.resetLink();
+            linkManager.resetLink(LinkManager.ACTION_CHANNEL);
             return false;
         }
     }
@@ -1150,7 +1366,7 @@ public class LinkLayer extends OMGraphicHandlerLayer implements
         try {
             // We do want the link object here... If another thread is
             // using the link, wait.
-            ClientLink l = linkManager.getLink(true);
+            ClientLink l = getLink(LinkManager.ACTION_CHANNEL, true);
 
             if (l == null) {
                 System.err
@@ -1183,7 +1399,7 @@ public class LinkLayer extends OMGraphicHandlerLayer implements
             // l.readAndParse(getProjection(), currentGenerator);
             // ///////////////////////////////////////////////////
 
-            linkManager.finLink();
+            linkManager.finLink(LinkManager.ACTION_CHANNEL);
 
         } catch (UnknownHostException uhe) {
             Debug.error("LinkLayer: unknown host!");
@@ -1194,7 +1410,7 @@ public class LinkLayer extends OMGraphicHandlerLayer implements
                     + port + "LinkLayer: IOException contacting server!\n"
                     + ioe.getMessage());
 
-            linkManager.resetLink();
+            linkManager.resetLink(LinkManager.ACTION_CHANNEL);
 
             if (!quiet) {
                 fireRequestMessage("Communication error between " + getName()
@@ -47,6 +47,8 @@ public class LinkListener extends Thread implements LinkPropertiesConstants {
      * started.
      */
     protected boolean listening = false;
+    /** The LinkManager channel of the link this listener reads from. */
+    protected int channel = LinkManager.MAP_CHANNEL;
 
     /**
      * Default Constructor should not be used.
@@ -68,6 +70,28 @@ public class LinkListener extends Thread implements LinkPropertiesConstants {
         this.currentGenerator = generator;
     }
 
+    /**
+     * Create child thread that will handle the responses on one
+     * channel of a pooled LinkManager.
+     * 
+     * @param linkManager the LinkManager to communicate over.
+     * @param layer the LinkLayer to do the work.
+     * @param generator the OMGridGenerator.
+     * @param channel the LinkManager channel to listen to.
+     */
+    public LinkListener(LinkManager linkManager, LinkLayer layer,
+            OMGridGenerator generator, int channel) {
+        this(linkManager, layer, generator);
+        this.channel = channel;
+    }
+
+    /**
+     * Get the LinkManager channel this listener reads from.
+     */
+    public int getChannel() {
+        return channel;
+    }
+
     /**
      * A method used by outsiders to figure out if the LinkListener is
      * listening to the server. If false, start() may need to be
@@ -117,7 +141,7 @@ public class LinkListener extends Thread implements LinkPropertiesConstants {
             }
             Debug.message("link", "LinkListener: Server disconnected");
         }
-        layer.setListener(null);
+        layer.setListener(channel, null);
     }
 
     /**
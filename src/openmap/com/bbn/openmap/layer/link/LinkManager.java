@@ -28,19 +28,42 @@ import java.net.Socket;
 import com.bbn.openmap.util.Debug;
 
 /**
- * The LinkManager..
+ * The LinkManager hands out the ClientLink to the server for the threads that
+ * write requests to it, one at a time. By default, map requests, gesture
+ * requests and GUI requests all go over the same link, so a slow map request
+ * holds up the gestures behind it. If the LinkManager is pooled, each kind of
+ * request (channel) gets its own connection to the server, and they don't
+ * wait for each other. Each connection needs a LinkListener reading the
+ * responses, see LinkLayer.getLink(int, boolean).
+ * <P>
+ * The server sees a pooled client as separate clients, so only use a pooled
+ * LinkManager with servers that don't keep gesture state tied to the
+ * connection that map requests come in on.
  */
 public class LinkManager {
 
+    /** The channel for map requests, and the only channel if not pooled. */
+    public final static int MAP_CHANNEL = 0;
+    /** The channel for gesture requests and action lists. */
+    public final static int ACTION_CHANNEL = 1;
+    /** The channel for GUI requests. */
+    public final static int GUI_CHANNEL = 2;
+    /** The number of channels. */
+    public final static int NUM_CHANNELS = 3;
+
     protected String host;
     protected int port;
     protected boolean obeyCommandToExit;
+    /** Whether each channel gets its own connection to the server. */
+    protected boolean pooled = false;
 
     /**
-     * volatile because we want internal methods to get the message
-     * that a link was nulled out.
+     * The link for each channel, only the MAP_CHANNEL link is used if the
+     * LinkManager isn't pooled. Access with getChannelLink() and
+     * setChannelLink() so internal methods get the message that a link was
+     * nulled out.
      */
-    protected volatile ClientLink link;
+    protected ClientLink[] links = new ClientLink[NUM_CHANNELS];
 
     /** Constructor. */
     protected LinkManager() {}
@@ -59,6 +82,53 @@ public class LinkManager {
         return obeyCommandToExit;
     }
 
+    /**
+     * Set whether each channel should get its own connection to the server.
+     * Should be set before any links are handed out.
+     */
+    public void setPooled(boolean value) {
+        pooled = value;
+    }
+
+    public boolean isPooled() {
+        return pooled;
+    }
+
+    /**
+     * Get the channel whose link is used for requests on the given channel,
+     * which is the channel itself if the LinkManager is pooled and the
+     * MAP_CHANNEL if it isn't.
+     */
+    public int getLinkChannel(int channel) {
+        if (pooled && channel >= 0 && channel < NUM_CHANNELS) {
+            return channel;
+        }
+        return MAP_CHANNEL;
+    }
+
+    protected synchronized ClientLink getChannelLink(int channel) {
+        return links[getLinkChannel(channel)];
+    }
+
+    protected synchronized void setChannelLink(int channel, ClientLink link) {
+        links[getLinkChannel(channel)] = link;
+    }
+
+    /**
+     * Get the link for map requests. Same as getLink(MAP_CHANNEL,
+     * waitForLock).
+     * 
+     * @param waitForLock if true, the caller will block in this
+     *        method until the link has been locked for the caller. If
+     *        false, a null will be returned if the lock on the link
+     *        couldn't be set for the caller's use.
+     * @return a link if the link is locked for the caller's use, null
+     *         if the link is not available.
+     */
+    public ClientLink getLink(boolean waitForLock) throws java.io.IOException {
+        return getLink(MAP_CHANNEL, waitForLock);
+    }
+
     /**
      * This should be the only method a multi-threaded object uses to
      * gain use of the thread, i.e., on the client side where a GUI
@@ -67,6 +137,8 @@ public class LinkManager {
      * should be tested for by the callers, so that they can handle
      * the rejection properly.
      * 
+     * @param channel the kind of request that will be written to the
+     *        link, MAP_CHANNEL, ACTION_CHANNEL or GUI_CHANNEL.
      * @param waitForLock if true, the caller will block in this
      *        method until the link has been locked for the caller. If
      *        false, a null will be returned if the lock on the link
@@ -74,43 +146,31 @@ public class LinkManager {
      * @return a link if the link is locked for the caller's use, null
      *         if the link is not available.
      */
-    public ClientLink getLink(boolean waitForLock) throws java.io.IOException {
+    public ClientLink getLink(int channel, boolean waitForLock)
+            throws java.io.IOException {
 
-        // NOTE: This should be the only place that the link
-        // object gets assigned. Otherwise, the layer can end up
-        // using two different links via different threads.
-        if (link == null) {
-            synchronized (this) {
-                if (link == null) {
-                    link = getLink();
-                    link.setObeyCommandToExit(obeyCommandToExit);
-                }
-            }
-        }
+        ClientLink link = connect(channel);
 
-        try {
-            while (!link.setLocked(true)) {
+        while (!link.setLocked(true)) {
 
-                // This handles the case where we don't want to wait
-                // for the link to become available.
-                if (!waitForLock) {
-                    return null;
-                }
+            // This handles the case where we don't want to wait
+            // for the link to become available.
+            if (!waitForLock) {
+                return null;
+            }
 
-                // We will wait here for the link to not be in use.
-                // Catch a link == null in case the link was shut down
-                // in finLink() from another thread. IF we didn't
-                // catch the lock, we stay in the loop.
-                try {
-                    Thread.sleep(300);
-                } catch (java.lang.InterruptedException ie) {
-                }
+            // We will wait here for the link to not be in use.
+            try {
+                Thread.sleep(300);
+            } catch (java.lang.InterruptedException ie) {
+            }
+
+            // Check in case the link was shut down in finLink() or
+            // resetLink() from another thread. IF we didn't catch the
+            // lock, we stay in the loop.
+            if (link != getChannelLink(channel)) {
+                return null;
             }
-        } catch (NullPointerException npe) {
-            // since probably means link is null, so just return null
-            // in case some other thread tries to do something
-            // tricky..
-            return null;
         }
 
         return link;
@@ -120,24 +180,29 @@ public class LinkManager {
      * Called for a LayerListener that will not write to the Link,
      * only read from it. Doesn't effect the lock.
      * 
-     * @return a link if the link is locked for the caller's use, null
-     *         if the link is not available.
+     * @return the link for the channel of the LinkListener.
      */
     protected ClientLink getLink(LinkListener ll) throws java.io.IOException {
+        return connect(ll.getChannel());
+    }
 
-        // NOTE: This should be the only place that the link
+    /**
+     * Get the link for a channel, connecting to the server if it isn't
+     * connected.
+     */
+    protected ClientLink connect(int channel) throws java.io.IOException {
+        // NOTE: This should be the only place that a link
         // object gets assigned. Otherwise, the layer can end up
         // using two different links via different threads.
-        if (link == null) {
-            synchronized (this) {
-                if (link == null) {
-                    link = getLink();
-                    link.setObeyCommandToExit(obeyCommandToExit);
-                }
+        synchronized (this) {
+            ClientLink link = getChannelLink(channel);
+            if (link == null) {
+                link = getLink();
+                link.setObeyCommandToExit(obeyCommandToExit);
+                setChannelLink(channel, link);
             }
+            return link;
         }
-
-        return link;
     }
 
     /**
@@ -165,16 +230,32 @@ public class LinkManager {
         return tmplink;
     }
 
+    /**
+     * Release the map request link. Same as finLink(MAP_CHANNEL).
+     */
+    public void finLink() throws IOException {
+        finLink(MAP_CHANNEL);
+    }
+
     /**
      * When a getLink() is called, and the link is reserved for that
      * caller, finLink() MUST be called to release the link for
      * others. If it is not called, no one else will be able to use it.
      */
-    public void finLink() throws IOException {
+    public void finLink(int channel) throws IOException {
+        ClientLink link = getChannelLink(channel);
+        if (link == null) {
+            return;
+        }
+
         if (link.isCloseLink()) {
             Debug.message("link", "LinkManager.finLink: closing Link");
             link.close();
-            link = null;
+            synchronized (this) {
+                if (getChannelLink(channel) == link) {
+                    setChannelLink(channel, null);
+                }
+            }
         } else {
             Debug.message("link", "LinkManager.finLink: releasing lock on Link");
             link.setLocked(false);
@@ -182,9 +263,24 @@ public class LinkManager {
     }
 
     /**
-     * Set the link to null.
+     * Set all the links to null, closing them.
      */
     public void resetLink() {
+        for (int i = 0; i < NUM_CHANNELS; i++) {
+            resetLink(i);
+        }
+    }
+
+    /**
+     * Set the link for a channel to null, closing it.
+     */
+    public void resetLink(int channel) {
+        ClientLink link;
+        synchronized (this) {
+            link = getChannelLink(channel);
+            setChannelLink(channel, null);
+        }
+
         if (link != null) {
             try {
                 link.cleanUp();
@@ -193,6 +289,5 @@ public class LinkManager {
                 // Nice try...
             }
         }
-        link = null;
     }
-}
\ No newline at end of file
+}
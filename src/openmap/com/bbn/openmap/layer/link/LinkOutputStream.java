@@ -26,11 +26,15 @@ import java.io.DataOutputStream;
 import java.io.OutputStream;
 
 /**
- * Extend DataOutputStream so we can reset the written byte count.
+ * Extend DataOutputStream so we can reset the written byte count, and
+ * note whether arrays are being written in bulk blocks.
  * 
  * @see java.io.DataOutputStream
  */
 public class LinkOutputStream extends DataOutputStream {
+
+    protected boolean bulkEncoding = false;
+
     /**
      * Creates a new link output stream to write data to the specified
      * underlying output stream.
@@ -42,6 +46,18 @@ public class LinkOutputStream extends DataOutputStream {
         super(out);
     }
 
+    /**
+     * @return true if arrays are being written as bulk blocks.
+     * @see com.bbn.openmap.layer.link.LinkArrayCodec
+     */
+    public boolean isBulkEncoding() {
+        return bulkEncoding;
+    }
+
+    public void setBulkEncoding(boolean bulkEncoding) {
+        this.bulkEncoding = bulkEncoding;
+    }
+
     /**
      * Reset the written bytecount back to 0.
      * 
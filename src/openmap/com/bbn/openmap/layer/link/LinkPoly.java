@@ -70,11 +70,7 @@ public class LinkPoly implements LinkGraphicConstants, LinkPropertiesConstants {
         dos.writeByte(GRAPHICTYPE_POLY);
         dos.writeByte(RENDERTYPE_LATLON);
         dos.writeByte(lType);
-        dos.writeInt(llpoints.length);
-
-        for (int i = 0; i < llpoints.length; i++) {
-            dos.writeFloat((float) llpoints[i]);
-        }
+        LinkArrayCodec.writeFloats(llpoints, dos);
 
         dos.writeByte(units);
         dos.writeInt(nsegs);
@@ -110,11 +106,20 @@ public class LinkPoly implements LinkGraphicConstants, LinkPropertiesConstants {
             length = lonpoints.length;
         }
 
-        dos.writeInt(length);
+        if (LinkArrayCodec.isBulk(dos)) {
+            double[] llpoints = new double[length * 2];
+            for (int i = 0; i < length; i++) {
+                llpoints[2 * i] = latpoints[i];
+                llpoints[2 * i + 1] = lonpoints[i];
+            }
+            LinkArrayCodec.writeFloats(llpoints, dos);
+        } else {
+            dos.writeInt(length);
 
-        for (int i = 0; i < length; i++) {
-            dos.writeFloat(latpoints[i]);
-            dos.writeFloat(lonpoints[i]);
+            for (int i = 0; i < length; i++) {
+                dos.writeFloat(latpoints[i]);
+                dos.writeFloat(lonpoints[i]);
+            }
         }
 
         dos.writeByte(units);
@@ -137,11 +142,7 @@ public class LinkPoly implements LinkGraphicConstants, LinkPropertiesConstants {
         dos.write(Link.POLY_HEADER.getBytes());
         dos.writeByte(GRAPHICTYPE_POLY);
         dos.writeByte(RENDERTYPE_XY);
-        dos.writeInt(xypoints.length);
-
-        for (int i = 0; i < xypoints.length; i++) {
-            dos.writeInt(xypoints[i]);
-        }
+        LinkArrayCodec.writeXY(xypoints, dos);
         properties.write(dos);
     }
 
@@ -161,13 +162,7 @@ public class LinkPoly implements LinkGraphicConstants, LinkPropertiesConstants {
         dos.write(Link.POLY_HEADER.getBytes());
         dos.writeByte(GRAPHICTYPE_POLY);
         dos.writeByte(RENDERTYPE_XY);
-        int numPoints = xpoints.length + ypoints.length;
-        dos.writeInt(numPoints);
-
-        for (int i = 0; i < numPoints / 2; i++) {
-            dos.writeInt(xpoints[i]);
-            dos.writeInt(ypoints[i]);
-        }
+        writeXY(xpoints, ypoints, dos);
 
         properties.write(dos);
     }
@@ -194,11 +189,7 @@ public class LinkPoly implements LinkGraphicConstants, LinkPropertiesConstants {
         dos.writeByte(RENDERTYPE_OFFSET);
         dos.writeFloat(latPoint);
         dos.writeFloat(lonPoint);
-        dos.writeInt(xypoints.length);
-
-        for (int i = 0; i < xypoints.length; i++) {
-            dos.writeInt(xypoints[i]);
-        }
+        LinkArrayCodec.writeXY(xypoints, dos);
 
         dos.writeByte(cMode);
         properties.write(dos);
@@ -228,15 +219,60 @@ public class LinkPoly implements LinkGraphicConstants, LinkPropertiesConstants {
         dos.writeByte(RENDERTYPE_OFFSET);
         dos.writeFloat(latPoint);
         dos.writeFloat(lonPoint);
+        writeXY(xpoints, ypoints, dos);
+        dos.writeByte(cMode);
+        properties.write(dos);
+    }
+
+    /**
+     * Write separate x and y point arrays as alternating x, y values.
+     */
+    protected static void writeXY(int[] xpoints, int[] ypoints,
+                                  DataOutputStream dos) throws IOException {
         int numPoints = xpoints.length + ypoints.length;
+
+        if (LinkArrayCodec.isBulk(dos)) {
+            int[] xypoints = new int[numPoints];
+            for (int i = 0; i < numPoints / 2; i++) {
+                xypoints[2 * i] = xpoints[i];
+                xypoints[2 * i + 1] = ypoints[i];
+            }
+            LinkArrayCodec.writeXY(xypoints, dos);
+            return;
+        }
+
         dos.writeInt(numPoints);
 
         for (int i = 0; i < numPoints / 2; i++) {
             dos.writeInt(xpoints[i]);
             dos.writeInt(ypoints[i]);
         }
-        dos.writeByte(cMode);
-        properties.write(dos);
+    }
+
+    /**
+     * Read alternating x, y values into separate x and y point arrays.
+     * 
+     * @return int[][] with the x points and the y points.
+     */
+    protected static int[][] readXY(DataInputStream dis) throws IOException {
+        if (LinkArrayCodec.isBulk(dis)) {
+            int[] xypoints = LinkArrayCodec.readXY(dis);
+            int[][] points = new int[2][xypoints.length / 2];
+            for (int i = 0; i < xypoints.length / 2; i++) {
+                points[0][i] = xypoints[2 * i];
+                points[1][i] = xypoints[2 * i + 1];
+            }
+            return points;
+        }
+
+        int numPoints = dis.readInt();
+        int[][] points = new int[2][numPoints / 2];
+
+        for (int i = 0; i < numPoints / 2; i += 1) {
+            points[0][i] = dis.readInt();
+            points[1][i] = dis.readInt();
+        }
+        return points;
     }
 
     /**
@@ -308,12 +344,8 @@ public class LinkPoly implements LinkGraphicConstants, LinkPropertiesConstants {
         switch (renderType) {
         case RENDERTYPE_LATLON:
             int lineType = dis.readByte();
-            numPoints = dis.readInt();
-
-            double[] llpoints = new double[numPoints];
-            for (int i = 0; i < numPoints; i++) {
-                llpoints[i] = dis.readFloat();
-            }
+            double[] llpoints = LinkArrayCodec.readFloats(dis);
+            numPoints = llpoints.length;
             int units = dis.readByte();
             int nsegs = dis.readInt();
 
@@ -332,14 +364,10 @@ public class LinkPoly implements LinkGraphicConstants, LinkPropertiesConstants {
             poly = new OMPoly(llpoints, units, lineType, nsegs);
             break;
         case RENDERTYPE_XY:
-            numPoints = dis.readInt();
-            xpoints = new int[numPoints / 2];
-            ypoints = new int[numPoints / 2];
-
-            for (int i = 0; i < numPoints / 2; i += 1) {
-                xpoints[i] = dis.readInt();
-                ypoints[i] = dis.readInt();
-            }
+            int[][] xy = readXY(dis);
+            xpoints = xy[0];
+            ypoints = xy[1];
+            numPoints = xpoints.length * 2;
 
             if (Debug.debugging("linkdetail")) {
                 System.out.println("  X/Y LinkPoly:");
@@ -355,15 +383,10 @@ public class LinkPoly implements LinkGraphicConstants, LinkPropertiesConstants {
         case RENDERTYPE_OFFSET:
             float lat_1 = dis.readFloat();
             float lon_1 = dis.readFloat();
-            numPoints = dis.readInt();
-
-            xpoints = new int[numPoints / 2];
-            ypoints = new int[numPoints / 2];
-
-            for (int i = 0; i < numPoints / 2; i += 1) {
-                xpoints[i] = dis.readInt();
-                ypoints[i] = dis.readInt();
-            }
+            int[][] offsets = readXY(dis);
+            xpoints = offsets[0];
+            ypoints = offsets[1];
+            numPoints = xpoints.length * 2;
             int cMode = dis.readByte();
 
             if (Debug.debugging("linkdetail")) {
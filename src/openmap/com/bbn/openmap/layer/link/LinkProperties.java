@@ -34,8 +34,10 @@ import java.awt.image.BufferedImage;
 import java.io.DataInput;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 
@@ -156,7 +158,19 @@ public class LinkProperties extends Properties implements LinkPropertiesConstant
      */
     public void write(DataOutputStream dos) throws IOException {
 
-        dos.writeInt((size() + 1) * 2);
+        // Take the keys and values once, including the defaults, so the
+        // count matches the strings written even if the properties change.
+        List<String> strings = new ArrayList<String>();
+        for (Enumeration<?> e = propertyNames(); e.hasMoreElements();) {
+            String key = (String) e.nextElement();
+            String value = getProperty(key);
+            if (value != null) {
+                strings.add(key);
+                strings.add(value);
+            }
+        }
+
+        dos.writeInt(strings.size() + 2);
 
         dos.writeInt(LPC_PROPERY_MANAGEMENT_POLICY.length());
         dos.writeChars(LPC_PROPERY_MANAGEMENT_POLICY);
@@ -168,13 +182,9 @@ public class LinkProperties extends Properties implements LinkPropertiesConstant
             dos.writeChars(LPC_CLEAR_PROPERTIES);
         }
 
-        for (Enumeration e = propertyNames(); e.hasMoreElements();) {
-            String key = (String) e.nextElement();
-            String value = getProperty(key);
-            dos.writeInt(key.length());
-            dos.writeChars(key);
-            dos.writeInt(value.length());
-            dos.writeChars(value);
+        for (String string : strings) {
+            dos.writeInt(string.length());
+            dos.writeChars(string);
         }
     }
 
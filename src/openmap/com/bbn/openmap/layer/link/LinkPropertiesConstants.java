@@ -107,6 +107,45 @@ public interface LinkPropertiesConstants {
     /** The upper right longitude */
     public final static String LPC_LONMAX = "lonmax";
 
+    // These constants are for clients that subscribe to updates
+    /**
+     * Set in a map request by a client that wants updates to the
+     * graphics it has, instead of a new list. The value is the version
+     * of the graphics the client has, "0" if it has none.
+     */
+    public final static String LPC_SUBSCRIBE = "subscribe";
+    /**
+     * Set by the server in the properties of a graphic list or action
+     * list, the version of the client's graphics after it is applied.
+     */
+    public final static String LPC_VERSION = "ver";
+    /**
+     * Set by the server in the properties of an action list that holds
+     * updates, the version of the graphics the updates apply to.
+     */
+    public final static String LPC_BASE_VERSION = "basever";
+
+    // These constants are for the encoding of graphic arrays
+    /**
+     * Set in a request by a client that can read graphic arrays in bulk
+     * blocks, and in the properties of graphic and action lists that
+     * are written that way. The value is LPC_BULK_ENCODING.
+     * 
+     * @see com.bbn.openmap.layer.link.LinkArrayCodec
+     */
+    public final static String LPC_ENCODING = "enc";
+    /** The LPC_ENCODING value for bulk blocks. */
+    public final static String LPC_BULK_ENCODING = "bulk";
+
+    // These constants are for matching responses to requests
+    /**
+     * Set in a map request by the client to number it, and echoed by
+     * the server's Link in the properties of the graphic and action
+     * lists written in response, so the client can ignore responses to
+     * map requests that have been replaced by newer ones.
+     */
+    public final static String LPC_REQUEST_ID = "rid";
+
     // Constants that can fire a information delegator action.
 
     /** The URL text attribute name. */
@@ -68,11 +68,7 @@ public class LinkRaster implements LinkGraphicConstants,
         dos.writeFloat(ln);
         dos.writeInt(w);
         dos.writeInt(h);
-        dos.writeInt(pix.length);
-
-        for (int i = 0; i < pix.length; i++) {
-            dos.writeInt(pix[i]);
-        }
+        LinkArrayCodec.writeInts(pix, dos);
         properties.write(dos);
     }
 
@@ -101,11 +97,7 @@ public class LinkRaster implements LinkGraphicConstants,
         dos.writeInt(y1);
         dos.writeInt(w);
         dos.writeInt(h);
-        dos.writeInt(pix.length);
-
-        for (int i = 0; i < pix.length; i++) {
-            dos.writeInt(pix[i]);
-        }
+        LinkArrayCodec.writeInts(pix, dos);
         properties.write(dos);
     }
 
@@ -140,11 +132,7 @@ public class LinkRaster implements LinkGraphicConstants,
         dos.writeInt(offset_y1);
         dos.writeInt(w);
         dos.writeInt(h);
-        dos.writeInt(pix.length);
-
-        for (int i = 0; i < pix.length; i++) {
-            dos.writeInt(pix[i]);
-        }
+        LinkArrayCodec.writeInts(pix, dos);
         properties.write(dos);
     }
 
@@ -456,8 +444,7 @@ public class LinkRaster implements LinkGraphicConstants,
         dos.writeFloat(ln);
         dos.writeInt(w);
         dos.writeInt(h);
-        dos.writeInt(bytes.length);
-        dos.write(bytes, 0, bytes.length);
+        LinkArrayCodec.writeBytes(bytes, dos);
         dos.writeInt(colorTable.length);
 
         int i;
@@ -498,8 +485,7 @@ public class LinkRaster implements LinkGraphicConstants,
         dos.writeInt(y1);
         dos.writeInt(w);
         dos.writeInt(h);
-        dos.writeInt(bytes.length);
-        dos.write(bytes, 0, bytes.length);
+        LinkArrayCodec.writeBytes(bytes, dos);
         dos.writeInt(colorTable.length);
 
         int i;
@@ -544,8 +530,7 @@ public class LinkRaster implements LinkGraphicConstants,
         dos.writeInt(offset_y1);
         dos.writeInt(w);
         dos.writeInt(h);
-        dos.writeInt(bytes.length);
-        dos.write(bytes, 0, bytes.length);
+        LinkArrayCodec.writeBytes(bytes, dos);
         dos.writeInt(colorTable.length);
 
         int i;
@@ -653,15 +638,10 @@ public class LinkRaster implements LinkGraphicConstants,
 
             if (colorModel == COLORMODEL_INDEXED) {
 
-                length = dis.readInt();
-
-                byte[] bytes = new byte[length];
-
                 if (Debug.debugging("link")) {
-                    System.out.println("LinkRaster | Reading " + length
-                            + " bytes.");
+                    System.out.println("LinkRaster | Reading bytes.");
                 }
-                dis.readFully(bytes);
+                byte[] bytes = LinkArrayCodec.readBytes(dis);
 
                 if (Debug.debugging("link")) {
                     System.out.println("LinkRaster | read bytes.");
@@ -702,16 +682,11 @@ public class LinkRaster implements LinkGraphicConstants,
                 }
 
             } else { // must be COLORMODEL_DIRECT
-                length = dis.readInt();
-                int[] pix = new int[length];
+                int[] pix = LinkArrayCodec.readInts(dis);
                 if (Debug.debugging("link")) {
-                    System.out.println("LinkRaster | Reading " + length
+                    System.out.println("LinkRaster | Read " + pix.length
                             + " pixels.");
                 }
-
-                for (i = 0; i < length; i++) {
-                    pix[i] = dis.readInt();
-                }
                 switch (renderType) {
                 case RENDERTYPE_OFFSET:
                     raster = new OMRaster(lat, lon, x, y, w, h, pix);
@@ -0,0 +1,47 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.layer.link;
+
+import java.io.IOException;
+
+/**
+ * A LinkRequestHandler answers the requests from one client, one request at a
+ * time. The Link has already been read with readAndParse() when
+ * handleRequest() is called, so the handler can get the requests from it and
+ * write the response back to it, finishing with END_TOTAL. The LinkServer is a
+ * LinkRequestHandler, which lets a LinkSelectorServer serve many clients
+ * without a thread for each one.
+ * 
+ * @author dietrick
+ */
+public interface LinkRequestHandler {
+
+    /**
+     * Respond to the request that was just read off the link.
+     * 
+     * @param link the link the request was read from, and the response should
+     *        be written to.
+     * @throws IOException
+     */
+    public void handleRequest(Link link) throws IOException;
+
+    /**
+     * Called once after the client has disconnected, and after any request
+     * being handled has finished, so the handler can let go of what it kept
+     * for the client, like a LinkSubscription or open files.
+     */
+    public void close();
+
+}
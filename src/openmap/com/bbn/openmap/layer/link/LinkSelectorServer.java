@@ -0,0 +1,372 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.layer.link;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The LinkSelectorServer serves many Link clients from one thread doing all of
+ * the socket reading and writing, and a fixed pool of worker threads answering
+ * requests. Each client gets a LinkSession, and a LinkRequestHandler created
+ * for it by the LinkServerStarter, so the LinkServers written for the
+ * thread-per-client LinkServerStarter can be used as they are, as long as
+ * they handle requests in handleRequest().
+ * <P>
+ * 
+ * A client only ever has one request being handled at a time, so handlers
+ * don't need to be any more thread safe than they do in their own threads.
+ * The memory used for a client is bounded by the largest request the server
+ * will take, and the amount of response the server will hold for a client
+ * before the handler waits for the client to read it.
+ * 
+ * @author dietrick
+ */
+public class LinkSelectorServer implements Runnable {
+
+    public static Logger logger = Logger.getLogger("com.bbn.openmap.layer.link.LinkSelectorServer");
+
+    /** The largest request a client can send by default, 4MB. */
+    public final static int DEFAULT_MAX_REQUEST_SIZE = 4 * 1024 * 1024;
+    /** The response held for a client before the handler waits, 1MB. */
+    public final static int DEFAULT_MAX_PENDING_OUTPUT = 1024 * 1024;
+
+    protected final static int READ_BUFFER_SIZE = 64 * 1024;
+    protected final static long KEEP_ALIVE_TIME = 60L;
+
+    protected LinkServerStarter starter;
+    protected int port;
+    protected int maxRequestSize = DEFAULT_MAX_REQUEST_SIZE;
+    protected int maxPendingOutput = DEFAULT_MAX_PENDING_OUTPUT;
+
+    protected ThreadPoolExecutor executor;
+    protected Selector selector;
+    protected ServerSocketChannel serverChannel;
+    /** Sessions that need their interest ops checked by the selector thread. */
+    protected final List<LinkSession> updates = new ArrayList<LinkSession>();
+    protected int sessionCount = 0;
+    protected volatile boolean running = false;
+
+    /**
+     * Create a server.
+     * 
+     * @param starter creates the LinkRequestHandler for each client.
+     * @param port the port to listen to.
+     * @param numThreads the number of threads handling requests, 0 for the
+     *        number of processors.
+     */
+    public LinkSelectorServer(LinkServerStarter starter, int port, int numThreads) {
+        this.starter = starter;
+        this.port = port;
+        if (numThreads <= 0) {
+            numThreads = Runtime.getRuntime().availableProcessors();
+        }
+        executor = new ThreadPoolExecutor(numThreads, numThreads, KEEP_ALIVE_TIME, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new HandlerThreadFactory());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public int getMaxRequestSize() {
+        return maxRequestSize;
+    }
+
+    public void setMaxRequestSize(int maxRequestSize) {
+        this.maxRequestSize = maxRequestSize;
+    }
+
+    public int getMaxPendingOutput() {
+        return maxPendingOutput;
+    }
+
+    public void setMaxPendingOutput(int maxPendingOutput) {
+        this.maxPendingOutput = maxPendingOutput;
+    }
+
+    /**
+     * @return the number of clients connected.
+     */
+    public synchronized int getSessionCount() {
+        return sessionCount;
+    }
+
+    /**
+     * Listen for clients and serve them until stop() is called, or the server
+     * socket fails.
+     */
+    public void run() {
+        try {
+            serve();
+        } catch (IOException ioe) {
+            logger.log(Level.WARNING, "LinkSelectorServer: IOException while running", ioe);
+        } finally {
+            shutdown();
+        }
+    }
+
+    protected void serve() throws IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.socket().setReuseAddress(true);
+        serverChannel.socket().bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        running = true;
+        logger.info("LinkSelectorServer: running on port " + port);
+
+        ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+
+        while (running) {
+            selector.select();
+            processUpdates();
+
+            Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+            while (it.hasNext()) {
+                SelectionKey key = it.next();
+                it.remove();
+                if (!key.isValid()) {
+                    continue;
+                }
+
+                if (key.isAcceptable()) {
+                    // A client that can't be set up shouldn't stop the
+                    // server for the others.
+                    try {
+                        accept();
+                    } catch (IOException ioe) {
+                        logger.log(Level.WARNING, "LinkSelectorServer: problem accepting client", ioe);
+                    }
+                    continue;
+                }
+
+                LinkSession session = (LinkSession) key.attachment();
+                try {
+                    if (key.isReadable()) {
+                        read(session, readBuffer);
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        session.write();
+                        setInterest(session);
+                    }
+                } catch (IOException ioe) {
+                    logger.log(Level.FINE, "client disconnected", ioe);
+                    close(session);
+                }
+            }
+        }
+    }
+
+    /**
+     * Accept a waiting client and register it with the selector. The client's
+     * channel is closed if it can't be set up.
+     */
+    protected void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+
+        LinkRequestHandler handler = null;
+        boolean registered = false;
+        try {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+
+            LinkSession session = new LinkSession(this, channel);
+            handler = starter.createRequestHandler(session.getLink());
+            if (handler == null) {
+                return;
+            }
+            session.setHandler(handler);
+            session.setKey(channel.register(selector, SelectionKey.OP_READ, session));
+            registered = true;
+        } finally {
+            if (!registered) {
+                if (handler != null) {
+                    handler.close();
+                }
+                channel.close();
+            }
+        }
+
+        synchronized (this) {
+            sessionCount++;
+        }
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("fielding connection from " + channel.socket().getRemoteSocketAddress() + ", "
+                    + getSessionCount() + " clients");
+        }
+    }
+
+    protected void read(LinkSession session, ByteBuffer readBuffer) throws IOException {
+        SocketChannel channel = session.getChannel();
+        int read;
+        do {
+            readBuffer.clear();
+            read = channel.read(readBuffer);
+            if (read < 0) {
+                throw new IOException("end of stream");
+            }
+            readBuffer.flip();
+            session.received(readBuffer);
+        } while (read == READ_BUFFER_SIZE);
+
+        dispatch(session);
+    }
+
+    /**
+     * Hand the session to a worker thread if it has new input and isn't
+     * already being run.
+     */
+    protected void dispatch(LinkSession session) {
+        if (session.startWork()) {
+            executor.execute(session);
+        }
+    }
+
+    /**
+     * Called by sessions when they have output to send or have finished
+     * running, so the selector thread can check on them.
+     */
+    protected void update(LinkSession session) {
+        synchronized (updates) {
+            updates.add(session);
+        }
+        Selector sel = selector;
+        if (sel != null) {
+            sel.wakeup();
+        }
+    }
+
+    protected void processUpdates() {
+        LinkSession[] pending;
+        synchronized (updates) {
+            if (updates.isEmpty()) {
+                return;
+            }
+            pending = updates.toArray(new LinkSession[updates.size()]);
+            updates.clear();
+        }
+
+        for (LinkSession session : pending) {
+            if (session.isClosed()) {
+                continue;
+            }
+            setInterest(session);
+            dispatch(session);
+        }
+    }
+
+    protected void setInterest(LinkSession session) {
+        SelectionKey key = session.getKey();
+        if (key != null && key.isValid()) {
+            key.interestOps(SelectionKey.OP_READ | (session.hasOutput() ? SelectionKey.OP_WRITE : 0));
+        }
+    }
+
+    /**
+     * Disconnect a client. Can be called from any thread.
+     */
+    protected void close(LinkSession session) {
+        if (session.isClosed()) {
+            return;
+        }
+        session.closed();
+        SelectionKey key = session.getKey();
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            session.getChannel().close();
+        } catch (IOException ioe) {
+        }
+        synchronized (this) {
+            sessionCount--;
+        }
+        session.closeHandler();
+        logger.fine("LinkSelectorServer: client disconnected");
+    }
+
+    /**
+     * Stop listening, and disconnect all of the clients. The server shuts
+     * down on its own thread.
+     */
+    public void stop() {
+        running = false;
+        Selector sel = selector;
+        if (sel != null) {
+            sel.wakeup();
+        }
+    }
+
+    /**
+     * Close the server socket and all of the clients, called on the selector
+     * thread when run() finishes.
+     */
+    protected void shutdown() {
+        running = false;
+        if (selector != null && selector.isOpen()) {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof LinkSession) {
+                    close((LinkSession) key.attachment());
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException ioe) {
+            }
+        }
+        if (serverChannel != null) {
+            try {
+                serverChannel.close();
+            } catch (IOException ioe) {
+            }
+        }
+        executor.shutdown();
+    }
+
+    protected static class HandlerThreadFactory implements ThreadFactory {
+        private static final AtomicInteger poolCount = new AtomicInteger(1);
+        private final AtomicInteger threadCount = new AtomicInteger(1);
+        private final String namePrefix;
+
+        HandlerThreadFactory() {
+            namePrefix = "LinkSelectorServer-" + poolCount.getAndIncrement() + "-handler-";
+        }
+
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, namePrefix + threadCount.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
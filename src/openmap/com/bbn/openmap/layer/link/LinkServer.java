@@ -32,8 +32,15 @@ import java.net.Socket;
  * LinkServers may be contacting, You'll need to ensure some amount of
  * thread safety for the data if the data is being modified by the
  * LinkServer.
+ * <P>
+ * 
+ * Subclasses should answer requests in handleRequest(), which is called each
+ * time a request has been read off the link. Then the same LinkServer can be
+ * run in its own thread, or handed to a LinkSelectorServer that serves many
+ * clients from a few threads.
  */
-public class LinkServer extends Thread implements LinkPropertiesConstants {
+public class LinkServer extends Thread implements LinkPropertiesConstants,
+        LinkRequestHandler {
     /** The Link to use to talk to the client. */
     protected Link link;
 
@@ -57,6 +64,17 @@ public class LinkServer extends Thread implements LinkPropertiesConstants {
         }
     }
 
+    /**
+     * Create a server for a link that is already set up, used when the
+     * LinkServer is handling requests for a LinkSelectorServer instead of
+     * running in its own thread.
+     * 
+     * @param link the link to the client.
+     */
+    public LinkServer(Link link) {
+        this.link = link;
+    }
+
     /** From the Runnable interface. The thread starts here... */
     public void run() {
         try {
@@ -64,6 +82,7 @@ public class LinkServer extends Thread implements LinkPropertiesConstants {
         } catch (IOException ioe) {
             link.cleanUp();
             link = null;
+            close();
             if (com.bbn.openmap.util.Debug.debugging("link")) {
                 System.err.println(ioe);
             }
@@ -79,30 +98,49 @@ public class LinkServer extends Thread implements LinkPropertiesConstants {
      * @throws IOException
      */
     public void handleClient() throws IOException {
-        boolean validQuery;
-
         while (true) {
             link.readAndParse();
-            validQuery = false;
-
-            // For instance, you could do something like this...
-
-            //          LinkMapRequest graphicsQuery = link.getMapRequest();
-            //          LinkActionRequest gestureQuery =
-            // link.getActionRequest();
+            // Other threads can push updates to the client by writing to
+            // the link while synchronized on it.
+            synchronized (link) {
+                handleRequest(link);
+            }
+        }
+    }
 
-            //          if (graphicsQuery != null) {
-            //              getRectangle(graphicsQuery, link);
-            //              validQuery = true;
-            //          }
-            //          if (gestureQuery != null) {
-            //              handleGesture(gestureQuery, link);
-            //              validQuery = true;
-            //          }
+    /**
+     * Called when the client has disconnected. Subclasses that keep things
+     * for the client should let go of them here.
+     */
+    public void close() {}
 
-            if (!validQuery) {
-                huh(link);
-            }
+    /**
+     * Respond to a request that has been read off the link. Called by
+     * handleClient() in a LinkServer thread, or by a LinkSelectorServer.
+     * 
+     * @param link the link the request was read from.
+     * @throws IOException
+     */
+    public void handleRequest(Link link) throws IOException {
+        boolean validQuery = false;
+
+        // For instance, you could do something like this...
+
+        //          LinkMapRequest graphicsQuery = link.getMapRequest();
+        //          LinkActionRequest gestureQuery =
+        // link.getActionRequest();
+
+        //          if (graphicsQuery != null) {
+        //              getRectangle(graphicsQuery, link);
+        //              validQuery = true;
+        //          }
+        //          if (gestureQuery != null) {
+        //              handleGesture(gestureQuery, link);
+        //              validQuery = true;
+        //          }
+
+        if (!validQuery) {
+            huh(link);
         }
     }
 
@@ -33,6 +33,13 @@ import java.net.Socket;
  * you should also create a new LinkServerStarter to launch it
  * properly. Generally, the main() and startNewServer() methods are
  * the only thing you would need to modify.
+ * <P>
+ * 
+ * If the number of threads is set, the clients are served by a
+ * LinkSelectorServer instead, which uses one thread for all of the
+ * sockets and that many threads to handle requests. The
+ * createRequestHandler() method creates the handler for each client,
+ * and should be overridden along with startNewServer().
  */
 public class LinkServerStarter {
 
@@ -40,6 +47,12 @@ public class LinkServerStarter {
     public static final int DEFAULT_PORT = 3031;
     /** The port being listened to. */
     protected int serverPort;
+    /**
+     * The number of threads handling requests for a LinkSelectorServer, -1
+     * (the default) to start a thread for each client, 0 for the number
+     * of processors.
+     */
+    protected int numThreads = -1;
 
     /** Starts the LinkServerStarter listening to the default port. */
     public LinkServerStarter() {
@@ -61,12 +74,30 @@ public class LinkServerStarter {
         return serverPort;
     }
 
+    /**
+     * Set the number of threads that handle client requests. If set to
+     * 0 or more, the clients are served by a LinkSelectorServer.
+     */
+    public void setNumThreads(int numThreads) {
+        this.numThreads = numThreads;
+    }
+
+    public int getNumThreads() {
+        return numThreads;
+    }
+
     /**
      * The method of the parent server that is listening for clients.
      * When a contact is made, a child thread is spawned off to handle
-     * the client.
+     * the client, or a LinkSelectorServer handles it if the number of
+     * threads has been set.
      */
     public void run() {
+        if (numThreads >= 0) {
+            new LinkSelectorServer(this, serverPort, numThreads).run();
+            return;
+        }
+
         try {
             ServerSocket serverSocket = new ServerSocket(serverPort);
             Socket socket;
@@ -98,6 +129,36 @@ public class LinkServerStarter {
         return new LinkServer(sock);
     }
 
+    /**
+     * This method gets called by a LinkSelectorServer to create the
+     * handler for a new client. This method should be overridden to
+     * create the same kind of LinkServer as startNewServer().
+     * 
+     * @param link the link to the client.
+     * @return the handler for the client's requests, or null to refuse
+     *         the client.
+     */
+    public LinkRequestHandler createRequestHandler(Link link) {
+        return new LinkServer(link);
+    }
+
+    /**
+     * Get the number of threads from the -threads argument.
+     * 
+     * @return the number of threads, or -1 if it isn't given.
+     */
+    public static int getNumThreadsArg(String[] argv) {
+        for (int i = 0; i < argv.length - 1; i++) {
+            if (argv[i].equals("-threads")) {
+                try {
+                    return Integer.parseInt(argv[i + 1]);
+                } catch (NumberFormatException e) {
+                }
+            }
+        }
+        return -1;
+    }
+
     /**
      * Start up the server. This is the method to change if you want
      * to customize how the LinkServer will handle clients - port,
@@ -122,13 +183,14 @@ public class LinkServerStarter {
 
         if (pnumber < 0) {
             System.out.println("Need to start the server with a port number.");
-            System.out.println("Usage: java com.bbn.openmap.layer.link.LinkServerStarter -port <port number>");
+            System.out.println("Usage: java com.bbn.openmap.layer.link.LinkServerStarter -port <port number> [-threads <number of threads>]");
             System.exit(0);
         }
 
         System.out.println("LinkServerStarter: Starting up on port " + pnumber
                 + ".");
         LinkServerStarter serverStarter = new LinkServerStarter(pnumber);
+        serverStarter.setNumThreads(getNumThreadsArg(argv));
         while (true) {
             serverStarter.run();
         }
@@ -0,0 +1,411 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.layer.link;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.LinkedList;
+import java.util.logging.Level;
+
+/**
+ * A LinkSession holds the state of one client connected to a
+ * LinkSelectorServer. The bytes read off the socket by the server's selector
+ * thread are collected in a buffer, and the session is run on one of the
+ * server's worker threads to read the requests out of the buffer and hand them
+ * to its LinkRequestHandler.
+ * <P>
+ * 
+ * The Link protocol doesn't say how long a request is, so the session reads a
+ * request with the usual Link code, over a stream of the bytes received so
+ * far. If the stream runs out before the request is done, the request is
+ * tried again when more bytes arrive. Requests from clients are small, so
+ * this costs little. The responses are written to a buffer that is handed to
+ * the selector thread in chunks, and the handler waits if the client falls too
+ * far behind in reading them. Other threads can send to the client between
+ * requests, like a LinkSubscription update, by writing to the link while
+ * synchronized on it.
+ * 
+ * @author dietrick
+ */
+public class LinkSession implements Runnable {
+
+    /** The size of the chunks handed to the selector thread for writing. */
+    public final static int OUTPUT_CHUNK_SIZE = 64 * 1024;
+
+    protected LinkSelectorServer server;
+    protected SocketChannel channel;
+    protected SelectionKey key;
+    protected Link link;
+    protected LinkRequestHandler handler;
+
+    /** The bytes received and not used yet. */
+    protected byte[] input = new byte[1024];
+    protected int inputCount = 0;
+    /** Set when bytes have been received since the last parse attempt. */
+    protected boolean newInput = false;
+    /** Set while the session is running on a worker thread. */
+    protected boolean busy = false;
+    protected boolean closed = false;
+    /** Set when the handler has been told the client is gone. */
+    protected boolean handlerClosed = false;
+
+    /** Response buffers waiting to be written to the channel. */
+    protected LinkedList<ByteBuffer> output = new LinkedList<ByteBuffer>();
+    protected int pendingOutput = 0;
+
+    protected RequestInputStream requestInput;
+    protected ResponseOutputStream responseOutput;
+
+    /**
+     * Create a session for a client. The server calls setHandler() before
+     * any requests are handled.
+     * 
+     * @param server the server the client is connected to.
+     * @param channel the channel to the client.
+     */
+    public LinkSession(LinkSelectorServer server, SocketChannel channel) {
+        this.server = server;
+        this.channel = channel;
+        requestInput = new RequestInputStream();
+        responseOutput = new ResponseOutputStream();
+        link = new Link(new LinkInputStream(requestInput), new LinkOutputStream(responseOutput));
+    }
+
+    public Link getLink() {
+        return link;
+    }
+
+    public SocketChannel getChannel() {
+        return channel;
+    }
+
+    public LinkRequestHandler getHandler() {
+        return handler;
+    }
+
+    public void setHandler(LinkRequestHandler handler) {
+        this.handler = handler;
+    }
+
+    public SelectionKey getKey() {
+        return key;
+    }
+
+    public void setKey(SelectionKey key) {
+        this.key = key;
+    }
+
+    /**
+     * Add bytes read off the channel, called by the selector thread.
+     * 
+     * @param buffer the bytes read, between the position and limit.
+     * @throws IOException if the unused bytes get bigger than the largest
+     *         request the server allows.
+     */
+    protected synchronized void received(ByteBuffer buffer) throws IOException {
+        int length = buffer.remaining();
+        if (inputCount + length > server.getMaxRequestSize()) {
+            throw new IOException("request larger than " + server.getMaxRequestSize() + " bytes");
+        }
+        if (inputCount + length > input.length) {
+            byte[] bigger = new byte[Math.max(input.length * 2, inputCount + length)];
+            System.arraycopy(input, 0, bigger, 0, inputCount);
+            input = bigger;
+        }
+        buffer.get(input, inputCount, length);
+        inputCount += length;
+        newInput = true;
+    }
+
+    /**
+     * Check if the session should be handed to a worker thread, and mark it
+     * busy if it should.
+     * 
+     * @return true if there are new bytes to look at and the session isn't
+     *         already running.
+     */
+    protected synchronized boolean startWork() {
+        if (busy || closed || !newInput) {
+            return false;
+        }
+        busy = true;
+        return true;
+    }
+
+    /**
+     * Run on a worker thread, handles the requests in the input buffer until
+     * it runs out of complete requests.
+     */
+    public void run() {
+        try {
+            while (true) {
+                byte[] data;
+                int count;
+                synchronized (this) {
+                    if (closed) {
+                        break;
+                    }
+                    data = input;
+                    count = inputCount;
+                    newInput = false;
+                }
+
+                // The link is locked while it's being used, so other
+                // threads can push updates to the client in between.
+                synchronized (link) {
+                    requestInput.reset(data, count);
+                    responseOutput.setSending(false);
+                    responseOutput.mark();
+                    try {
+                        link.readAndParse();
+                    } catch (EOFException eofe) {
+                        // Not all of the request is here yet.
+                        responseOutput.rollback();
+                        break;
+                    } finally {
+                        responseOutput.setSending(true);
+                    }
+                    consume(requestInput.getPosition());
+
+                    handler.handleRequest(link);
+                    responseOutput.send();
+                }
+            }
+        } catch (IOException ioe) {
+            LinkSelectorServer.logger.log(Level.FINE, "closing session", ioe);
+            server.close(this);
+        } catch (RuntimeException re) {
+            LinkSelectorServer.logger.log(Level.WARNING, "request handler failed, closing session", re);
+            server.close(this);
+        } finally {
+            synchronized (this) {
+                busy = false;
+            }
+            closeHandler();
+            server.update(this);
+        }
+    }
+
+    /**
+     * Tell the handler that the client is gone, once the session is closed and
+     * no request is being handled. Called when the session is closed and when
+     * a worker finishes with it, the handler is only closed once.
+     */
+    protected void closeHandler() {
+        synchronized (this) {
+            if (!closed || busy || handlerClosed || handler == null) {
+                return;
+            }
+            handlerClosed = true;
+        }
+
+        try {
+            // Wait for any update being pushed to the client.
+            synchronized (link) {
+                handler.close();
+            }
+        } catch (RuntimeException re) {
+            LinkSelectorServer.logger.log(Level.WARNING, "problem closing request handler", re);
+        }
+    }
+
+    /**
+     * Remove bytes that have been used from the front of the input buffer.
+     */
+    protected synchronized void consume(int length) {
+        inputCount -= length;
+        System.arraycopy(input, length, input, 0, inputCount);
+    }
+
+    /**
+     * Add a response buffer to the queue for the selector thread, waiting if
+     * the client isn't keeping up.
+     * 
+     * @throws IOException if the session is closed while waiting.
+     */
+    protected void queueOutput(ByteBuffer buffer) throws IOException {
+        synchronized (this) {
+            while (!closed && pendingOutput > server.getMaxPendingOutput()) {
+                try {
+                    wait();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("interrupted while waiting to send");
+                }
+            }
+            if (closed) {
+                throw new IOException("session closed");
+            }
+            output.add(buffer);
+            pendingOutput += buffer.remaining();
+        }
+        server.update(this);
+    }
+
+    /**
+     * Write as much of the queued output as the channel will take, called by
+     * the selector thread.
+     * 
+     * @return true if there is still output waiting to be written.
+     * @throws IOException
+     */
+    protected synchronized boolean write() throws IOException {
+        while (!output.isEmpty()) {
+            ByteBuffer buffer = output.getFirst();
+            int written = channel.write(buffer);
+            pendingOutput -= written;
+            if (buffer.hasRemaining()) {
+                break;
+            }
+            output.removeFirst();
+        }
+        notifyAll();
+        return !output.isEmpty();
+    }
+
+    protected synchronized boolean hasOutput() {
+        return !output.isEmpty();
+    }
+
+    /**
+     * Mark the session closed, and release any handler waiting to send.
+     */
+    protected synchronized void closed() {
+        closed = true;
+        output.clear();
+        pendingOutput = 0;
+        notifyAll();
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * The stream the Link reads requests from, over the bytes received so
+     * far. It doesn't buffer, so its position is the number of bytes used by
+     * the request.
+     */
+    protected static class RequestInputStream extends InputStream {
+        protected byte[] data;
+        protected int position;
+        protected int count;
+
+        protected void reset(byte[] data, int count) {
+            this.data = data;
+            this.count = count;
+            position = 0;
+        }
+
+        protected int getPosition() {
+            return position;
+        }
+
+        public int read() {
+            return position < count ? data[position++] & 0xff : -1;
+        }
+
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (position >= count) {
+                return -1;
+            }
+            len = Math.min(len, count - position);
+            System.arraycopy(data, position, b, off, len);
+            position += len;
+            return len;
+        }
+
+        public int available() {
+            return count - position;
+        }
+    }
+
+    /**
+     * The stream the Link writes responses to. While a request is being read,
+     * anything written (a ping response) is held, so it can be dropped if the
+     * request has to be read again. Otherwise, the buffer is handed off every
+     * time the Link is flushed, or it fills up.
+     */
+    protected class ResponseOutputStream extends OutputStream {
+        protected byte[] buf = new byte[1024];
+        protected int count = 0;
+        protected int mark = 0;
+        protected boolean sending = true;
+
+        protected void mark() {
+            mark = count;
+        }
+
+        protected void rollback() {
+            count = mark;
+        }
+
+        protected void setSending(boolean sending) {
+            this.sending = sending;
+        }
+
+        protected void ensureCapacity(int size) {
+            if (size > buf.length) {
+                byte[] bigger = new byte[Math.max(buf.length * 2, size)];
+                System.arraycopy(buf, 0, bigger, 0, count);
+                buf = bigger;
+            }
+        }
+
+        public void write(int b) throws IOException {
+            ensureCapacity(count + 1);
+            buf[count++] = (byte) b;
+            if (sending && count >= OUTPUT_CHUNK_SIZE) {
+                send();
+            }
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            ensureCapacity(count + len);
+            System.arraycopy(b, off, buf, count, len);
+            count += len;
+            if (sending && count >= OUTPUT_CHUNK_SIZE) {
+                send();
+            }
+        }
+
+        public void flush() throws IOException {
+            if (sending) {
+                send();
+            }
+        }
+
+        /**
+         * Hand the bytes written so far to the selector thread.
+         */
+        protected void send() throws IOException {
+            if (count > 0) {
+                byte[] chunk = new byte[count];
+                System.arraycopy(buf, 0, chunk, 0, count);
+                count = 0;
+                mark = 0;
+                queueOutput(ByteBuffer.wrap(chunk));
+            }
+        }
+    }
+}
@@ -0,0 +1,246 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.layer.link;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A LinkSubscription keeps track of the graphics a client has, so a server can
+ * send a client that subscribes (a LinkLayer with its subscribe property set)
+ * only the graphics that were added, changed or removed since the last update,
+ * in a LinkActionList, instead of all of the graphics for every map request.
+ * The server keeps one LinkSubscription for each client. For each map request,
+ * or whenever the server wants to push an update to a client:
+ * 
+ * <pre>
+ * if (subscription.startUpdate(mapRequest)) {
+ *     LinkActionList lal = new LinkActionList(link, subscription.addVersion(props, true));
+ *     for (each graphic in subscription area) {
+ *         int mask = subscription.checkGraphic(id, lastModifiedTime);
+ *         if (mask != 0) {
+ *             lal.updateXXX(..., graphicProperties, mask);
+ *         }
+ *     }
+ *     subscription.writeRemovals(lal);
+ *     lal.end(Link.END_TOTAL);
+ * } else {
+ *     LinkGraphicList lgl = new LinkGraphicList(link, subscription.addVersion(props, false));
+ *     for (each graphic in subscription area) {
+ *         subscription.checkGraphic(id, lastModifiedTime);
+ *         lgl.addXXX(...);
+ *     }
+ *     lgl.end(Link.END_TOTAL);
+ * }
+ * </pre>
+ * 
+ * The stamp for a graphic can be any object that changes (by equals()) when
+ * the graphic does, like a modification time or counter. The graphics not
+ * checked during an update are removed from the client, so the server should
+ * check all of the graphics in the area of interest, changed or not.
+ * <P>
+ * 
+ * A LinkSubscription isn't thread safe. An update pushed from a thread other
+ * than the one handling requests should be written while synchronized on the
+ * link, which is how the LinkServer and LinkSelectorServer call
+ * handleRequest().
+ * 
+ * @author dietrick
+ */
+public class LinkSubscription implements LinkActionConstants,
+        LinkPropertiesConstants {
+
+    /** The stamps of the graphics the client has, by graphic ID. */
+    protected Map<String, Object> sent = new HashMap<String, Object>();
+    /** The graphics checked during the current update. */
+    protected Set<String> checked = new HashSet<String>();
+    /** The version of the graphics the client has. */
+    protected long version;
+    /** The version of the graphics after the current update. */
+    protected long nextVersion;
+    /** The area the client is interested in. */
+    protected LinkBoundingPoly[] area;
+    /** Whether the client asked for updates in its last map request. */
+    protected boolean subscribed = false;
+
+    public LinkSubscription() {
+        // Start versions at a number a client wouldn't have gotten from
+        // another subscription.
+        version = System.currentTimeMillis();
+        nextVersion = version;
+    }
+
+    /**
+     * Start an update for a map request. The area of interest is set from the
+     * request's bounding polygons.
+     * 
+     * @param request the map request from the client.
+     * @return true if the client has subscribed and has the graphics last
+     *         sent to it, so an update can be sent as changes. If false, the
+     *         client should be sent all of the graphics in a LinkGraphicList.
+     */
+    public boolean startUpdate(LinkMapRequest request) {
+        area = request.getBoundingPolys();
+        String clientVersion = request.getProperties().getProperty(LPC_SUBSCRIBE);
+        subscribed = clientVersion != null;
+        return startUpdate(subscribed && clientVersion.equals(Long.toString(version)));
+    }
+
+    /**
+     * Start an update the server wants to push to the client, for the area of
+     * interest from the last map request.
+     * 
+     * @return true if the update can be sent as changes, false if the client
+     *         needs all of the graphics.
+     */
+    public boolean startUpdate() {
+        return startUpdate(isSubscribed());
+    }
+
+    protected boolean startUpdate(boolean current) {
+        if (!current) {
+            sent.clear();
+        }
+        checked.clear();
+        nextVersion = version + 1;
+        return current;
+    }
+
+    /**
+     * @return true if the client asked for updates in its last map request.
+     */
+    public boolean isSubscribed() {
+        return subscribed;
+    }
+
+    /**
+     * Add the version properties to the properties of the graphic list or
+     * action list that carries the update.
+     * 
+     * @param props the properties for the list, can be null.
+     * @param changes true if the update is being sent as changes in a
+     *        LinkActionList.
+     * @return the properties, with the version set.
+     */
+    public LinkProperties addVersion(LinkProperties props, boolean changes) {
+        if (props == null) {
+            props = new LinkProperties();
+        }
+        props.setProperty(LPC_VERSION, Long.toString(nextVersion));
+        if (changes) {
+            props.setProperty(LPC_BASE_VERSION, Long.toString(version));
+        }
+        version = nextVersion;
+        return props;
+    }
+
+    /**
+     * Check a graphic that is in the area of interest during an update.
+     * 
+     * @param id the graphic ID.
+     * @param stamp an object that changes when the graphic does.
+     * @return 0 if the client has this version of the graphic and nothing
+     *         needs to be sent, UPDATE_ADD_GRAPHIC_MASK if the client doesn't
+     *         have the graphic, or UPDATE_GRAPHIC_MASK if the client has an
+     *         older version of it.
+     */
+    public int checkGraphic(String id, Object stamp) {
+        checked.add(id);
+        Object sentStamp = sent.put(id, stamp);
+        if (sentStamp == null) {
+            return UPDATE_ADD_GRAPHIC_MASK;
+        } else if (sentStamp.equals(stamp)) {
+            return 0;
+        } else {
+            return UPDATE_GRAPHIC_MASK;
+        }
+    }
+
+    /**
+     * Tell the client to delete the graphics it has that weren't checked
+     * during this update, and forget about them.
+     * 
+     * @param lal the action list carrying the update.
+     * @return the number of graphics removed.
+     * @throws IOException
+     */
+    public int writeRemovals(LinkActionList lal) throws IOException {
+        int count = 0;
+        LinkProperties props = new LinkProperties();
+        for (Iterator<String> it = sent.keySet().iterator(); it.hasNext();) {
+            String id = it.next();
+            if (!checked.contains(id)) {
+                props.setProperty(LPC_GRAPHICID, id);
+                lal.modifyGraphic(MODIFY_DELETE_GRAPHIC_MASK, props);
+                it.remove();
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Forget about a graphic that has been deleted with an update sent some
+     * other way.
+     */
+    public void removeGraphic(String id) {
+        sent.remove(id);
+        checked.remove(id);
+    }
+
+    /**
+     * @return the bounding polygons from the last map request.
+     */
+    public LinkBoundingPoly[] getArea() {
+        return area;
+    }
+
+    /**
+     * Check if a location is in the area of interest.
+     * 
+     * @param lat latitude, decimal degrees.
+     * @param lon longitude, decimal degrees.
+     * @return true if the location is in one of the bounding polygons.
+     */
+    public boolean isInArea(double lat, double lon) {
+        if (area == null) {
+            return false;
+        }
+        for (LinkBoundingPoly poly : area) {
+            if (lat >= poly.minY && lat <= poly.maxY && lon >= poly.minX && lon <= poly.maxX) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the version of the graphics the client has.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the number of graphics the client has.
+     */
+    public int getGraphicCount() {
+        return sent.size();
+    }
+}
@@ -32,7 +32,8 @@ import com.bbn.openmap.omGraphics.OMGraphic;
 
 /**
  * The TestLinkServer is my test implementation of a customized
- * LinkServer.
+ * LinkServer. Clients that subscribe get only the graphics that changed
+ * since their last map request, tracked with a LinkSubscription.
  */
 public class TestLinkServer extends LinkServer implements LinkActionConstants,
         LinkPropertiesConstants {
@@ -41,6 +42,9 @@ public class TestLinkServer extends LinkServer implements LinkActionConstants,
 
     LinkOMGraphicList clientCreatedGraphics = new LinkOMGraphicList();
 
+    /** The graphics sent to the client, for updates. */
+    protected LinkSubscription subscription = new LinkSubscription();
+
     /**
      * Create child thread that will handle the client.
      * 
@@ -51,68 +55,72 @@ public class TestLinkServer extends LinkServer implements LinkActionConstants,
     }
 
     /**
-     * handleClient is a method that listens to the link to a client,
-     * and responds to requests that are made.
+     * Create a TestLinkServer that handles requests for a LinkSelectorServer.
+     * 
+     * @param link the link to the client.
      */
-    public void handleClient() throws IOException {
-        boolean validQuery;
-
-        while (true) {
-            link.readAndParse();
-            validQuery = false;
-            System.out.println("TestLinkServer: fielding request");
-
-            LinkMapRequest graphicsQuery = link.getMapRequest();
-            LinkActionRequest gestureQuery = link.getActionRequest();
-            LinkActionList actionList = link.getActionList();
-
-            if (graphicsQuery != null) {
-                System.out.println((LinkMapRequest) graphicsQuery);
-                getRectangle(graphicsQuery, link);
-                validQuery = true;
-            }
-            if (gestureQuery != null) {
-                System.out.println(gestureQuery);
-                handleGesture(gestureQuery, link);
-                validQuery = true;
-            }
-            if (actionList != null) {
-                Vector graphicUpdates = actionList.getGraphicUpdates();
-                Iterator it = graphicUpdates.iterator();
-                while (it.hasNext()) {
-                    GraphicUpdate gu = (GraphicUpdate) it.next();
-                    if (gu != null) {
-                        String id = gu.id;
-                        System.out.println("TestLinkServer: graphic id = " + id);
-
-                        OMGraphic graphic = gu.graphic;
-                        int index = clientCreatedGraphics.getOMGraphicIndexWithId(id);
-                        if (index != Link.UNKNOWN) {
-                            System.out.println("TestLinkServer: modifying graphic");
-                            clientCreatedGraphics.setOMGraphicAt(gu.graphic,
-                                    index);
-                        } else {
-                            System.out.println("TestLinkServer: new graphic");
-                            // Set the ID for it, so it can be
-                            // referred to later.
-                            LinkProperties props = (LinkProperties) graphic.getAttribute(OMGraphic.APP_OBJECT);
-
-                            props.setProperty(LPC_GRAPHICID, "graphic"
-                                    + (newGraphicCounter++));
-                            System.out.println("TestLinkServer: new graphic given id "
-                                    + props);
-                        }
-
-                        clientCreatedGraphics.doAction(gu.graphic,
-                                new OMAction(gu.action));
+    public TestLinkServer(Link link) {
+        super(link);
+    }
 
+    /**
+     * handleRequest is a method that responds to a request read off the
+     * link to a client.
+     */
+    public void handleRequest(Link link) throws IOException {
+        boolean validQuery = false;
+        System.out.println("TestLinkServer: fielding request");
+
+        LinkMapRequest graphicsQuery = link.getMapRequest();
+        LinkActionRequest gestureQuery = link.getActionRequest();
+        LinkActionList actionList = link.getActionList();
+
+        if (graphicsQuery != null) {
+            System.out.println((LinkMapRequest) graphicsQuery);
+            getRectangle(graphicsQuery, link);
+            validQuery = true;
+        }
+        if (gestureQuery != null) {
+            System.out.println(gestureQuery);
+            handleGesture(gestureQuery, link);
+            validQuery = true;
+        }
+        if (actionList != null) {
+            Vector graphicUpdates = actionList.getGraphicUpdates();
+            Iterator it = graphicUpdates.iterator();
+            while (it.hasNext()) {
+                GraphicUpdate gu = (GraphicUpdate) it.next();
+                if (gu != null) {
+                    String id = gu.id;
+                    System.out.println("TestLinkServer: graphic id = " + id);
+
+                    OMGraphic graphic = gu.graphic;
+                    int index = clientCreatedGraphics.getOMGraphicIndexWithId(id);
+                    if (index != Link.UNKNOWN) {
+                        System.out.println("TestLinkServer: modifying graphic");
+                        clientCreatedGraphics.setOMGraphicAt(gu.graphic,
+                                index);
+                    } else {
+                        System.out.println("TestLinkServer: new graphic");
+                        // Set the ID for it, so it can be
+                        // referred to later.
+                        LinkProperties props = (LinkProperties) graphic.getAttribute(OMGraphic.APP_OBJECT);
+
+                        props.setProperty(LPC_GRAPHICID, "graphic"
+                                + (newGraphicCounter++));
+                        System.out.println("TestLinkServer: new graphic given id "
+                                + props);
                     }
+
+                    clientCreatedGraphics.doAction(gu.graphic,
+                            new OMAction(gu.action));
+
                 }
             }
+        }
 
-            if (!validQuery) {
-                huh(link);
-            }
+        if (!validQuery) {
+            huh(link);
         }
     }
 
@@ -128,31 +136,69 @@ public class TestLinkServer extends LinkServer implements LinkActionConstants,
     public void getRectangle(LinkMapRequest query, Link link)
             throws IOException {
 
-        LinkProperties lineProperties = new LinkProperties(LPC_LINECOLOR, "FFFF0000");
-        lineProperties.setProperty(LPC_GRAPHICID, "testline1");
-        lineProperties.setProperty(LPC_FILLCOLOR, "FFFF0000");
-        lineProperties.setProperty(LPC_HIGHLIGHTCOLOR, "FFFFFF00");
-        lineProperties.setProperty(LPC_LINEWIDTH, "1");
-        lineProperties.setProperty(LPC_INFO, "Testing info line.");
-        //      lineProperties.setProperty(LPC_URL,
-        // "http://blatz.bbn.com/users/dietrick/LinkProtocol.html");
+        // A subscribing client that has the last graphics sent gets the
+        // changes in a LinkActionList, anyone else gets everything.
+        boolean changes = subscription.startUpdate(query);
+        LinkProperties listProperties = subscription.addVersion(new LinkProperties(),
+                changes);
+        LinkActionList lal = null;
+        LinkGraphicList gr = null;
+        if (changes) {
+            lal = new LinkActionList(link, listProperties);
+        } else {
+            gr = new LinkGraphicList(link, listProperties);
+        }
 
         int count = 0;
-        LinkGraphicList gr = new LinkGraphicList(link, new LinkProperties());
-
         LinkBoundingPoly[] bounds = query.getBoundingPolys();
 
         for (int i = 0; i < bounds.length; i++) {
 
-            gr.addLine(bounds[i].maxY,
-                    bounds[i].minX,
-                    bounds[i].minY,
-                    bounds[i].maxX,
-                    (int) OMGraphic.LINETYPE_STRAIGHT,
-                    -1,
-                    lineProperties);
-            count++;
+            LinkProperties lineProperties = new LinkProperties(LPC_LINECOLOR, "FFFF0000");
+            lineProperties.setProperty(LPC_GRAPHICID, "testline" + i);
+            lineProperties.setProperty(LPC_FILLCOLOR, "FFFF0000");
+            lineProperties.setProperty(LPC_HIGHLIGHTCOLOR, "FFFFFF00");
+            lineProperties.setProperty(LPC_LINEWIDTH, "1");
+            lineProperties.setProperty(LPC_INFO, "Testing info line.");
+            //      lineProperties.setProperty(LPC_URL,
+            // "http://blatz.bbn.com/users/dietrick/LinkProtocol.html");
+
+            // The line runs across the bounds, so it changes with them.
+            String stamp = bounds[i].maxY + " " + bounds[i].minX + " "
+                    + bounds[i].minY + " " + bounds[i].maxX;
+            int mask = subscription.checkGraphic("testline" + i, stamp);
+            if (gr != null) {
+                gr.addLine(bounds[i].maxY,
+                        bounds[i].minX,
+                        bounds[i].minY,
+                        bounds[i].maxX,
+                        (int) OMGraphic.LINETYPE_STRAIGHT,
+                        -1,
+                        lineProperties);
+                count++;
+            } else if (mask != 0) {
+                lal.updateLine(bounds[i].maxY,
+                        bounds[i].minX,
+                        bounds[i].minY,
+                        bounds[i].maxX,
+                        (int) OMGraphic.LINETYPE_STRAIGHT,
+                        -1,
+                        lineProperties,
+                        mask);
+                count++;
+            }
+
+            //      for (int x = 10; x < 600; x+=2) {
+            //          for (int y = 10; y < 500; y+=50) {
+            //              link.addLine(x, y, x + 40, y + 40, lineSemantics);
+            //              count++;
+            //          }
+            //      }
+        }
 
+        // The grid doesn't move, so it only has to be sent once.
+        int mask = subscription.checkGraphic("testgrid", "1");
+        if (gr != null || mask != 0) {
             int[] data = new int[10000];
 
             for (int j = 0; j < 10000; j++) {
@@ -167,30 +213,58 @@ public class TestLinkServer extends LinkServer implements LinkActionConstants,
                 }
             }
 
-            gr.addGrid(42.0f,
-                    -70.0f,
-                    100,
-                    100,
-                    0.0f,
-                    .001f,
-                    .001f,
-                    LinkGraphicConstants.COLUMN_MAJOR,
-                    data,
-                    new LinkProperties());
+            LinkProperties gridProperties = new LinkProperties(LPC_GRAPHICID, "testgrid");
+            if (gr != null) {
+                gr.addGrid(42.0f,
+                        -70.0f,
+                        100,
+                        100,
+                        0.0f,
+                        .001f,
+                        .001f,
+                        LinkGraphicConstants.COLUMN_MAJOR,
+                        data,
+                        gridProperties);
+            } else {
+                lal.updateGrid(42.0f,
+                        -70.0f,
+                        100,
+                        100,
+                        0.0f,
+                        .001f,
+                        .001f,
+                        LinkGraphicConstants.COLUMN_MAJOR,
+                        data,
+                        gridProperties,
+                        mask);
+            }
             count++;
-
-            //      for (int x = 10; x < 600; x+=2) {
-            //          for (int y = 10; y < 500; y+=50) {
-            //              link.addLine(x, y, x + 40, y + 40, lineSemantics);
-            //              count++;
-            //          }
-            //      }
         }
 
-        // Handle any other graphics added by client.
-        LinkGraphic.write(clientCreatedGraphics, link);
+        // Handle any other graphics added by client. A graphic is replaced
+        // in the list when the client changes it, so the graphic itself
+        // is the stamp.
+        for (OMGraphic omg : clientCreatedGraphics) {
+            Object props = omg.getAttribute(OMGraphic.APP_OBJECT);
+            String id = props instanceof LinkProperties ? ((LinkProperties) props).getProperty(LPC_GRAPHICID)
+                    : null;
+            mask = id == null ? UPDATE_ADD_GRAPHIC_MASK : subscription.checkGraphic(id, omg);
+            if (gr != null) {
+                LinkGraphic.write(omg, link);
+            } else if (mask != 0) {
+                lal.writeGraphicGestureHeader(mask);
+                LinkGraphic.write(omg, link);
+            }
+        }
 
-        gr.end(Link.END_SECTION);
+        if (gr != null) {
+            gr.end(Link.END_SECTION);
+        } else {
+            int removed = subscription.writeRemovals(lal);
+            lal.end(Link.END_SECTION);
+            System.out.println("TestLinkServer: Removed " + removed
+                    + " graphics from client");
+        }
 
         System.out.println("TestLinkServer: Wrote " + count
                 + " graphics to output stream");
@@ -235,4 +309,12 @@ public class TestLinkServer extends LinkServer implements LinkActionConstants,
         glr.end(Link.END_TOTAL);
     }
 
+    /**
+     * Forget the graphics the client had.
+     */
+    public void close() {
+        subscription = new LinkSubscription();
+        clientCreatedGraphics.clear();
+    }
+
 }
\ No newline at end of file
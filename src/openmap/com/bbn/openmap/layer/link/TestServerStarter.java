@@ -51,6 +51,14 @@ public class TestServerStarter extends LinkServerStarter {
         return (new TestLinkServer(socket));
     }
 
+    /**
+     * Creates a TestLinkServer to handle a client of a
+     * LinkSelectorServer.
+     */
+    public LinkRequestHandler createRequestHandler(Link link) {
+        return new TestLinkServer(link);
+    }
+
     /**
      * Start up the server. This is the method to change if you want
      * to customize how the LinkServer will handle clients - port,
@@ -72,7 +80,7 @@ public class TestServerStarter extends LinkServerStarter {
 
         if (pnumber < 0) {
             System.out.println("Need to start the server with a port number.");
-            System.out.println("Usage: java com.bbn.openmap.layer.link.TestServerStarter -port <port number>");
+            System.out.println("Usage: java com.bbn.openmap.layer.link.TestServerStarter -port <port number> [-threads <number of threads>]");
             System.exit(0);
         }
 
@@ -80,6 +88,7 @@ public class TestServerStarter extends LinkServerStarter {
                 + ".");
 
         TestServerStarter serverStarter = new TestServerStarter(pnumber);
+        serverStarter.setNumThreads(getNumThreadsArg(argv));
         while (true) {
             serverStarter.run();
         }
@@ -31,6 +31,7 @@ import java.util.Properties;
 import com.bbn.openmap.layer.link.ClientLink;
 import com.bbn.openmap.layer.link.LinkActionRequest;
 import com.bbn.openmap.layer.link.LinkLayer;
+import com.bbn.openmap.layer.link.LinkManager;
 import com.bbn.openmap.layer.link.LinkOMGraphicList;
 import com.bbn.openmap.layer.link.LinkProperties;
 import com.bbn.openmap.layer.link.LinkUtil;
@@ -186,7 +187,7 @@ public class DrawLinkLayer extends LinkLayer {
             // LinkActionList lal;
             // LinkActionRequest lar;
 
-            ClientLink l = linkManager.getLink(false);
+            ClientLink l = getLink(LinkManager.ACTION_CHANNEL, false);
 
             // We'll check this here because we don't want to wait if
             // it is not available - it could be used for another
@@ -212,12 +213,12 @@ public class DrawLinkLayer extends LinkLayer {
 
             }
 
-            linkManager.finLink();
+            linkManager.finLink(LinkManager.ACTION_CHANNEL);
 
         } catch (IOException ioe) {
             System.err.println("LinkLayer: IOException contacting server during gesture handling!");
             System.err.println(ioe);
-            linkManager.resetLink();
+            linkManager.resetLink(LinkManager.ACTION_CHANNEL);
             return false;
         }
 
@@ -86,54 +86,62 @@ public class ShapeLinkServer extends LinkServer implements
     }
 
     /**
-     * handleClient is a method that listens to the link to a client, and
-     * responds to requests that are made.
+     * Create a ShapeLinkServer that handles requests for a LinkSelectorServer.
      */
-    public void handleClient() throws IOException {
-        boolean validQuery;
-        try {
+    public ShapeLinkServer(Link link, String shapeFile) {
+        super(link);
+        locateAndSetShapeData(shapeFile);
+    }
 
-            while (true) {
-                if (Debug.debugging("shape")) {
-                    link.clearBytesWritten();
-                }
+    /**
+     * Close the shape file opened for the client, called by the LinkServer
+     * thread or the LinkSelectorServer when the client disconnects.
+     */
+    public void close() {
+        if (spatialIndex != null) {
+            spatialIndex.close(true);
+            spatialIndex = null;
+        }
+        lineColor = null;
+        fillColor = null;
+        lineProperties = null;
+    }
 
-                link.readAndParse();
-                validQuery = false;
+    /**
+     * handleRequest is a method that responds to a request read off the link
+     * to a client.
+     */
+    public void handleRequest(Link link) throws IOException {
+        boolean validQuery = false;
 
-                // For instance, you could do something like this...
+        if (Debug.debugging("shape")) {
+            link.clearBytesWritten();
+        }
 
-                LinkMapRequest graphicsQuery = link.getMapRequest();
-                // LinkActionRequest gestureQuery =
-                // link.getActionRequest();
+        // For instance, you could do something like this...
 
-                if (graphicsQuery != null) {
-                    getRectangle(graphicsQuery, link);
-                    validQuery = true;
-                }
-                graphicsQuery = null;
+        LinkMapRequest graphicsQuery = link.getMapRequest();
+        // LinkActionRequest gestureQuery =
+        // link.getActionRequest();
 
-                // if (gestureQuery != null){
-                // handleGesture(gestureQuery, link);
-                // validQuery = true;
-                // }
+        if (graphicsQuery != null) {
+            getRectangle(graphicsQuery, link);
+            validQuery = true;
+        }
+        graphicsQuery = null;
 
-                if (!validQuery) {
-                    huh(link);
-                }
+        // if (gestureQuery != null){
+        // handleGesture(gestureQuery, link);
+        // validQuery = true;
+        // }
 
-                if (Debug.debugging("shape")) {
-                    System.out.println("ShapeLinkServer: bytes written for response: "
-                            + link.getBytesWritten());
-                }
-            }
+        if (!validQuery) {
+            huh(link);
+        }
 
-        } catch (IOException ioe) {
-            spatialIndex = null;
-            lineColor = null;
-            fillColor = null;
-            lineProperties = null;
-            throw ioe;
+        if (Debug.debugging("shape")) {
+            System.out.println("ShapeLinkServer: bytes written for response: "
+                    + link.getBytesWritten());
         }
     }
 
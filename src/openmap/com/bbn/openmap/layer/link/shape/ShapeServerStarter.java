@@ -26,6 +26,8 @@ import java.net.Socket;
 import java.util.Properties;
 
 import com.bbn.openmap.Environment;
+import com.bbn.openmap.layer.link.Link;
+import com.bbn.openmap.layer.link.LinkRequestHandler;
 import com.bbn.openmap.layer.link.LinkServerStarter;
 import com.bbn.openmap.util.Debug;
 
@@ -50,6 +52,10 @@ public class ShapeServerStarter extends LinkServerStarter {
         return (new ShapeLinkServer(sock, shapeFile));
     }
 
+    public LinkRequestHandler createRequestHandler(Link link) {
+        return new ShapeLinkServer(link, shapeFile);
+    }
+
     public static void main(String[] argv) {
         Properties p = System.getProperties();
         // First initialize debugging
@@ -74,13 +80,14 @@ public class ShapeServerStarter extends LinkServerStarter {
 
         if (pnumber < 0 || shp == null) {
             System.out.println("Need to start the server with a port number and shape file.");
-            System.err.println("Usage: java com.bbn.openmap.layer.link.shape.ShapeServerStarter <ShapeFile Name.shp> -port <port number>");
+            System.err.println("Usage: java com.bbn.openmap.layer.link.shape.ShapeServerStarter <ShapeFile Name.shp> -port <port number> [-threads <number of threads>]");
             System.exit(-1);
         }
 
         System.out.println("ShapeServerStarter: Starting up on port " + pnumber
                 + ".");
         ShapeServerStarter serverStarter = new ShapeServerStarter(pnumber, shp);
+        serverStarter.setNumThreads(getNumThreadsArg(argv));
 
         while (true) {
             serverStarter.run();
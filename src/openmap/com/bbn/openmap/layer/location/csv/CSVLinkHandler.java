@@ -42,7 +42,6 @@ import com.bbn.openmap.omGraphics.OMGraphic;
 import com.bbn.openmap.util.ColorFactory;
 import com.bbn.openmap.util.DataOrganizer;
 import com.bbn.openmap.util.PropUtils;
-import com.bbn.openmap.util.quadtree.QuadTree;
 
 /**
  * The CSVLinkHandler is designed to let you put data on the map based on
@@ -235,7 +234,7 @@ public class CSVLinkHandler extends CSVLocationHandler {
                 if (logger.isLoggable(Level.FINE)) {
                     logger.fine("Re-reading Locations file");
                 }
-                quadtree = null;
+                reloadRequested = true;
                 getLayer().doPrepare();
             }
         });
@@ -251,10 +250,10 @@ public class CSVLinkHandler extends CSVLocationHandler {
      * should describe what each entry is.
      * 
      * @param recordList a record/row of data from the csv file.
-     * @param qt the Quadtree to add the Location object, created from the row
-     *        contents.
+     * @param qt the DataOrganizer to add the Location object, created from the
+     *        row contents.
      */
-    protected void createLocation(List recordList, QuadTree<Location> qt) {
+    protected void createLocation(List recordList, DataOrganizer<Location> qt) {
 
         String name = tokenToString(recordList, nameIndex, "");
         double lat = tokenToDouble(recordList, latIndex, 0.0);
@@ -53,7 +53,7 @@ import com.bbn.openmap.omGraphics.OMGraphicList;
 import com.bbn.openmap.util.CSVTokenizer;
 import com.bbn.openmap.util.DataOrganizer;
 import com.bbn.openmap.util.PropUtils;
-import com.bbn.openmap.util.quadtree.QuadTree;
+import com.bbn.openmap.util.quadtree.PackedQuadTree;
 
 /**
  * The CSVLocationLayer is a LocationHandler designed to let you put data on the
@@ -141,8 +141,13 @@ public class CSVLocationHandler extends AbstractLocationHandler implements Locat
     public static final String LocationFileProperty = "locationFile";
     /** Set if the CSVFile has a header record. Default is false. */
     public final static String csvHeaderProperty = "csvFileHasHeader";
-    /** The storage mechanism for the locations. */
-    protected QuadTree<Location> quadtree = null;
+    /**
+     * The storage mechanism for the locations. Replaced, not modified, when
+     * the data is reloaded, so get() can keep using the old one meanwhile.
+     */
+    protected volatile DataOrganizer<Location> quadtree = null;
+    /** Set when the data should be read again on the next get(). */
+    protected volatile boolean reloadRequested = false;
 
     /** The property describing whether East is a negative value. */
     public static final String eastIsNegProperty = "eastIsNeg";
@@ -310,7 +315,10 @@ public class CSVLocationHandler extends AbstractLocationHandler implements Locat
     }
 
     public void reloadData() {
-        quadtree = createData();
+        DataOrganizer<Location> data = createData();
+        if (data != null) {
+            quadtree = data;
+        }
     }
 
     protected boolean checkIndexSettings() {
@@ -330,11 +338,12 @@ public class CSVLocationHandler extends AbstractLocationHandler implements Locat
     }
 
     /**
-     * Look at the CSV file and create the QuadTree holding all the Locations.
+     * Look at the CSV file and create the PackedQuadTree holding all the
+     * Locations.
      */
-    protected QuadTree<Location> createData() {
+    protected DataOrganizer<Location> createData() {
 
-        QuadTree<Location> qt = new QuadTree<Location>(90.0f, -180.0f, -90.0f, 180.0f, 100, 50f);
+        PackedQuadTree<Location> qt = new PackedQuadTree<Location>();
 
         if (!checkIndexSettings()) {
             return null;
@@ -435,6 +444,8 @@ public class CSVLocationHandler extends AbstractLocationHandler implements Locat
             return createData();
         }
 
+        // Sort the locations here, instead of on the first query.
+        qt.getSnapshot();
         return qt;
     }
 
@@ -444,10 +455,10 @@ public class CSVLocationHandler extends AbstractLocationHandler implements Locat
      * should describe what each entry is.
      * 
      * @param recordList a record/row of data from the csv file.
-     * @param qt the Quadtree to add the Location object, created from the row
-     *        contents.
+     * @param qt the DataOrganizer to add the Location object, created from the
+     *        row contents.
      */
-    protected void createLocation(List recordList, QuadTree<Location> qt) {
+    protected void createLocation(List recordList, DataOrganizer<Location> qt) {
 
         String name = tokenToString(recordList, nameIndex, "");
         double lat = tokenToDouble(recordList, latIndex, 0.0);
@@ -569,22 +580,27 @@ public class CSVLocationHandler extends AbstractLocationHandler implements Locat
             graphicList.setTraverseMode(OMGraphicList.FIRST_ADDED_ON_TOP);
         }
 
-        // IF the quadtree has not been set up yet, do it!
-        if (quadtree == null) {
+        // IF the quadtree has not been set up yet, do it! A reload
+        // swaps in the new data when it's ready, other calls to
+        // get() use the old data until then.
+        DataOrganizer<Location> data = quadtree;
+        if (data == null || reloadRequested) {
             logger.fine("CSVLocationHandler: Figuring out the locations and names! (This is a one-time operation!)");
-            quadtree = createData();
+            reloadRequested = false;
+            DataOrganizer<Location> newData = createData();
+            if (newData != null) {
+                data = newData;
+                quadtree = newData;
+            }
         }
 
-        if (quadtree != null) {
+        if (data != null) {
             if (logger.isLoggable(Level.FINE)) {
                 logger.fine("CSVLocationHandler|CSVLocationHandler.get() ul.lon = " + nwLon
                         + " lr.lon = " + seLon + " delta = " + (seLon - nwLon));
             }
 
-            List<Location> hits = new ArrayList<Location>();
-            quadtree.get(nwLat, nwLon, seLat, seLon, hits);
-
-            graphicList.addAll(hits);
+            graphicList.addAll(data.get(nwLat, nwLon, seLat, seLon));
         }
 
         return graphicList;
@@ -670,7 +686,7 @@ public class CSVLocationHandler extends AbstractLocationHandler implements Locat
                     if (logger.isLoggable(Level.FINE)) {
                         logger.fine("Re-reading Locations file");
                     }
-                    quadtree = null;
+                    reloadRequested = true;
                     getLayer().doPrepare();
                 }
             });
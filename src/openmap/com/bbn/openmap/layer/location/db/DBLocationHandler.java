@@ -32,7 +32,6 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Properties;
-import java.util.Vector;
 import java.util.logging.Level;
 
 import javax.swing.Box;
@@ -45,10 +44,10 @@ import com.bbn.openmap.layer.location.Location;
 import com.bbn.openmap.layer.location.LocationCBMenuItem;
 import com.bbn.openmap.layer.location.LocationHandler;
 import com.bbn.openmap.layer.location.LocationMenuItem;
-import com.bbn.openmap.omGraphics.OMGraphic;
 import com.bbn.openmap.omGraphics.OMGraphicList;
+import com.bbn.openmap.util.DataOrganizer;
 import com.bbn.openmap.util.PropUtils;
-import com.bbn.openmap.util.quadtree.QuadTree;
+import com.bbn.openmap.util.quadtree.PackedQuadTree;
 
 /**
  * The DBLocationLayer is a LocationHandler designed to let you put data on the
@@ -99,8 +98,13 @@ public class DBLocationHandler
         extends AbstractLocationHandler
         implements LocationHandler, ActionListener {
 
-    /** The storage mechanism for the locations. */
-    protected QuadTree quadtree = null;
+    /**
+     * The storage mechanism for the locations. Replaced, not modified, when
+     * the data is reloaded, so get() can keep using the old one meanwhile.
+     */
+    protected volatile DataOrganizer<Location> quadtree = null;
+    /** Set when the data should be read again on the next get(). */
+    protected volatile boolean reloadRequested = false;
 
     // Database variables.
     /*
@@ -256,11 +260,12 @@ public class DBLocationHandler
     }
 
     /**
-     * Look in the database and create the QuadTree holding all the Locations.
+     * Look in the database and create the PackedQuadTree holding all the
+     * Locations.
      */
-    protected QuadTree createData() {
+    protected DataOrganizer<Location> createData() {
 
-        QuadTree qt = new QuadTree(90.0f, -180.0f, -90.0f, 180.0f, 100, 50f);
+        PackedQuadTree<Location> qt = new PackedQuadTree<Location>();
         ByteRasterLocation loc;
         byte bytearr[];
 
@@ -268,7 +273,7 @@ public class DBLocationHandler
             return qt;
         }
 
-        // Code for reading from DB and pushing it into QuadTree.
+        // Code for reading from DB and pushing it into PackedQuadTree.
         try {
             if (jdbcDriver != null) {
                 Class.forName(getJdbcDriver());
@@ -320,6 +325,8 @@ public class DBLocationHandler
             logger.warning("DBLocationHandler: Class not found Exception: " + cnfE);
         }
 
+        // Sort the locations here, instead of on the first query.
+        qt.getSnapshot();
         return qt;
     }
 
@@ -361,22 +368,24 @@ public class DBLocationHandler
             graphicList.setTraverseMode(OMGraphicList.FIRST_ADDED_ON_TOP);
         }
 
-        // IF the quadtree has not been set up yet, do it!
-        if (quadtree == null) {
+        // IF the quadtree has not been set up yet, do it! A reload
+        // swaps in the new data when it's ready, other calls to
+        // get() use the old data until then.
+        DataOrganizer<Location> data = quadtree;
+        if (data == null || reloadRequested) {
             logger.fine("DBLocationHandler: Figuring out the locations and names! (This is a one-time operation!)");
-            quadtree = createData();
+            reloadRequested = false;
+            data = createData();
+            quadtree = data;
         }
 
-        if (quadtree != null) {
+        if (data != null) {
             if (logger.isLoggable(Level.FINE)) {
                 logger.fine("DBLocationHandler|DBLocationHandler.get() ul.lon = " + nwLon + " lr.lon = " + seLon + " delta = "
                         + (seLon - nwLon));
             }
 
-            Vector vec = new Vector<OMGraphic>();
-            quadtree.get(nwLat, nwLon, seLat, seLon, vec);
-
-            graphicList.addAll(vec);
+            graphicList.addAll(data.get(nwLat, nwLon, seLat, seLon));
         }
 
         return graphicList;
@@ -455,7 +464,7 @@ public class DBLocationHandler
             getLayer().repaint();
         } else if (cmd == readDataCommand) {
             logger.fine("DBLocationHandler: Re-reading Locations file");
-            quadtree = null;
+            reloadRequested = true;
             getLayer().doPrepare();
         } else {
             logger.warning("DBLocationHandler: Unknown action command \"" + cmd + "\" in actionPerformed().");
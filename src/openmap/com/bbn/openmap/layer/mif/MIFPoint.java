@@ -23,6 +23,7 @@
 package com.bbn.openmap.layer.mif;
 
 import java.awt.Graphics;
+import java.awt.geom.Point2D;
 
 import com.bbn.openmap.omGraphics.OMPoint;
 import com.bbn.openmap.proj.Projection;
@@ -80,14 +81,14 @@ public class MIFPoint extends OMPoint implements MIFGraphic,
      * <code>renderPoint</code> to signal to the render method if
      * the scale is appropriate to render the point or not.
      */
-    public synchronized boolean generate(Projection proj) {
+    public synchronized boolean generate(Projection proj, Point2D projected) {
         if ((proj.getScale() <= getVisibleScale()) || (getVisibleScale() == -1)) {
             this.renderPoint = true;
         } else {
             this.renderPoint = false;
         }
 
-        return super.generate(proj);
+        return super.generate(proj, projected);
     }
 
     /**
@@ -23,6 +23,7 @@
 package com.bbn.openmap.layer.mif;
 
 import java.awt.Graphics;
+import java.awt.geom.Point2D;
 
 import com.bbn.openmap.omGraphics.OMText;
 import com.bbn.openmap.proj.Projection;
@@ -82,7 +83,7 @@ public class MIFText extends OMText implements MIFGraphic, java.io.Serializable
      * <code>renderText</code> to signal to the render method if the
      * scale is appropriate to render the text or not.
      */
-    public synchronized boolean generate(Projection proj) {
+    public synchronized boolean generate(Projection proj, Point2D projected) {
         if ((proj.getScale() <= getVisibleScale()) || (getVisibleScale() == -1)) {
 
             this.renderText = true;
@@ -90,7 +91,7 @@ public class MIFText extends OMText implements MIFGraphic, java.io.Serializable
             this.renderText = false;
         }
 
-        return super.generate(proj);
+        return super.generate(proj, projected);
     }
 
     /**
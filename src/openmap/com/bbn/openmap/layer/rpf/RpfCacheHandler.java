@@ -40,6 +40,7 @@ package com.bbn.openmap.layer.rpf;
 
 import java.awt.Point;
 import java.awt.geom.Point2D;
+import java.util.ArrayList;
 import java.util.List;
 
 import com.bbn.openmap.omGraphics.OMGraphic;
@@ -62,6 +63,11 @@ public class RpfCacheHandler {
     /* # CHUM descriptor string */
     public final static int MAX_DESC_LEN = 512;
     public static final int DEFAULT_SUBFRAMEBUFFER = 5;
+    /**
+     * The default number of rows/columns of subframes past the edge of the map
+     * that get decompressed ahead of time, in the direction the map is moving.
+     */
+    public static final int DEFAULT_PREFETCH_DEPTH = 2;
 
     /* DKS fix chum description problem : */
     /** subframe status constant. */
@@ -114,6 +120,20 @@ public class RpfCacheHandler {
      * the matrix.
      */
     protected int subframeBuffer = DEFAULT_SUBFRAMEBUFFER;
+    /**
+     * The number of rows/columns of subframes past the edge of the map to
+     * decompress ahead of time when the map is panned. Only used when the
+     * frame provider is a RpfFrameCacheHandler with a RpfSubframeDecoder.
+     */
+    protected int prefetchDepth = DEFAULT_PREFETCH_DEPTH;
+    /**
+     * The upper left subframe index of the last map, used to figure out which
+     * way the map is moving.
+     */
+    protected Point lastStart = null;
+    /** The toc and entry numbers of the last map. */
+    protected int lastTocNumber = -1;
+    protected int lastEntryNumber = -1;
 
     /**
      * Used in setCache to see if new coverage is needed with a projection
@@ -329,6 +349,11 @@ public class RpfCacheHandler {
             omGraphics = new OMGraphicList();
         }
 
+        if (goodData && !decodeSubframes()) {
+            // Interrupted, the map isn't wanted anymore.
+            return omGraphics;
+        }
+
         for (int subx = start.x; subx <= end.x; subx++) {
             for (int suby = start.y; suby <= end.y; suby++) {
 
@@ -366,6 +391,86 @@ public class RpfCacheHandler {
         return omGraphics;
     }
 
+    /**
+     * If the frame provider can decompress subframes in parallel, have it
+     * decompress the subframes needed for the current map before they are
+     * fetched one at a time, and start decompressing the subframes just off
+     * the map in the direction the map is moving.
+     * 
+     * @return false if the thread was interrupted while waiting for the
+     *         subframes.
+     */
+    protected boolean decodeSubframes() {
+        if (!(frameProvider instanceof RpfFrameCacheHandler) || coverageBoxes == null
+                || coverageBoxes.isEmpty()) {
+            return true;
+        }
+
+        RpfFrameCacheHandler rfch = (RpfFrameCacheHandler) frameProvider;
+        if (rfch.getDecoder() == null) {
+            return true;
+        }
+
+        RpfCoverageBox currentBox = coverageBoxes.get(0);
+
+        List<Point> subframes = new ArrayList<Point>();
+        for (int subx = start.x; subx <= end.x; subx++) {
+            for (int suby = start.y; suby <= end.y; suby++) {
+                subframes.add(new Point(subx, suby));
+            }
+        }
+
+        if (!rfch.decodeSubframes(currentBox.tocNumber, currentBox.entryNumber, subframes, true)) {
+            return false;
+        }
+
+        // Figure out which way the map moved, if it's still on the same
+        // entry.
+        int dx = 0;
+        int dy = 0;
+        if (lastStart != null && currentBox.tocNumber == lastTocNumber
+                && currentBox.entryNumber == lastEntryNumber) {
+            dx = Integer.signum(start.x - lastStart.x);
+            dy = Integer.signum(start.y - lastStart.y);
+        }
+
+        lastStart = new Point(start);
+        lastTocNumber = currentBox.tocNumber;
+        lastEntryNumber = currentBox.entryNumber;
+
+        if ((dx != 0 || dy != 0) && prefetchDepth > 0) {
+            int x1 = start.x - (dx < 0 ? prefetchDepth : 0);
+            int x2 = end.x + (dx > 0 ? prefetchDepth : 0);
+            int y1 = start.y - (dy < 0 ? prefetchDepth : 0);
+            int y2 = end.y + (dy > 0 ? prefetchDepth : 0);
+
+            List<Point> ahead = new ArrayList<Point>();
+            for (int subx = x1; subx <= x2; subx++) {
+                for (int suby = y1; suby <= y2; suby++) {
+                    if (subx < start.x || subx > end.x || suby < start.y || suby > end.y) {
+                        ahead.add(new Point(subx, suby));
+                    }
+                }
+            }
+
+            rfch.decodeSubframes(currentBox.tocNumber, currentBox.entryNumber, ahead, false);
+        }
+
+        return true;
+    }
+
+    public int getPrefetchDepth() {
+        return prefetchDepth;
+    }
+
+    /**
+     * Set the number of rows/columns of subframes past the edge of the map to
+     * decompress ahead of time when the map is panned. 0 turns prefetching off.
+     */
+    public void setPrefetchDepth(int prefetchDepth) {
+        this.prefetchDepth = prefetchDepth;
+    }
+
     /**
      * Resets the indicators in the subframe cache, so that none of the current
      * contents will be used - they'll have to be loaded with data first. The
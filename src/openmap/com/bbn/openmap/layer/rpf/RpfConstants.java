@@ -82,6 +82,12 @@ public interface RpfConstants {
 	 * "auxSubframeCacheSize"
 	 */
 	public static final String AuxCacheSizeProperty = "auxSubframeCacheSize";
+	/**
+	 * The number of threads used to decompress subframes, 0 (default) for the
+	 * number of processors, 1 to decompress them one at a time on the layer
+	 * thread. "decoderThreads"
+	 */
+	public static final String DecoderThreadsProperty = "decoderThreads";
 	/**
 	 * Tell the RpfLayer to get the detailed subframe attributes for each
 	 * subframe.
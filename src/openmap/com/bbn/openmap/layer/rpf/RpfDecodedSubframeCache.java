@@ -0,0 +1,221 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.layer.rpf;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+/**
+ * The RpfDecodedSubframeCache holds on to subframes that have been run through
+ * the VQ decompression, as colortable indexes. The indexes don't depend on the
+ * opaqueness or color model of a layer, so a cache is shared by all the
+ * RpfFrameCacheHandlers that read from the same A.TOC, which means all the
+ * RpfLayers pointing at the same data. The cache is limited by the number of
+ * bytes it holds, and the least recently used subframes are dropped first.
+ * <p>
+ * The byte arrays of dropped subframes are pooled and reused for new entries.
+ * The arrays held by the cache never leave it - subframes are copied into and
+ * out of it, so it's safe to use from several threads at once.
+ * 
+ * @author dietrick
+ */
+public class RpfDecodedSubframeCache {
+
+    /** The number of bytes in a decoded subframe, one per pixel. */
+    public final static int SUBFRAME_BYTES = RpfSubframe.PIXEL_EDGE_SIZE * RpfSubframe.PIXEL_EDGE_SIZE;
+    /** The default maximum size of a cache, 64MB (1024 subframes). */
+    public final static long DEFAULT_MAX_BYTES = 64L * 1024L * 1024L;
+    /** The number of spare subframe arrays kept around for reuse. */
+    public final static int BUFFER_POOL_SIZE = 16;
+
+    /** The shared caches, keyed by A.TOC path. */
+    protected static final Map<String, RpfDecodedSubframeCache> sharedCaches = new HashMap<String, RpfDecodedSubframeCache>();
+
+    protected final LinkedHashMap<String, Entry> subframes = new LinkedHashMap<String, Entry>(64, .75f, true);
+    protected final LinkedList<byte[]> bufferPool = new LinkedList<byte[]>();
+    protected long maxBytes;
+    protected long numBytes = 0;
+
+    /**
+     * Create a cache that isn't shared.
+     * 
+     * @param maxBytes the maximum number of bytes of subframe data to hold.
+     */
+    public RpfDecodedSubframeCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Get the cache shared by everything reading the A.TOC at the given path,
+     * creating it if needed.
+     * 
+     * @param tocPath the path to the A.TOC file.
+     * @return RpfDecodedSubframeCache
+     */
+    public static RpfDecodedSubframeCache getSharedCache(String tocPath) {
+        if (tocPath == null) {
+            tocPath = "";
+        }
+
+        synchronized (sharedCaches) {
+            RpfDecodedSubframeCache cache = sharedCaches.get(tocPath);
+            if (cache == null) {
+                cache = new RpfDecodedSubframeCache(DEFAULT_MAX_BYTES);
+                sharedCaches.put(tocPath, cache);
+            }
+            return cache;
+        }
+    }
+
+    /**
+     * Create the key for a subframe.
+     * 
+     * @param framePath the path to the frame file.
+     * @param x the horizontal subframe index, only the position inside the
+     *        frame is used.
+     * @param y the vertical subframe index, only the position inside the
+     *        frame is used.
+     * @return key for the subframe.
+     */
+    public static String createKey(String framePath, int x, int y) {
+        return framePath + ':' + (x % 6) + ',' + (y % 6);
+    }
+
+    /**
+     * Copy a cached subframe into an array.
+     * 
+     * @param key the subframe key.
+     * @param pixels the array to copy the colortable indexes into, at least
+     *        SUBFRAME_BYTES long.
+     * @return the colortable of the frame the subframe came from, or null if
+     *         the subframe isn't cached (and pixels weren't touched).
+     */
+    public synchronized RpfColortable copy(String key, byte[] pixels) {
+        Entry entry = subframes.get(key);
+        if (entry == null) {
+            return null;
+        }
+        System.arraycopy(entry.pixels, 0, pixels, 0, SUBFRAME_BYTES);
+        return entry.colortable;
+    }
+
+    /**
+     * @return true if the subframe is cached.
+     */
+    public synchronized boolean contains(String key) {
+        return subframes.containsKey(key);
+    }
+
+    /**
+     * Add a subframe to the cache. The pixels are copied, so the array can be
+     * reused by the caller.
+     * 
+     * @param key the subframe key.
+     * @param pixels the colortable indexes of the subframe.
+     * @param colortable the colortable of the frame the subframe came from.
+     */
+    public synchronized void put(String key, byte[] pixels, RpfColortable colortable) {
+        if (maxBytes < SUBFRAME_BYTES) {
+            return;
+        }
+
+        Entry entry = subframes.get(key);
+        if (entry == null) {
+            entry = new Entry(obtainBuffer());
+            subframes.put(key, entry);
+            numBytes += SUBFRAME_BYTES;
+        }
+
+        System.arraycopy(pixels, 0, entry.pixels, 0, SUBFRAME_BYTES);
+        entry.colortable = colortable;
+
+        trim();
+    }
+
+    /**
+     * Get an array big enough for a subframe, from the pool if one is there.
+     * Give it back with releaseBuffer when you're done with it.
+     */
+    public synchronized byte[] obtainBuffer() {
+        byte[] buffer = bufferPool.poll();
+        if (buffer == null) {
+            buffer = new byte[SUBFRAME_BYTES];
+        }
+        return buffer;
+    }
+
+    /**
+     * Return an array to the pool. Don't use the array after this.
+     */
+    public synchronized void releaseBuffer(byte[] buffer) {
+        if (buffer != null && buffer.length == SUBFRAME_BYTES && bufferPool.size() < BUFFER_POOL_SIZE) {
+            bufferPool.add(buffer);
+        }
+    }
+
+    /**
+     * Drop the least recently used subframes until the cache fits in its byte
+     * limit.
+     */
+    protected void trim() {
+        Iterator<Entry> it = subframes.values().iterator();
+        while (numBytes > maxBytes && it.hasNext()) {
+            Entry entry = it.next();
+            it.remove();
+            numBytes -= SUBFRAME_BYTES;
+            releaseBuffer(entry.pixels);
+        }
+    }
+
+    /**
+     * Set the maximum number of bytes of subframe data to hold.
+     */
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        trim();
+    }
+
+    public synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @return the number of bytes of subframe data held.
+     */
+    public synchronized long getNumBytes() {
+        return numBytes;
+    }
+
+    /**
+     * Drop all of the subframes.
+     */
+    public synchronized void clear() {
+        subframes.clear();
+        bufferPool.clear();
+        numBytes = 0;
+    }
+
+    protected static class Entry {
+        final byte[] pixels;
+        RpfColortable colortable;
+
+        Entry(byte[] pixels) {
+            this.pixels = pixels;
+        }
+    }
+}
@@ -846,6 +846,25 @@ public class RpfFrame {
     * @param y the y coord for the subframe
     */
    public byte[] decompressSubframe(int x, int y) {
+      byte[] pixels = new byte[256 * 256];
+      if (decompressSubframeInto(x, y, pixels)) {
+         return pixels;
+      }
+      return null;
+   }
+
+   /**
+    * Decompress a subframe into an array of colortable indexes. Only reads the
+    * frame, so different subframes can be decompressed by different threads at
+    * the same time.
+    * 
+    * @param x the x coord for the subframe
+    * @param y the y coord for the subframe
+    * @param pixels the array to decompress into, at least 256 * 256 long.
+    * @return false if the subframe isn't in the frame, or is masked. The pixels
+    *         aren't touched in that case.
+    */
+   public boolean decompressSubframeInto(int x, int y, byte[] pixels) {
       // Convert x,y to the subframe index in the frame - they come
       // in as
       // cache subframe indexes
@@ -866,9 +885,8 @@ public class RpfFrame {
        * But if it does occur, just put up black pixels on the screen
        */
       if ((compressedSubframe == null) || masked[y][x]) {
-         return null;
+         return false;
       } else { // Normal pixel */
-         byte[] pixels = new byte[256 * 256];
          for (int i = 0; i < 256; i += 4) {
             for (int j = 0; j < 256; j += 8) {
                int firstByte = compressedSubframe[readptr++] & 0xff;
@@ -900,7 +918,7 @@ public class RpfFrame {
                } // for t
             } /* for j */
          } // for i
-         return pixels;
+         return true;
       } /* else */
    }
 
@@ -914,66 +932,43 @@ public class RpfFrame {
     *        RpfColortable from the frame will be used.
     */
    public int[] decompressSubframe(int x, int y, RpfColortable colortable) {
-      // Convert x,y to the subframe index in the frame - they come
-      // in as
-      // cache subframe indexes
-      x %= 6;
-      y %= 6;
-
-      // used to keep track of location into compressedSubframe
-      // array.
-      int readptr = 0;
-
-      // and the compressedSubframe array
-      byte[] compressedSubframe = this.compressedSubframe[y][x];
-
       if (colortable == null) {
          colortable = this.colortable;
       }
 
-      /*
-       * This should never occur since all subframes should be present
-       */
-      /*
-       * But if it does occur, just put up black pixels on the screen
-       */
-      if ((compressedSubframe == null) || masked[y][x]) {
+      byte[] indexes = decompressSubframe(x, y);
+      if (indexes == null) {
          return null;
-      } else { // Normal pixel */
-         int[] pixels = new int[256 * 256];
-         for (int i = 0; i < 256; i += 4) {
-            for (int j = 0; j < 256; j += 8) {
-               int firstByte = compressedSubframe[readptr++] & 0xff;
-               int secondByte = compressedSubframe[readptr++] & 0xff;
-               int thirdByte = compressedSubframe[readptr++] & 0xff;
+      }
+      return toPixels(indexes, colortable.colors, null);
+   }
 
-               // because dealing with half-bytes is hard, we
-               // uncompress two 4x4 tiles at the same time. (a
-               // 4x4 tile compressed is 12 bits )
+   /**
+    * Convert colortable indexes into argb pixels.
+    * 
+    * @param indexes the colortable indexes for a subframe.
+    * @param colors the colortable.
+    * @param pixels the array to put the pixels in. If null or too small, a new
+    *        one will be created.
+    * @return the pixels.
+    */
+   public static int[] toPixels(byte[] indexes, Color[] colors, int[] pixels) {
+      if (pixels == null || pixels.length < indexes.length) {
+         pixels = new int[indexes.length];
+      }
 
-               /* Get first 12-bit value as index into VQ table */
-               int val1 = (firstByte << 4) | (secondByte >> 4);
-               /* Get second 12-bit value as index into VQ table */
-               int val2 = ((secondByte & 0x000F) << 8) | thirdByte;
-               for (int t = 0; t < 4; t++) {
-                  for (int e = 0; e < 4; e++) {
-                     int tableVal1 = table[t][val1][e] & 0xff;
-                     int tableVal2 = table[t][val2][e] & 0xff;
-                     if (tableVal1 >= RpfColortable.CADRG_COLORS) {
-                        tableVal1 = RpfColortable.CADRG_COLORS - 1;
-                     }
-                     if (tableVal2 >= RpfColortable.CADRG_COLORS) {
-                        tableVal2 = RpfColortable.CADRG_COLORS - 1;
-                     }
-                     int pixindex = (i + t) * 256 + j + e;
-                     pixels[pixindex] = colortable.colors[tableVal1].getRGB();
-                     pixels[pixindex + 4] = colortable.colors[tableVal2].getRGB();
-                  } // for e
-               } // for t
-            } /* for j */
-         } // for i
-         return pixels;
-      } /* else */
+      // Look up the argb values once, instead of once per pixel.
+      int[] argb = new int[256];
+      for (int i = 0; i < colors.length && i < argb.length; i++) {
+         if (colors[i] != null) {
+            argb[i] = colors[i].getRGB();
+         }
+      }
+
+      for (int i = 0; i < indexes.length; i++) {
+         pixels[i] = argb[indexes[i] & 0xff];
+      }
+      return pixels;
    }
 
    public static void main(String[] argv) {
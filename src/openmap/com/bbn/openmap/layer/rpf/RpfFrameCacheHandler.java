@@ -29,8 +29,16 @@
 
 package com.bbn.openmap.layer.rpf;
 
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 import com.bbn.openmap.proj.Projection;
 import com.bbn.openmap.util.Debug;
@@ -61,6 +69,18 @@ public class RpfFrameCacheHandler
    protected RpfTocHandler[] tocs;
    /** View and display attributes for the data. */
    protected RpfViewAttributes viewAttributes = new RpfViewAttributes();
+   /**
+    * Runs subframe decompression in parallel, if set. If null, subframes are
+    * decompressed on the calling thread as they are needed.
+    */
+   protected RpfSubframeDecoder decoder;
+   /** The decoded subframe caches for the tocs, shared with other handlers. */
+   protected RpfDecodedSubframeCache[] decodedCaches;
+   /**
+    * The frames being read, by frame path, so threads asking for the same
+    * frame wait for one read instead of each reading it.
+    */
+   protected final ConcurrentHashMap<String, FutureTask<CacheObject>> pendingFrames = new ConcurrentHashMap<String, FutureTask<CacheObject>>();
 
    /**
     * The default constructor.
@@ -525,19 +545,21 @@ public class RpfFrameCacheHandler
       }
       RpfFrameEntry frameEntry = entry.getFrame(y / 6, x / 6);
 
-      /* Get the right frame from the frame cache */
-      RpfFrame frame = (RpfFrame) get(frameEntry);
+      RpfDecodedSubframeCache decodedCache = getDecodedCache(tocNumber);
+      byte[] indexes = decodedCache.obtainBuffer();
+      try {
+         RpfColortable frameColortable = loadDecodedSubframe(tocNumber, frameEntry, x, y, indexes);
 
-      if (frame == null) {
-         return null;
-      }
+         if (frameColortable == null) {
+            return null;
+         }
 
-      checkColortable(frame, frameEntry, entry, tocNumber, entryNumber);
+         checkColortable(frameColortable, entry, tocNumber, entryNumber);
 
-      /*
-       * This should never fail, since all subframes should be present
-       */
-      return frame.decompressSubframe(x, y, colortable);
+         return RpfFrame.toPixels(indexes, colortable.colors, null);
+      } finally {
+         decodedCache.releaseBuffer(indexes);
+      }
    }
 
    public RpfIndexedImageData getRawSubframeData(int tocNumber, int entryNumber, int x, int y) {
@@ -557,20 +579,143 @@ public class RpfFrameCacheHandler
       }
       RpfFrameEntry frameEntry = entry.getFrame(y / 6, x / 6);
 
-      /* Get the right frame from the frame cache */
-      RpfFrame frame = (RpfFrame) get(frameEntry);
+      // The image data is handed off to the image, so it can't come from the
+      // buffer pool.
+      byte[] indexes = new byte[RpfDecodedSubframeCache.SUBFRAME_BYTES];
+      RpfColortable frameColortable = loadDecodedSubframe(tocNumber, frameEntry, x, y, indexes);
 
-      if (frame == null)
+      if (frameColortable == null)
          return null;
 
-      checkColortable(frame, frameEntry, entry, tocNumber, entryNumber);
+      checkColortable(frameColortable, entry, tocNumber, entryNumber);
 
       RpfIndexedImageData riid = new RpfIndexedImageData();
-      riid.imageData = frame.decompressSubframe(x, y);
+      riid.imageData = indexes;
       riid.colortable = colortable.colors;
       return riid;
    }
 
+   /**
+    * Get the colortable indexes for a subframe, from the decoded subframe cache
+    * if they are there, or from the frame, in which case they'll be added to
+    * the cache.
+    * 
+    * @param tocNumber the toc id of the frame.
+    * @param frameEntry the frame holding the subframe.
+    * @param x the horizontal subframe index.
+    * @param y the vertical subframe index.
+    * @param pixels the array to put the indexes in.
+    * @return the colortable of the frame, or null if the subframe isn't
+    *         available.
+    */
+   protected RpfColortable loadDecodedSubframe(int tocNumber, RpfFrameEntry frameEntry, int x, int y, byte[] pixels) {
+      if (frameEntry == null) {
+         return null;
+      }
+
+      RpfDecodedSubframeCache decodedCache = getDecodedCache(tocNumber);
+      RpfColortable frameColortable = decodedCache.copy(RpfDecodedSubframeCache.createKey(frameEntry.framePath, x, y), pixels);
+
+      if (frameColortable == null) {
+         /* Get the right frame from the frame cache */
+         RpfFrame frame = (RpfFrame) get(frameEntry);
+
+         /*
+          * This should never fail, since all subframes should be present
+          */
+         if (frame == null || !frame.decompressSubframeInto(x, y, pixels)) {
+            return null;
+         }
+
+         frameColortable = frame.getColortable();
+         // The frame path may have been fixed up when the frame was loaded.
+         decodedCache.put(RpfDecodedSubframeCache.createKey(frameEntry.framePath, x, y), pixels, frameColortable);
+      }
+
+      return frameColortable;
+   }
+
+   /**
+    * Decompress subframes from a RpfTocEntry into the decoded subframe cache,
+    * using the RpfSubframeDecoder. Subframes from the same frame are handled by
+    * the same job, so each frame file is only read once. Subframes that are
+    * already cached, or outside of the entry, are skipped. Does nothing if
+    * there isn't a decoder.
+    * 
+    * @param tocNumber the toc id for a RpfTocHandler.
+    * @param entryNumber the RpfTocEntry id for the RpfTocHandler.
+    * @param subframes the subframe indexes, within the entry.
+    * @param wait if true, return when the subframes have been decompressed,
+    *        otherwise return right away and let the decompression happen in the
+    *        background.
+    * @return false if the calling thread was interrupted while waiting.
+    */
+   public boolean decodeSubframes(int tocNumber, int entryNumber, List<Point> subframes, boolean wait) {
+      RpfSubframeDecoder decoder = getDecoder();
+
+      if (decoder == null || subframes == null || subframes.isEmpty() || tocNumber < 0 || tocNumber >= tocs.length
+            || !tocs[tocNumber].isValid()) {
+         return true;
+      }
+
+      RpfTocEntry entry = tocs[tocNumber].entries[entryNumber];
+      if (entry == null) {
+         return true;
+      }
+
+      if (!entry.isFramesLoaded()) {
+         tocs[tocNumber].loadFrameInformation(entry);
+      }
+
+      RpfDecodedSubframeCache decodedCache = getDecodedCache(tocNumber);
+
+      Map<RpfFrameEntry, DecodeJob> jobs = new LinkedHashMap<RpfFrameEntry, DecodeJob>();
+      for (Point subframe : subframes) {
+         int x = subframe.x;
+         int y = subframe.y;
+
+         /* If beyond the image boundary, forget it */
+         if (y < 0 || x < 0 || y >= entry.vertFrames * 6 || x >= entry.horizFrames * 6) {
+            continue;
+         }
+
+         RpfFrameEntry frameEntry = entry.getFrame(y / 6, x / 6);
+         if (frameEntry == null || !frameEntry.exists
+               || decodedCache.contains(RpfDecodedSubframeCache.createKey(frameEntry.framePath, x, y))) {
+            continue;
+         }
+
+         DecodeJob job = jobs.get(frameEntry);
+         if (job == null) {
+            job = new DecodeJob(frameEntry, decodedCache);
+            jobs.put(frameEntry, job);
+         }
+         job.subframes.add(subframe);
+      }
+
+      if (jobs.isEmpty()) {
+         return true;
+      }
+
+      return decoder.decode(new ArrayList<DecodeJob>(jobs.values()), wait);
+   }
+
+   /**
+    * Get the decoded subframe cache for a toc, which is shared with any other
+    * RpfFrameCacheHandler using the same A.TOC.
+    */
+   protected synchronized RpfDecodedSubframeCache getDecodedCache(int tocNumber) {
+      if (decodedCaches == null || decodedCaches.length != tocs.length) {
+         decodedCaches = new RpfDecodedSubframeCache[tocs.length];
+      }
+
+      if (decodedCaches[tocNumber] == null) {
+         decodedCaches[tocNumber] = RpfDecodedSubframeCache.getSharedCache(tocs[tocNumber].getATocFilePath());
+      }
+
+      return decodedCaches[tocNumber];
+   }
+
    /**
     * Take a bunch of stuff that has already been calculated, and then figure
     * out if a new colortable is needed. If it is, load it up with info. Called
@@ -582,6 +727,14 @@ public class RpfFrameCacheHandler
     * case.
     */
    protected void checkColortable(RpfFrame frame, RpfFrameEntry frameEntry, RpfTocEntry entry, int tocNumber, int entryNumber) {
+      checkColortable(frame.getColortable(), entry, tocNumber, entryNumber);
+   }
+
+   /**
+    * Load the colortable used for the subframes with the colortable of the
+    * frame they come from.
+    */
+   protected void checkColortable(RpfColortable frameColortable, RpfTocEntry entry, int tocNumber, int entryNumber) {
       // Colortables are constant across chart types and zones. If
       // the current chart type and zone don't match the colortable,
       // read the proper one from the frame. All the frames inside
@@ -602,7 +755,7 @@ public class RpfFrameCacheHandler
             Debug.output("RpfFrameCacheHandler: getting CIB colors = " + entry.Cib);
          }
          // Seems like there ought to be a better way to do this.
-         colortable.setFrom(frame.getColortable());
+         colortable.setFrom(frameColortable);
          colortable.setCib(entry.Cib);
          colortable.setATOCIndexes(tocNumber, entryNumber);
          colortable.zone = entry.zone;
@@ -640,22 +793,64 @@ public class RpfFrameCacheHandler
     * kicked off in the frame. If you don't care about Dchum, use the other get
     * method. CacheHandler method.
     */
-   public Object get(RpfFrameEntry rfe) {
+   public Object get(final RpfFrameEntry rfe) {
 
-      CacheObject ret = searchCache(rfe.framePath);
+      CacheObject ret;
+      synchronized (this) {
+         ret = searchCache(rfe.framePath);
+      }
       if (ret != null)
          return ret.obj;
 
-      ret = load(rfe);
-      if (ret == null)
-         return null;
+      // Frames are read outside of the lock, so the decoder threads can read
+      // different frames at the same time. Threads that want the same frame
+      // wait for the first one to read it.
+      FutureTask<CacheObject> task = new FutureTask<CacheObject>(new Callable<CacheObject>() {
+         public CacheObject call() {
+            CacheObject co;
+            // Another thread may have finished reading the frame since the
+            // cache was checked.
+            synchronized (RpfFrameCacheHandler.this) {
+               co = searchCache(rfe.framePath);
+            }
+            if (co != null) {
+               return co;
+            }
 
-      if (Debug.debugging("rpfdetail")) {
-         System.out.println(rfe);
+            co = load(rfe);
+            if (co != null) {
+               if (Debug.debugging("rpfdetail")) {
+                  System.out.println(rfe);
+               }
+
+               synchronized (RpfFrameCacheHandler.this) {
+                  replaceLeastUsed(co);
+               }
+            }
+            return co;
+         }
+      });
+
+      FutureTask<CacheObject> pending = pendingFrames.putIfAbsent(rfe.framePath, task);
+      if (pending == null) {
+         pending = task;
+         try {
+            task.run();
+         } finally {
+            pendingFrames.remove(rfe.framePath, task);
+         }
       }
 
-      replaceLeastUsed(ret);
-      return ret.obj;
+      try {
+         ret = pending.get();
+      } catch (InterruptedException ie) {
+         Thread.currentThread().interrupt();
+         return null;
+      } catch (ExecutionException ee) {
+         Debug.error("RpfFrameCacheHandler: problem reading " + rfe.framePath + ": " + ee.getCause());
+         return null;
+      }
+      return ret != null ? ret.obj : null;
    }
 
    public CacheObject load(Object key) {
@@ -691,7 +886,7 @@ public class RpfFrameCacheHandler
    /**
     * Cachehandler method.
     */
-   public void resizeCache(int max_size) {
+   public synchronized void resizeCache(int max_size) {
       resetCache(max_size);
    }
 
@@ -699,7 +894,7 @@ public class RpfFrameCacheHandler
     * CacheHandler method. Need to clear memory, get gc moving, and ready for
     * new objects
     */
-   public void resetCache() {
+   public synchronized void resetCache() {
       super.resetCache();
       Debug.message("rpf", "RpfFrameCacheHandler: reset frame cache.");
    }
@@ -715,4 +910,57 @@ public class RpfFrameCacheHandler
    public void setColortable(RpfColortable colortable) {
       this.colortable = colortable;
    }
+
+   public RpfSubframeDecoder getDecoder() {
+      return decoder;
+   }
+
+   /**
+    * Set the RpfSubframeDecoder used to decompress subframes in parallel. If
+    * null, subframes are decompressed as they are needed.
+    */
+   public void setDecoder(RpfSubframeDecoder decoder) {
+      this.decoder = decoder;
+   }
+
+   /**
+    * Decompresses the subframes needed from a single frame into the decoded
+    * subframe cache.
+    */
+   protected class DecodeJob
+         implements Callable<Object> {
+
+      protected final RpfFrameEntry frameEntry;
+      protected final RpfDecodedSubframeCache decodedCache;
+      protected final List<Point> subframes = new ArrayList<Point>();
+
+      protected DecodeJob(RpfFrameEntry frameEntry, RpfDecodedSubframeCache decodedCache) {
+         this.frameEntry = frameEntry;
+         this.decodedCache = decodedCache;
+      }
+
+      public Object call() {
+         RpfFrame frame = (RpfFrame) get(frameEntry);
+         if (frame == null) {
+            return null;
+         }
+
+         byte[] pixels = decodedCache.obtainBuffer();
+         try {
+            for (Point subframe : subframes) {
+               if (Thread.currentThread().isInterrupted()) {
+                  break;
+               }
+
+               String key = RpfDecodedSubframeCache.createKey(frameEntry.framePath, subframe.x, subframe.y);
+               if (!decodedCache.contains(key) && frame.decompressSubframeInto(subframe.x, subframe.y, pixels)) {
+                  decodedCache.put(key, pixels, frame.getColortable());
+               }
+            }
+         } finally {
+            decodedCache.releaseBuffer(pixels);
+         }
+         return null;
+      }
+   }
 }
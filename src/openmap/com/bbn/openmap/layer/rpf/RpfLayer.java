@@ -117,6 +117,9 @@ import com.bbn.openmap.util.cacheHandler.CacheHandler;
  *           rpf.coverage=true
  *           # Set the subframe cache size. (Number of subframes to hold on to, 256x256 pixels)
  *           rpf.subframeCacheSize=128
+ *           # Number of threads used to decompress subframes, 0 (default) uses the number of
+ *           # processors, 1 decompresses them one at a time on the layer thread.
+ *           rpf.decoderThreads=0
  *           # Then also include coverage properties, which are available in the RpfConstants.
  *           #------------------------------------
  *           # End of properties for RpfLayer
@@ -159,6 +162,10 @@ public class RpfLayer extends OMGraphicHandlerLayer implements ActionListener, R
 	protected int subframeCacheSize = RpfCacheHandler.SUBFRAME_CACHE_SIZE;
 	/** Auxiliary subframe cache size. Default is 10. */
 	protected int auxSubframeCacheSize = RpfCacheManager.SMALL_CACHE_SIZE;
+	/** The number of subframe decompression threads, 0 for processor count. */
+	protected int decoderThreads = 0;
+	/** Decompresses subframes in parallel, shared with the frame provider. */
+	protected transient RpfSubframeDecoder decoder;
 
 	/**
 	 * The default constructor for the Layer. All of the attributes are set to
@@ -208,7 +215,9 @@ public class RpfLayer extends OMGraphicHandlerLayer implements ActionListener, R
 		}
 
 		if (pathsToRPFDirs != null) {
-			setFrameProvider(new RpfFrameCacheHandler(pathsToRPFDirs));
+			RpfFrameCacheHandler rfch = new RpfFrameCacheHandler(pathsToRPFDirs);
+			rfch.setDecoder(getDecoder());
+			setFrameProvider(rfch);
 		} else {
 			logger.warning("Need RPF directory paths.");
 			frameProvider = null;
@@ -220,6 +229,22 @@ public class RpfLayer extends OMGraphicHandlerLayer implements ActionListener, R
 		this.cache = null;
 	}
 
+	/**
+	 * Get the RpfSubframeDecoder for decompressing subframes in parallel,
+	 * created with decoderThreads threads the first time it's needed.
+	 * 
+	 * @return null if subframes should be decompressed one at a time.
+	 */
+	protected synchronized RpfSubframeDecoder getDecoder() {
+		if (decoderThreads == 1) {
+			return null;
+		}
+		if (decoder == null) {
+			decoder = new RpfSubframeDecoder(decoderThreads);
+		}
+		return decoder;
+	}
+
 	/**
 	 * Get the paths to the RPF directories.
 	 * 
@@ -259,6 +284,8 @@ public class RpfLayer extends OMGraphicHandlerLayer implements ActionListener, R
 
 		prefix = PropUtils.getScopedPropertyPrefix(prefix);
 
+		decoderThreads = PropUtils.intFromProperties(properties, prefix + DecoderThreadsProperty, decoderThreads);
+
 		setPaths(PropUtils.initPathsFromProperties(properties, prefix + RpfPathsProperty, paths));
 
 		viewAttributes.setProperties(prefix, properties);
@@ -320,6 +347,7 @@ public class RpfLayer extends OMGraphicHandlerLayer implements ActionListener, R
 		props.put(prefix + KillCacheProperty, new Boolean(killCache).toString());
 		props.put(prefix + CacheSizeProperty, Integer.toString(subframeCacheSize));
 		props.put(prefix + AuxCacheSizeProperty, Integer.toString(auxSubframeCacheSize));
+		props.put(prefix + DecoderThreadsProperty, Integer.toString(decoderThreads));
 
 		viewAttributes.setPropertyPrefix(prefix);
 		viewAttributes.getProperties(props);
@@ -383,6 +411,12 @@ public class RpfLayer extends OMGraphicHandlerLayer implements ActionListener, R
 		interString = i18n.get(RpfLayer.class, AuxCacheSizeProperty, "Aux Frame Cache Size");
 		list.put(AuxCacheSizeProperty + LabelEditorProperty, interString);
 
+		interString = i18n.get(RpfLayer.class, DecoderThreadsProperty, I18n.TOOLTIP,
+				"Number of threads decompressing subframes, 0 for the number of processors, 1 for none.");
+		list.put(DecoderThreadsProperty, interString);
+		interString = i18n.get(RpfLayer.class, DecoderThreadsProperty, "Decoder Threads");
+		list.put(DecoderThreadsProperty + LabelEditorProperty, interString);
+
 		viewAttributes.getPropertyInfo(list);
 
 		RpfCoverage tmpCov = coverage;
@@ -394,6 +428,7 @@ public class RpfLayer extends OMGraphicHandlerLayer implements ActionListener, R
 
 		list.put(initPropertiesProperty,
 				RpfPathsProperty + " " + KillCacheProperty + " " + CacheSizeProperty + " " + AuxCacheSizeProperty + " "
+						+ DecoderThreadsProperty + " "
 						+ viewAttributes.getInitPropertiesOrder() + " " + AddToBeanContextProperty + " "
 						+ AddAsBackgroundProperty + " " + RemovableProperty + " " + CoverageProperty + " "
 						+ tmpCov.getInitPropertiesOrder());
@@ -0,0 +1,167 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.layer.rpf;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The RpfSubframeDecoder runs subframe decompression jobs on a set of worker
+ * threads. The RpfFrameCacheHandler creates one job per frame, which
+ * decompresses the subframes needed from that frame into the
+ * RpfDecodedSubframeCache. The layer thread waits for the jobs for the subframes
+ * on the map, while jobs for subframes that might be needed next (prefetching)
+ * are left to run in the background. Prefetch jobs that haven't started by the
+ * time the next jobs arrive are cancelled, so they don't hold up the subframes
+ * for a newer map.
+ * 
+ * @author dietrick
+ */
+public class RpfSubframeDecoder {
+
+    public static Logger logger = Logger.getLogger("com.bbn.openmap.layer.rpf.RpfSubframeDecoder");
+
+    /** The time idle worker threads stick around, in seconds. */
+    public final static long KEEP_ALIVE_TIME = 30L;
+
+    protected final ThreadPoolExecutor executor;
+
+    /**
+     * The results of the last prefetch jobs, which may still be waiting to
+     * run.
+     */
+    protected final List<Future<?>> prefetches = new ArrayList<Future<?>>();
+
+    /**
+     * Create a RpfSubframeDecoder.
+     * 
+     * @param numThreads the number of worker threads, if less than 1 the
+     *        number of available processors is used.
+     */
+    public RpfSubframeDecoder(int numThreads) {
+        if (numThreads < 1) {
+            numThreads = Runtime.getRuntime().availableProcessors();
+        }
+
+        executor = new ThreadPoolExecutor(numThreads, numThreads, KEEP_ALIVE_TIME, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new DecoderThreadFactory());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @return the number of worker threads.
+     */
+    public int getNumThreads() {
+        return executor.getMaximumPoolSize();
+    }
+
+    /**
+     * Run decompression jobs. Prefetch jobs from earlier calls that haven't
+     * started yet are cancelled first.
+     * 
+     * @param jobs the jobs to run.
+     * @param wait if true, return after all of the jobs have finished.
+     *        Otherwise, return right away, and treat the jobs as prefetch jobs.
+     * @return false if the calling thread was interrupted while waiting, in
+     *         which case the jobs that haven't started are cancelled.
+     */
+    public boolean decode(List<? extends Callable<?>> jobs, boolean wait) {
+        cancelPrefetches();
+
+        List<Future<?>> results = new ArrayList<Future<?>>(jobs.size());
+        for (Callable<?> job : jobs) {
+            results.add(executor.submit(job));
+        }
+
+        if (!wait) {
+            synchronized (prefetches) {
+                prefetches.addAll(results);
+            }
+            return true;
+        }
+
+        int done = 0;
+        try {
+            for (Future<?> result : results) {
+                try {
+                    result.get();
+                } catch (ExecutionException ee) {
+                    logger.log(Level.WARNING, "problem decompressing subframes", ee.getCause());
+                }
+                done++;
+            }
+            return true;
+        } catch (InterruptedException ie) {
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("cancelled after " + done + " of " + results.size() + " jobs");
+            }
+            for (Future<?> result : results.subList(done, results.size())) {
+                result.cancel(false);
+            }
+            // Let the caller know, too.
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Cancel the prefetch jobs that haven't started, and take them out of the
+     * work queue.
+     */
+    public void cancelPrefetches() {
+        synchronized (prefetches) {
+            if (prefetches.isEmpty()) {
+                return;
+            }
+            for (Future<?> result : prefetches) {
+                result.cancel(false);
+            }
+            prefetches.clear();
+        }
+        executor.purge();
+    }
+
+    /**
+     * Stop the worker threads. The decoder can't be used after this.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Makes daemon threads, so idle decoders don't hold up the application
+     * exiting.
+     */
+    protected static class DecoderThreadFactory implements ThreadFactory {
+        private static final AtomicInteger poolCount = new AtomicInteger(1);
+        private final AtomicInteger threadCount = new AtomicInteger(1);
+        private final String namePrefix = "RpfSubframeDecoder-" + poolCount.getAndIncrement() + "-";
+
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, namePrefix + threadCount.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
@@ -0,0 +1,211 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.layer.rpf;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.bbn.openmap.layer.shape.PackedRTree;
+
+/**
+ * An in-memory index over the coverage boxes of the RpfTocEntries of an A.TOC,
+ * grouped by chart series and then by scale, with a PackedRTree over the boxes
+ * in each group. The RpfTocHandler uses it to find the entries that could
+ * provide coverage for a map, instead of checking every entry.
+ * <p>
+ * The index is conservative - the boxes are padded by a subframe, so every
+ * entry that RpfCoverageBox.setPercentCoverage() would find coverage for is
+ * returned. The RpfTocHandler still makes the real coverage checks on the
+ * entries returned.
+ * 
+ * @author dietrick
+ */
+public class RpfTocEntryIndex {
+
+    protected final RpfTocEntry[] entries;
+    /** Chart series code (upper case) to scale groups. */
+    protected final Map<String, ScaleGroups> series = new HashMap<String, ScaleGroups>();
+
+    /**
+     * Create an index for the entries of an A.TOC. The chart series
+     * information of the entries should already be set.
+     */
+    public RpfTocEntryIndex(RpfTocEntry[] entries) {
+        this.entries = entries;
+
+        Map<String, TreeMap<Integer, List<Integer>>> groups = new HashMap<String, TreeMap<Integer, List<Integer>>>();
+        for (int i = 0; i < entries.length; i++) {
+            RpfTocEntry entry = entries[i];
+            if (entry == null) {
+                continue;
+            }
+
+            String key = getSeriesKey(entry);
+            TreeMap<Integer, List<Integer>> scales = groups.get(key);
+            if (scales == null) {
+                scales = new TreeMap<Integer, List<Integer>>();
+                groups.put(key, scales);
+            }
+
+            Integer scale = Integer.valueOf(RpfTocHandler.getEntryScale(entry));
+            List<Integer> members = scales.get(scale);
+            if (members == null) {
+                members = new ArrayList<Integer>();
+                scales.put(scale, members);
+            }
+            members.add(Integer.valueOf(i));
+        }
+
+        for (Map.Entry<String, TreeMap<Integer, List<Integer>>> group : groups.entrySet()) {
+            series.put(group.getKey(), new ScaleGroups(group.getValue()));
+        }
+    }
+
+    protected static String getSeriesKey(RpfTocEntry entry) {
+        if (entry.info == null || entry.info.seriesCode == null) {
+            return "";
+        }
+        return entry.info.seriesCode.toUpperCase();
+    }
+
+    /**
+     * Find the entries that might cover an area.
+     * 
+     * @param chartSeries the chart series code, null or RpfViewAttributes.ANY
+     *        for all.
+     * @param minScale the smallest entry scale (number) to return.
+     * @param maxScale the largest entry scale (number) to return.
+     * @param ullat upper left latitude, in decimal degrees
+     * @param ullon upper left longitude, in decimal degrees
+     * @param lrlat lower right latitude, in decimal degrees
+     * @param lrlon lower right longitude, in decimal degrees
+     * @return the entries, in the order they are in the A.TOC.
+     */
+    public List<RpfTocEntry> query(String chartSeries, double minScale, double maxScale, double ullat,
+                                   double ullon, double lrlat, double lrlon) {
+        double xmin = Math.min(ullon, lrlon);
+        double xmax = Math.max(ullon, lrlon);
+        double ymin = Math.min(ullat, lrlat);
+        double ymax = Math.max(ullat, lrlat);
+
+        int[] hits = new int[16];
+        int numHits = 0;
+
+        if (chartSeries == null || chartSeries.equalsIgnoreCase(RpfViewAttributes.ANY)) {
+            for (ScaleGroups groups : series.values()) {
+                for (int index : groups.query(minScale, maxScale, xmin, ymin, xmax, ymax)) {
+                    if (numHits == hits.length) {
+                        hits = Arrays.copyOf(hits, hits.length * 2);
+                    }
+                    hits[numHits++] = index;
+                }
+            }
+        } else {
+            ScaleGroups groups = series.get(chartSeries.toUpperCase());
+            if (groups != null) {
+                hits = groups.query(minScale, maxScale, xmin, ymin, xmax, ymax);
+                numHits = hits.length;
+            }
+        }
+
+        Arrays.sort(hits, 0, numHits);
+        List<RpfTocEntry> ret = new ArrayList<RpfTocEntry>(numHits);
+        for (int i = 0; i < numHits; i++) {
+            ret.add(entries[hits[i]]);
+        }
+        return ret;
+    }
+
+    /**
+     * The entries for one chart series, an R-tree for each scale.
+     */
+    protected class ScaleGroups {
+        protected final int[] scales;
+        protected final PackedRTree[] trees;
+
+        protected ScaleGroups(TreeMap<Integer, List<Integer>> groups) {
+            scales = new int[groups.size()];
+            trees = new PackedRTree[groups.size()];
+
+            int g = 0;
+            for (Map.Entry<Integer, List<Integer>> group : groups.entrySet()) {
+                List<Integer> members = group.getValue();
+                double[] bounds = new double[members.size() * 4];
+                int[] indexes = new int[members.size()];
+
+                for (int i = 0; i < indexes.length; i++) {
+                    indexes[i] = members.get(i).intValue();
+                    setBounds(entries[indexes[i]].coverage, bounds, i * 4);
+                }
+
+                scales[g] = group.getKey().intValue();
+                trees[g] = new PackedRTree(bounds, indexes);
+                g++;
+            }
+        }
+
+        /**
+         * The bounds of the subframes of a coverage box, the area used by
+         * setPercentCoverage, padded by a subframe on each side.
+         */
+        protected void setBounds(RpfCoverageBox box, double[] bounds, int offset) {
+            double latPad = box.subframeLatInterval;
+            double lonPad = box.subframeLonInterval;
+            double width = box.horizontalSubframes() * lonPad;
+            double height = box.verticalSubframes() * latPad;
+
+            if (!(latPad > 0) || !(lonPad > 0) || Double.isInfinite(width) || Double.isInfinite(height)) {
+                // Can't tell, always check it.
+                bounds[offset] = -Double.MAX_VALUE;
+                bounds[offset + 1] = -Double.MAX_VALUE;
+                bounds[offset + 2] = Double.MAX_VALUE;
+                bounds[offset + 3] = Double.MAX_VALUE;
+                return;
+            }
+
+            bounds[offset] = box.nw_lon - lonPad;
+            bounds[offset + 1] = box.nw_lat - height - latPad;
+            bounds[offset + 2] = box.nw_lon + width + lonPad;
+            bounds[offset + 3] = box.nw_lat + latPad;
+        }
+
+        protected int[] query(double minScale, double maxScale, double xmin, double ymin, double xmax,
+                              double ymax) {
+            // Allow for rounding in the scale factor calculations.
+            minScale = Math.floor(minScale - Math.abs(minScale) * 1e-6) - 1;
+            maxScale = Math.ceil(maxScale + Math.abs(maxScale) * 1e-6) + 1;
+
+            int[] ret = new int[0];
+            for (int g = 0; g < scales.length; g++) {
+                if (scales[g] < minScale || scales[g] > maxScale) {
+                    continue;
+                }
+                int[] hits = trees[g].query(xmin, ymin, xmax, ymax);
+                if (ret.length == 0) {
+                    ret = hits;
+                } else if (hits.length > 0) {
+                    int[] tmp = Arrays.copyOf(ret, ret.length + hits.length);
+                    System.arraycopy(hits, 0, tmp, ret.length, hits.length);
+                    ret = tmp;
+                }
+            }
+            return ret;
+        }
+    }
+}
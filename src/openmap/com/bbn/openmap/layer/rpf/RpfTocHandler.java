@@ -37,6 +37,7 @@ package com.bbn.openmap.layer.rpf;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Vector;
 
@@ -105,6 +106,15 @@ public class RpfTocHandler {
 	 */
 	protected boolean fullPathsInATOC = false;
 
+	/**
+	 * The on-disk index of the frame file records, if one can be used for the A.TOC.
+	 */
+	protected RpfTocIndex tocIndex;
+	/**
+	 * Index of the entries by chart series, scale and coverage, for coverage queries.
+	 */
+	protected RpfTocEntryIndex entryIndex;
+
 	protected boolean DEBUG_RPF = false;
 	protected boolean DEBUG_RPFTOC = false;
 	protected boolean DEBUG_RPFTOCDETAIL = false;
@@ -391,8 +401,18 @@ public class RpfTocHandler {
 			// One thing that we still need to do at this point, is query some
 			// of the frame file paths to find out what chart type is being held
 			// for each RpfTocEntry, so during the coverage determination we can
-			// decide whether to use an RpfTocEntry or not.
-			figureOutChartSeriesForEntries(binFile);
+			// decide whether to use an RpfTocEntry or not. The RpfTocIndex
+			// holds that information, and the frame paths, after the first
+			// time the A.TOC is read.
+			tocIndex = RpfTocIndex.get(this, binFile);
+			if (tocIndex != null) {
+				tocIndex.loadChartSeries(entries);
+				fullPathsInATOC = tocIndex.hasFullPaths();
+			} else {
+				figureOutChartSeriesForEntries(binFile);
+			}
+
+			entryIndex = new RpfTocEntryIndex(entries);
 
 		} catch (IOException ioe) {
 			Debug.error("RpfTocHandler: IO ERROR parsing file!\n\t" + ioe);
@@ -476,6 +496,11 @@ public class RpfTocHandler {
 	 * RpfFrameCacheHandler should ask the RpfTocEntry if the frames have been loaded, and call this if they have not.
 	 */
 	protected void loadFrameInformation(RpfTocEntry rpfTocEntry) {
+		if (tocIndex != null) {
+			tocIndex.loadFrames(rpfTocEntry);
+			return;
+		}
+
 		try {
 			if (binFile == null && aTocFilePath != null) {
 				binFile = new BinaryBufferedFile(aTocFilePath);
@@ -837,11 +862,11 @@ public class RpfTocHandler {
 
 		String chartSeries;
 
-		for (int i = 0; i < numBoundaries; i++) {
+		for (RpfTocEntry entry : getEntries(chartSeriesCode, -Double.MAX_VALUE, Double.MAX_VALUE, ullat, ullon, lrlat, lrlon)) {
 
 			// Try to get the boundary rectangle with the most
 			// coverage, so reset the entry for this particular query.
-			entries[i].coverage.reset();
+			entry.coverage.reset();
 
 			if (chartSeriesCode == null) {
 				chartSeries = RpfViewAttributes.ANY;
@@ -850,15 +875,42 @@ public class RpfTocHandler {
 			}
 
 			if (chartSeries.equalsIgnoreCase(RpfViewAttributes.ANY) || chartSeries.equalsIgnoreCase(
-				entries[i].info.seriesCode)) {
+				entry.info.seriesCode)) {
 
-				if (entries[i].coverage.setPercentCoverage(ullat, ullon, lrlat, lrlon) > 0f) {
-					coverages.addElement(entries[i].coverage);
+				if (entry.coverage.setPercentCoverage(ullat, ullon, lrlat, lrlon) > 0f) {
+					coverages.addElement(entry.coverage);
 				}
 			}
 		}
 	}
 
+	/**
+	 * Get the entries that might have coverage for an area, in A.TOC order. Entries that can't are skipped if the
+	 * entries have been indexed.
+	 *
+	 * @param chartSeries the chart series code, null or RpfViewAttributes.ANY for all.
+	 * @param minScale the smallest entry scale to consider.
+	 * @param maxScale the largest entry scale to consider.
+	 * @return List of RpfTocEntries.
+	 */
+	protected List<RpfTocEntry> getEntries(String chartSeries, double minScale, double maxScale, double ullat,
+		double ullon, double lrlat, double lrlon) {
+		if (entryIndex == null) {
+			return Arrays.asList(entries);
+		}
+		return entryIndex.query(chartSeries, minScale, maxScale, ullat, ullon, lrlat, lrlon);
+	}
+
+	/**
+	 * The scale number used for an entry when matching it to a projection scale.
+	 */
+	protected static int getEntryScale(RpfTocEntry entry) {
+		if (entry.info == null || entry.info.scale == RpfConstants.Various) {
+			return (int) textScaleToLong(entry.scale);
+		}
+		return (int) entry.info.scale;
+	}
+
 	/**
 	 * Given a coordinate box and a scale, find the entry in the table of contents file with the right data. Zone is
 	 * always of the northern hemisphere, and is transformed to southern inside if needed. The box will get filled in
@@ -920,7 +972,18 @@ public class RpfTocHandler {
 		int zone = getASCIIZone(ullat, cadrg.getZone());
 		char okZones[] = getOkZones(ullat, lrlat, (char) zone);
 
-		for (RpfTocEntry currentEntry : entries) {
+		// Only look at the entries with the right series and scale that
+		// overlap the area.
+		double minScale = lowerScaleFactorLimit * scale;
+		double maxScale = upperScaleFactorLimit * scale;
+		if (viewAtts != null && !viewAtts.scaleImages) {
+			minScale = scale;
+			maxScale = scale;
+		}
+		List<RpfTocEntry> candidates = getEntries(viewAtts == null ? null : viewAtts.chartSeries, minScale, maxScale,
+			ullat, ullon, lrlat, lrlon);
+
+		for (RpfTocEntry currentEntry : candidates) {
 
 			if (DEBUG_RPFTOCDETAIL) {
 				Debug.output("********************");
@@ -0,0 +1,465 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.layer.rpf;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.bbn.openmap.Environment;
+import com.bbn.openmap.io.BinaryFile;
+import com.bbn.openmap.io.FormatException;
+
+/**
+ * The RpfTocIndex is a compact copy of the frame file index section of an
+ * A.TOC file, written to disk the first time the A.TOC is read, and
+ * memory-mapped after that. With it, the RpfTocHandler doesn't have to go
+ * through every frame file record in the A.TOC to figure out the chart series
+ * of the entries at startup, or to find the frames of an entry when they are
+ * needed. The frame records are grouped by entry in the index, and frames that
+ * share a directory share a single directory string.
+ * <p>
+ * The index is tied to the path, length and modification time of the A.TOC
+ * file, and is rebuilt if any of them change. Index files are kept in the
+ * directory named by the openmap.RpfTocIndexDir property (or system property),
+ * which is $HOME/.openmap/rpftoc by default. Setting the property to an empty
+ * string turns the index off. A.TOC files that aren't local files (in jars or
+ * at URLs) aren't indexed.
+ * 
+ * @author dietrick
+ */
+public class RpfTocIndex {
+
+    public static Logger logger = Logger.getLogger("com.bbn.openmap.layer.rpf.RpfTocIndex");
+
+    /** The directory to keep the index files in. */
+    public final static String IndexDirProperty = Environment.OpenMapPrefix + ".RpfTocIndexDir";
+    /** The file suffix of index files. */
+    public final static String INDEX_SUFFIX = ".idx";
+
+    protected final static int MAGIC = 0x52504649; // RPFI
+    protected final static int VERSION = 1;
+    /** Bytes per frame record: row, column, directory, filename. */
+    protected final static int RECORD_LENGTH = 2 + 2 + 4 + 1 + 12;
+
+    /** Programmatic setting for the index directory, overrides the property. */
+    private static File indexDir = null;
+
+    protected final MappedByteBuffer buffer;
+    protected final String[] seriesCodes;
+    protected final int[] firstRecords;
+    protected final int[] numRecords;
+    protected final String[] directories;
+    protected final short[] rpfdirIndexes;
+    protected final int recordsStart;
+
+    protected RpfTocIndex(MappedByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+
+        int numEntries = buffer.getInt();
+        seriesCodes = new String[numEntries];
+        firstRecords = new int[numEntries];
+        numRecords = new int[numEntries];
+        for (int i = 0; i < numEntries; i++) {
+            seriesCodes[i] = readString(buffer);
+            firstRecords[i] = buffer.getInt();
+            numRecords[i] = buffer.getInt();
+        }
+
+        int numDirs = buffer.getInt();
+        directories = new String[numDirs];
+        rpfdirIndexes = new short[numDirs];
+        for (int i = 0; i < numDirs; i++) {
+            directories[i] = readString(buffer);
+            rpfdirIndexes[i] = buffer.getShort();
+        }
+
+        int count = buffer.getInt();
+        recordsStart = buffer.position();
+        if (recordsStart + (long) count * RECORD_LENGTH > buffer.limit()) {
+            throw new IOException("index file is truncated");
+        }
+    }
+
+    /**
+     * Set the directory for index files, overriding the IndexDirProperty.
+     * Null goes back to using the property.
+     */
+    public static void setIndexDir(File dir) {
+        indexDir = dir;
+    }
+
+    /**
+     * @return the directory for index files, or null if indexes shouldn't be
+     *         used.
+     */
+    public static File getIndexDir() {
+        if (indexDir != null) {
+            return indexDir;
+        }
+
+        String defaultDir = System.getProperty("user.home") + File.separator + ".openmap" + File.separator
+                + "rpftoc";
+        String dir = Environment.get(IndexDirProperty, System.getProperty(IndexDirProperty, defaultDir));
+        if (dir == null || dir.trim().length() == 0) {
+            return null;
+        }
+        return new File(dir);
+    }
+
+    /**
+     * @return the index file for an A.TOC file, or null if the A.TOC isn't a
+     *         local file or indexes are turned off.
+     */
+    public static File getIndexFile(File tocFile) {
+        File dir = getIndexDir();
+        if (dir == null || tocFile == null || !tocFile.isFile()) {
+            return null;
+        }
+
+        String path = tocFile.getAbsolutePath();
+        return new File(dir, Integer.toHexString(path.hashCode()) + "_" + tocFile.length() + INDEX_SUFFIX);
+    }
+
+    /**
+     * Get the index for the A.TOC of a RpfTocHandler, reading it if it's
+     * current, creating it if not.
+     * 
+     * @param toc the RpfTocHandler, with the A.TOC header and locations read.
+     * @param binFile the open A.TOC file.
+     * @return the index, or null if one can't be used.
+     */
+    public static RpfTocIndex get(RpfTocHandler toc, BinaryFile binFile) {
+        File tocFile = (toc.aTocFilePath == null) ? null : new File(toc.aTocFilePath);
+        File indexFile = getIndexFile(tocFile);
+        if (indexFile == null) {
+            return null;
+        }
+
+        try {
+            RpfTocIndex index = open(indexFile, tocFile, toc);
+            if (index == null) {
+                write(indexFile, tocFile, toc, binFile);
+                index = open(indexFile, tocFile, toc);
+            }
+            return index;
+        } catch (IOException ioe) {
+            logger.log(Level.FINE, "can't use index " + indexFile + " for " + tocFile, ioe);
+        } catch (FormatException fe) {
+            logger.log(Level.FINE, "can't index " + tocFile, fe);
+        }
+        return null;
+    }
+
+    /**
+     * Map an index file, checking that it matches the A.TOC file.
+     * 
+     * @return the index, or null if the file doesn't exist or is out of date.
+     */
+    protected static RpfTocIndex open(File indexFile, File tocFile, RpfTocHandler toc) throws IOException {
+        if (!indexFile.isFile()) {
+            return null;
+        }
+
+        FileInputStream fis = new FileInputStream(indexFile);
+        MappedByteBuffer buffer;
+        try {
+            FileChannel channel = fis.getChannel();
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            fis.close();
+        }
+
+        if (buffer.limit() < 8 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            return null;
+        }
+
+        String tocPath = readString(buffer);
+        long tocLength = buffer.getLong();
+        long tocModified = buffer.getLong();
+        String dir = readString(buffer);
+        long numFrameIndexRecords = buffer.getLong();
+
+        if (!tocPath.equals(tocFile.getAbsolutePath()) || tocLength != tocFile.length()
+                || tocModified != tocFile.lastModified() || !dir.equals(toc.dir)
+                || numFrameIndexRecords != toc.numFrameIndexRecords) {
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("index " + indexFile + " is out of date for " + tocFile);
+            }
+            return null;
+        }
+
+        RpfTocIndex index = new RpfTocIndex(buffer);
+        if (index.seriesCodes.length != toc.numBoundaries) {
+            return null;
+        }
+        return index;
+    }
+
+    /**
+     * Read all the frame file index records from the A.TOC, and write them to
+     * the index file.
+     */
+    protected static void write(File indexFile, File tocFile, RpfTocHandler toc, BinaryFile binFile)
+            throws IOException, FormatException {
+
+        int numBoundaries = toc.numBoundaries;
+        int count = (int) toc.numFrameIndexRecords;
+        long tableLocation = toc.locations[3].componentLocation;
+
+        short[] rows = new short[count];
+        short[] cols = new short[count];
+        int[] boundaryIds = new int[count];
+        int[] dirs = new int[count];
+        byte[][] filenames = new byte[count][];
+        int[] entryCounts = new int[numBoundaries];
+        int numGood = 0;
+
+        List<String> directories = new ArrayList<String>();
+        List<Short> rpfdirIndexes = new ArrayList<Short>();
+        Map<Long, Integer> dirsByOffset = new HashMap<Long, Integer>();
+
+        for (int i = 0; i < count; i++) {
+            binFile.seek(tableLocation + toc.indexRecordLength * i);
+
+            int boundaryId = (int) binFile.readShort();
+            if (boundaryId > numBoundaries - 1 || boundaryId < 0) {
+                throw new FormatException("Bad boundary id in FF index record " + i);
+            }
+
+            RpfTocEntry entry = toc.entries[boundaryId];
+            int frameRow = (int) binFile.readShort();
+            int frameCol = (int) binFile.readShort();
+
+            if (frameRow > entry.vertFrames - 1 || frameRow < 0) {
+                throw new FormatException("Bad row number: " + frameRow + ", in FF index record " + i);
+            }
+            if (frameCol > entry.horizFrames - 1 || frameCol < 0) {
+                throw new FormatException(" Bad col number in FF index record " + i);
+            }
+
+            long pathOffset = (long) binFile.readInteger();
+            if (pathOffset < 0) {
+                continue;
+            }
+
+            byte[] filename = binFile.readBytes(12, false);
+
+            Long offsetKey = Long.valueOf(pathOffset);
+            Integer dir = dirsByOffset.get(offsetKey);
+            if (dir == null) {
+                binFile.seek(tableLocation + pathOffset);
+                int pathLength = (int) binFile.readShort();
+
+                // Same as RpfTocHandler.readFrameInformation
+                String pathTest = binFile.readFixedLengthString(2);
+                String directory = binFile.readFixedLengthString(pathLength - 2);
+                if (pathTest.equals("./")) {
+                    directory = directory.trim();
+                    directories.add(toc.dir + directory);
+                    rpfdirIndexes.add(Short.valueOf((short) (toc.dir.length() - 3)));
+                } else {
+                    directory = (pathTest + directory).trim();
+                    directories.add(directory);
+                    rpfdirIndexes.add(Short.valueOf((short) -1));
+                }
+
+                dir = Integer.valueOf(directories.size() - 1);
+                dirsByOffset.put(offsetKey, dir);
+            }
+
+            // Flip the rows, so the frames can be referenced from the top
+            // left.
+            rows[numGood] = (short) ((entry.vertFrames - 1) - frameRow);
+            cols[numGood] = (short) frameCol;
+            boundaryIds[numGood] = boundaryId;
+            dirs[numGood] = dir.intValue();
+            filenames[numGood] = filename;
+            entryCounts[boundaryId]++;
+            numGood++;
+        }
+
+        // Group the records by entry, keeping the A.TOC order inside each
+        // entry.
+        int[] firstRecords = new int[numBoundaries];
+        int[] next = new int[numBoundaries];
+        for (int e = 1; e < numBoundaries; e++) {
+            firstRecords[e] = firstRecords[e - 1] + entryCounts[e - 1];
+        }
+        System.arraycopy(firstRecords, 0, next, 0, numBoundaries);
+        int[] order = new int[numGood];
+        for (int i = 0; i < numGood; i++) {
+            order[next[boundaryIds[i]]++] = i;
+        }
+
+        File dir = indexFile.getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("can't create " + dir);
+        }
+
+        File tmpFile = new File(indexFile.getPath() + ".tmp");
+        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+        try {
+            dos.writeInt(MAGIC);
+            dos.writeInt(VERSION);
+            writeString(dos, tocFile.getAbsolutePath());
+            dos.writeLong(tocFile.length());
+            dos.writeLong(tocFile.lastModified());
+            writeString(dos, toc.dir);
+            dos.writeLong(toc.numFrameIndexRecords);
+
+            dos.writeInt(numBoundaries);
+            for (int e = 0; e < numBoundaries; e++) {
+                String seriesCode = "";
+                if (entryCounts[e] > 0) {
+                    // Like figureOutChartSeriesForEntries, use the first
+                    // frame of the entry.
+                    String filename = new String(filenames[order[firstRecords[e]]]);
+                    int dot = filename.lastIndexOf('.');
+                    seriesCode = filename.substring(dot + 1, dot + 3);
+                }
+                writeString(dos, seriesCode);
+                dos.writeInt(firstRecords[e]);
+                dos.writeInt(entryCounts[e]);
+            }
+
+            dos.writeInt(directories.size());
+            for (int d = 0; d < directories.size(); d++) {
+                writeString(dos, directories.get(d));
+                dos.writeShort(rpfdirIndexes.get(d).shortValue());
+            }
+
+            dos.writeInt(numGood);
+            for (int r = 0; r < numGood; r++) {
+                int i = order[r];
+                dos.writeShort(rows[i]);
+                dos.writeShort(cols[i]);
+                dos.writeInt(dirs[i]);
+                dos.writeByte(filenames[i].length);
+                dos.write(filenames[i]);
+                for (int pad = filenames[i].length; pad < 12; pad++) {
+                    dos.writeByte(0);
+                }
+            }
+        } finally {
+            dos.close();
+        }
+
+        if (indexFile.exists() && !indexFile.delete() || !tmpFile.renameTo(indexFile)) {
+            tmpFile.delete();
+            throw new IOException("can't replace " + indexFile);
+        }
+
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("wrote index " + indexFile + " for " + tocFile + ", " + numGood + " frames in "
+                    + directories.size() + " directories");
+        }
+    }
+
+    /**
+     * Set the chart series information on the entries, what
+     * RpfTocHandler.figureOutChartSeriesForEntries does.
+     */
+    public void loadChartSeries(RpfTocEntry[] entries) {
+        for (int i = 0; i < entries.length && i < seriesCodes.length; i++) {
+            if (seriesCodes[i].length() > 0) {
+                // Interned so we can look it up in the catalog later...
+                entries[i].setInfo(seriesCodes[i].intern());
+            }
+        }
+    }
+
+    /**
+     * @return true if any of the frame paths in the A.TOC are absolute.
+     */
+    public boolean hasFullPaths() {
+        for (short rpfdirIndex : rpfdirIndexes) {
+            if (rpfdirIndex < 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Fill in the RpfFrameEntries of an entry, what
+     * RpfTocHandler.readFrameInformation does.
+     */
+    public void loadFrames(RpfTocEntry entry) {
+        int e = entry.coverage.entryNumber;
+        RpfFrameEntry[][] frames = entry.getFrames();
+
+        if (e < 0 || e >= numRecords.length) {
+            return;
+        }
+
+        byte[] name = new byte[12];
+        String filename = null;
+        int end = firstRecords[e] + numRecords[e];
+        for (int r = firstRecords[e]; r < end; r++) {
+            int pos = recordsStart + r * RECORD_LENGTH;
+            int row = buffer.getShort(pos);
+            int col = buffer.getShort(pos + 2);
+            int dir = buffer.getInt(pos + 4);
+            int nameLength = buffer.get(pos + 8);
+            for (int k = 0; k < nameLength; k++) {
+                name[k] = buffer.get(pos + 9 + k);
+            }
+            filename = new String(name, 0, nameLength);
+
+            String directory = directories[dir];
+            RpfFrameEntry frame = frames[row][col];
+            frame.framePath = directory + filename;
+            frame.filenameIndex = (short) directory.length();
+            if (rpfdirIndexes[dir] >= 0) {
+                frame.rpfdirIndex = rpfdirIndexes[dir];
+            }
+            frame.exists = true;
+        }
+
+        if (filename != null) {
+            // readFrameInformation leaves the series of the last frame.
+            int dot = filename.lastIndexOf('.');
+            entry.setInfo(filename.substring(dot + 1, dot + 3).intern());
+        }
+    }
+
+    protected static void writeString(DataOutputStream dos, String s) throws IOException {
+        byte[] bytes = s.getBytes("UTF-8");
+        dos.writeInt(bytes.length);
+        dos.write(bytes);
+    }
+
+    protected static String readString(MappedByteBuffer buffer) throws IOException {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IOException("bad string length in index");
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, "UTF-8");
+    }
+}
@@ -0,0 +1,261 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.layer.shape;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A read-only R-tree over the entries of a SpatialIndex, bulk loaded with the
+ * Sort-Tile-Recursive algorithm and held entirely in primitive arrays. The
+ * leaves are the entries themselves, grouped NODE_CAPACITY at a time into
+ * nodes, which are grouped into parent nodes until there is a single root.
+ * Because the tree is packed, the children of a node are always contiguous in
+ * the level below it, so no child pointers are stored.
+ * <p>
+ * 
+ * A bounding box query visits O(log N + k) nodes, and the byte offsets of the
+ * matching shp records are returned in ascending order so the shp file can be
+ * read front to back.
+ * 
+ * @author dietrick
+ */
+public class PackedRTree {
+
+    /** The number of children held by each node. */
+    public final static int NODE_CAPACITY = 16;
+
+    /**
+     * Bounds for every node at every level, 4 doubles (xmin, ymin, xmax, ymax)
+     * per node. Level 0 holds the entries, in STR order.
+     */
+    protected double[] bounds;
+    /** The index of the first node of each level, plus the total count. */
+    protected int[] levelStart;
+    /** shp byte offsets of the entries, in STR order. */
+    protected int[] offsets;
+
+    /**
+     * Build the tree from SpatialIndex entries.
+     * 
+     * @param entries the entries read from the ssx file.
+     */
+    public PackedRTree(List<SpatialIndex.Entry> entries) {
+        int n = entries.size();
+        double[] entryBounds = new double[n * 4];
+        int[] entryOffsets = new int[n];
+        int i = 0;
+        for (SpatialIndex.Entry entry : entries) {
+            entryBounds[i * 4] = entry.xMin;
+            entryBounds[i * 4 + 1] = entry.yMin;
+            entryBounds[i * 4 + 2] = entry.xMax;
+            entryBounds[i * 4 + 3] = entry.yMax;
+            entryOffsets[i] = entry.byteOffset;
+            i++;
+        }
+        build(entryBounds, entryOffsets, n);
+    }
+
+    /**
+     * Build the tree from arrays.
+     * 
+     * @param entryBounds xmin, ymin, xmax, ymax for each entry.
+     * @param entryOffsets byte offset of each entry in the shp file.
+     */
+    public PackedRTree(double[] entryBounds, int[] entryOffsets) {
+        build(entryBounds, entryOffsets, entryOffsets.length);
+    }
+
+    protected void build(double[] entryBounds, int[] entryOffsets, int n) {
+        int[] order = strOrder(entryBounds, n);
+
+        // Figure out how many nodes there are on each level.
+        int numLevels = 1;
+        int total = n;
+        for (int count = n; count > 1; numLevels++) {
+            count = (count + NODE_CAPACITY - 1) / NODE_CAPACITY;
+            total += count;
+        }
+
+        bounds = new double[total * 4];
+        levelStart = new int[numLevels + 1];
+        offsets = new int[n];
+
+        for (int i = 0; i < n; i++) {
+            int src = order[i];
+            System.arraycopy(entryBounds, src * 4, bounds, i * 4, 4);
+            offsets[i] = entryOffsets[src];
+        }
+
+        levelStart[0] = 0;
+        levelStart[1] = n;
+        for (int level = 1; level < numLevels; level++) {
+            int childStart = levelStart[level - 1];
+            int childCount = levelStart[level] - childStart;
+            int start = levelStart[level];
+            int count = (childCount + NODE_CAPACITY - 1) / NODE_CAPACITY;
+
+            for (int node = 0; node < count; node++) {
+                int first = childStart + node * NODE_CAPACITY;
+                int last = Math.min(first + NODE_CAPACITY, childStart + childCount);
+                int b = (start + node) * 4;
+                bounds[b] = Double.POSITIVE_INFINITY;
+                bounds[b + 1] = Double.POSITIVE_INFINITY;
+                bounds[b + 2] = Double.NEGATIVE_INFINITY;
+                bounds[b + 3] = Double.NEGATIVE_INFINITY;
+                for (int c = first; c < last; c++) {
+                    int cb = c * 4;
+                    bounds[b] = Math.min(bounds[b], bounds[cb]);
+                    bounds[b + 1] = Math.min(bounds[b + 1], bounds[cb + 1]);
+                    bounds[b + 2] = Math.max(bounds[b + 2], bounds[cb + 2]);
+                    bounds[b + 3] = Math.max(bounds[b + 3], bounds[cb + 3]);
+                }
+            }
+            levelStart[level + 1] = start + count;
+        }
+    }
+
+    /**
+     * Sort-Tile-Recursive ordering: sort by x center, cut into vertical slices
+     * holding about sqrt(number of leaf nodes) nodes each, then sort each slice
+     * by y center.
+     */
+    protected static int[] strOrder(double[] entryBounds, int n) {
+        int[] order = new int[n];
+        double[] xKeys = new double[n];
+        double[] yKeys = new double[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+            xKeys[i] = entryBounds[i * 4] + entryBounds[i * 4 + 2];
+            yKeys[i] = entryBounds[i * 4 + 1] + entryBounds[i * 4 + 3];
+        }
+
+        sort(order, xKeys, 0, n - 1);
+
+        int leafNodes = (n + NODE_CAPACITY - 1) / NODE_CAPACITY;
+        int slices = (int) Math.ceil(Math.sqrt(leafNodes));
+        int sliceSize = slices * NODE_CAPACITY;
+        for (int start = 0; start < n; start += sliceSize) {
+            sort(order, yKeys, start, Math.min(start + sliceSize, n) - 1);
+        }
+
+        return order;
+    }
+
+    /**
+     * Sort the indexes in order[lo..hi] by their keys.
+     */
+    protected static void sort(int[] order, double[] keys, int lo, int hi) {
+        while (hi - lo > 16) {
+            double pivot = keys[order[(lo + hi) >>> 1]];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (keys[order[i]] < pivot) {
+                    i++;
+                }
+                while (keys[order[j]] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    int tmp = order[i];
+                    order[i++] = order[j];
+                    order[j--] = tmp;
+                }
+            }
+            // Recurse on the smaller part to keep the stack shallow.
+            if (j - lo < hi - i) {
+                sort(order, keys, lo, j);
+                lo = i;
+            } else {
+                sort(order, keys, i, hi);
+                hi = j;
+            }
+        }
+
+        for (int i = lo + 1; i <= hi; i++) {
+            int idx = order[i];
+            double key = keys[idx];
+            int j = i - 1;
+            while (j >= lo && keys[order[j]] > key) {
+                order[j + 1] = order[j];
+                j--;
+            }
+            order[j + 1] = idx;
+        }
+    }
+
+    /**
+     * @return the number of entries in the tree.
+     */
+    public int size() {
+        return offsets.length;
+    }
+
+    /**
+     * Find the entries intersecting a bounding box, using the same test as
+     * SpatialIndex.Entry.intersects().
+     * 
+     * @return the shp byte offsets of the matching entries, in ascending
+     *         order.
+     */
+    public int[] query(double xmin, double ymin, double xmax, double ymax) {
+        int n = offsets.length;
+        if (n == 0) {
+            return new int[0];
+        }
+
+        int[] hits = new int[64];
+        int numHits = 0;
+
+        int topLevel = levelStart.length - 2;
+        // (level, node) pairs to visit.
+        int[] stack = new int[2 * (NODE_CAPACITY * (topLevel + 1) + 1)];
+        int sp = 0;
+        stack[sp++] = topLevel;
+        stack[sp++] = levelStart[topLevel];
+
+        while (sp > 0) {
+            int node = stack[--sp];
+            int level = stack[--sp];
+            int b = node * 4;
+
+            if (!SpatialIndex.intersects(xmin, ymin, xmax, ymax, bounds[b], bounds[b + 1], bounds[b + 2], bounds[b + 3])) {
+                continue;
+            }
+
+            if (level == 0) {
+                if (numHits == hits.length) {
+                    hits = Arrays.copyOf(hits, hits.length * 2);
+                }
+                hits[numHits++] = offsets[node];
+                continue;
+            }
+
+            int childStart = levelStart[level - 1];
+            int childEnd = levelStart[level];
+            int first = childStart + (node - levelStart[level]) * NODE_CAPACITY;
+            int last = Math.min(first + NODE_CAPACITY, childEnd);
+            for (int c = last - 1; c >= first; c--) {
+                stack[sp++] = level - 1;
+                stack[sp++] = c;
+            }
+        }
+
+        int[] ret = Arrays.copyOf(hits, numHits);
+        Arrays.sort(ret);
+        return ret;
+    }
+}
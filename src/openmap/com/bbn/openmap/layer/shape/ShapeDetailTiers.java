@@ -0,0 +1,338 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+
+package com.bbn.openmap.layer.shape;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.bbn.openmap.io.BinaryBufferedFile;
+import com.bbn.openmap.io.BinaryFile;
+import com.bbn.openmap.io.FormatException;
+import com.bbn.openmap.omGraphics.OMGraphic;
+import com.bbn.openmap.omGraphics.OMGraphicList;
+import com.bbn.openmap.omGraphics.OMPoly;
+import com.bbn.openmap.proj.GeoProj;
+import com.bbn.openmap.proj.Projection;
+import com.bbn.openmap.util.DouglasPeucker;
+
+/**
+ * Simplified versions of the polys in a shape file, at a set of tolerances, so
+ * the detail drawn for a record can follow the pixel resolution of the map.
+ * For each record, every poly is run through Douglas-Peucker at each
+ * tolerance, and the indexes of the vertices that survive are kept. When a
+ * record is read from the shp file, the tier with the largest tolerance that
+ * still fits inside a pixel is picked, and the polys are cut down to those
+ * vertices before they are projected.
+ * <p>
+ * 
+ * Building the tiers means reading the whole shp file once, so they are
+ * written next to it in a .lod file and read back from there the next time,
+ * as long as the shp file size, modification time and tolerances match.
+ * 
+ * @author dietrick
+ */
+public class ShapeDetailTiers {
+
+    public static Logger logger = Logger.getLogger("com.bbn.openmap.layer.shape.ShapeDetailTiers");
+
+    /**
+     * Default tier tolerances, in decimal degrees. At the default pixel
+     * tolerance, the coarsest is used around world scale and the finest down
+     * to about 1:1M.
+     */
+    public final static double[] DEFAULT_TOLERANCES = new double[] { .001, .004, .016, .064, .256 };
+
+    /**
+     * Default pixel tolerance, the fraction of a pixel that a tier tolerance
+     * must fit inside.
+     */
+    public final static double DEFAULT_PIXEL_TOLERANCE = .5;
+
+    /** Identifies a .lod file, "OMLD". */
+    protected final static int MAGIC = 0x4f4d4c44;
+    protected final static int VERSION = 2;
+
+    /** Tier tolerances in decimal degrees, smallest first. */
+    protected final double[] tolerances;
+
+    /**
+     * Shp record byte offset to the kept vertex indexes, by tier and then by
+     * poly in the order they are found in the record's OMGraphic. A null
+     * array means all the vertices of that poly are kept.
+     */
+    protected final Map<Integer, int[][][]> records = new HashMap<Integer, int[][][]>();
+
+    protected double pixelTolerance = DEFAULT_PIXEL_TOLERANCE;
+
+    /**
+     * Create an empty set of tiers.
+     * 
+     * @param tolerances tier tolerances in decimal degrees, smallest first.
+     */
+    public ShapeDetailTiers(double[] tolerances) {
+        this.tolerances = tolerances.clone();
+    }
+
+    public double[] getTolerances() {
+        return tolerances.clone();
+    }
+
+    public double getPixelTolerance() {
+        return pixelTolerance;
+    }
+
+    /**
+     * Set the fraction of a pixel a tier tolerance has to fit inside to be
+     * used. Larger values trade accuracy for fewer vertices.
+     */
+    public void setPixelTolerance(double pixelTolerance) {
+        this.pixelTolerance = pixelTolerance;
+    }
+
+    /**
+     * @return the number of records with tiers.
+     */
+    public int size() {
+        return records.size();
+    }
+
+    /**
+     * Figure out which tier to use for a projection.
+     * 
+     * @param proj map projection.
+     * @return tier index, or -1 if the full detail should be used.
+     */
+    public int getTier(Projection proj) {
+        if (!(proj instanceof GeoProj)) {
+            return -1;
+        }
+
+        double degPerPixel = 360.0 * proj.getScale() / ((GeoProj) proj).getPlanetPixelCircumference();
+        double allowed = degPerPixel * pixelTolerance;
+        for (int i = tolerances.length - 1; i >= 0; i--) {
+            if (tolerances[i] <= allowed) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Compute the tiers for a record.
+     * 
+     * @param byteOffset the shp file byte offset of the record.
+     * @param omg the OMGraphic created from the record.
+     */
+    public void add(int byteOffset, OMGraphic omg) {
+        List<OMPoly> polys = getPolys(omg, null);
+        if (polys.isEmpty()) {
+            return;
+        }
+
+        int[][][] tiers = new int[tolerances.length][polys.size()][];
+        for (int p = 0; p < polys.size(); p++) {
+            double[] coords = polys.get(p).getLatLonArray();
+            int numPoints = coords.length / 2;
+            for (int t = 0; t < tolerances.length; t++) {
+                int[] kept = DouglasPeucker.simplify(coords, Math.toRadians(tolerances[t]));
+                tiers[t][p] = kept.length < numPoints ? kept : null;
+            }
+        }
+
+        synchronized (records) {
+            records.put(new Integer(byteOffset), tiers);
+        }
+    }
+
+    /**
+     * Cut the polys of a record's OMGraphic down to a tier. The OMGraphic has
+     * to be made the same way as the one given to add for the record.
+     * 
+     * @param byteOffset the shp file byte offset of the record.
+     * @param omg the OMGraphic created from the record, modified in place.
+     * @param tier from getTier.
+     * @return omg
+     */
+    public OMGraphic apply(int byteOffset, OMGraphic omg, int tier) {
+        if (tier < 0 || tier >= tolerances.length) {
+            return omg;
+        }
+
+        int[][][] tiers;
+        synchronized (records) {
+            tiers = records.get(new Integer(byteOffset));
+        }
+        if (tiers == null) {
+            return omg;
+        }
+
+        int[][] kept = tiers[tier];
+        List<OMPoly> polys = getPolys(omg, null);
+        if (polys.size() != kept.length) {
+            return omg;
+        }
+
+        for (int p = 0; p < kept.length; p++) {
+            if (kept[p] != null) {
+                OMPoly poly = polys.get(p);
+                double[] coords = poly.getLatLonArray();
+                if (kept[p][kept[p].length - 1] < coords.length / 2) {
+                    poly.setLocation(DouglasPeucker.subset(coords, kept[p]), OMGraphic.RADIANS);
+                }
+            }
+        }
+
+        return omg;
+    }
+
+    /**
+     * Gather the OMPolys of an OMGraphic, depth first.
+     */
+    protected List<OMPoly> getPolys(OMGraphic omg, List<OMPoly> polys) {
+        if (polys == null) {
+            polys = new ArrayList<OMPoly>();
+        }
+
+        if (omg instanceof OMPoly) {
+            OMPoly poly = (OMPoly) omg;
+            if (poly.getRenderType() == OMGraphic.RENDERTYPE_LATLON && poly.getLatLonArray() != null) {
+                polys.add(poly);
+            }
+        } else if (omg instanceof OMGraphicList) {
+            for (OMGraphic child : (OMGraphicList) omg) {
+                getPolys(child, polys);
+            }
+        }
+        return polys;
+    }
+
+    /**
+     * Write the tiers to a file.
+     * 
+     * @param fileName path of the .lod file.
+     * @param shpLength the size of the shp file they were made from.
+     * @param shpLastModified the modification time of the shp file they were
+     *        made from.
+     * @throws IOException
+     */
+    public void write(String fileName, long shpLength, long shpLastModified) throws IOException {
+        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)));
+        try {
+            dos.writeInt(MAGIC);
+            dos.writeInt(VERSION);
+            dos.writeLong(shpLength);
+            dos.writeLong(shpLastModified);
+            dos.writeInt(tolerances.length);
+            for (int t = 0; t < tolerances.length; t++) {
+                dos.writeDouble(tolerances[t]);
+            }
+
+            synchronized (records) {
+                dos.writeInt(records.size());
+                for (Map.Entry<Integer, int[][][]> entry : records.entrySet()) {
+                    int[][][] tiers = entry.getValue();
+                    dos.writeInt(entry.getKey().intValue());
+                    dos.writeInt(tiers[0].length);
+                    for (int t = 0; t < tiers.length; t++) {
+                        for (int p = 0; p < tiers[t].length; p++) {
+                            int[] kept = tiers[t][p];
+                            if (kept == null) {
+                                dos.writeInt(-1);
+                            } else {
+                                dos.writeInt(kept.length);
+                                for (int i = 0; i < kept.length; i++) {
+                                    dos.writeInt(kept[i]);
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        } finally {
+            dos.close();
+        }
+    }
+
+    /**
+     * Read tiers written to a file.
+     * 
+     * @param fileName path of the .lod file.
+     * @param shpLength the size of the current shp file.
+     * @param shpLastModified the modification time of the current shp file.
+     * @param tolerances the tier tolerances wanted.
+     * @return ShapeDetailTiers, or null if the file doesn't exist or was made
+     *         from a different shp file or with different tolerances.
+     * @throws IOException
+     */
+    public static ShapeDetailTiers read(String fileName, long shpLength, long shpLastModified,
+                                        double[] tolerances)
+            throws IOException {
+        if (!BinaryFile.exists(fileName)) {
+            return null;
+        }
+
+        BinaryFile bf = new BinaryBufferedFile(fileName);
+        try {
+            bf.byteOrder(true);
+            if (bf.readInteger() != MAGIC || bf.readInteger() != VERSION || bf.readLong() != shpLength
+                    || bf.readLong() != shpLastModified || bf.readInteger() != tolerances.length) {
+                return null;
+            }
+
+            for (int t = 0; t < tolerances.length; t++) {
+                if (bf.readDouble() != tolerances[t]) {
+                    return null;
+                }
+            }
+
+            ShapeDetailTiers ret = new ShapeDetailTiers(tolerances);
+            int numRecords = bf.readInteger();
+            for (int r = 0; r < numRecords; r++) {
+                int byteOffset = bf.readInteger();
+                int numPolys = bf.readInteger();
+                int[][][] tiers = new int[tolerances.length][numPolys][];
+                for (int t = 0; t < tolerances.length; t++) {
+                    for (int p = 0; p < numPolys; p++) {
+                        int len = bf.readInteger();
+                        if (len >= 0) {
+                            int[] kept = new int[len];
+                            bf.readIntegerArray(kept, 0, len);
+                            tiers[t][p] = kept;
+                        }
+                    }
+                }
+                ret.records.put(new Integer(byteOffset), tiers);
+            }
+            return ret;
+
+        } catch (FormatException fe) {
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("problem reading " + fileName + ": " + fe.getMessage());
+            }
+            return null;
+        } finally {
+            bf.close();
+        }
+    }
+}
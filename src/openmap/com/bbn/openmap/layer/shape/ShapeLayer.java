@@ -77,6 +77,12 @@ import com.bbn.openmap.util.PropUtils;
  * shapeLayer.fillColor=ff000000
  * # plus any other properties used by the DrawingAttributes object.
  * shapeLayer.pointImageURL=&amp;ltURL for image to use for point objects&amp;gt
+ * # Optional, load the spatial index into an in-memory R-tree (default false).
+ * # Recommended for shape files with a lot of records.
+ * shapeLayer.useRTree=true
+ * # Optional, simplify polys to match the map scale (default false). The
+ * # simplified versions are saved in a .lod file next to the .shp file.
+ * shapeLayer.detailTiers=true
  *        
  *        
  * # Optionally, Rule marker names specified in space-separated list
@@ -134,6 +140,18 @@ public class ShapeLayer extends OMGraphicHandlerLayer implements ActionListener,
     /** The URL of an image to use for point objects. */
     public final static String pointImageURLProperty = "pointImageURL";
 
+    /**
+     * Property to have the SpatialIndex load its entries into a PackedRTree
+     * for faster queries.
+     */
+    public final static String useRTreeProperty = "useRTree";
+
+    /**
+     * Property to have the SpatialIndex simplify polys to a detail tier
+     * matching the map scale.
+     */
+    public final static String detailTiersProperty = "detailTiers";
+
     /** The spatial index of the shape file to be rendered. */
     protected SpatialIndex spatialIndex;
 
@@ -145,6 +163,8 @@ public class ShapeLayer extends OMGraphicHandlerLayer implements ActionListener,
     // For writing out to properties file later.
     String shapeFileName = null;
     String imageURLString = null;
+    boolean useRTree = false;
+    boolean useDetailTiers = false;
 
     /**
      * Initializes an empty shape layer.
@@ -217,6 +237,13 @@ public class ShapeLayer extends OMGraphicHandlerLayer implements ActionListener,
                 }
             }
 
+            useRTree = PropUtils.booleanFromProperties(props, realPrefix + useRTreeProperty, useRTree);
+            useDetailTiers = PropUtils.booleanFromProperties(props, realPrefix + detailTiersProperty, useDetailTiers);
+            if (spatialIndex != null) {
+                spatialIndex.setUseRTree(useRTree);
+                spatialIndex.setUseDetailTiers(useDetailTiers);
+            }
+
             imageURLString = props.getProperty(realPrefix + pointImageURLProperty);
 
             try {
@@ -264,6 +291,8 @@ public class ShapeLayer extends OMGraphicHandlerLayer implements ActionListener,
         String prefix = PropUtils.getScopedPropertyPrefix(this);
         props.put(prefix + shapeFileProperty, (shapeFileName == null ? "" : shapeFileName));
         props.put(prefix + pointImageURLProperty, (imageURLString == null ? "" : imageURLString));
+        props.put(prefix + useRTreeProperty, Boolean.toString(useRTree));
+        props.put(prefix + detailTiersProperty, Boolean.toString(useDetailTiers));
 
         if (drawingAttributes != null) {
             drawingAttributes.setPropertyPrefix(getPropertyPrefix());
@@ -307,11 +336,13 @@ public class ShapeLayer extends OMGraphicHandlerLayer implements ActionListener,
         PropUtils.setI18NPropertyInfo(i18n, list, ShapeLayer.class, dummyMarker, "Rendering Attributes", "Attributes that determine how the shapes will be drawn.", "com.bbn.openmap.omGraphics.DrawingAttributesPropertyEditor");
 
         list.put(initPropertiesProperty, shapeFileProperty + " " + " " + pointImageURLProperty
-                + " " + dummyMarker + " "
+                + " " + useRTreeProperty + " " + detailTiersProperty + " " + dummyMarker + " "
                 + AddToBeanContextProperty + " " + MinScaleProperty + " " + MaxScaleProperty);
 
         PropUtils.setI18NPropertyInfo(i18n, list, ShapeLayer.class, shapeFileProperty, shapeFileProperty, "Location of Shape file - .shp (File, CURL or relative file path).", "com.bbn.openmap.util.propertyEditor.FUPropertyEditor");
         PropUtils.setI18NPropertyInfo(i18n, list, ShapeLayer.class, pointImageURLProperty, pointImageURLProperty, "Image file to use for map location of point data (optional).", "com.bbn.openmap.util.propertyEditor.FUPropertyEditor");
+        PropUtils.setI18NPropertyInfo(i18n, list, ShapeLayer.class, useRTreeProperty, "Use R-tree", "Hold the spatial index in memory as an R-tree, for large shape files.", "com.bbn.openmap.util.propertyEditor.YesNoPropertyEditor");
+        PropUtils.setI18NPropertyInfo(i18n, list, ShapeLayer.class, detailTiersProperty, "Detail tiers", "Simplify shapes to match the map scale, saved in a .lod file next to the shape file.", "com.bbn.openmap.util.propertyEditor.YesNoPropertyEditor");
 
         return list;
     }
@@ -33,8 +33,10 @@ import java.io.OutputStream;
 import java.io.PrintStream;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Vector;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -132,6 +134,49 @@ public class SpatialIndex extends ShapeUtils {
      */
     protected List<Entry> entries;
 
+    /**
+     * The GeoCoordTransformation the cached entries were read with.
+     */
+    protected GeoCoordTransformation entriesTransform;
+
+    /**
+     * If true, the entries are loaded into a PackedRTree the first time they
+     * are needed and queries go through the tree instead of looking at every
+     * entry.
+     */
+    protected boolean useRTree = false;
+
+    /**
+     * The trees built from the entries, when useRTree is set, one for each
+     * GeoCoordTransformation (or null) the entries were read with, since the
+     * entry bounds are different for each.
+     */
+    protected Map<GeoCoordTransformation, PackedRTree> rTrees = new IdentityHashMap<GeoCoordTransformation, PackedRTree>();
+
+    /**
+     * The buffer size used for the shp file when reading records found by the
+     * tree. The records are read in ascending order, so neighboring records
+     * are picked up with the same read.
+     */
+    public final static int RTREE_SHP_BUFFER_SIZE = 65536;
+
+    /**
+     * If true, polys read from the shp file are simplified to the detail
+     * tier matching the map scale.
+     */
+    protected boolean useDetailTiers = false;
+
+    /**
+     * The tier tolerances, in decimal degrees, smallest first.
+     */
+    protected double[] detailTolerances = ShapeDetailTiers.DEFAULT_TOLERANCES;
+
+    /**
+     * The simplified vertex sets for the records, when useDetailTiers is set,
+     * by the data transform the records were read with.
+     */
+    protected Map<GeoCoordTransformation, ShapeDetailTiers> detailTiers = new IdentityHashMap<GeoCoordTransformation, ShapeDetailTiers>();
+
     /**
      * A factory object to use to create OMGraphics from the shp file.
      */
@@ -177,6 +222,20 @@ public class SpatialIndex extends ShapeUtils {
         return ret;
     }
 
+    /**
+     * Figures out the detail tier file name from the shp file name.
+     * 
+     * @param shpFileName
+     * @return lod file name created from shp file name.
+     */
+    public static String lod(String shpFileName) {
+        String ret = null;
+        if (shpFileName != null) {
+            ret = shpFileName.substring(0, shpFileName.indexOf(".shp")) + ".lod";
+        }
+        return ret;
+    }
+
     /**
      * Figures out the dbf file name from the shp file name.
      * 
@@ -320,6 +379,10 @@ public class SpatialIndex extends ShapeUtils {
             return null;
         }
 
+        if (useRTree) {
+            return locateRecordsFromTree(xmin, ymin, xmax, ymax);
+        }
+
         BinaryBufferedFile ssx = new BinaryBufferedFile(ssx(shpFileName));
         if (shp == null) {
             shp = getShpFile(shpFileName);
@@ -419,6 +482,243 @@ public class SpatialIndex extends ShapeUtils {
 
     }
 
+    /**
+     * The locateRecords version used when the entries are held in a
+     * PackedRTree. Only the records found by the tree are read, in the order
+     * they appear in the shp file.
+     */
+    protected ESRIRecord[] locateRecordsFromTree(double xmin, double ymin, double xmax, double ymax)
+            throws IOException, FormatException {
+
+        PackedRTree rTree = getRTree(null);
+        int[] hits = rTree.query(xmin, ymin, xmax, ymax);
+        ESRIRecord[] result = new ESRIRecord[hits.length];
+        if (hits.length == 0) {
+            return result;
+        }
+
+        int sRecordSize = DEFAULT_SHAPE_RECORD_SIZE;
+        byte sRecord[] = new byte[sRecordSize];
+        int numRecords = 0;
+
+        BinaryFile shpFile = new BinaryBufferedFile(shpFileName, RTREE_SHP_BUFFER_SIZE);
+        try {
+            shpFile.seek(32);
+            shpFile.byteOrder(false);
+            int shapeType = shpFile.readInteger();
+
+            for (int i = 0; i < hits.length; i++) {
+                shpFile.seek(hits[i]);
+                if (shpFile.read(sRecord, 0, SHAPE_RECORD_HEADER_LENGTH) < SHAPE_RECORD_HEADER_LENGTH) {
+                    logger.warning("SpatialIndex: couldn't read record header at " + hits[i]);
+                    break;
+                }
+
+                int contentLength = readBEInt(sRecord, 4) * 2;
+                int recordSize = contentLength + SHAPE_RECORD_HEADER_LENGTH;
+                if (contentLength < 0) {
+                    logger.warning("SpatialIndex: supposed to read record size of " + recordSize);
+                    break;
+                }
+
+                if (recordSize > sRecordSize) {
+                    sRecordSize = recordSize;
+                    byte[] tmp = new byte[sRecordSize];
+                    System.arraycopy(sRecord, 0, tmp, 0, SHAPE_RECORD_HEADER_LENGTH);
+                    sRecord = tmp;
+                }
+
+                int nBytes = shpFile.read(sRecord, SHAPE_RECORD_HEADER_LENGTH, contentLength);
+                if (nBytes < contentLength) {
+                    logger.warning("Shapefile SpatialIndex expected " + contentLength
+                            + " bytes, but got " + nBytes + " bytes instead.");
+                }
+
+                result[numRecords++] = makeESRIRecord(shapeType, sRecord, 0);
+            }
+        } finally {
+            shpFile.close();
+        }
+
+        if (numRecords < result.length) {
+            ESRIRecord[] tmp = new ESRIRecord[numRecords];
+            System.arraycopy(result, 0, tmp, 0, numRecords);
+            result = tmp;
+        }
+
+        if (logger.isLoggable(Level.FINE)) {
+            logger.fine("Selected " + numRecords + " records from tree of " + rTree.size());
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the PackedRTree built from the index entries, creating it if
+     * needed. A separate tree is kept for each GeoCoordTransformation, since
+     * the entry bounds are transformed before they go in the tree.
+     * 
+     * @param dataTransform GeoCoordTransform for pre-projected data, null for
+     *        the coordinates in the shape file.
+     * @return PackedRTree
+     * @throws IOException
+     * @throws FormatException
+     */
+    public synchronized PackedRTree getRTree(GeoCoordTransformation dataTransform)
+            throws IOException, FormatException {
+        PackedRTree rTree = rTrees.get(dataTransform);
+        if (rTree == null) {
+            List<Entry> entriesHandle = entries;
+            if (entriesHandle == null) {
+                boolean gatherBounds = false;
+                if (bounds == null) {
+                    bounds = new ESRIBoundingBox();
+                    gatherBounds = true;
+                }
+
+                entriesHandle = readIndexFile(gatherBounds ? bounds : null, dataTransform);
+                entries = entriesHandle;
+                entriesTransform = dataTransform;
+            } else if (entriesTransform != dataTransform) {
+                // The cached entries are for another transform.
+                entriesHandle = readIndexFile(null, dataTransform);
+            }
+
+            long start = System.currentTimeMillis();
+            rTree = new PackedRTree(entriesHandle);
+            rTrees.put(dataTransform, rTree);
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("built tree for " + rTree.size() + " entries in "
+                        + (System.currentTimeMillis() - start) + " ms");
+            }
+        }
+        return rTree;
+    }
+
+    /**
+     * Whether queries use a PackedRTree built from the index entries.
+     */
+    public boolean isUseRTree() {
+        return useRTree;
+    }
+
+    /**
+     * Set whether queries should use a PackedRTree built from the index
+     * entries instead of checking every entry. Recommended for shape files
+     * with a lot of records.
+     */
+    public void setUseRTree(boolean useRTree) {
+        this.useRTree = useRTree;
+        if (!useRTree) {
+            synchronized (this) {
+                rTrees.clear();
+            }
+        }
+    }
+
+    /**
+     * Returns the detail tiers for the shp file records, reading them from the
+     * lod file next to the shp file, or building them from the shp file and
+     * writing the lod file if that can't be done. The lod file only holds
+     * tiers for records read without a data transform, tiers for other
+     * transforms are built each time the shape file is opened.
+     * 
+     * @param dataTransform GeoCoordTransform for pre-projected data.
+     * @return ShapeDetailTiers, or null if there isn't a shp file.
+     * @throws IOException
+     * @throws FormatException
+     */
+    public synchronized ShapeDetailTiers getDetailTiers(GeoCoordTransformation dataTransform)
+            throws IOException, FormatException {
+        ShapeDetailTiers tiers = detailTiers.get(dataTransform);
+        if (tiers == null && shpFileName != null) {
+            long start = System.currentTimeMillis();
+            BinaryFile shpFile = getShpFile(shpFileName);
+            try {
+                long shpLength = shpFile.length();
+                long shpLastModified = new File(shpFileName).lastModified();
+                String lodFileName = lod(shpFileName);
+
+                if (dataTransform == null) {
+                    try {
+                        tiers = ShapeDetailTiers.read(lodFileName, shpLength, shpLastModified, detailTolerances);
+                    } catch (IOException ioe) {
+                        logger.fine("couldn't read " + lodFileName + ", rebuilding: " + ioe.getMessage());
+                    }
+                }
+
+                if (tiers == null) {
+                    tiers = new ShapeDetailTiers(detailTolerances);
+                    EsriGraphicFactory tierFactory = new EsriGraphicFactory(getFactory().getLineType(), dataTransform);
+                    EsriGraphicFactory.ReadByteTracker byteTracker = new EsriGraphicFactory.ReadByteTracker();
+
+                    for (Iterator<Entry> it = entryIterator(dataTransform); it.hasNext();) {
+                        int byteOffset = it.next().getByteOffset();
+                        OMGraphic omg = tierFactory.makeEsriGraphicFromRecord(byteOffset, shpFile, null, null, byteTracker);
+                        if (omg != null) {
+                            tiers.add(byteOffset, omg);
+                        }
+                    }
+
+                    if (dataTransform == null) {
+                        try {
+                            tiers.write(lodFileName, shpLength, shpLastModified);
+                        } catch (IOException ioe) {
+                            logger.fine("couldn't write " + lodFileName + ": " + ioe.getMessage());
+                        }
+                    }
+                }
+
+                detailTiers.put(dataTransform, tiers);
+            } finally {
+                shpFile.close();
+            }
+
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("detail tiers for " + tiers.size() + " records ready in "
+                        + (System.currentTimeMillis() - start) + " ms");
+            }
+        }
+        return tiers;
+    }
+
+    /**
+     * Whether polys are simplified to a detail tier matching the map scale.
+     */
+    public boolean isUseDetailTiers() {
+        return useDetailTiers;
+    }
+
+    /**
+     * Set whether polys read from the shp file should be simplified to the
+     * detail tier matching the map scale. The tiers are built the first time
+     * they are needed, and saved in a .lod file next to the shp file.
+     */
+    public void setUseDetailTiers(boolean useDetailTiers) {
+        this.useDetailTiers = useDetailTiers;
+        if (!useDetailTiers) {
+            synchronized (this) {
+                detailTiers.clear();
+            }
+        }
+    }
+
+    public double[] getDetailTolerances() {
+        return detailTolerances.clone();
+    }
+
+    /**
+     * Set the detail tier tolerances.
+     * 
+     * @param detailTolerances decimal degrees, smallest first.
+     */
+    public synchronized void setDetailTolerances(double[] detailTolerances) {
+        if (detailTolerances != null && detailTolerances.length > 0) {
+            this.detailTolerances = detailTolerances.clone();
+            detailTiers.clear();
+        }
+    }
+
     /**
      * The factory is used to filter and create OMGraphics from a shape file.
      * This accessor is provided in order to allow you to modify the data
@@ -496,37 +796,45 @@ public class SpatialIndex extends ShapeUtils {
         OMGraphicList labels = new OMGraphicList();
         list.add(labels);
 
-        for (Iterator<?> it = entryIterator(dataProj); it.hasNext();) {
-            Entry entry = (Entry) it.next();
+        // With the tree, the hits are in ascending order and the shp file is
+        // read front to back.
+        int[] hits = useRTree ? getRTree(dataProj).query(xmin, ymin, xmax, ymax)
+                : locateOffsets(xmin, ymin, xmax, ymax, dataProj);
 
-            if (entry.intersects(xmin, ymin, xmax, ymax)) {
+        ShapeDetailTiers tiers = useDetailTiers && mapProj != null ? getDetailTiers(dataProj) : null;
+        int tier = tiers != null ? tiers.getTier(mapProj) : -1;
 
-                try {
+        for (int i = 0; i < hits.length; i++) {
 
-                    OMGraphic omg = (OMGraphic) factory.makeEsriGraphicFromRecord(entry.getByteOffset(), shpFile, drawingAttributes, pointIcon, byteTracker);
+            try {
 
-                    if (omg != null) {
+                OMGraphic omg = (OMGraphic) factory.makeEsriGraphicFromRecord(hits[i], shpFile, drawingAttributes, pointIcon, byteTracker);
 
-                        if (dbfFile != null) {
-                            omg = dbfFile.evaluate(omg, labels, mapProj);
+                if (omg != null) {
 
-                            if (omg == null) {
-                                // Failed dbf test, should be ignored.
-                                continue;
-                            }
-                        }
+                    if (tier >= 0) {
+                        omg = tiers.apply(hits[i], omg, tier);
+                    }
+
+                    if (dbfFile != null) {
+                        omg = dbfFile.evaluate(omg, labels, mapProj);
 
-                        if (mapProj != null) {
-                            omg.generate(mapProj);
+                        if (omg == null) {
+                            // Failed dbf test, should be ignored.
+                            continue;
                         }
-                        list.add(omg);
                     }
 
-                } catch (IOException ioe) {
-                    logger.warning("IOException message: " + ioe.getMessage());
-                    ioe.printStackTrace();
-                    break;
+                    if (mapProj != null) {
+                        omg.generate(mapProj);
+                    }
+                    list.add(omg);
                 }
+
+            } catch (IOException ioe) {
+                logger.warning("IOException message: " + ioe.getMessage());
+                ioe.printStackTrace();
+                break;
             }
         }
 
@@ -546,6 +854,33 @@ public class SpatialIndex extends ShapeUtils {
 
     }
 
+    /**
+     * Checks every index entry against the bounding box.
+     * 
+     * @return the byte offsets of the intersecting entries, in index order.
+     */
+    protected int[] locateOffsets(double xmin, double ymin, double xmax, double ymax,
+                                  GeoCoordTransformation dataProj)
+            throws IOException, FormatException {
+        int[] hits = new int[64];
+        int numHits = 0;
+        for (Iterator<Entry> it = entryIterator(dataProj); it.hasNext();) {
+            Entry entry = it.next();
+            if (entry.intersects(xmin, ymin, xmax, ymax)) {
+                if (numHits == hits.length) {
+                    int[] tmp = new int[hits.length * 2];
+                    System.arraycopy(hits, 0, tmp, 0, numHits);
+                    hits = tmp;
+                }
+                hits[numHits++] = entry.getByteOffset();
+            }
+        }
+
+        int[] ret = new int[numHits];
+        System.arraycopy(hits, 0, ret, 0, numHits);
+        return ret;
+    }
+
     /**
      * Retrieves all OMGraphics in the shape file.
      * 
@@ -687,6 +1022,7 @@ public class SpatialIndex extends ShapeUtils {
 
             entriesHandle = readIndexFile(gatherBounds ? bounds : null, dataTransform);
             entries = entriesHandle;
+            entriesTransform = dataTransform;
         }
 
         return new ArrayList<Entry>(entriesHandle).iterator();
@@ -1023,6 +1359,13 @@ public class SpatialIndex extends ShapeUtils {
                 entries = null;
             }
 
+            if (done) {
+                synchronized (this) {
+                    rTrees.clear();
+                    detailTiers.clear();
+                }
+            }
+
             return true;
         } catch (IOException ioe) {
 
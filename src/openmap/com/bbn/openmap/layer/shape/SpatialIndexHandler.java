@@ -190,6 +190,13 @@ public class SpatialIndexHandler implements PropertyConsumer {
                 }
             }
 
+            if (spatialIndex != null) {
+                spatialIndex.setUseRTree(PropUtils.booleanFromProperties(props, realPrefix
+                        + ShapeLayer.useRTreeProperty, false));
+                spatialIndex.setUseDetailTiers(PropUtils.booleanFromProperties(props, realPrefix
+                        + ShapeLayer.detailTiersProperty, false));
+            }
+
             imageURLString = props.getProperty(realPrefix + ShapeLayer.pointImageURLProperty);
 
             try {
@@ -249,6 +256,10 @@ public class SpatialIndexHandler implements PropertyConsumer {
         }
         props.put(prefix + EnabledProperty, new Boolean(enabled).toString());
         props.put(prefix + BufferedProperty, new Boolean(buffered).toString());
+        if (spatialIndex != null) {
+            props.put(prefix + ShapeLayer.useRTreeProperty, Boolean.toString(spatialIndex.isUseRTree()));
+            props.put(prefix + ShapeLayer.detailTiersProperty, Boolean.toString(spatialIndex.isUseDetailTiers()));
+        }
 
         if (spatialIndex != null) {
             DbfHandler dbfh = spatialIndex.getDbf();
@@ -0,0 +1,85 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.layer.terrain;
+
+import com.bbn.openmap.dataAccess.dted.DTEDElevationService;
+import com.bbn.openmap.dataAccess.dted.DTEDFrameCache;
+import com.bbn.openmap.dataAccess.dted.DTEDViewshed;
+
+/**
+ * An ElevationSource for DTED data, reading through the DTEDElevationService
+ * of a DTEDFrameCache. The DTED level is picked to match the spacing of the
+ * points, and points without data at that level are filled in from the
+ * highest resolution data available.
+ * 
+ * @author dietrick
+ */
+public class DTEDElevationSource implements ElevationSource {
+
+    protected final DTEDFrameCache frameCache;
+
+    public DTEDElevationSource(DTEDFrameCache frameCache) {
+        this.frameCache = frameCache;
+    }
+
+    public DTEDFrameCache getFrameCache() {
+        return frameCache;
+    }
+
+    /**
+     * @return the coarsest DTED level (but no finer than the frame cache's
+     *         highest resolution level) with posts at least as close together
+     *         as the spacing.
+     */
+    public int getLevel(double postSpacing) {
+        int level = 0;
+        int highest = frameCache.getHighestResLevel();
+        while (level < highest && DTEDViewshed.getPostSpacing(level) > postSpacing) {
+            level++;
+        }
+        return level;
+    }
+
+    public void getElevations(double[] lats, double[] lons, short[] out, double postSpacing) {
+        DTEDElevationService service = frameCache.getElevationService();
+        service.getElevations(lats, lons, out, getLevel(postSpacing));
+
+        int numMissing = 0;
+        for (int i = 0; i < lats.length; i++) {
+            if (out[i] == NO_DATA) {
+                numMissing++;
+            }
+        }
+
+        if (numMissing > 0) {
+            double[] missingLats = new double[numMissing];
+            double[] missingLons = new double[numMissing];
+            short[] missing = new short[numMissing];
+            for (int i = 0, j = 0; i < lats.length; i++) {
+                if (out[i] == NO_DATA) {
+                    missingLats[j] = lats[i];
+                    missingLons[j++] = lons[i];
+                }
+            }
+
+            service.getElevations(missingLats, missingLons, missing);
+            for (int i = 0, j = 0; i < lats.length; i++) {
+                if (out[i] == NO_DATA) {
+                    out[i] = missing[j++];
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,44 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.layer.terrain;
+
+/**
+ * An ElevationSource provides elevations for a lot of points at once, for
+ * things like the ShadedReliefLayer that don't care where the elevations come
+ * from. Implementations have to be safe to use from several threads at once.
+ * 
+ * @author dietrick
+ */
+public interface ElevationSource {
+
+    /**
+     * The elevation value for points without data, the same as the DTED null
+     * elevation (-32767).
+     */
+    short NO_DATA = -32767;
+
+    /**
+     * Get the elevations for a set of points.
+     * 
+     * @param lats latitudes in decimal degrees.
+     * @param lons longitudes in decimal degrees, the same length as lats.
+     * @param out filled with elevations in meters, or NO_DATA. At least as
+     *        long as lats.
+     * @param postSpacing about how far apart the points are, in decimal
+     *        degrees, so the source can pick a resolution that's fine enough
+     *        without reading more data than needed.
+     */
+    void getElevations(double[] lats, double[] lons, short[] out, double postSpacing);
+}
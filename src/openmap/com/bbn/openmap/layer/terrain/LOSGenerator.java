@@ -25,9 +25,13 @@ package com.bbn.openmap.layer.terrain;
 import java.awt.Color;
 import java.awt.Point;
 import java.awt.event.MouseEvent;
+import java.util.ArrayList;
+import java.util.List;
 
 import com.bbn.openmap.MoreMath;
+import com.bbn.openmap.dataAccess.dted.DTEDElevationGrid;
 import com.bbn.openmap.dataAccess.dted.DTEDFrameCache;
+import com.bbn.openmap.dataAccess.dted.DTEDViewshed;
 import com.bbn.openmap.event.LayerStatusEvent;
 import com.bbn.openmap.event.ProgressEvent;
 import com.bbn.openmap.event.ProgressListener;
@@ -36,6 +40,7 @@ import com.bbn.openmap.gui.ProgressListenerGauge;
 import com.bbn.openmap.omGraphics.OMCircle;
 import com.bbn.openmap.omGraphics.OMGraphicList;
 import com.bbn.openmap.omGraphics.OMRaster;
+import com.bbn.openmap.proj.Length;
 import com.bbn.openmap.proj.Planet;
 import com.bbn.openmap.proj.Projection;
 import com.bbn.openmap.proj.coords.LatLonPoint;
@@ -49,6 +54,11 @@ import com.bbn.openmap.util.stateMachine.State;
  * sight of the center of the circle. Additional height can be added
  * to the center of the circle via the TerrainLayer palette, to
  * represent a tower, building, or aircraft.
+ * <P>
+ * By default, the mask is figured out by a DTEDViewshed, which fetches the
+ * elevations for the circle up front and sweeps rays out from the center on
+ * several threads. The original pixel by pixel spiral can still be used by
+ * calling setUseViewshed(false).
  */
 public class LOSGenerator implements TerrainTool {
 
@@ -100,6 +110,11 @@ public class LOSGenerator implements TerrainTool {
 
     protected ProgressSupport progressSupport;
 
+    /** Whether the DTEDViewshed is used to create the mask. */
+    protected boolean useViewshed = true;
+    /** Created when first needed. */
+    protected DTEDViewshed viewshed;
+
     class LOSWorker extends SwingWorker {
         /** Constructor used to create a worker thread. */
         public LOSWorker() {}
@@ -273,6 +288,11 @@ public class LOSGenerator implements TerrainTool {
             return;
         }
 
+        if (useViewshed) {
+            createViewshedImage();
+            return;
+        }
+
         int squareRadius = LOSedge / 2 + 1;
         int[] newPixels = new int[LOSedge * LOSedge];
         float[] azimuthVals = new float[8 * (squareRadius - 1)];
@@ -376,6 +396,101 @@ public class LOSGenerator implements TerrainTool {
         }
     }
 
+    /**
+     * Creates the image with a DTEDViewshed. The elevations are fetched on a
+     * grid with about one post per pixel, but no finer than the DTED posts,
+     * and each pixel in the circle is colored by whether the grid cell under
+     * it can be seen from the center.
+     */
+    protected void createViewshedImage() {
+        fireProgressUpdate(ProgressEvent.START,
+                "Fetching elevations...",
+                0,
+                100);
+
+        DTEDFrameCache frameCache = layer.frameCache;
+        int radiusPixels = Math.max(LOSedge / 2, 1);
+        LatLonPoint edgeLLP = proj.inverse(LOScenterP.x + radiusPixels,
+                LOScenterP.y,
+                new LatLonPoint.Double());
+        double radiusRadians = LOScenterLLP.distance(edgeLLP);
+        double spacing = Math.max(Math.toDegrees(radiusRadians)
+                / radiusPixels,
+                DTEDViewshed.getPostSpacing(frameCache.getHighestResLevel()));
+
+        List<DTEDViewshed.Observer> observers = new ArrayList<DTEDViewshed.Observer>();
+        observers.add(new DTEDViewshed.Observer(LOScenterLLP.getLatitude(), LOScenterLLP.getLongitude(), LOSobjectHeight, Length.METER.fromRadians(radiusRadians)));
+
+        DTEDViewshed vs = getViewshed();
+        DTEDElevationGrid grid = vs.fetchGrid(frameCache.getElevationService(),
+                observers,
+                spacing,
+                -1);
+        fireProgressUpdate(ProgressEvent.UPDATE, "Analyzing data...", 50, 100);
+        DTEDViewshed.Result result = (grid != null) ? vs.compute(grid,
+                observers) : null;
+        if (result == null) {
+            fireProgressUpdate(ProgressEvent.DONE, "LOS mask cancelled", 100, 100);
+            return;
+        }
+
+        fireProgressUpdate(ProgressEvent.UPDATE, "Creating Mask", 100, 100);
+
+        int[] newPixels = new int[LOSedge * LOSedge];
+        int ox = LOScenterP.x - LOSedge / 2;
+        int oy = LOScenterP.y - LOSedge / 2;
+        int edge = (LOSedge - 1) / 2;
+        LatLonPoint cord = new LatLonPoint.Double();
+        for (int y = 0; y < LOSedge; y++) {
+            for (int x = 0; x < LOSedge; x++) {
+                int dist = TerrainLayer.numPixelsBetween(LOScenterP.x,
+                        LOScenterP.y,
+                        x + ox,
+                        y + oy);
+                int color;
+                if (dist > edge) {
+                    color = colortable[INVISIBLE];
+                } else if (dist == edge) {
+                    color = colortable[MAYBEVISIBLE];
+                } else {
+                    proj.inverse(x + ox, y + oy, cord);
+                    color = result.isVisible(cord.getY(), cord.getX()) ? colortable[VISIBLE]
+                            : colortable[INVISIBLE];
+                }
+                newPixels[x + y * LOSedge] = color;
+            }
+        }
+
+        LOSimage = new OMRaster(LOScenterLLP.getLatitude(), LOScenterLLP.getLongitude(), (-1 - LOSedge / 2), (-1 - LOSedge / 2), LOSedge, LOSedge, newPixels);
+        LOSimage.generate(proj);
+        graphics.clear();
+        graphics.add(LOSimage);
+
+        fireProgressUpdate(ProgressEvent.DONE, "LOS mask complete", 100, 100);
+    }
+
+    /**
+     * Get the DTEDViewshed used to create the mask, creating it if needed.
+     */
+    protected synchronized DTEDViewshed getViewshed() {
+        if (viewshed == null) {
+            viewshed = new DTEDViewshed(0);
+        }
+        return viewshed;
+    }
+
+    public boolean isUseViewshed() {
+        return useViewshed;
+    }
+
+    /**
+     * Set whether the DTEDViewshed is used to create the mask. If false, the
+     * mask is built pixel by pixel in a spiral out from the center.
+     */
+    public void setUseViewshed(boolean useViewshed) {
+        this.useViewshed = useViewshed;
+    }
+
     /**
      * Calculates the color for each pixel. After is gets the slope
      * value for that pixel, it manages the comparison to get the
@@ -0,0 +1,499 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.layer.terrain;
+
+import java.awt.geom.Point2D;
+import java.util.Properties;
+
+import com.bbn.openmap.dataAccess.dted.DTEDFrameCache;
+import com.bbn.openmap.dataAccess.mapTile.MBTilesTileStore;
+import com.bbn.openmap.dataAccess.mapTile.MapTileFactory;
+import com.bbn.openmap.dataAccess.mapTile.MapTileRequester;
+import com.bbn.openmap.dataAccess.mapTile.StandardMapTileFactory;
+import com.bbn.openmap.dataAccess.mapTile.TileMillMapTileFactory;
+import com.bbn.openmap.layer.OMGraphicHandlerLayer;
+import com.bbn.openmap.layer.etopo.ETOPOElevationSource;
+import com.bbn.openmap.omGraphics.OMGraphicList;
+import com.bbn.openmap.omGraphics.OMRaster;
+import com.bbn.openmap.proj.Planet;
+import com.bbn.openmap.proj.Projection;
+import com.bbn.openmap.proj.coords.LatLonPoint;
+import com.bbn.openmap.util.PropUtils;
+
+/**
+ * The ShadedReliefLayer draws hillshaded, slope or colored shaded relief
+ * images of the terrain from an ElevationSource. The elevations for every
+ * pixel on the map are fetched in one batch, and the shading is figured out
+ * with Horn's method from the pixel's neighbors, so the images are the same
+ * for any projection.
+ * <p>
+ * Building the images takes time proportional to the size of the map, which is
+ * fine for one map but adds up for a server. Since the layer has concurrent
+ * rendering turned on by default, a MapTileMaker can use it to build a tile
+ * pyramid ahead of time, on several threads, picking up where it left off if
+ * it's interrupted. With the tiles property set, the layer draws from the
+ * pyramid instead, so the cost of displaying it doesn't depend on the size of
+ * the elevation data. The ShadedReliefTileMaker builds pyramids with this
+ * layer from the command line.
+ * <p>
+ * The elevations come from ETOPO data if the etopoPath property is set, or
+ * from DTED. DTED is read through a DTEDFrameCache, either configured in the
+ * layer's properties or found in the MapHandler.
+ * 
+ * <pre>
+ * relief.class=com.bbn.openmap.layer.terrain.ShadedReliefLayer
+ * relief.prettyName=Shaded Relief
+ * # hillshade, slope or colored (default)
+ * relief.type=colored
+ * # Direction of the sun, degrees clockwise from north (315)
+ * relief.azimuth=315
+ * # Height of the sun, degrees above the horizon (45)
+ * relief.altitude=45
+ * # Vertical exaggeration (1)
+ * relief.zFactor=1
+ * # 0-255 (255)
+ * relief.opaque=255
+ * 
+ * # ETOPO data, or
+ * relief.etopoPath=/data/etopo
+ * # DTED data, DTEDFrameCache properties with a dted scoping prefix
+ * relief.dted.directoryHandlers=dteddir
+ * relief.dted.dteddir.path=/data/dted
+ * 
+ * # Optional, draw from a tile pyramid (directory or .mbtiles file) instead
+ * relief.tiles=/data/reliefTiles
+ * relief.tileExt=.png
+ * </pre>
+ * 
+ * @author dietrick
+ */
+public class ShadedReliefLayer extends OMGraphicHandlerLayer implements MapTileRequester {
+
+    private static final long serialVersionUID = 1L;
+
+    public final static String TypeProperty = "type";
+    public final static String AzimuthProperty = "azimuth";
+    public final static String AltitudeProperty = "altitude";
+    public final static String ZFactorProperty = "zFactor";
+    public final static String OpaquenessProperty = "opaque";
+    public final static String ETOPOPathProperty = "etopoPath";
+    /** The scoping prefix for DTEDFrameCache properties. */
+    public final static String DTEDProperty = "dted";
+    public final static String TilesProperty = "tiles";
+    public final static String TileExtProperty = "tileExt";
+
+    /** Gray shading from the direction of the sun. */
+    public final static String HILLSHADE = "hillshade";
+    /** Gray shading by steepness, flat is white. */
+    public final static String SLOPE = "slope";
+    /** Colors by elevation, hillshaded. */
+    public final static String COLORED = "colored";
+
+    public final static double DEFAULT_AZIMUTH = 315;
+    public final static double DEFAULT_ALTITUDE = 45;
+    /** How bright colored relief is in full shadow. */
+    protected final static double AMBIENT = .35;
+
+    /** Elevation band limits, in meters, with colors. */
+    protected final static int[] elevLimits = { -11000, -9000, -7000, -5000, -3000, -1500, 0, 250, 500, 750, 1000,
+            2000, 3500, 5000 };
+    protected final static int[] elevColors = { 0x00024c, 0x000c91, 0x0433f2, 0x149ff9, 0x7cebfc, 0x82ffff,
+            0x87eb6e, 0x75ff3a, 0xfcec1d, 0xfda223, 0xe57305, 0xf4320e, 0xfc142e, 0x848484 };
+
+    protected String type = COLORED;
+    protected double azimuth = DEFAULT_AZIMUTH;
+    protected double altitude = DEFAULT_ALTITUDE;
+    protected double zFactor = 1;
+    protected int opaqueness = 255;
+    protected String etopoPath;
+    protected String tiles;
+    protected String tileExt = ".png";
+
+    protected ElevationSource elevationSource;
+    /** True if the elevation source came from the MapHandler. */
+    protected boolean foundSource = false;
+    protected MapTileFactory tileFactory;
+
+    public ShadedReliefLayer() {
+        setName("Shaded Relief");
+        setConcurrentRendering(true);
+    }
+
+    public ElevationSource getElevationSource() {
+        return elevationSource;
+    }
+
+    public void setElevationSource(ElevationSource elevationSource) {
+        this.elevationSource = elevationSource;
+        foundSource = false;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * Set the kind of image, HILLSHADE, SLOPE or COLORED.
+     */
+    public void setType(String type) {
+        this.type = type;
+    }
+
+    public double getAzimuth() {
+        return azimuth;
+    }
+
+    /**
+     * Set the direction of the sun, degrees clockwise from north.
+     */
+    public void setAzimuth(double azimuth) {
+        this.azimuth = azimuth;
+    }
+
+    public double getAltitude() {
+        return altitude;
+    }
+
+    /**
+     * Set the height of the sun, degrees above the horizon.
+     */
+    public void setAltitude(double altitude) {
+        this.altitude = altitude;
+    }
+
+    public double getZFactor() {
+        return zFactor;
+    }
+
+    /**
+     * Set the vertical exaggeration.
+     */
+    public void setZFactor(double zFactor) {
+        this.zFactor = zFactor;
+    }
+
+    public int getOpaqueness() {
+        return opaqueness;
+    }
+
+    public void setOpaqueness(int opaqueness) {
+        this.opaqueness = opaqueness;
+    }
+
+    public String getTiles() {
+        return tiles;
+    }
+
+    /**
+     * Set the tile pyramid (directory or .mbtiles file) to draw from, null to
+     * draw from the elevation source.
+     */
+    public synchronized void setTiles(String tiles) {
+        this.tiles = tiles;
+        tileFactory = null;
+    }
+
+    /**
+     * Get the MapTileFactory for the tile pyramid, creating it if needed.
+     * 
+     * @return MapTileFactory, or null if the tiles property isn't set.
+     */
+    protected synchronized MapTileFactory getTileFactory() {
+        if (tileFactory == null && tiles != null) {
+            if (MBTilesTileStore.isMBTilesPath(tiles)) {
+                tileFactory = new TileMillMapTileFactory(tiles);
+                tileFactory.setMapTileRequester(this);
+            } else {
+                tileFactory = new StandardMapTileFactory(this, tiles, tileExt);
+            }
+        }
+        return tileFactory;
+    }
+
+    public void setProperties(String prefix, Properties props) {
+        super.setProperties(prefix, props);
+        prefix = PropUtils.getScopedPropertyPrefix(prefix);
+
+        type = props.getProperty(prefix + TypeProperty, type);
+        azimuth = PropUtils.doubleFromProperties(props, prefix + AzimuthProperty, azimuth);
+        altitude = PropUtils.doubleFromProperties(props, prefix + AltitudeProperty, altitude);
+        zFactor = PropUtils.doubleFromProperties(props, prefix + ZFactorProperty, zFactor);
+        opaqueness = PropUtils.intFromProperties(props, prefix + OpaquenessProperty, opaqueness);
+        tileExt = props.getProperty(prefix + TileExtProperty, tileExt);
+        setTiles(props.getProperty(prefix + TilesProperty, tiles));
+
+        etopoPath = props.getProperty(prefix + ETOPOPathProperty, etopoPath);
+        String dtedPrefix = prefix + DTEDProperty;
+        if (etopoPath != null) {
+            setElevationSource(new ETOPOElevationSource(etopoPath));
+        } else if (props.getProperty(dtedPrefix + "." + DTEDFrameCache.DTEDDirectoryHandlerProperty) != null) {
+            DTEDFrameCache frameCache = new DTEDFrameCache();
+            frameCache.setProperties(dtedPrefix, props);
+            setElevationSource(new DTEDElevationSource(frameCache));
+        }
+    }
+
+    public Properties getProperties(Properties props) {
+        props = super.getProperties(props);
+        String prefix = PropUtils.getScopedPropertyPrefix(this);
+
+        props.put(prefix + TypeProperty, PropUtils.unnull(type));
+        props.put(prefix + AzimuthProperty, Double.toString(azimuth));
+        props.put(prefix + AltitudeProperty, Double.toString(altitude));
+        props.put(prefix + ZFactorProperty, Double.toString(zFactor));
+        props.put(prefix + OpaquenessProperty, Integer.toString(opaqueness));
+        props.put(prefix + ETOPOPathProperty, PropUtils.unnull(etopoPath));
+        props.put(prefix + TilesProperty, PropUtils.unnull(tiles));
+        props.put(prefix + TileExtProperty, PropUtils.unnull(tileExt));
+
+        if (elevationSource instanceof DTEDElevationSource && !foundSource) {
+            ((DTEDElevationSource) elevationSource).getFrameCache().getProperties(props);
+        }
+        return props;
+    }
+
+    public Properties getPropertyInfo(Properties props) {
+        props = super.getPropertyInfo(props);
+
+        props.put(TypeProperty, "Kind of image: hillshade, slope or colored");
+        props.put(AzimuthProperty, "Direction of the sun, degrees clockwise from north");
+        props.put(AltitudeProperty, "Height of the sun, degrees above the horizon");
+        props.put(ZFactorProperty, "Vertical exaggeration");
+        props.put(OpaquenessProperty, "Opaqueness of the image, 0-255");
+        props.put(ETOPOPathProperty, "Directory containing ETOPO data");
+        props.put(ETOPOPathProperty + ScopedEditorProperty, "com.bbn.openmap.util.propertyEditor.DirectoryPropertyEditor");
+        props.put(TilesProperty, "Tile pyramid to draw from instead (directory or .mbtiles file)");
+        props.put(TileExtProperty, "Extension of the tile images");
+        return props;
+    }
+
+    public void findAndInit(Object someObj) {
+        if (someObj instanceof DTEDFrameCache && (elevationSource == null || foundSource)) {
+            elevationSource = new DTEDElevationSource((DTEDFrameCache) someObj);
+            foundSource = true;
+        }
+    }
+
+    public void findAndUndo(Object someObj) {
+        if (foundSource && elevationSource instanceof DTEDElevationSource
+                && ((DTEDElevationSource) elevationSource).getFrameCache() == someObj) {
+            elevationSource = null;
+            foundSource = false;
+        }
+    }
+
+    /**
+     * Creates a new OMGraphicList for the current projection every time, so
+     * several threads can render at once.
+     */
+    public OMGraphicList prepare() {
+        Projection proj = getProjection();
+        OMGraphicList list = new OMGraphicList();
+        if (proj == null) {
+            return list;
+        }
+
+        MapTileFactory factory = getTileFactory();
+        if (factory != null) {
+            return factory.getTiles(proj, -1, list);
+        }
+
+        ElevationSource source = elevationSource;
+        if (source == null) {
+            logger.fine("no elevation source");
+            return list;
+        }
+
+        OMRaster raster = createRaster(proj, source);
+        if (raster != null) {
+            raster.generate(proj);
+            list.add(raster);
+        }
+        return list;
+    }
+
+    /**
+     * Create the image for a projection. The elevations are fetched for a grid
+     * one pixel bigger than the map on each side, so the edge pixels have
+     * neighbors.
+     * 
+     * @param proj the projection.
+     * @param source provides the elevations.
+     * @return OMRaster covering the projection, or null if it couldn't be
+     *         created.
+     */
+    public OMRaster createRaster(Projection proj, ElevationSource source) {
+        int width = proj.getWidth();
+        int height = proj.getHeight();
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+
+        int gridWidth = width + 2;
+        int gridHeight = height + 2;
+        int gridSize = gridWidth * gridHeight;
+        double[] lats = new double[gridSize];
+        double[] lons = new double[gridSize];
+        LatLonPoint llp = new LatLonPoint.Double();
+        int index = 0;
+        for (int y = -1; y <= height; y++) {
+            for (int x = -1; x <= width; x++) {
+                proj.inverse(x, y, llp);
+                lats[index] = llp.getY();
+                lons[index++] = llp.getX();
+            }
+        }
+
+        Point2D ul = proj.getUpperLeft();
+        Point2D lr = proj.getLowerRight();
+        double postSpacing = Math.abs(ul.getY() - lr.getY()) / height;
+
+        short[] elevations = new short[gridSize];
+        source.getElevations(lats, lons, elevations, postSpacing);
+
+        if (!shouldContinue()) {
+            return null;
+        }
+
+        int[] pixels = new int[width * height];
+        shade(lats, lons, elevations, gridWidth, gridHeight, pixels);
+        return new OMRaster(0, 0, width, height, pixels);
+    }
+
+    /**
+     * Figure out the colors of the pixels from the grid of elevations.
+     * 
+     * @param lats latitudes of the grid points.
+     * @param lons longitudes of the grid points.
+     * @param elevations elevations of the grid points.
+     * @param gridWidth width of the grid, two more than the image.
+     * @param gridHeight height of the grid, two more than the image.
+     * @param pixels ARGB pixels for the image, filled in.
+     */
+    protected void shade(double[] lats, double[] lons, short[] elevations, int gridWidth, int gridHeight, int[] pixels) {
+        double metersPerDegree = Planet.wgs84_earthEquatorialRadiusMeters_D * Math.PI / 180;
+        double az = Math.toRadians(azimuth);
+        double alt = Math.toRadians(altitude);
+        // Direction of the sun, x to the right, y up the screen, z up.
+        double sunX = Math.sin(az) * Math.cos(alt);
+        double sunY = Math.cos(az) * Math.cos(alt);
+        double sunZ = Math.sin(alt);
+        int alpha = (opaqueness & 0xff) << 24;
+        boolean slopeOnly = SLOPE.equalsIgnoreCase(type);
+        boolean colored = COLORED.equalsIgnoreCase(type);
+
+        int width = gridWidth - 2;
+        int p = 0;
+        for (int y = 1; y < gridHeight - 1; y++) {
+            for (int x = 1; x < gridWidth - 1; x++, p++) {
+                int i = y * gridWidth + x;
+                short e = elevations[i];
+                if (e == ElevationSource.NO_DATA) {
+                    pixels[p] = 0;
+                    continue;
+                }
+
+                // Horn's method, over the 3x3 neighborhood.
+                double a = get(elevations, i - gridWidth - 1, e);
+                double b = get(elevations, i - gridWidth, e);
+                double c = get(elevations, i - gridWidth + 1, e);
+                double d = get(elevations, i - 1, e);
+                double f = get(elevations, i + 1, e);
+                double g = get(elevations, i + gridWidth - 1, e);
+                double h = get(elevations, i + gridWidth, e);
+                double k = get(elevations, i + gridWidth + 1, e);
+
+                double cellX = groundDistance(lats, lons, i - 1, i + 1, metersPerDegree) / 2;
+                double cellY = groundDistance(lats, lons, i - gridWidth, i + gridWidth, metersPerDegree) / 2;
+                double dzdx = cellX > 0 ? ((c + 2 * f + k) - (a + 2 * d + g)) / (8 * cellX) : 0;
+                // up the screen
+                double dzdy = cellY > 0 ? ((a + 2 * b + c) - (g + 2 * h + k)) / (8 * cellY) : 0;
+                dzdx *= zFactor;
+                dzdy *= zFactor;
+
+                double norm = Math.sqrt(dzdx * dzdx + dzdy * dzdy + 1);
+                int rgb;
+                if (slopeOnly) {
+                    // cos of the slope angle, flat is 1.
+                    int gray = (int) (255 / norm);
+                    rgb = (gray << 16) | (gray << 8) | gray;
+                } else {
+                    double light = (-dzdx * sunX - dzdy * sunY + sunZ) / norm;
+                    if (light < 0) {
+                        light = 0;
+                    }
+
+                    if (colored) {
+                        rgb = scale(getElevationColor(e), AMBIENT + (1 - AMBIENT) * light);
+                    } else {
+                        int gray = (int) (255 * light);
+                        rgb = (gray << 16) | (gray << 8) | gray;
+                    }
+                }
+                pixels[p] = alpha | rgb;
+            }
+        }
+    }
+
+    private static double get(short[] elevations, int index, short fallback) {
+        short e = elevations[index];
+        return e == ElevationSource.NO_DATA ? fallback : e;
+    }
+
+    /**
+     * The distance between two grid points, in meters, close enough for
+     * neighbors.
+     */
+    protected static double groundDistance(double[] lats, double[] lons, int i1, int i2, double metersPerDegree) {
+        double dLat = lats[i2] - lats[i1];
+        double dLon = lons[i2] - lons[i1];
+        if (dLon > 180) {
+            dLon -= 360;
+        } else if (dLon < -180) {
+            dLon += 360;
+        }
+        dLon *= Math.cos(Math.toRadians((lats[i1] + lats[i2]) / 2));
+        return Math.sqrt(dLat * dLat + dLon * dLon) * metersPerDegree;
+    }
+
+    /**
+     * @return the RGB color of the elevation band for an elevation.
+     */
+    protected static int getElevationColor(short elevation) {
+        for (int i = 0; i < elevLimits.length - 1; i++) {
+            if (elevation < elevLimits[i + 1]) {
+                return elevColors[i];
+            }
+        }
+        return elevColors[elevColors.length - 1];
+    }
+
+    private static int scale(int rgb, double factor) {
+        int r = (int) (((rgb >> 16) & 0xff) * factor);
+        int g = (int) (((rgb >> 8) & 0xff) * factor);
+        int b = (int) ((rgb & 0xff) * factor);
+        return (Math.min(r, 255) << 16) | (Math.min(g, 255) << 8) | Math.min(b, 255);
+    }
+
+    // MapTileRequester methods, for drawing from a tile pyramid.
+
+    public boolean shouldContinue() {
+        return !isInterruptable() || !isCancelled();
+    }
+
+    public void listUpdated() {
+        repaint();
+    }
+}
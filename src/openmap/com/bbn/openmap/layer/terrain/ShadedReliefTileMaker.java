@@ -0,0 +1,184 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.layer.terrain;
+
+import java.awt.geom.Rectangle2D;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+
+import com.bbn.openmap.Layer;
+import com.bbn.openmap.dataAccess.mapTile.MapTileMaker;
+import com.bbn.openmap.dataAccess.mapTile.ZoomLevelMaker;
+import com.bbn.openmap.image.PNGImageIOFormatter;
+import com.bbn.openmap.util.ArgParser;
+import com.bbn.openmap.util.Debug;
+import com.bbn.openmap.util.PropUtils;
+
+/**
+ * The ShadedReliefTileMaker builds a tile pyramid of shaded relief images with
+ * a ShadedReliefLayer, for the layer (or a MapTileLayer) to draw from later.
+ * Every zoom level is rendered from the elevations, at the right resolution
+ * for that level, rather than scaled down from the level below it. The tiles
+ * are rendered on several threads by a MapTileMaker, and an interrupted run
+ * picks up where it left off.
+ * 
+ * <pre>
+ * java com.bbn.openmap.layer.terrain.ShadedReliefTileMaker -dted /data/dted -out /data/reliefTiles -zoom 10 \
+ *      -bounds 35 -122 38 -119
+ * java com.bbn.openmap.layer.terrain.ShadedReliefTileMaker -etopo /data/etopo -out relief.mbtiles -zoom 6
+ * </pre>
+ * 
+ * @author dietrick
+ */
+public class ShadedReliefTileMaker {
+
+    protected ShadedReliefLayer layer;
+    protected MapTileMaker mapTileMaker;
+
+    /**
+     * @param layer the configured layer to render with.
+     * @param rootDir the directory (or .mbtiles file) to write the tiles to.
+     */
+    public ShadedReliefTileMaker(ShadedReliefLayer layer, String rootDir) {
+        this.layer = layer;
+        mapTileMaker = new MapTileMaker(new Layer[] { layer }, new PNGImageIOFormatter());
+        mapTileMaker.setRootDir(rootDir);
+        mapTileMaker.setResume(true);
+        mapTileMaker.setNumThreads(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Get the MapTileMaker, to change the number of threads or whether an
+     * interrupted run is resumed.
+     */
+    public MapTileMaker getMapTileMaker() {
+        return mapTileMaker;
+    }
+
+    /**
+     * Build the tiles.
+     * 
+     * @param minZoom the lowest zoom level to make tiles for.
+     * @param maxZoom the highest zoom level to make tiles for.
+     * @param bounds the area to make tiles for, as lon/lat rectangles, or null
+     *        for the whole world.
+     */
+    public void makeTiles(int minZoom, int maxZoom, List<Rectangle2D> bounds) {
+        List<Layer> layers = Collections.singletonList((Layer) layer);
+        List<ZoomLevelMaker> zoomLevels = mapTileMaker.getZoomLevels();
+        zoomLevels.clear();
+        for (int zoom = minZoom; zoom <= maxZoom; zoom++) {
+            ZoomLevelMaker zlm = new ZoomLevelMaker("relief" + zoom, "Shaded relief tiles for zoom level " + zoom, zoom);
+            zlm.setLayerList(layers);
+            if (bounds != null) {
+                for (Rectangle2D rect : bounds) {
+                    zlm.addBounds(rect);
+                }
+            }
+            zoomLevels.add(zlm);
+        }
+        mapTileMaker.makeTiles();
+    }
+
+    public static void main(String[] args) {
+        ArgParser ap = new ArgParser("ShadedReliefTileMaker");
+        ap.add("dted", "Directory of DTED data (standard directory layout).", 1);
+        ap.add("etopo", "Directory of ETOPO data.", 1);
+        ap.add("properties", "Properties file with ShadedReliefLayer properties, scoped with 'relief'.", 1);
+        ap.add("out", "Directory or .mbtiles file to write the tiles to.", 1);
+        ap.add("type", "hillshade, slope or colored (default).", 1);
+        ap.add("zoom", "Highest zoom level to make tiles for (default 8).", 1);
+        ap.add("minZoom", "Lowest zoom level to make tiles for (default 0).", 1);
+        ap.add("bounds", "Area to make tiles for: minLat minLon maxLat maxLon.", 4, true);
+        ap.add("threads", "Number of threads to use (default, number of processors).", 1);
+
+        if (!ap.parse(args) || ap.getArgValues("out") == null) {
+            ap.printUsage();
+            System.exit(0);
+        }
+
+        Properties props = new Properties();
+        String[] arg = ap.getArgValues("properties");
+        if (arg != null) {
+            try {
+                URL url = PropUtils.getResourceOrFileOrURL(null, arg[0]);
+                InputStream inputStream = url.openStream();
+                props.load(inputStream);
+                inputStream.close();
+            } catch (IOException ioe) {
+                Debug.error("ShadedReliefTileMaker can't read properties file: " + arg[0]);
+                System.exit(1);
+            }
+        }
+
+        arg = ap.getArgValues("dted");
+        if (arg != null) {
+            props.put("relief.dted.directoryHandlers", "dteddir");
+            props.put("relief.dted.dteddir.path", arg[0]);
+        }
+        arg = ap.getArgValues("etopo");
+        if (arg != null) {
+            props.put("relief." + ShadedReliefLayer.ETOPOPathProperty, arg[0]);
+        }
+        arg = ap.getArgValues("type");
+        if (arg != null) {
+            props.put("relief." + ShadedReliefLayer.TypeProperty, arg[0]);
+        }
+
+        ShadedReliefLayer layer = new ShadedReliefLayer();
+        layer.setProperties("relief", props);
+        // Always render from the elevations here.
+        layer.setTiles(null);
+        if (layer.getElevationSource() == null) {
+            Debug.error("ShadedReliefTileMaker needs DTED or ETOPO data");
+            System.exit(1);
+        }
+
+        ShadedReliefTileMaker maker = new ShadedReliefTileMaker(layer, ap.getArgValues("out")[0]);
+        arg = ap.getArgValues("threads");
+        if (arg != null) {
+            maker.getMapTileMaker().setNumThreads(Integer.parseInt(arg[0]));
+        }
+
+        int maxZoom = 8;
+        arg = ap.getArgValues("zoom");
+        if (arg != null) {
+            maxZoom = Integer.parseInt(arg[0]);
+        }
+        int minZoom = 0;
+        arg = ap.getArgValues("minZoom");
+        if (arg != null) {
+            minZoom = Integer.parseInt(arg[0]);
+        }
+
+        List<Rectangle2D> bounds = null;
+        arg = ap.getArgValues("bounds");
+        if (arg != null) {
+            double minLat = Double.parseDouble(arg[0]);
+            double minLon = Double.parseDouble(arg[1]);
+            double maxLat = Double.parseDouble(arg[2]);
+            double maxLon = Double.parseDouble(arg[3]);
+            bounds = Collections.singletonList((Rectangle2D) new Rectangle2D.Double(minLon, minLat, maxLon - minLon, maxLat
+                    - minLat));
+        }
+
+        maker.makeTiles(minZoom, maxZoom, bounds);
+        System.exit(0);
+    }
+}
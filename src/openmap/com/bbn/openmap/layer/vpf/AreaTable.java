@@ -101,6 +101,14 @@ public class AreaTable extends PrimitiveTable {
         super.close();
     }
 
+    /**
+     * Decodes the edge and ring tables used for this tile, too.
+     */
+    public boolean loadColumns() {
+        return super.loadColumns() && edges.loadColumns()
+                && (tile.getColumnarTable(rings) != null);
+    }
+
     /**
      * Computes the full set of points that determine the edge of the area.
      * 
@@ -114,12 +122,14 @@ public class AreaTable extends PrimitiveTable {
      */
     public int computeEdgePoints(List<Object> facevec, List<CoordFloatString> allLLPoints)
             throws FormatException {
-        int ring_ptr = ((Number) facevec.get(ringIDColumn)).intValue();
-        List<Object> ring1 = new ArrayList<Object>(rings.getColumnCount());
+        int ring_ptr = DcwColumnarTable.intValue(facevec, ringIDColumn);
+        DcwColumnarTable ringTable = tile.getColumnarTable(rings);
+        List<Object> ring1 = (ringTable != null) ? ringTable.createRow()
+                : new ArrayList<Object>(rings.getColumnCount());
         rings.getRow(ring1, ring_ptr);
-        int fac_id = ((Number) ring1.get(faceIDColumn)).intValue();
+        int fac_id = DcwColumnarTable.intValue(ring1, faceIDColumn);
 
-        int startedgeid = ((Number) ring1.get(ringStartColumn)).intValue();
+        int startedgeid = DcwColumnarTable.intValue(ring1, ringStartColumn);
         if (startedgeid <= 0) {
             return 0;
         }
@@ -128,7 +138,7 @@ public class AreaTable extends PrimitiveTable {
         allLLPoints.clear();
         int polySize = 0;
         int prev_node = -1;
-        final List<Object> edge = new ArrayList<Object>(edges.getColumnCount());
+        final List<Object> edge = edges.createRow();
 
         do {
             edges.getRow(edge, nextedgeid);
@@ -191,7 +201,7 @@ public class AreaTable extends PrimitiveTable {
     public void drawTile(VPFGraphicWarehouse warehouse, double dpplat, double dpplon,
                          LatLonPoint ll1, LatLonPoint ll2) {
         try {
-            for (List<Object> area = new ArrayList<Object>(getColumnCount()); parseRow(area);) {
+            for (List<Object> area = createRow(); parseRow(area);) {
                 warehouse.createArea(covtable, this, area, ll1, ll2, dpplat, dpplon);
             }
         } catch (FormatException f) {
@@ -62,6 +62,22 @@ public class CoordFloatString {
         }
     }
 
+    /**
+     * Construct a CoordFloatString from a copy of values in an array.
+     * 
+     * @param tuplecount the number of tuples to copy
+     * @param tuplesize the number of values in the tuple
+     * @param values the array to copy the tuples from
+     * @param offset the index of the first value to copy
+     */
+    public CoordFloatString(int tuplecount, int tuplesize, double[] values, int offset) {
+        tcount = tuplecount;
+        tsize = tuplesize;
+        int totallen = tcount * tsize;
+        vals = new double[totallen];
+        System.arraycopy(values, offset, vals, 0, totallen);
+    }
+
     /**
      * The maximum indexable tuple value
      * 
@@ -0,0 +1,616 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.layer.vpf;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.bbn.openmap.io.BinaryFile;
+import com.bbn.openmap.io.FormatException;
+
+/**
+ * A VPF table decoded into primitive column arrays. Integer and short columns
+ * are held in int arrays, float and double columns in float and double arrays,
+ * text columns are dictionary encoded, and coordinate columns share one double
+ * array per column with an offset for each row. Cross-tile identifiers are
+ * split into three int arrays.
+ * <p>
+ * The table is decoded once, and rows are read through a {@link Row} cursor.
+ * A Row is a List, so it can be handed to code that expects the rows returned
+ * by DcwRecordFile.getRow(), but values are only boxed when they are fetched
+ * with get(). Code that knows about Rows can use the typed accessors and avoid
+ * the boxing completely.
+ * <p>
+ * Row numbers start at 1, like DcwRecordFile.getRow().
+ * 
+ * @see DcwRecordFile#readColumnarTable()
+ * @see TileDirectory#getColumnarTable(DcwRecordFile)
+ * @author dietrick
+ */
+public class DcwColumnarTable {
+
+    /** The table file the columns were read from. */
+    final protected String filename;
+    /** The column descriptions of the table. */
+    final protected DcwColumnInfo[] columnInfo;
+    /** The number of rows in the table. */
+    protected int rowCount;
+
+    /**
+     * Integer values for I and S columns, and the current tile key for K
+     * columns.
+     */
+    final protected int[][] ints;
+    /** The next tile id for K columns. */
+    final protected int[][] nextTileIDs;
+    /** The next tile key for K columns. */
+    final protected int[][] nextTileKeys;
+    /** Values for F columns. */
+    final protected float[][] floats;
+    /** Values for R columns. */
+    final protected double[][] doubles;
+    /** Dictionary codes for T and L columns. */
+    final protected int[][] codes;
+    /** Dictionaries for T and L columns, indexed by code. */
+    final protected String[][] dictionaries;
+    /** Coordinate values for C and Z columns, as x1,y1,(z1),x2,y2,... */
+    final protected double[][] coords;
+    /**
+     * Offsets into coords for each row of C and Z columns. There is one more
+     * offset than rows, so the tuple count of a row can be figured out from the
+     * next offset.
+     */
+    final protected int[][] coordOffsets;
+    /** Values for any other column type, as returned by parseField. */
+    final protected Object[][] objects;
+
+    /**
+     * Decode the rest of the rows from the input file. The file should be
+     * positioned at the start of the first row to decode.
+     * 
+     * @param filename the name of the table file.
+     * @param columnInfo the column descriptions of the table.
+     * @param input the table file.
+     * @param expectedRows the expected number of rows, used for the initial
+     *        size of the column arrays. May be less than 1 if unknown.
+     * @exception FormatException if the table can't be read.
+     */
+    protected DcwColumnarTable(String filename, DcwColumnInfo[] columnInfo, BinaryFile input,
+            int expectedRows) throws FormatException {
+        this.filename = filename;
+        this.columnInfo = columnInfo;
+
+        int numCols = columnInfo.length;
+        ints = new int[numCols][];
+        nextTileIDs = new int[numCols][];
+        nextTileKeys = new int[numCols][];
+        floats = new float[numCols][];
+        doubles = new double[numCols][];
+        codes = new int[numCols][];
+        dictionaries = new String[numCols][];
+        coords = new double[numCols][];
+        coordOffsets = new int[numCols][];
+        objects = new Object[numCols][];
+
+        int capacity = Math.max(expectedRows, 16);
+        List<Map<String, Integer>> dictionaryCodes = new ArrayList<Map<String, Integer>>(numCols);
+        List<List<String>> dictionaryValues = new ArrayList<List<String>>(numCols);
+
+        for (int i = 0; i < numCols; i++) {
+            Map<String, Integer> dictCodes = null;
+            List<String> dictValues = null;
+
+            switch (columnInfo[i].getFieldType()) {
+            case DcwColumnInfo.VPF_COLUMN_INT:
+            case DcwColumnInfo.VPF_COLUMN_SHORT:
+                ints[i] = new int[capacity];
+                break;
+            case DcwColumnInfo.VPF_COLUMN_TRIPLET:
+                ints[i] = new int[capacity];
+                nextTileIDs[i] = new int[capacity];
+                nextTileKeys[i] = new int[capacity];
+                break;
+            case DcwColumnInfo.VPF_COLUMN_FLOAT:
+                floats[i] = new float[capacity];
+                break;
+            case DcwColumnInfo.VPF_COLUMN_DOUBLE:
+                doubles[i] = new double[capacity];
+                break;
+            case DcwColumnInfo.VPF_COLUMN_TEXT:
+            case DcwColumnInfo.VPF_COLUMN_TEXTL1:
+                codes[i] = new int[capacity];
+                dictCodes = new HashMap<String, Integer>();
+                dictValues = new ArrayList<String>();
+                break;
+            case DcwColumnInfo.VPF_COLUMN_FLOAT_2COORD:
+            case DcwColumnInfo.VPF_COLUMN_FLOAT_3COORD:
+                coords[i] = new double[capacity * getTupleSize(i)];
+                coordOffsets[i] = new int[capacity + 1];
+                break;
+            default:
+                objects[i] = new Object[capacity];
+            }
+
+            dictionaryCodes.add(dictCodes);
+            dictionaryValues.add(dictValues);
+        }
+
+        int row = 0;
+        int col = 0;
+        try {
+            while (true) {
+                if (row == capacity) {
+                    capacity *= 2;
+                    grow(capacity);
+                }
+
+                for (col = 0; col < numCols; col++) {
+                    decodeField(input, row, col, dictionaryCodes.get(col), dictionaryValues.get(col));
+                }
+                row++;
+            }
+        } catch (EOFException e) {
+            if (col != 0) {
+                throw new FormatException("DcwColumnarTable: hit EOF in row " + (row + 1)
+                        + " of " + filename);
+            }
+            try {
+                if (input.available() > 0) {
+                    throw new FormatException("DcwColumnarTable: hit EOF with available = "
+                            + input.available() + " in " + filename);
+                }
+            } catch (IOException ioe) {
+                throw new FormatException("IOException calling available()");
+            }
+        }
+
+        rowCount = row;
+
+        for (int i = 0; i < numCols; i++) {
+            List<String> dictValues = dictionaryValues.get(i);
+            if (dictValues != null) {
+                dictionaries[i] = dictValues.toArray(new String[dictValues.size()]);
+            }
+        }
+    }
+
+    /**
+     * Read one field into the column arrays.
+     */
+    private void decodeField(BinaryFile input, int row, int col, Map<String, Integer> dictCodes,
+                             List<String> dictValues) throws EOFException, FormatException {
+        DcwColumnInfo dci = columnInfo[col];
+
+        switch (dci.getFieldType()) {
+        case DcwColumnInfo.VPF_COLUMN_INT:
+            ints[col][row] = input.readInteger();
+            break;
+        case DcwColumnInfo.VPF_COLUMN_SHORT:
+            ints[col][row] = input.readShort();
+            break;
+        case DcwColumnInfo.VPF_COLUMN_TRIPLET: {
+            DcwCrossTileID ctid = new DcwCrossTileID(input);
+            ints[col][row] = ctid.currentTileKey;
+            nextTileIDs[col][row] = ctid.nextTileID;
+            nextTileKeys[col][row] = ctid.nextTileKey;
+            break;
+        }
+        case DcwColumnInfo.VPF_COLUMN_FLOAT:
+            floats[col][row] = input.readFloat();
+            break;
+        case DcwColumnInfo.VPF_COLUMN_DOUBLE:
+            doubles[col][row] = input.readDouble();
+            break;
+        case DcwColumnInfo.VPF_COLUMN_TEXT:
+        case DcwColumnInfo.VPF_COLUMN_TEXTL1: {
+            Object value = dci.parseField(input);
+            String s = (value instanceof String) ? (String) value : value.toString();
+            Integer code = dictCodes.get(s);
+            if (code == null) {
+                code = new Integer(dictValues.size());
+                dictCodes.put(s, code);
+                dictValues.add(s);
+            }
+            codes[col][row] = code.intValue();
+            break;
+        }
+        case DcwColumnInfo.VPF_COLUMN_FLOAT_2COORD:
+        case DcwColumnInfo.VPF_COLUMN_FLOAT_3COORD: {
+            int tupleCount = dci.getNumberOfElements();
+            if (tupleCount == -1) {
+                tupleCount = input.readInteger();
+            }
+            int start = coordOffsets[col][row];
+            int len = tupleCount * getTupleSize(col);
+            if (start + len > coords[col].length) {
+                double[] tmp = new double[Math.max(coords[col].length * 2, start + len)];
+                System.arraycopy(coords[col], 0, tmp, 0, start);
+                coords[col] = tmp;
+            }
+            input.readFloatArray(coords[col], start, len);
+            coordOffsets[col][row + 1] = start + len;
+            break;
+        }
+        default:
+            objects[col][row] = dci.parseField(input);
+        }
+    }
+
+    /**
+     * Enlarge the per-row column arrays.
+     */
+    private void grow(int capacity) {
+        for (int i = 0; i < columnInfo.length; i++) {
+            ints[i] = grow(ints[i], capacity);
+            nextTileIDs[i] = grow(nextTileIDs[i], capacity);
+            nextTileKeys[i] = grow(nextTileKeys[i], capacity);
+            codes[i] = grow(codes[i], capacity);
+            coordOffsets[i] = grow(coordOffsets[i], capacity + 1);
+
+            if (floats[i] != null) {
+                float[] tmp = new float[capacity];
+                System.arraycopy(floats[i], 0, tmp, 0, floats[i].length);
+                floats[i] = tmp;
+            }
+            if (doubles[i] != null) {
+                double[] tmp = new double[capacity];
+                System.arraycopy(doubles[i], 0, tmp, 0, doubles[i].length);
+                doubles[i] = tmp;
+            }
+            if (objects[i] != null) {
+                Object[] tmp = new Object[capacity];
+                System.arraycopy(objects[i], 0, tmp, 0, objects[i].length);
+                objects[i] = tmp;
+            }
+        }
+    }
+
+    private static int[] grow(int[] array, int capacity) {
+        if (array == null) {
+            return null;
+        }
+        int[] tmp = new int[capacity];
+        System.arraycopy(array, 0, tmp, 0, array.length);
+        return tmp;
+    }
+
+    /**
+     * @return the name of the table file the columns were read from.
+     */
+    public String getTableFile() {
+        return filename;
+    }
+
+    /**
+     * @return the number of rows in the table.
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @return the number of columns in the table.
+     */
+    public int getColumnCount() {
+        return columnInfo.length;
+    }
+
+    /**
+     * Return the column info for this table.
+     * <p>
+     * NOTE: modifying this array is likely to cause problems...
+     */
+    public DcwColumnInfo[] getColumnInfo() {
+        return columnInfo;
+    }
+
+    /**
+     * Get a numeric value. Works for I, S, F and R columns, and returns the
+     * current tile key for K columns.
+     * 
+     * @param row the row number [1..rowCount]
+     * @param column the column index
+     * @return the value, cast to an int.
+     * @exception ClassCastException if the column isn't numeric.
+     */
+    public int getInt(int row, int column) {
+        int[] values = ints[column];
+        if (values != null) {
+            return values[row - 1];
+        }
+        return (int) getDouble(row, column);
+    }
+
+    /**
+     * Get a numeric value. Works for I, S, F and R columns, and returns the
+     * current tile key for K columns.
+     * 
+     * @param row the row number [1..rowCount]
+     * @param column the column index
+     * @return the value.
+     * @exception ClassCastException if the column isn't numeric.
+     */
+    public double getDouble(int row, int column) {
+        if (ints[column] != null) {
+            return ints[column][row - 1];
+        }
+        if (floats[column] != null) {
+            return floats[column][row - 1];
+        }
+        if (doubles[column] != null) {
+            return doubles[column][row - 1];
+        }
+        throw new ClassCastException("DcwColumnarTable: column " + columnInfo[column].getColumnName()
+                + " of " + filename + " is not numeric");
+    }
+
+    /**
+     * Get the next tile id of a K column.
+     * 
+     * @param row the row number [1..rowCount]
+     * @param column the column index
+     */
+    public int getNextTileID(int row, int column) {
+        return nextTileIDs[column][row - 1];
+    }
+
+    /**
+     * Get the next tile key of a K column.
+     * 
+     * @param row the row number [1..rowCount]
+     * @param column the column index
+     */
+    public int getNextTileKey(int row, int column) {
+        return nextTileKeys[column][row - 1];
+    }
+
+    /**
+     * Get a text value from a T or L column.
+     * 
+     * @param row the row number [1..rowCount]
+     * @param column the column index
+     */
+    public String getString(int row, int column) {
+        return dictionaries[column][codes[column][row - 1]];
+    }
+
+    /**
+     * Get the dictionary code of a text value from a T or L column. Rows with
+     * the same text have the same code.
+     * 
+     * @param row the row number [1..rowCount]
+     * @param column the column index
+     * @see #getDictionary(int)
+     */
+    public int getStringCode(int row, int column) {
+        return codes[column][row - 1];
+    }
+
+    /**
+     * Get the distinct values of a T or L column, indexed by code.
+     * 
+     * @param column the column index
+     * @see #getStringCode(int, int)
+     */
+    public String[] getDictionary(int column) {
+        return dictionaries[column];
+    }
+
+    /**
+     * @return 2 or 3 for coordinate columns, 0 for other columns.
+     */
+    public int getTupleSize(int column) {
+        switch (columnInfo[column].getFieldType()) {
+        case DcwColumnInfo.VPF_COLUMN_FLOAT_2COORD:
+        case DcwColumnInfo.VPF_COLUMN_DOUBLE_2COORD:
+            return 2;
+        case DcwColumnInfo.VPF_COLUMN_FLOAT_3COORD:
+        case DcwColumnInfo.VPF_COLUMN_DOUBLE_3COORD:
+            return 3;
+        default:
+            return 0;
+        }
+    }
+
+    /**
+     * Get the number of tuples in a C or Z column.
+     * 
+     * @param row the row number [1..rowCount]
+     * @param column the column index
+     */
+    public int getCoordinateCount(int row, int column) {
+        int[] offsets = coordOffsets[column];
+        return (offsets[row] - offsets[row - 1]) / getTupleSize(column);
+    }
+
+    /**
+     * Get the offset of the first value of a row in the array returned by
+     * getCoordinateValues().
+     * 
+     * @param row the row number [1..rowCount]
+     * @param column the column index
+     */
+    public int getCoordinateOffset(int row, int column) {
+        return coordOffsets[column][row - 1];
+    }
+
+    /**
+     * Get the coordinate values of a C or Z column, for all rows. Don't modify
+     * the array, it's shared by everyone using this table.
+     * 
+     * @param column the column index
+     * @see #getCoordinateOffset(int, int)
+     * @see #getCoordinateCount(int, int)
+     */
+    public double[] getCoordinateValues(int column) {
+        return coords[column];
+    }
+
+    /**
+     * Get a copy of the coordinates of a C or Z column.
+     * 
+     * @param row the row number [1..rowCount]
+     * @param column the column index
+     */
+    public CoordFloatString getCoordinates(int row, int column) {
+        return new CoordFloatString(getCoordinateCount(row, column), getTupleSize(column), coords[column], getCoordinateOffset(row, column));
+    }
+
+    /**
+     * Get a value as it would be returned from DcwRecordFile.getRow().
+     * Numbers are boxed, coordinates and cross-tile identifiers are created.
+     * 
+     * @param row the row number [1..rowCount]
+     * @param column the column index
+     */
+    public Object getObject(int row, int column) {
+        switch (columnInfo[column].getFieldType()) {
+        case DcwColumnInfo.VPF_COLUMN_INT:
+            return new Integer(ints[column][row - 1]);
+        case DcwColumnInfo.VPF_COLUMN_SHORT:
+            return new Short((short) ints[column][row - 1]);
+        case DcwColumnInfo.VPF_COLUMN_TRIPLET:
+            return new DcwCrossTileID(ints[column][row - 1], nextTileIDs[column][row - 1], nextTileKeys[column][row - 1]);
+        case DcwColumnInfo.VPF_COLUMN_FLOAT:
+            return new Float(floats[column][row - 1]);
+        case DcwColumnInfo.VPF_COLUMN_DOUBLE:
+            return new Double(doubles[column][row - 1]);
+        case DcwColumnInfo.VPF_COLUMN_TEXT:
+        case DcwColumnInfo.VPF_COLUMN_TEXTL1:
+            return getString(row, column);
+        case DcwColumnInfo.VPF_COLUMN_FLOAT_2COORD:
+        case DcwColumnInfo.VPF_COLUMN_FLOAT_3COORD:
+            return getCoordinates(row, column);
+        default:
+            return objects[column][row - 1];
+        }
+    }
+
+    /**
+     * Create a new cursor for this table, positioned before the first row.
+     */
+    public Row createRow() {
+        return new Row(this);
+    }
+
+    /**
+     * Get an int from a row of a table without boxing it, if the row is a
+     * DcwColumnarTable Row. Otherwise the value must be a Number.
+     * 
+     * @param l a row of a table.
+     * @param column the column index.
+     */
+    public static int intValue(List<?> l, int column) {
+        if (l instanceof Row) {
+            return ((Row) l).getInt(column);
+        }
+        return ((Number) l.get(column)).intValue();
+    }
+
+    /**
+     * A cursor over the rows of a DcwColumnarTable. The cursor is also a
+     * read-only List of the values of the current row, fetched (and boxed) as
+     * they are asked for, so it can be passed anywhere a row from
+     * DcwRecordFile.getRow() could be. Like the Lists filled in by
+     * DcwRecordFile, a Row is reused for each row read, and isn't thread-safe.
+     */
+    public static class Row extends AbstractList<Object> {
+
+        final protected DcwColumnarTable table;
+        protected int row = 0;
+
+        protected Row(DcwColumnarTable table) {
+            this.table = table;
+        }
+
+        /**
+         * @return the table this row reads from.
+         */
+        public DcwColumnarTable getTable() {
+            return table;
+        }
+
+        /**
+         * @return the current row number, 0 if the cursor hasn't been
+         *         positioned yet.
+         */
+        public int getRowNumber() {
+            return row;
+        }
+
+        /**
+         * Move to a row.
+         * 
+         * @param rownumber the row number [1..rowCount]
+         * @return false if there isn't such a row.
+         */
+        public boolean setRow(int rownumber) {
+            if (rownumber < 1 || rownumber > table.rowCount) {
+                return false;
+            }
+            row = rownumber;
+            return true;
+        }
+
+        /**
+         * Move to the next row.
+         * 
+         * @return false if there are no more rows.
+         */
+        public boolean next() {
+            return setRow(row + 1);
+        }
+
+        public int getInt(int column) {
+            return table.getInt(row, column);
+        }
+
+        public double getDouble(int column) {
+            return table.getDouble(row, column);
+        }
+
+        public int getNextTileID(int column) {
+            return table.getNextTileID(row, column);
+        }
+
+        public int getNextTileKey(int column) {
+            return table.getNextTileKey(row, column);
+        }
+
+        public String getString(int column) {
+            return table.getString(row, column);
+        }
+
+        public CoordFloatString getCoordinates(int column) {
+            return table.getCoordinates(row, column);
+        }
+
+        public Object get(int column) {
+            if (row == 0) {
+                throw new IndexOutOfBoundsException("DcwColumnarTable.Row not positioned on a row");
+            }
+            return table.getObject(row, column);
+        }
+
+        public int size() {
+            return row == 0 ? 0 : table.columnInfo.length;
+        }
+    }
+}
@@ -381,14 +381,20 @@ public class DcwRecordFile {
      * consecutive rows.
      * 
      * @param retval append the fields from a row in the table.
-     *        clear() is called before any real work is done.
+     *        clear() is called before any real work is done. If
+     *        retval is a DcwColumnarTable.Row for this table, it is
+     *        moved to its next row instead of reading from the file.
      * @return true is we read a row, false if no more rows are
      *         available
      * @exception FormatException an error was encountered reading the
      *            row
      * @see java.util.List#clear()
+     * @see #createRow()
      */
     public synchronized boolean parseRow(List<Object> retval) throws FormatException {
+        if (isColumnarRow(retval)) {
+            return ((DcwColumnarTable.Row) retval).next();
+        }
         retval.clear();
         try {
             for (int i = 0; i < columnInfo.length; i++) {
@@ -515,12 +521,18 @@ public class DcwRecordFile {
      * 
      * @param rownumber the number of the row to return
      *        [1..recordCount]
-     * @param retval values contained in the row
+     * @param retval values contained in the row. If retval is a
+     *        DcwColumnarTable.Row for this table, it is just moved to
+     *        the row.
      * @exception FormatException data format errors
      * @see #parseRow()
+     * @see #createRow()
      */
     public synchronized boolean getRow(List<Object> retval, int rownumber)
             throws FormatException {
+        if (isColumnarRow(retval)) {
+            return ((DcwColumnarTable.Row) retval).setRow(rownumber);
+        }
         if (inputFile == null) {
             reopen(rownumber);
         } else {
@@ -529,6 +541,67 @@ public class DcwRecordFile {
         return parseRow(retval);
     }
 
+    /**
+     * Returns a List to pass to getRow(List, int) and parseRow(List). If
+     * the decoded columns of this table are available, the List is a
+     * DcwColumnarTable.Row that reads values from them rather than
+     * parsing (and boxing) the fields from the file. Otherwise it's a
+     * plain List the fields get parsed into.
+     * 
+     * @see #getColumnarTable()
+     */
+    public List<Object> createRow() {
+        DcwColumnarTable table = getColumnarTable();
+        if (table != null) {
+            return table.createRow();
+        }
+        return new ArrayList<Object>(getColumnCount());
+    }
+
+    /**
+     * Returns the decoded columns of this table, for createRow(). The
+     * default implementation returns null, subclasses that know where
+     * a decoded copy of the table is kept should return it.
+     * 
+     * @return null if the columns aren't available.
+     * @see TileDirectory#getColumnarTable(DcwRecordFile)
+     */
+    protected DcwColumnarTable getColumnarTable() {
+        return null;
+    }
+
+    /**
+     * @return true if the list is a DcwColumnarTable.Row decoded from
+     *         this table.
+     */
+    protected boolean isColumnarRow(List<Object> l) {
+        return (l instanceof DcwColumnarTable.Row)
+                && filename.equals(((DcwColumnarTable.Row) l).getTable().getTableFile());
+    }
+
+    /**
+     * Decode all of the rows of the table into a DcwColumnarTable.
+     * The file is left open, but the next call to parseRow(List)
+     * needs to be preceded by a seekToRow() or getRow().
+     * 
+     * @return the decoded table
+     * @exception FormatException data format errors
+     */
+    public synchronized DcwColumnarTable readColumnarTable()
+            throws FormatException {
+        if (inputFile == null) {
+            reopen(1);
+        } else {
+            cursorRow = -1;
+            seekToRow(1);
+        }
+        try {
+            return new DcwColumnarTable(filename, columnInfo, inputFile, getRecordCount());
+        } finally {
+            cursorRow = -1;
+        }
+    }
+
     /**
      * moves the input cursor to the specified row [affects subsequent
      * calls parseRow.]
@@ -17,7 +17,6 @@
 
 package com.bbn.openmap.layer.vpf;
 
-import java.util.ArrayList;
 import java.util.List;
 
 import com.bbn.openmap.io.FormatException;
@@ -68,7 +67,7 @@ public class EdgeTable extends PrimitiveTable {
      * @param l the list to retrieve the value from
      */
     public final int getStartNode(List<Object> l) {
-        return ((Number) l.get(covtable.cachedLineSchema[1])).intValue();
+        return DcwColumnarTable.intValue(l, covtable.cachedLineSchema[1]);
     }
 
     /**
@@ -77,7 +76,7 @@ public class EdgeTable extends PrimitiveTable {
      * @param l the list to retrieve the value from
      */
     public final int getEndNode(List<Object> l) {
-        return ((Number) l.get(covtable.cachedLineSchema[2])).intValue();
+        return DcwColumnarTable.intValue(l, covtable.cachedLineSchema[2]);
     }
 
     /**
@@ -161,8 +160,11 @@ public class EdgeTable extends PrimitiveTable {
         }
 
         try {
-            seekToRow(1);
-            for (List<Object> edge = new ArrayList<Object>(); parseRow(edge);) {
+            List<Object> edge = createRow();
+            if (!isColumnarRow(edge)) {
+                seekToRow(1);
+            }
+            while (parseRow(edge)) {
                 warehouse.createEdge(covtable, this, edge, ll1, ll2, dpplat, dpplon, getCoordinates(edge));
             }
         } catch (FormatException f) {
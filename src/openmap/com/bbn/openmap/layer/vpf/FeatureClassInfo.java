@@ -22,6 +22,7 @@
 
 package com.bbn.openmap.layer.vpf;
 
+import java.lang.ref.SoftReference;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -61,6 +62,12 @@ public class FeatureClassInfo extends DcwRecordFile implements TerminatingRunnab
     /** temporary list for use in getDescription() */
     final private List<Object> tmpVec = new ArrayList<Object>();
 
+    /**
+     * the decoded feature table, for createRow(). Soft reference, it'll be let
+     * go if memory gets tight.
+     */
+    private SoftReference<DcwColumnarTable> columnarTable = null;
+
     // Feature Classes cross reference each other. For any feature
     // class name, you can have:
     //
@@ -299,6 +306,28 @@ public class FeatureClassInfo extends DcwRecordFile implements TerminatingRunnab
         return true;
     }
 
+    /**
+     * Returns the decoded columns of the feature table. The feature table
+     * covers all of the tiles of the coverage, so it's kept here instead of
+     * with a TileDirectory.
+     */
+    protected synchronized DcwColumnarTable getColumnarTable() {
+        checkInit();
+        DcwColumnarTable table = (columnarTable != null) ? columnarTable.get() : null;
+        if (table == null && columnInfo != null) {
+            try {
+                table = readColumnarTable();
+                columnarTable = new SoftReference<DcwColumnarTable>(table);
+            } catch (FormatException fe) {
+                if (Debug.debugging("vpf.FormatException")) {
+                    Debug.output("FeatureClassInfo: couldn't decode " + filename + ": "
+                            + fe.getMessage());
+                }
+            }
+        }
+        return table;
+    }
+
     /**
      * Probe the DcwRecordFile looking for what column we are in. (Info needed
      * later to getDescription with the data list.)
@@ -46,6 +46,10 @@ import com.bbn.openmap.util.PropUtils;
  * VMAPData.name=VMAPLEVEL0
  * # Maximum number of tiles to cache.
  * VMAPData.cacheSize=25
+ * # Optional, maximum memory used by cached tiles in MB, and how tiles are
+ * # dropped from the cache (LRU, LFU, TinyLFU).
+ * VMAPData.cacheMemory=64
+ * VMAPData.cachePolicy=LRU
  * 
  * </pre>
  * 
@@ -124,6 +128,7 @@ public class LibraryBean
 
       int cacheSize = PropUtils.intFromProperties(setList, realPrefix + cacheSizeProperty, featureCache.getCacheSize());
       featureCache.resetCache(cacheSize);
+      featureCache.setCacheProperties(realPrefix, setList);
    }
 
    /**
@@ -144,6 +149,7 @@ public class LibraryBean
       String prefix = PropUtils.getScopedPropertyPrefix(this);
       getList.put(prefix + nameProperty, beanName);
       getList.put(prefix + cacheSizeProperty, Integer.toString(featureCache.getCacheSize()));
+      featureCache.getCacheProperties(prefix, getList);
       return getList;
    }
 
@@ -158,6 +164,7 @@ public class LibraryBean
       list.put(pathProperty, "List of VPF directories.");
       list.put(pathProperty + ScopedEditorProperty, "com.bbn.openmap.util.propertyEditor.MultiDirectoryPropertyEditor");
       list.put(cacheSizeProperty, "Maximun number of tiles to cache (25 is default).");
+      featureCache.getCachePropertyInfo(list);
 
       return list;
    }
@@ -76,6 +76,8 @@ public class LibrarySelectionTable {
     private String databaseName;
     /** the database description of itself */
     private String databaseDesc;
+    /** reads tiles in parallel for drawTile(), if set */
+    protected VPFTileLoader tileLoader;
 
     /**
      * Construct a LibrarySelectionTable without a path to data.
@@ -126,6 +128,21 @@ public class LibrarySelectionTable {
         return BROWSE_CUTOFF;
     }
 
+    /**
+     * Set the VPFTileLoader used to read the tiles of a coverage in parallel
+     * in drawTile(). If null, the tiles are read one at a time.
+     */
+    public void setTileLoader(VPFTileLoader loader) {
+        tileLoader = loader;
+    }
+
+    /**
+     * Get the VPFTileLoader used to read tiles in parallel, may be null.
+     */
+    public VPFTileLoader getTileLoader() {
+        return tileLoader;
+    }
+
     /**
      * add a path to LibrarySelectionTable. Adding different types of VPF
      * libraries to the same LST is likely to cause trouble. (e.g. it would be
@@ -344,8 +361,16 @@ public class LibrarySelectionTable {
                     }
 
                     inArea++;
-                    for (TileDirectory tileDirectory : tiles) {
-                        c.drawTile(tileDirectory, warehouse, ll1, ll2, dpplat, dpplon);
+                    VPFTileLoader loader = tileLoader;
+                    if (loader != null && tiles.size() > 1) {
+                        if (!loader.drawTiles(c, tiles, warehouse, ll1, ll2, dpplat, dpplon)) {
+                            // interrupted, the graphics aren't wanted anymore.
+                            return;
+                        }
+                    } else {
+                        for (TileDirectory tileDirectory : tiles) {
+                            c.drawTile(tileDirectory, warehouse, ll1, ll2, dpplat, dpplon);
+                        }
                     }
                 }
             }
@@ -354,7 +379,7 @@ public class LibrarySelectionTable {
             if (VPFLayer.logger.isLoggable(Level.FINE)) {
                 VPFLayer.logger.fine("LST drawing untiled browse data");
             }
-            redrawUntiled.drawTile(new TileDirectory(), warehouse, ll1, ll2, dpplat, dpplon);
+            redrawUntiled.drawTile(redrawUntiled.getUntiledDirectory(), warehouse, ll1, ll2, dpplat, dpplon);
         }
     }
 
@@ -17,7 +17,6 @@
 
 package com.bbn.openmap.layer.vpf;
 
-import java.util.ArrayList;
 import java.util.List;
 
 import com.bbn.openmap.io.FormatException;
@@ -95,7 +94,7 @@ public class NodeTable extends PrimitiveTable {
         double ll2lon = ll2.getX();
 
         try {
-            for (List<Object> node = new ArrayList<Object>(); parseRow(node);) {
+            for (List<Object> node = createRow(); parseRow(node);) {
                 CoordFloatString coords = (CoordFloatString) node.get(coordColumn);
                 double lat = coords.getYasFloat(0);
                 double lon = coords.getXasFloat(0);
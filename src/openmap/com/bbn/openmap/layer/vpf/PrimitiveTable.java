@@ -80,6 +80,25 @@ public abstract class PrimitiveTable extends DcwRecordFile {
         return tile;
     }
 
+    /**
+     * Returns the decoded columns of this table, which are kept by the
+     * TileDirectory so they only get decoded once.
+     */
+    protected DcwColumnarTable getColumnarTable() {
+        return tile.getColumnarTable(this);
+    }
+
+    /**
+     * Decode the columns of this table, and any other tables it reads from,
+     * into the TileDirectory cache. If this returns true, rows can be read
+     * through createRow() lists after the table file is closed.
+     * 
+     * @return true if the columns are available.
+     */
+    public boolean loadColumns() {
+        return getColumnarTable() != null;
+    }
+
     /**
      * Parse the records for this tile, calling warehouse.createXXXX once for
      * each record.
@@ -0,0 +1,345 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.layer.vpf;
+
+import java.util.List;
+import java.util.logging.Level;
+
+import com.bbn.openmap.io.FormatException;
+import com.bbn.openmap.omGraphics.OMGraphic;
+import com.bbn.openmap.proj.coords.LatLonPoint;
+import com.bbn.openmap.util.Debug;
+
+/**
+ * The TableHolder is a utility class that manages the EdgeTable, TextTable and
+ * AreaTable that are needed by the CoverageTable to use the warehouse to create
+ * graphics.
+ */
+class TableHolder {
+
+    EdgeTable edg = null;
+    TextTable tft = null;
+    AreaTable aft = null;
+    NodeTable ent = null;
+    NodeTable cnt = null;
+
+    /**
+     * Used as preallocated lists to read the feature tables, created when the
+     * tables are set.
+     */
+    List<Object> edgRow, tftRow, aftRow, entRow, cntRow;
+    CoverageTable coverageTable;
+
+    /**
+     * Construct the TableHandler with the CoverageTable it is helping.
+     */
+    protected TableHolder(CoverageTable ct) {
+        coverageTable = ct;
+    }
+
+    /**
+     * When drawing features (CoverageTable.drawFeatures()), sets up the
+     * TableHolder tables so that the right types are used.
+     * 
+     * @param featureType from the CoverageTable, either AREA_FEATURETYPE,
+     *        EDGE_FEATURETYPE or TEXT_FEATURETYPE.
+     * @param tile the tile directory that needs to be used when fetching
+     *        graphics from the appropriate files.
+     */
+    protected void setTables(char featureType, TileDirectory tile) throws FormatException {
+
+        if (featureType == CoverageTable.EDGE_FEATURETYPE) {
+            edg = new EdgeTable(coverageTable, tile);
+            edgRow = edg.createRow();
+        }
+        if (featureType == CoverageTable.TEXT_FEATURETYPE) {
+            tft = new TextTable(coverageTable, tile);
+            tftRow = tft.createRow();
+        }
+        if (featureType == CoverageTable.AREA_FEATURETYPE) {
+            aft = new AreaTable(coverageTable, null, tile);
+            aftRow = aft.createRow();
+            edg = null;
+        }
+        if (featureType == CoverageTable.EPOINT_FEATURETYPE) {
+            ent = new NodeTable(coverageTable, tile, true);
+            entRow = ent.createRow();
+        }
+        if (featureType == CoverageTable.CPOINT_FEATURETYPE) {
+            cnt = new NodeTable(coverageTable, tile, false);
+            cntRow = cnt.createRow();
+        }
+
+        if (CoverageTable.logger.isLoggable(Level.FINE)) {
+            int activeTableCount = 0;
+            if (edg != null)
+                activeTableCount++;
+            if (tft != null)
+                activeTableCount++;
+            if (aft != null)
+                activeTableCount++;
+            if (ent != null)
+                activeTableCount++;
+            if (cnt != null)
+                activeTableCount++;
+            if (activeTableCount > 1) {
+                CoverageTable.logger.warning("TableHolder has more than one feature type");
+            }
+        }
+
+    }
+
+    /**
+     * Should be called once per FeatureClassInfo, after the tables have been
+     * set. Lets the tables figure out which columns to use as an index.
+     */
+    protected void findYourself(FeatureClassInfo fci) {
+        if (aft != null) {
+            fci.findYourself(aft);
+        } else if (tft != null) {
+            fci.findYourself(tft);
+        } else if (edg != null) {
+            fci.findYourself(edg);
+        } else if (ent != null) {
+            fci.findYourself(ent);
+        }
+    }
+
+    /**
+     * Should be called once per feature, after the tables have been set
+     * (setTables()), and findYourself() has been called. The appropriate table
+     * will use the warehouse to create proper OMGraphic.
+     */
+    protected OMGraphic drawFeature(int primitiveID, VPFFeatureWarehouse warehouse,
+                                    LatLonPoint ll1, LatLonPoint ll2, double dpplat, double dpplon,
+                                    String currentFeature, int featurePrimID)
+            throws FormatException {
+
+        if (aft != null || tft != null || edg != null || ent != null || cnt != null) {
+            // OK, now check to see what table is being
+            // used. if the tile is being reused, the
+            // table will be reused.
+
+            if ((aft != null) && aft.getRow(aftRow, primitiveID)) {
+                return aft.drawFeature(warehouse, dpplat, dpplon, ll1, ll2, aftRow, currentFeature, featurePrimID);
+            }
+            if ((tft != null) && tft.getRow(tftRow, primitiveID)) {
+                return tft.drawFeature(warehouse, dpplat, dpplon, ll1, ll2, tftRow, currentFeature, featurePrimID);
+            }
+            if ((ent != null) && ent.getRow(entRow, primitiveID)) {
+                return ent.drawFeature(warehouse, dpplat, dpplon, ll1, ll2, entRow, currentFeature, featurePrimID);
+            }
+            if ((cnt != null) && cnt.getRow(cntRow, primitiveID)) {
+                return cnt.drawFeature(warehouse, dpplat, dpplon, ll1, ll2, cntRow, currentFeature, featurePrimID);
+            }
+            if ((edg != null) && edg.getRow(edgRow, primitiveID)) {
+                return edg.drawFeature(warehouse, dpplat, dpplon, ll1, ll2, edgRow, currentFeature, featurePrimID);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Only call once per tile. It will parse all the needed data in the tile.
+     * Does not require setTables() or findYourself().
+     */
+    protected void drawTile(TileDirectory tile, VPFGraphicWarehouse warehouse, LatLonPoint ll1,
+                            LatLonPoint ll2, float dpplat, float dpplon) {
+        openTables(tile, warehouse);
+        drawTables(warehouse, ll1, ll2, dpplat, dpplon);
+    }
+
+    /**
+     * The first half of drawTile(), opens the tables of the tile that the
+     * warehouse wants to draw. Doesn't touch the warehouse otherwise, so it can
+     * be called from a different thread than the one calling drawTables().
+     */
+    protected void openTables(TileDirectory tile, VPFGraphicWarehouse warehouse) {
+
+        boolean drawedge = warehouse.drawEdgeFeatures();
+        boolean drawtext = warehouse.drawTextFeatures();
+        boolean drawarea = warehouse.drawAreaFeatures();
+        boolean drawepoint = warehouse.drawEPointFeatures();
+        boolean drawcpoint = warehouse.drawCPointFeatures();
+        close();
+
+        try {
+            if (drawedge || drawarea) {
+                edg = new EdgeTable(coverageTable, tile);
+            }
+        } catch (FormatException f) {
+            if (Debug.debugging("vpf.FormatException")) {
+                Debug.output("EdgeTable: " + f.getClass() + " " + f.getMessage());
+            }
+        }
+
+        try {
+            if (drawtext) {
+                tft = new TextTable(coverageTable, tile);
+            }
+        } catch (FormatException f) {
+            if (Debug.debugging("vpf.FormatException")) {
+                Debug.output("TextTable: " + f.getClass() + " " + f.getMessage());
+            }
+        }
+
+        try {
+            if (drawepoint) {
+                ent = new NodeTable(coverageTable, tile, true);
+            }
+        } catch (FormatException f) {
+            if (Debug.debugging("vpf.FormatException")) {
+                Debug.output("NodeTable: " + f.getClass() + " " + f.getMessage());
+            }
+        }
+
+        try {
+            if (drawcpoint) {
+                cnt = new NodeTable(coverageTable, tile, false);
+            }
+        } catch (FormatException f) {
+            if (Debug.debugging("vpf.FormatException")) {
+                Debug.output("NodeTable: " + f.getClass() + " " + f.getMessage());
+            }
+        }
+
+        try {
+            if (drawarea && (edg != null)) {
+                aft = new AreaTable(coverageTable, edg, tile);
+            }
+        } catch (FormatException f) {
+            if (Debug.debugging("vpf.FormatException")) {
+                Debug.output("AreaTable: " + f.getClass() + " " + f.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Decode the columns of the open tables into the TileDirectory cache, and
+     * close the files of the tables that were decoded. Those tables will read
+     * from the decoded columns when drawTables() is called.
+     */
+    protected void loadColumns() {
+        // Tables that couldn't be decoded stay open, they'll be parsed from
+        // the file.
+        if (aft != null && aft.loadColumns()) {
+            aft.close();
+        }
+        if (edg != null && edg.loadColumns()) {
+            edg.close();
+        }
+        if (tft != null && tft.loadColumns()) {
+            tft.close();
+        }
+        if (ent != null && ent.loadColumns()) {
+            ent.close();
+        }
+        if (cnt != null && cnt.loadColumns()) {
+            cnt.close();
+        }
+    }
+
+    /**
+     * The second half of drawTile(), hands the contents of the tables opened
+     * by openTables() to the warehouse, and closes the tables.
+     */
+    protected void drawTables(VPFGraphicWarehouse warehouse, LatLonPoint ll1, LatLonPoint ll2,
+                              float dpplat, float dpplon) {
+
+        boolean drawedge = warehouse.drawEdgeFeatures();
+        boolean drawtext = warehouse.drawTextFeatures();
+        boolean drawarea = warehouse.drawAreaFeatures();
+        boolean drawepoint = warehouse.drawEPointFeatures();
+        boolean drawcpoint = warehouse.drawCPointFeatures();
+
+        if ((aft != null) && drawarea) {
+            for (int i = 0; i < coverageTable.areainfo.length; i++) {
+                coverageTable.areainfo[i].findYourself(aft);
+            }
+            aft.drawTile(warehouse, dpplat, dpplon, ll1, ll2);
+        }
+        if ((tft != null) && drawtext) {
+            for (int i = 0; i < coverageTable.textinfo.length; i++) {
+                coverageTable.textinfo[i].findYourself(tft);
+            }
+            tft.drawTile(warehouse, dpplat, dpplon, ll1, ll2);
+        }
+        if ((edg != null) && drawedge) {
+            for (int i = 0; i < coverageTable.lineinfo.length; i++) {
+                coverageTable.lineinfo[i].findYourself(edg);
+            }
+            edg.drawTile(warehouse, dpplat, dpplon, ll1, ll2);
+        }
+        if ((ent != null) && drawepoint) {
+            for (int i = 0; i < coverageTable.epointinfo.length; i++) {
+                coverageTable.epointinfo[i].findYourself(ent);
+            }
+            ent.drawTile(warehouse, dpplat, dpplon, ll1, ll2);
+        }
+        if ((cnt != null) && drawcpoint) {
+            for (int i = 0; i < coverageTable.cpointinfo.length; i++) {
+                coverageTable.cpointinfo[i].findYourself(cnt);
+            }
+            cnt.drawTile(warehouse, dpplat, dpplon, ll1, ll2);
+        }
+        // if (Debug.On && Debug.debugging("vpf.tile"))
+        // Debug.output(drawtd.toString() + " " + edgecount[0] +
+        // " polys with " + edgecount[1] +
+        // " points (cumulative)\n" +
+        // drawtd.toString() + " " + textcount[0] +
+        // " texts with " + textcount[1] +
+        // " points (cumulative)\n" +
+        // drawtd.toString() + " " + areacount[0] +
+        // " areas with " + areacount[1] +
+        // " points (cumulative)");
+        close();
+    }
+
+    /**
+     * Close any of these tables that may be in use.
+     */
+    protected void close() {
+        if (Debug.debugging("vpf.tile")) {
+            Debug.output("CoverageTable closing tile tables");
+        }
+        if (edg != null) {
+            edg.close();
+        }
+        if (tft != null) {
+            tft.close();
+        }
+        if (aft != null) {
+            aft.close();
+        }
+        if (ent != null) {
+            ent.close();
+        }
+        if (cnt != null) {
+            cnt.close();
+        }
+        aft = null;
+        tft = null;
+        edg = null;
+        ent = null;
+        cnt = null;
+        aftRow = null;
+        tftRow = null;
+        edgRow = null;
+        entRow = null;
+        cntRow = null;
+    }
+
+}
@@ -17,7 +17,6 @@
 
 package com.bbn.openmap.layer.vpf;
 
-import java.util.ArrayList;
 import java.util.List;
 
 import com.bbn.openmap.io.FormatException;
@@ -82,7 +81,7 @@ public class TextTable extends PrimitiveTable {
         double ll2lon = ll2.getX();
 
         try {
-            for (List<Object> text = new ArrayList<Object>(); parseRow(text);) {
+            for (List<Object> text = createRow(); parseRow(text);) {
                 String textval = (String) text.get(textColumn);
                 CoordFloatString coords = (CoordFloatString) text.get(coordColumn);
                 double lat = coords.getYasFloat(0);
@@ -22,6 +22,14 @@
 
 package com.bbn.openmap.layer.vpf;
 
+import java.lang.ref.SoftReference;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.bbn.openmap.io.FormatException;
+
 /**
  * This class maps latitudes and longitudes to a particular tile
  * directory.
@@ -34,6 +42,13 @@ public class TileDirectory {
     final private float westlon, southlat, eastlon, northlat;
     /** the tile ID of this object */
     final private int tileID;
+    /**
+     * the decoded tables of this tile, by file name. Soft references, so
+     * they'll be let go if memory gets tight.
+     */
+    final private Map<String, SoftReference<DcwColumnarTable>> columnarTables = new HashMap<String, SoftReference<DcwColumnarTable>>();
+
+    protected final static Logger logger = Logger.getLogger("com.bbn.openmap.layer.vpf.TileDirectory");
 
     /**
      * Construct a TileDirectory with a path and boundaries.
@@ -91,6 +106,40 @@ public class TileDirectory {
         return tileID;
     }
 
+    /**
+     * Get the decoded columns of a table in this tile. The table is decoded
+     * the first time it's asked for, and the result is kept with this tile
+     * for later requests.
+     * 
+     * @param table a table from this tile.
+     * @return the decoded table, or null if it couldn't be read.
+     */
+    public synchronized DcwColumnarTable getColumnarTable(DcwRecordFile table) {
+        String key = table.getTableFile();
+        SoftReference<DcwColumnarTable> ref = columnarTables.get(key);
+        DcwColumnarTable columns = (ref != null) ? ref.get() : null;
+
+        if (columns == null) {
+            try {
+                columns = table.readColumnarTable();
+                columnarTables.put(key, new SoftReference<DcwColumnarTable>(columns));
+            } catch (FormatException fe) {
+                if (logger.isLoggable(Level.FINE)) {
+                    logger.fine("couldn't decode " + key + ": " + fe.getMessage());
+                }
+            }
+        }
+
+        return columns;
+    }
+
+    /**
+     * Forget about any decoded tables for this tile.
+     */
+    public synchronized void clearColumnarTables() {
+        columnarTables.clear();
+    }
+
     /**
      * Return a string describing ourselves
      * 
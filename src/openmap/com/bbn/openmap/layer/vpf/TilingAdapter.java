@@ -77,11 +77,11 @@ public interface TilingAdapter {
         }
 
         public int getPrimId(List<Object> l) {
-            return ((Number) l.get(column)).intValue();
+            return DcwColumnarTable.intValue(l, column);
         }
 
         public int getTilePrimId(List<Object> l) {
-            return ((Number) l.get(column)).intValue();
+            return DcwColumnarTable.intValue(l, column);
         }
 
         public DcwCrossTileID getPrim(List<Object> l) {
@@ -102,14 +102,23 @@ public interface TilingAdapter {
         }
 
         public int getTileId(List<Object> l) {
+            if (l instanceof DcwColumnarTable.Row) {
+                return ((DcwColumnarTable.Row) l).getNextTileID(column);
+            }
             return getPrim(l).nextTileID;
         }
 
         public int getPrimId(List<Object> l) {
+            if (l instanceof DcwColumnarTable.Row) {
+                return ((DcwColumnarTable.Row) l).getInt(column);
+            }
             return getPrim(l).currentTileKey;
         }
 
         public int getTilePrimId(List<Object> l) {
+            if (l instanceof DcwColumnarTable.Row) {
+                return ((DcwColumnarTable.Row) l).getNextTileKey(column);
+            }
             return getPrim(l).nextTileKey;
         }
 
@@ -135,7 +144,7 @@ public interface TilingAdapter {
         }
 
         public int getTileId(List<Object> l) {
-            return ((Number) l.get(tilecolumn)).intValue();
+            return DcwColumnarTable.intValue(l, tilecolumn);
         }
 
         public int getPrimId(List<Object> l) {
@@ -143,7 +152,7 @@ public interface TilingAdapter {
         }
 
         public int getTilePrimId(List<Object> l) {
-            return ((Number) l.get(primcolumn)).intValue();
+            return DcwColumnarTable.intValue(l, primcolumn);
         }
 
         public DcwCrossTileID getPrim(List<Object> l) {
@@ -142,6 +142,19 @@ public class VPFCachedFeatureGraphicWarehouse
    }
 
    protected FeatureCacheGraphicList cacheList;
+   /** The library, feature and tile of the cacheList being filled. */
+   protected String cacheListLibrary, cacheListFeature, cacheListTile;
+
+   /**
+    * Put the list that was being filled into the feature cache, now that it's
+    * done.
+    */
+   protected synchronized void cacheLoadedList() {
+      if (featureCache != null && cacheList != null) {
+         featureCache.cacheLoadedList(cacheListLibrary, cacheListFeature, cacheListTile, cacheList);
+      }
+      cacheList = null;
+   }
 
    /**
     * Calls addToCachedList on the feature cache if it's available.
@@ -177,15 +190,20 @@ public class VPFCachedFeatureGraphicWarehouse
    /**
     * Calls VPFFeatureCache.needToFetchTileContents().
     */
-   public boolean needToFetchTileContents(String libraryName, String currentFeature, TileDirectory currentTile) {
+   public synchronized boolean needToFetchTileContents(String libraryName, String currentFeature, TileDirectory currentTile) {
       if (featureCache != null) {
          // The cached graphics list will be added to the graphics
          // list provided. If it was just created, it will also be passed
          // back from the needToFetchTileContents and should be loaded by the
          // CoverageTable. We're going to hold on to it inside the warehouse
-         // and just add OMGraphics to it while it is set.
+         // and just add OMGraphics to it while it is set, and put it in the
+         // cache when the next tile is asked for.
 
+         cacheLoadedList();
          cacheList = featureCache.needToFetchTileContents(libraryName, currentFeature, currentTile, graphics);
+         cacheListLibrary = libraryName;
+         cacheListFeature = currentFeature;
+         cacheListTile = currentTile.getPath();
 
          return cacheList != null;
 
@@ -212,6 +230,7 @@ public class VPFCachedFeatureGraphicWarehouse
          // the bottom. We're going to assume that the area, edge,
          // text, point sublists are null and empty, since the
          // cached stuff has been added directly to graphics.
+         cacheLoadedList();
          OMGraphicList ret = new OMGraphicList();
          ret.setTraverseMode(OMGraphicList.LAST_ADDED_ON_TOP);
 
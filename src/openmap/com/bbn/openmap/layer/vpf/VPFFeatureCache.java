@@ -26,16 +26,23 @@ import java.util.logging.Level;
 
 import com.bbn.openmap.omGraphics.OMGraphic;
 import com.bbn.openmap.omGraphics.OMGraphicList;
-import com.bbn.openmap.util.cacheHandler.CacheHandler;
+import com.bbn.openmap.omGraphics.OMPoly;
+import com.bbn.openmap.omGraphics.OMText;
 import com.bbn.openmap.util.cacheHandler.CacheObject;
+import com.bbn.openmap.util.cacheHandler.ConcurrentCacheHandler;
 
 /**
  * The VPFFeatureCache is an extended CacheHandler that caches OMGraphicLists
  * representing a specific feature contained in a CoverageTile. It's used by the
  * VPFCachedFeatureGraphicWarehouse, which in turn is used by the LibraryBean as
  * a central warehouse.
+ * <P>
+ * Lists that need to be read from the data files are handed out before they
+ * are put in the cache. The warehouse filling a list puts it in the cache
+ * with cacheLoadedList() when it's done, so if a memory limit is set on the
+ * cache, lists are weighed when they are full.
  */
-public class VPFFeatureCache extends CacheHandler {
+public class VPFFeatureCache extends ConcurrentCacheHandler {
 
     /**
      * Create a VPFFeatureCache of the default maximum size.
@@ -92,10 +99,11 @@ public class VPFFeatureCache extends CacheHandler {
      *        the graphics list.
      * @return OMGraphicList instead of returning a boolean, we should return
      *         the empty cache OMGraphicList that needs to be loaded. A returned
-     *         list is the signal that the tile needs to be read. Also, the
-     *         cached list has just been added to the requestor list. If the
-     *         list is in the cache, it will not be returned from this method
-     *         but only added to the requestor list.
+     *         list is the signal that the tile needs to be read, and has just
+     *         been added to the requestor list. It isn't in the cache yet,
+     *         pass it to cacheLoadedList() when it's filled. If the list is in
+     *         the cache, it will not be returned from this method but only
+     *         added to the requestor list.
      */
     public synchronized FeatureCacheGraphicList loadCachedGraphicList(String libraryName, 
                                                                       String featureType,
@@ -103,13 +111,21 @@ public class VPFFeatureCache extends CacheHandler {
                                                                       OMGraphicList requestor) {
 
         String key = createTableCacheKey(libraryName, featureType, tilePath);
-        boolean exists = (searchCache(key) != null);
+        CacheObject cached = searchCache(key);
 
-        // Will retrieve the old list if it exists, create a new one
-        // if it doesn't.
+        // Retrieve the old list if it exists, create a new one if it
+        // doesn't.
+
+        FeatureCacheGraphicList ret = null;
+        FeatureCacheGraphicList fcgl;
+        if (cached != null) {
+            fcgl = (FeatureCacheGraphicList) cached.obj;
+        } else {
+            fcgl = FeatureCacheGraphicList.createForType(VPFUtil.getTypeForFeatureCode(featureType));
+            logger.fine("tile list didn't exist in cache, returning it to be loaded.");
+            ret = fcgl;
+        }
 
-        FeatureCacheGraphicList fcgl = (FeatureCacheGraphicList) get(key,
-                VPFUtil.getTypeForFeatureCode(featureType));
         if (fcgl.getFeatureName() == null) {
             fcgl.setFeatureName(featureType);
         }
@@ -118,14 +134,26 @@ public class VPFFeatureCache extends CacheHandler {
         // Might want to set the current attributes for the existing
         // contents of the list in case they were changed by the user.
 
-        FeatureCacheGraphicList ret = null;
-        if (!exists) {
-            logger.fine("tile list didn't exist in cache, returning it to be loaded.");
-            ret = fcgl;
-        }
         return ret;
     }
 
+    /**
+     * Put a list returned from loadCachedGraphicList() in the cache, after it
+     * has been filled. The list is weighed now, if the cache has a memory
+     * limit.
+     * 
+     * @param libraryName the library name used to get the list.
+     * @param featureType the feature type code used to get the list.
+     * @param tilePath the relative path to the tile file used to get the list.
+     * @param list the filled list.
+     */
+    public void cacheLoadedList(String libraryName, String featureType, String tilePath,
+                                FeatureCacheGraphicList list) {
+        if (list != null) {
+            replaceLeastUsed(new VPFListCacheObject(createTableCacheKey(libraryName, featureType, tilePath), list));
+        }
+    }
+
     /**
      * Query that the CoverageTable makes to decide whether to read the file
      * contents or to used the cached version.
@@ -203,6 +231,34 @@ public class VPFFeatureCache extends CacheHandler {
         return null;
     }
 
+    /**
+     * Estimates the memory used by a list of features, counting the
+     * coordinates of polys and the characters of text.
+     */
+    protected long weigh(CacheObject co) {
+        return weigh((OMGraphicList) co.obj);
+    }
+
+    protected long weigh(OMGraphicList list) {
+        long weight = 64;
+        if (list != null) {
+            for (OMGraphic omg : list) {
+                if (omg instanceof OMGraphicList) {
+                    weight += weigh((OMGraphicList) omg);
+                } else if (omg instanceof OMPoly) {
+                    double[] coords = ((OMPoly) omg).getLatLonArray();
+                    weight += 128 + (coords != null ? 8L * coords.length : 0);
+                } else if (omg instanceof OMText) {
+                    String data = ((OMText) omg).getData();
+                    weight += 128 + (data != null ? 2L * data.length() : 0);
+                } else {
+                    weight += 128;
+                }
+            }
+        }
+        return weight;
+    }
+
     /**
      * CacheObject used by VPFFeatureCache.
      */
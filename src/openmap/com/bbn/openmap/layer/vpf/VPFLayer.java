@@ -195,6 +195,12 @@ public class VPFLayer
    public static final String cutoffScaleProperty = "cutoffScale";
    /** Property for setting VPF library name to use */
    public static final String LibraryNameProperty = "libraryName";
+   /**
+    * Property for setting the number of threads used to read tiles in
+    * parallel. 0 (default) uses the number of processors, 1 reads the tiles
+    * one at a time.
+    */
+   public static final String TileLoaderThreadsProperty = "tileLoaderThreads";
    /** the object that knows all the nitty-gritty vpf stuff */
    protected transient LibrarySelectionTable lst;
    /** our own little graphics factory */
@@ -219,6 +225,10 @@ public class VPFLayer
    protected int cutoffScale = LibrarySelectionTable.DEFAULT_BROWSE_CUTOFF;
    /** the library name to focus on */
    protected String libraryName = null;
+   /** the number of threads reading tiles, 0 for the number of processors */
+   protected int tileLoaderThreads = 0;
+   /** reads tiles in parallel, shared with the lst */
+   protected transient VPFTileLoader tileLoader;
 
    /**
     * Construct a VPF layer.
@@ -268,6 +278,8 @@ public class VPFLayer
 
       libraryName = props.getProperty(realPrefix + LibraryNameProperty, libraryName);
 
+      tileLoaderThreads = PropUtils.intFromProperties(props, realPrefix + TileLoaderThreadsProperty, tileLoaderThreads);
+
       String path[] = PropUtils.initPathsFromProperties(props, realPrefix + pathProperty);
 
       if (path != null && path.length != 0) {
@@ -319,6 +331,7 @@ public class VPFLayer
       String realPrefix = PropUtils.getScopedPropertyPrefix(this);
 
       props.put(realPrefix + cutoffScaleProperty, Integer.toString(cutoffScale));
+      props.put(realPrefix + TileLoaderThreadsProperty, Integer.toString(tileLoaderThreads));
 
       if (libraryBeanName != null) {
          props.put(realPrefix + libraryProperty, libraryBeanName);
@@ -535,6 +548,7 @@ public class VPFLayer
                   logger.fine("VPFLayer.initLST(dataPaths)");
                   lst = new LibrarySelectionTable(dataPaths);
                   lst.setCutoffScale(cutoffScale);
+                  lst.setTileLoader(getTileLoader());
                }
             }
          }
@@ -548,6 +562,22 @@ public class VPFLayer
       }
    }
 
+   /**
+    * Get the VPFTileLoader for reading tiles in parallel, created with
+    * tileLoaderThreads threads the first time it's needed.
+    * 
+    * @return null if tiles should be read one at a time.
+    */
+   protected synchronized VPFTileLoader getTileLoader() {
+      if (tileLoaderThreads == 1) {
+         return null;
+      }
+      if (tileLoader == null) {
+         tileLoader = new VPFTileLoader(tileLoaderThreads);
+      }
+      return tileLoader;
+   }
+
    public void setWarehouse(LayerGraphicWarehouseSupport wh) {
       warehouse = wh;
    }
@@ -0,0 +1,227 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.layer.vpf;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.bbn.openmap.proj.coords.LatLonPoint;
+
+/**
+ * The VPFTileLoader reads the tiles of a coverage in parallel. Each tile is
+ * opened and decoded by a worker thread, using its own tables and file handles,
+ * while the calling thread hands the decoded tiles to the warehouse in the
+ * order they were asked for. Warehouses don't need to be thread-safe, and the
+ * graphics end up in the same order they would if the tiles were read one
+ * after the other.
+ * <p>
+ * If the calling thread is interrupted (like the layer worker thread is when a
+ * new projection arrives), the tiles that haven't been drawn yet are
+ * cancelled.
+ * 
+ * @author dietrick
+ */
+public class VPFTileLoader {
+
+    public static Logger logger = Logger.getLogger("com.bbn.openmap.layer.vpf.VPFTileLoader");
+
+    /** The time idle worker threads stick around, in seconds. */
+    public final static long KEEP_ALIVE_TIME = 30L;
+
+    protected final ThreadPoolExecutor executor;
+
+    /**
+     * Create a VPFTileLoader.
+     * 
+     * @param numThreads the number of worker threads, if less than 1 the
+     *        number of available processors is used.
+     */
+    public VPFTileLoader(int numThreads) {
+        if (numThreads < 1) {
+            numThreads = Runtime.getRuntime().availableProcessors();
+        }
+
+        executor = new ThreadPoolExecutor(numThreads, numThreads, KEEP_ALIVE_TIME, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new LoaderThreadFactory());
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @return the number of worker threads.
+     */
+    public int getNumThreads() {
+        return executor.getMaximumPoolSize();
+    }
+
+    /**
+     * Draw the tiles of a coverage into a warehouse. Returns when all of the
+     * tiles have been drawn, or when the calling thread is interrupted.
+     * 
+     * @param covtable the coverage to draw.
+     * @param tiles the tiles of the coverage to draw.
+     * @param warehouse the warehouse to draw into, only called from the calling
+     *        thread.
+     * @param ll1 upperleft of selection region (passed to warehouse)
+     * @param ll2 lowerright of selection region (passed to warehouse)
+     * @param dpplat threshold for latitude thinning (passed to warehouse)
+     * @param dpplon threshold for longitude thinning (passed to warehouse)
+     * @return false if the drawing was cancelled by an interrupt.
+     */
+    public boolean drawTiles(CoverageTable covtable, List<TileDirectory> tiles,
+                             VPFGraphicWarehouse warehouse, LatLonPoint ll1, LatLonPoint ll2,
+                             float dpplat, float dpplon) {
+
+        if (Thread.currentThread().isInterrupted()) {
+            return false;
+        }
+
+        List<TileLoad> tileLoads = new ArrayList<TileLoad>(tiles.size());
+        List<Future<TableHolder>> loads = new ArrayList<Future<TableHolder>>(tiles.size());
+        for (TileDirectory tile : tiles) {
+            TileLoad tileLoad = new TileLoad(covtable, tile, warehouse);
+            tileLoads.add(tileLoad);
+            loads.add(executor.submit(tileLoad));
+        }
+
+        int drawn = 0;
+        try {
+            for (Future<TableHolder> load : loads) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new InterruptedException();
+                }
+
+                TableHolder tables = null;
+                try {
+                    tables = load.get();
+                } catch (ExecutionException ee) {
+                    logger.log(Level.WARNING, "problem loading " + tiles.get(drawn), ee.getCause());
+                }
+
+                if (tables != null) {
+                    tables.drawTables(warehouse, ll1, ll2, dpplat, dpplon);
+                }
+                drawn++;
+            }
+            return true;
+        } catch (InterruptedException ie) {
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine("cancelled after " + drawn + " of " + tiles.size() + " tiles");
+            }
+            cancel(tileLoads.subList(drawn, tileLoads.size()), loads.subList(drawn, loads.size()));
+            // Let the caller know, too.
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Cancel loads that haven't been drawn. Loads that haven't started are
+     * dropped, the tables of loads that are running or finished get closed.
+     */
+    protected void cancel(List<TileLoad> tileLoads, List<Future<TableHolder>> loads) {
+        for (Future<TableHolder> load : loads) {
+            load.cancel(false);
+        }
+        for (TileLoad tileLoad : tileLoads) {
+            tileLoad.cancel();
+        }
+    }
+
+    /**
+     * Opens and decodes the tables for a tile on a worker thread. A load that
+     * gets cancelled closes its own tables, since nobody will draw them.
+     */
+    protected static class TileLoad implements Callable<TableHolder> {
+        protected final CoverageTable covtable;
+        protected final TileDirectory tile;
+        protected final VPFGraphicWarehouse warehouse;
+        protected boolean cancelled = false;
+        protected TableHolder loaded;
+
+        protected TileLoad(CoverageTable covtable, TileDirectory tile, VPFGraphicWarehouse warehouse) {
+            this.covtable = covtable;
+            this.tile = tile;
+            this.warehouse = warehouse;
+        }
+
+        public TableHolder call() throws Exception {
+            TableHolder tables = new TableHolder(covtable);
+            boolean keep = false;
+            try {
+                tables.openTables(tile, warehouse);
+                tables.loadColumns();
+                synchronized (this) {
+                    if (!cancelled) {
+                        loaded = tables;
+                        keep = true;
+                    }
+                }
+            } finally {
+                if (!keep) {
+                    tables.close();
+                }
+            }
+            return keep ? tables : null;
+        }
+
+        /**
+         * Close the tables if they have been loaded, or have them closed when
+         * they are.
+         */
+        protected void cancel() {
+            TableHolder tables;
+            synchronized (this) {
+                cancelled = true;
+                tables = loaded;
+                loaded = null;
+            }
+            if (tables != null) {
+                tables.close();
+            }
+        }
+    }
+
+    /**
+     * Stop the worker threads. The loader can't be used after this.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Makes daemon threads, so idle loaders don't hold up the application
+     * exiting.
+     */
+    protected static class LoaderThreadFactory implements ThreadFactory {
+        private static final AtomicInteger poolCount = new AtomicInteger(1);
+        private final AtomicInteger threadCount = new AtomicInteger(1);
+        private final String namePrefix = "VPFTileLoader-" + poolCount.getAndIncrement() + "-";
+
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, namePrefix + threadCount.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
@@ -24,6 +24,7 @@ package com.bbn.openmap.omGraphics;
 
 import java.awt.Paint;
 import java.awt.TexturePaint;
+import java.awt.geom.Point2D;
 import java.io.EOFException;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -38,6 +39,8 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.bbn.openmap.omGraphics.grid.OMGridGenerator;
 import com.bbn.openmap.proj.Projection;
@@ -117,6 +120,126 @@ public class OMGraphicList extends OMList<OMGraphic> implements Serializable {
         return new OMGraphicList(graphics).listIterator(size);
     }
 
+    /**
+     * The number of lat/lon OMPoints and OMTexts that need to be generated
+     * before their locations are projected together, with one
+     * Projection.forwardPoints() call.
+     */
+    public final static int MIN_POINT_BATCH = 16;
+
+    /**
+     * For each OMPoint and OMText class seen, whether it leaves
+     * generate(Projection) to OMPoint or OMText.
+     */
+    private final static Map<Class<?>, Boolean> batchableClasses = new ConcurrentHashMap<Class<?>, Boolean>();
+
+    /**
+     * Whether the graphic's location can be projected with the batch. Only
+     * OMPoints and OMTexts whose class doesn't override generate(Projection)
+     * qualify, since a batched graphic is generated with generate(Projection,
+     * Point2D) instead.
+     */
+    private static boolean isBatchable(OMGraphic omg) {
+        Class<?> base;
+        if (omg instanceof OMPoint) {
+            base = OMPoint.class;
+        } else if (omg instanceof OMText) {
+            base = OMText.class;
+        } else {
+            return false;
+        }
+
+        Class<?> c = omg.getClass();
+        Boolean batchable = batchableClasses.get(c);
+        if (batchable == null) {
+            try {
+                batchable = Boolean.valueOf(c.getMethod("generate", Projection.class).getDeclaringClass() == base);
+            } catch (NoSuchMethodException nsme) {
+                batchable = Boolean.FALSE;
+            }
+            batchableClasses.put(c, batchable);
+        }
+        return batchable.booleanValue();
+    }
+
+    /**
+     * Prepare the graphics for rendering. OMPoints and OMTexts with lat/lon
+     * locations have their locations projected all at once, if there are
+     * enough of them, and then they and the other graphics are generated.
+     * Subclasses that override generate(Projection) are generated on their
+     * own.
+     * 
+     * @param p a <code>Projection</code>
+     * @param forceProjectAll if true, all the graphics on the list are
+     *        generated with the new projection. If false they are only
+     *        generated if getNeedToRegenerate() returns true
+     * @return true if generation was successful for all objects on list.
+     */
+    public boolean generate(Projection p, boolean forceProjectAll) {
+        if (p == null || size() < MIN_POINT_BATCH) {
+            return super.generate(p, forceProjectAll);
+        }
+
+        boolean ret = true;
+        synchronized (graphics) {
+            OMGraphic[] batch = new OMGraphic[graphics.size()];
+            double[] llpts = new double[batch.length * 2];
+            int count = 0;
+            for (OMGraphic omg : graphics) {
+                if (!forceProjectAll && !omg.getNeedToRegenerate()) {
+                    continue;
+                }
+                int renderType = omg.getRenderType();
+                if ((renderType != RENDERTYPE_LATLON && renderType != RENDERTYPE_OFFSET)
+                        || !isBatchable(omg)) {
+                    continue;
+                }
+                if (omg instanceof OMPoint) {
+                    llpts[count * 2] = ((OMPoint) omg).getLat();
+                    llpts[count * 2 + 1] = ((OMPoint) omg).getLon();
+                    batch[count++] = omg;
+                } else if (omg instanceof OMText) {
+                    llpts[count * 2] = ((OMText) omg).getLat();
+                    llpts[count * 2 + 1] = ((OMText) omg).getLon();
+                    batch[count++] = omg;
+                }
+            }
+
+            if (count < MIN_POINT_BATCH) {
+                return super.generate(p, forceProjectAll);
+            }
+
+            double[] xypts = new double[count * 2];
+            boolean[] visible = new boolean[count];
+            p.forwardPoints(llpts, 0, xypts, 0, visible, 0, count);
+
+            Point2D projected = new Point2D.Double();
+            for (int i = 0; i < count; i++) {
+                projected.setLocation(xypts[i * 2], xypts[i * 2 + 1]);
+                Point2D pt = visible[i] ? projected : null;
+                if (batch[i] instanceof OMPoint) {
+                    ret &= ((OMPoint) batch[i]).generate(p, pt);
+                } else {
+                    ret &= ((OMText) batch[i]).generate(p, pt);
+                }
+            }
+
+            // The batch is in list order, so the rest can be picked out as
+            // we go.
+            int b = 0;
+            for (OMGraphic omg : graphics) {
+                if (b < count && omg == batch[b]) {
+                    b++;
+                } else if (forceProjectAll) {
+                    ret &= omg.generate(p);
+                } else {
+                    ret &= omg.regenerate(p);
+                }
+            }
+        }
+        return ret;
+    }
+
     /**
      * Add an OMGraphic to the list.
      */
@@ -235,6 +235,26 @@ public class OMPoint
      * @return true if generate was successful
      */
     public boolean generate(Projection proj) {
+        Point2D p1 = null;
+        if (proj != null && (renderType == RENDERTYPE_LATLON || renderType == RENDERTYPE_OFFSET)
+                && proj.isPlotable(lat1, lon1)) {
+            p1 = proj.forward(lat1, lon1, new Point2D.Double());
+        }
+        return generate(proj, p1);
+    }
+
+    /**
+     * Prepare the point for rendering, with the lat/lon location already
+     * projected. OMGraphicLists call this to project the locations of many
+     * points at once, so subclasses should override this method instead of
+     * generate(Projection).
+     * 
+     * @param proj Projection
+     * @param p1 the projected lat/lon location, null if it isn't plot-able.
+     *        Not used for RENDERTYPE_XY points.
+     * @return true if generate was successful
+     */
+    public boolean generate(Projection proj, Point2D p1) {
 
         setNeedToRegenerate(true);
 
@@ -259,16 +279,18 @@ public class OMPoint
                 break;
             case RENDERTYPE_OFFSET:
             case RENDERTYPE_LATLON:
-                if (!proj.isPlotable(lat1, lon1)) {
+                if (p1 == null) {
                     setNeedToRegenerate(true);// HMMM not the best flag
                     return false;
                 }
-                Point p1 = (Point) proj.forward(lat1, lon1, new Point());
-
-                x1 = p1.x + x - radius;
-                y1 = p1.y + y - radius;
-                x2 = p1.x + x + radius;
-                y2 = p1.y + y + radius;
+                // Rounded to the nearest pixel, like a java.awt.Point.
+                int px = (int) Math.floor(p1.getX() + .5);
+                int py = (int) Math.floor(p1.getY() + .5);
+
+                x1 = px + x - radius;
+                y1 = py + y - radius;
+                x2 = px + x + radius;
+                y2 = py + y + radius;
                 break;
             case RENDERTYPE_UNKNOWN:
                 System.err.println("OMPoint.generate(): invalid RenderType");
@@ -381,11 +403,13 @@ public class OMPoint
          * Prepare the point image for rendering.
          * 
          * @param proj Projection
+         * @param p1 the projected lat/lon location, null if it isn't
+         *        plot-able.
          * @return true if generate was successful
          */
-        public boolean generate(Projection proj) {
+        public boolean generate(Projection proj, Point2D p1) {
             if (!isUseImage() || image == null) {
-                return super.generate(proj);
+                return super.generate(proj, p1);
             }
 
             if (proj == null) {
@@ -407,11 +431,10 @@ public class OMPoint
                     break;
                 case RENDERTYPE_OFFSET:
                 case RENDERTYPE_LATLON:
-                    if (!proj.isPlotable(lat1, lon1)) {
+                    if (p1 == null) {
                         setNeedToRegenerate(true);// HMMM not the best flag
                         return false;
                     }
-                    Point2D p1 = proj.forward(lat1, lon1);
 
                     imageX = (int) p1.getX() + x - imageOffsetX;
                     imageY = (int) p1.getY() + y - imageOffsetY;
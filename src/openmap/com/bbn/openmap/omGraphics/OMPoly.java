@@ -32,10 +32,12 @@ import java.awt.geom.GeneralPath;
 import java.awt.geom.Line2D;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import com.bbn.openmap.MoreMath;
 import com.bbn.openmap.geo.Geo;
 import com.bbn.openmap.geo.Intersection;
+import com.bbn.openmap.proj.Cylindrical;
 import com.bbn.openmap.proj.DrawUtil;
 import com.bbn.openmap.proj.GeoProj;
 import com.bbn.openmap.proj.ProjMath;
@@ -157,6 +159,13 @@ public class OMPoly extends OMAbstractLine implements Serializable {
      */
     protected boolean doShapes = false;
 
+    /**
+     * Projected coordinates from the last full lat/lon generate with a
+     * Cylindrical projection, used to move the poly to a panned or zoomed view
+     * of the same projection type without projecting every vertex again.
+     */
+    protected transient ProjectedCache projectedCache = null;
+
     /**
      * Construct a default OMPoly.
      */
@@ -297,6 +306,7 @@ public class OMPoly extends OMAbstractLine implements Serializable {
             ProjMath.arrayDegToRad(llPoints);
         }
         rawllpts = llPoints;
+        projectedCache = null;
         setNeedToRegenerate(true);
         setRenderType(RENDERTYPE_LATLON);
     }
@@ -676,11 +686,12 @@ public class OMPoly extends OMAbstractLine implements Serializable {
                     ProjMath.arrayDegToRad(rawllpts);
                     units = RADIANS;
                 }
-                vector = ((GeoProj) proj).forwardPoly(rawllpts, lineType, nsegs, isPolygon());
+                vector = forwardPoly((GeoProj) proj);
             } else {
                 if (units == RADIANS) {
                     ProjMath.arrayRadToDeg(rawllpts);
                     units = DECIMAL_DEGREES;
+                    projectedCache = null;
                 }
                 vector = proj.forwardPoly(rawllpts, isPolygon());
             }
@@ -731,6 +742,30 @@ public class OMPoly extends OMAbstractLine implements Serializable {
         return true;
     }
 
+    /**
+     * Project the rawllpts for a GeoProj. If the poly was last projected with
+     * a Cylindrical projection of the same type, and the new projection only
+     * differs from it by center and scale, the cached projected coordinates
+     * are moved to the new view with an affine update. Otherwise the poly is
+     * projected in full, and the result cached for the next view.
+     * 
+     * @param proj GeoProj to project into, rawllpts must be in radians.
+     * @return ArrayList of x[], y[], x[], y[], ... the projected poly
+     */
+    protected ArrayList<float[]> forwardPoly(GeoProj proj) {
+        ProjectedCache cache = projectedCache;
+        if (cache != null) {
+            ArrayList<float[]> vector = cache.update(this, proj);
+            if (vector != null) {
+                return vector;
+            }
+        }
+
+        ArrayList<float[]> vector = proj.forwardPoly(rawllpts, lineType, nsegs, isPolygon());
+        projectedCache = ProjectedCache.create(this, proj, vector);
+        return vector;
+    }
+
     /**
      * Return true if the xpoints and ypoints are not null and contain
      * coordinates.
@@ -1274,4 +1309,161 @@ public class OMPoly extends OMAbstractLine implements Serializable {
             this.doShapes = polySource.doShapes;
         }
     }
+
+    /**
+     * Holds the projected coordinates of a poly along with the Cylindrical
+     * projection they were made with, and moves them into later views of the
+     * same projection type. Only straight polys that didn't wrap across the
+     * date line are cached, and coordinates are always moved from the full
+     * projection so rounding errors don't build up over a series of pans. The
+     * updated coordinates are written into two buffers used in turn, so a poly
+     * still being rendered from the last view isn't changed underneath.
+     * <P>
+     * The projection snapshot and the affine coefficients between two views
+     * are kept by the Cylindrical projections themselves, so layers rendering
+     * with different projections at the same time don't share them. The
+     * lat/lon coordinates are copied and compared before each update, since
+     * getLatLonArray() hands out the array and it can be changed in place.
+     */
+    protected static class ProjectedCache {
+
+        /**
+         * Polys with fewer vertices than this are cheaper to just project.
+         */
+        protected final static int MIN_POINTS = 8;
+        /**
+         * Largest change in scale, either way, handled before projecting in
+         * full again, keeps the float error in the cached coordinates from
+         * growing past a fraction of a pixel.
+         */
+        protected final static double MAX_SCALE_CHANGE = 16;
+
+        protected final Cylindrical proj;
+        protected final double[] llpts;
+        /** Copy of the llpts, to catch changes made through the array. */
+        protected final double[] llcopy;
+        protected final int lineType;
+        protected final int nsegs;
+        protected final boolean isPolygon;
+        protected final float[] xs;
+        protected final float[] ys;
+        protected final float minX;
+        protected final float maxX;
+        /** Widest horizontal jump between two vertices. */
+        protected final float maxDx;
+
+        protected final float[][] xbufs = new float[2][];
+        protected final float[][] ybufs = new float[2][];
+        protected int next = 0;
+
+        protected ProjectedCache(OMPoly poly, Cylindrical proj, float[] xs, float[] ys) {
+            this.proj = proj;
+            this.llpts = poly.rawllpts;
+            this.llcopy = poly.rawllpts.clone();
+            this.lineType = poly.lineType;
+            this.nsegs = poly.nsegs;
+            this.isPolygon = poly.isPolygon();
+            this.xs = xs;
+            this.ys = ys;
+
+            float min = xs[0];
+            float max = xs[0];
+            float dx = 0;
+            for (int i = 1; i < xs.length; i++) {
+                float x = xs[i];
+                min = Math.min(min, x);
+                max = Math.max(max, x);
+                dx = Math.max(dx, Math.abs(x - xs[i - 1]));
+            }
+            minX = min;
+            maxX = max;
+            maxDx = dx;
+        }
+
+        /**
+         * Create a cache for a poly that was just projected, if it's worth
+         * having.
+         * 
+         * @param poly the OMPoly.
+         * @param proj the projection used.
+         * @param vector the projected coordinates.
+         * @return ProjectedCache, or null if the poly can't be updated from
+         *         it.
+         */
+        public static ProjectedCache create(OMPoly poly, GeoProj proj, ArrayList<float[]> vector) {
+            if (!(proj instanceof Cylindrical) || vector.size() != 2 || poly.rawllpts == null
+                    || poly.rawllpts.length < MIN_POINTS * 2 || proj.isComplicatedLineType(poly.lineType)) {
+                return null;
+            }
+
+            if (!((Cylindrical) proj).supportsAffineUpdate()) {
+                return null;
+            }
+
+            return new ProjectedCache(poly, ((Cylindrical) proj).getSnapshot(), vector.get(0), vector.get(1));
+        }
+
+        /**
+         * Move the cached coordinates into a new projection.
+         * 
+         * @param poly the OMPoly being generated.
+         * @param target the new projection.
+         * @return ArrayList of x[], y[], or null if the poly has changed or
+         *         the new projection isn't a pan or zoom from the cached one,
+         *         and the poly needs to be projected in full.
+         */
+        public synchronized ArrayList<float[]> update(OMPoly poly, GeoProj target) {
+            if (!(target instanceof Cylindrical) || poly.rawllpts != llpts || poly.lineType != lineType
+                    || poly.nsegs != nsegs || poly.isPolygon() != isPolygon
+                    || !Arrays.equals(llpts, llcopy)) {
+                return null;
+            }
+
+            Cylindrical cyl = (Cylindrical) target;
+            double[] affine = cyl.getAffineTransformFrom(proj);
+            if (affine == null) {
+                return null;
+            }
+
+            double ax = affine[0];
+            double bx = affine[1];
+            double ay = affine[2];
+            double by = affine[3];
+            if (ax <= 0 || ax > MAX_SCALE_CHANGE || ax < 1 / MAX_SCALE_CHANGE) {
+                return null;
+            }
+
+            // The poly has to stay on one side of the date line in the new
+            // view, with no segment long enough to look like it wrapped,
+            // otherwise the wrapped copies made by the projection would
+            // change.
+            double halfWorld = cyl.getWorldWidth() / 2;
+            double center = cyl.getWidth() / 2;
+            if (ax * minX + bx <= center - halfWorld + 2 || ax * maxX + bx >= center + halfWorld - 2
+                    || ax * maxDx >= halfWorld - 2) {
+                return null;
+            }
+
+            int len = xs.length;
+            float[] x = xbufs[next];
+            float[] y = ybufs[next];
+            if (x == null || x.length != len) {
+                x = new float[len];
+                y = new float[len];
+                xbufs[next] = x;
+                ybufs[next] = y;
+            }
+            next ^= 1;
+
+            for (int i = 0; i < len; i++) {
+                x[i] = (float) (ax * xs[i] + bx);
+                y[i] = (float) (ay * ys[i] + by);
+            }
+
+            ArrayList<float[]> ret = new ArrayList<float[]>(2);
+            ret.add(x);
+            ret.add(y);
+            return ret;
+        }
+    }
 }
@@ -743,6 +743,26 @@ public class OMText extends OMGraphicAdapter implements OMGraphic {
      * @see #pt
      */
     public synchronized boolean generate(Projection proj) {
+        Point2D projected = null;
+        if (proj != null && (renderType == RENDERTYPE_LATLON || renderType == RENDERTYPE_OFFSET)
+                && proj.isPlotable(lat, lon)) {
+            projected = proj.forward(lat, lon, new Point2D.Double());
+        }
+        return generate(proj, projected);
+    }
+
+    /**
+     * Prepares the text for rendering, with the lat/lon location already
+     * projected. OMGraphicLists call this to project the locations of many
+     * OMTexts at once, so subclasses should override this method instead of
+     * generate(Projection).
+     *
+     * @param proj the projection of the window.
+     * @param projected the projected lat/lon location, null if it isn't
+     *        plot-able. Not used for RENDERTYPE_XY text.
+     * @return true if the placement of the string on the window is valid.
+     */
+    public synchronized boolean generate(Projection proj, Point2D projected) {
         /*
          * HACK synchronized because of various race conditions that need to be
          * sorted out.
@@ -771,23 +791,22 @@ public class OMText extends OMGraphicAdapter implements OMGraphic {
             pt = point;
             break;
         case RENDERTYPE_OFFSET:
-            if (!proj.isPlotable(lat, lon)) {
+            if (projected == null) {
                 if (Debug.debugging("omgraphic"))
                     System.err.println("OMText.generate(): offset point is not plotable!");
                 setNeedToRegenerate(true);// so we don't render it!
                 return false;
             }
-            pt = proj.forward(lat, lon, new Point2D.Double());
-            pt.setLocation(pt.getX() + point.x, pt.getY() + point.y);
+            pt = new Point2D.Double(projected.getX() + point.x, projected.getY() + point.y);
             break;
         case RENDERTYPE_LATLON:
-            if (!proj.isPlotable(lat, lon)) {
+            if (projected == null) {
                 if (Debug.debugging("omgraphic"))
                     System.err.println("OMText.generate(): llpoint is not plotable!");
                 setNeedToRegenerate(true);// so we don't render it!
                 return false;
             }
-            pt = proj.forward(lat, lon, new Point2D.Double());
+            pt = new Point2D.Double(projected.getX(), projected.getY());
             break;
         case RENDERTYPE_UNKNOWN:
             System.err.println("OMText.render.generate(): invalid RenderType");
@@ -169,6 +169,32 @@ public class AspectRatioProjection extends GeoProj {
         return r;
     }
 
+    public boolean forwardPoints(double[] llpts, int lloff, double[] xypts, int xyoff,
+                                 boolean[] visible, int visoff, int count) {
+        boolean r = wrappedProjection.forwardPoints(llpts, lloff, xypts, xyoff, visible, visoff, count);
+        if (xHasFactor || yHasFactor) {
+            int end = xyoff + count * 2;
+            for (int k = xyoff; k < end; k += 2) {
+                xypts[k] = xFromWrapped((float) xypts[k]);
+                xypts[k + 1] = yFromWrapped((float) xypts[k + 1]);
+            }
+        }
+        return r;
+    }
+
+    public void inversePoints(double[] xypts, int xyoff, double[] llpts, int lloff, int count) {
+        if (xHasFactor || yHasFactor) {
+            double[] wrapped = new double[count * 2];
+            for (int i = 0, k = xyoff; i < wrapped.length; i += 2, k += 2) {
+                wrapped[i] = xToWrapped((float) xypts[k]);
+                wrapped[i + 1] = yToWrapped((float) xypts[k + 1]);
+            }
+            wrappedProjection.inversePoints(wrapped, 0, llpts, lloff, count);
+        } else {
+            wrappedProjection.inversePoints(xypts, xyoff, llpts, lloff, count);
+        }
+    }
+
     public Point2D getLowerRight() {
         return wrappedProjection.getLowerRight();
     }
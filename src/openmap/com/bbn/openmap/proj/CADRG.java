@@ -361,6 +361,29 @@ public class CADRG extends Cylindrical implements EqualArc {
         return ret_val;
     }
 
+    /**
+     * Forward project an array of lat, lon decimal degree pairs, rounded to
+     * pixels like forward(). Points outside the zone limits are marked as not
+     * visible.
+     */
+    public boolean forwardPoints(double[] llpts, int lloff, double[] xypts, int xyoff,
+                                 boolean[] visible, int visoff, int count) {
+        boolean allVisible = true;
+        for (int i = 0, j = lloff, k = xyoff; i < count; i++, j += 2, k += 2) {
+            double lat = Math.toRadians(llpts[j]);
+            double lon = Math.toRadians(llpts[j + 1]);
+            boolean plotable = (lat < NORTH_LIMIT) && (lat > SOUTH_LIMIT);
+            if (visible != null) {
+                visible[visoff + i] = plotable;
+            }
+            allVisible &= plotable;
+
+            xypts[k] = (int) ProjMath.roundAdjust(spps_x * wrapLongitude(lon - centerX)) - ul.x;
+            xypts[k + 1] = (int) ProjMath.roundAdjust(-spps_y * normalizeLatitude(lat)) + ul.y + oy;
+        }
+        return allVisible;
+    }
+
     /**
      * Inverse project x,y coordinates into a LatLonPoint.
      * <p>
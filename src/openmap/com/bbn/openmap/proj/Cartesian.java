@@ -24,6 +24,7 @@ package com.bbn.openmap.proj;
 
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Point2D;
+import java.util.Arrays;
 
 /**
  * The Cartesian projection is a non-wrapping, straight-forward scaling
@@ -387,6 +388,32 @@ public class Cartesian extends Proj implements Projection, java.io.Serializable
         return true;
     }
 
+    /**
+     * Forward project an array of world coordinate y, x pairs.
+     */
+    public boolean forwardPoints(double[] llpts, int lloff, double[] xypts, int xyoff,
+                                 boolean[] visible, int visoff, int count) {
+        for (int i = 0, j = lloff, k = xyoff; i < count; i++, j += 2, k += 2) {
+            xypts[k] = ((llpts[j + 1] - centerX) * SFScale) + hWidth;
+            xypts[k + 1] = hHeight - ((llpts[j] - centerY) * SFScale);
+        }
+        if (visible != null) {
+            Arrays.fill(visible, visoff, visoff + count, true);
+        }
+        return true;
+    }
+
+    /**
+     * Inverse project an array of x, y map coordinates into world coordinate
+     * y, x pairs.
+     */
+    public void inversePoints(double[] xypts, int xyoff, double[] llpts, int lloff, int count) {
+        for (int i = 0, j = lloff, k = xyoff; i < count; i++, j += 2, k += 2) {
+            llpts[j] = (hHeight - xypts[k + 1]) / SFScale + centerY;
+            llpts[j + 1] = (xypts[k] - hWidth) / SFScale + centerX;
+        }
+    }
+
     public Point2D getCenter() {
         return new Point2D.Double(centerX, centerY);
     }
@@ -26,6 +26,7 @@ import java.awt.Point;
 import java.awt.geom.Point2D;
 import java.util.ArrayList;
 
+import com.bbn.openmap.MoreMath;
 import com.bbn.openmap.proj.coords.LatLonPoint;
 import com.bbn.openmap.util.Debug;
 
@@ -46,6 +47,22 @@ public abstract class Cylindrical
     protected transient Point world; // world width in pixels.
     protected transient int half_world; // world.x / 2
 
+    /**
+     * Pixel tolerance used when checking affine view changes.
+     */
+    protected final static double AFFINE_TOLERANCE = 0.01;
+
+    /**
+     * Unchanging copy of this projection, handed out by getSnapshot() until
+     * this projection changes.
+     */
+    private transient volatile Cylindrical snapshot;
+    /**
+     * The last affine transform asked for, {from, from ID, this ID, double[]
+     * coefficients}, so the polys of one generate share it.
+     */
+    private transient volatile Object[] lastAffine;
+
     /**
      * Construct a cylindrical projection.
      * <p>
@@ -457,6 +474,139 @@ public abstract class Cylindrical
         return ret_val;
     }// _forwardPoly()
 
+    /**
+     * Whether screen coordinates for this projection type are a fixed
+     * function of longitude along x and of latitude along y, scaled and offset
+     * by the projection center and scale and nothing else. If they are, points
+     * projected for one view can be moved to another view of the same type
+     * with {@link #getAffineTransformFrom(Projection)}. False by default,
+     * subclasses that round projected coordinates or tie them to a zone must
+     * leave it that way.
+     * 
+     * @return true if view changes are affine on each axis.
+     */
+    public boolean supportsAffineUpdate() {
+        return false;
+    }
+
+    /**
+     * Get the width of the world, in pixels, at the current scale.
+     * 
+     * @return world width in pixels.
+     */
+    public int getWorldWidth() {
+        return world.x;
+    }
+
+    /**
+     * Get a copy of this projection that won't change, to keep along with
+     * coordinates projected with it. The same copy is returned until this
+     * projection changes.
+     * 
+     * @return Cylindrical copy, equal to this projection.
+     */
+    public Cylindrical getSnapshot() {
+        Cylindrical copy = snapshot;
+        if (copy == null || !copy.equals(this)) {
+            copy = (Cylindrical) makeClone();
+            copy.snapshot = copy;
+            snapshot = copy;
+        }
+        return copy;
+    }
+
+    /**
+     * Get the coefficients that move screen coordinates projected with
+     * another projection of the same type into this one, when the two only
+     * differ by center and scale. Coordinates are moved with x' = ax * x + bx
+     * and y' = ay * y + by, which lets callers update projected polys after a
+     * pan or zoom without projecting each vertex again. The coefficients are
+     * measured from reference points and checked against another one. The
+     * last answer is kept, so asking again for the same two views is cheap;
+     * the returned array is shared and must not be modified.
+     * 
+     * @param proj the projection the coordinates were created with.
+     * @return double[] {ax, bx, ay, by}, or null if the projections aren't
+     *         the same type, the type doesn't support affine updates, or the centers are more than 90 degrees apart in
+     *         longitude.
+     */
+    public double[] getAffineTransformFrom(Projection proj) {
+        if (proj == null || proj.getClass() != getClass() || !supportsAffineUpdate()) {
+            return null;
+        }
+
+        String fromID = proj.getProjectionID();
+        String toID = getProjectionID();
+        Object[] last = lastAffine;
+        if (last != null && last[0] == proj && fromID.equals(last[1]) && toID.equals(last[2])) {
+            return (double[]) last[3];
+        }
+
+        double[] affine = computeAffineTransformFrom((Cylindrical) proj);
+        lastAffine = new Object[] { proj, fromID, toID, affine };
+        return affine;
+    }
+
+    /**
+     * Measure the affine coefficients for getAffineTransformFrom().
+     */
+    protected double[] computeAffineTransformFrom(Cylindrical from) {
+        if (Math.abs(wrapLongitude(from.centerX - centerX)) > MoreMath.HALF_PI_D) {
+            return null;
+        }
+
+        double lon1 = centerX;
+        double lon2 = wrapLongitude(centerX + 0.5);
+        double lat1 = centerY;
+        double lat2 = centerY > 0 ? centerY - 0.25 : centerY + 0.25;
+
+        Point2D p1 = new Point2D.Double();
+        Point2D p2 = new Point2D.Double();
+        Point2D q1 = new Point2D.Double();
+        Point2D q2 = new Point2D.Double();
+
+        from.forward(lat1, lon1, p1, true);
+        from.forward(lat2, lon2, p2, true);
+        forward(lat1, lon1, q1, true);
+        forward(lat2, lon2, q2, true);
+
+        double dx = p2.getX() - p1.getX();
+        double dy = p2.getY() - p1.getY();
+        if (dx == 0 || dy == 0) {
+            return null;
+        }
+
+        double ax = (q2.getX() - q1.getX()) / dx;
+        double ay = (q2.getY() - q1.getY()) / dy;
+        double[] ret = new double[] { ax, q1.getX() - ax * p1.getX(), ay, q1.getY() - ay * p1.getY() };
+
+        // Check the coefficients against a point that wasn't used to make
+        // them.
+        double lat3 = (lat1 + lat2) / 2;
+        double lon3 = wrapLongitude(centerX - 0.25);
+        from.forward(lat3, lon3, p1, true);
+        forward(lat3, lon3, q1, true);
+        if (Math.abs(ret[0] * p1.getX() + ret[1] - q1.getX()) > AFFINE_TOLERANCE
+                || Math.abs(ret[2] * p1.getY() + ret[3] - q1.getY()) > AFFINE_TOLERANCE) {
+            return null;
+        }
+
+        return ret;
+    }
+
+    /**
+     * Copies this projection, without the cached snapshot and affine
+     * transform.
+     * 
+     * @return a copy of this projection.
+     */
+    public Object clone() {
+        Cylindrical proj = (Cylindrical) super.clone();
+        proj.snapshot = null;
+        proj.lastAffine = null;
+        return proj;
+    }
+
     // print out polygon
     public static final void dumpPoly(float[] rawllpts, float[] xs, float[] ys) {
         Debug.output("poly:");
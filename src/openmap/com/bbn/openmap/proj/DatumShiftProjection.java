@@ -161,6 +161,28 @@ public class DatumShiftProjection extends GeoProj {
                 copylen);
     }
 
+    public boolean forwardPoints(double[] llpts, int lloff, double[] xypts, int xyoff,
+                                 boolean[] visible, int visoff, int count) {
+        double[] llptsInDifferentDatum = new double[count * 2];
+        Point2D tmpll = new Point2D.Double();
+        for (int i = 0, j = lloff; i < llptsInDifferentDatum.length; i += 2, j += 2) {
+            tmpll = datum.forward(llpts[j], llpts[j + 1], tmpll);
+            llptsInDifferentDatum[i] = tmpll.getY();
+            llptsInDifferentDatum[i + 1] = tmpll.getX();
+        }
+        return wrappedProjection.forwardPoints(llptsInDifferentDatum, 0, xypts, xyoff, visible, visoff, count);
+    }
+
+    public void inversePoints(double[] xypts, int xyoff, double[] llpts, int lloff, int count) {
+        wrappedProjection.inversePoints(xypts, xyoff, llpts, lloff, count);
+        LatLonPoint llpt = new LatLonPoint.Double();
+        for (int i = 0, j = lloff; i < count; i++, j += 2) {
+            llpt = datum.inverse(llpts[j + 1], llpts[j], llpt);
+            llpts[j] = llpt.getY();
+            llpts[j + 1] = llpt.getX();
+        }
+    }
+
     public LatLonPoint getLowerRight() {
         Point2D llp = wrappedProjection.getLowerRight();
         return datum.inverse(llp.getX(), llp.getY());
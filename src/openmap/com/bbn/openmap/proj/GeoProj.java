@@ -1047,6 +1047,19 @@ public abstract class GeoProj extends Proj {
         return inverse(point.getX(), point.getY(), new LatLonPoint.Double());
     }
 
+    /**
+     * Inverse project an array of x, y pixel pairs into lat, lon decimal
+     * degree pairs, normalized the same way as inverse(x, y).
+     */
+    public void inversePoints(double[] xypts, int xyoff, double[] llpts, int lloff, int count) {
+        LatLonPoint temp = new LatLonPoint.Double();
+        for (int i = 0, j = lloff, k = xyoff; i < count; i++, j += 2, k += 2) {
+            inverse(xypts[k], xypts[k + 1], temp);
+            llpts[j] = temp.getY();
+            llpts[j + 1] = temp.getX();
+        }
+    }
+
     /**
      * Inverse project x,y coordinates.
      * 
@@ -208,6 +208,46 @@ public class LLXY
       return llp;
    }
 
+   /**
+    * Forward project an array of lat, lon decimal degree pairs.
+    */
+   public boolean forwardPoints(double[] llpts, int lloff, double[] xypts, int xyoff,
+                                boolean[] visible, int visoff, int count) {
+      boolean allVisible = true;
+      for (int i = 0, j = lloff, k = xyoff; i < count; i++, j += 2, k += 2) {
+         double lat = llpts[j];
+         double lon = llpts[j + 1];
+         boolean plotable = lat < 90.0 && lat > -90.0 && lon <= 180 && lon >= -180;
+         if (visible != null) {
+            visible[visoff + i] = plotable;
+         }
+         allVisible &= plotable;
+
+         xypts[k] = wx + (wrapLongitudeDeg(lon - cLon) * ppd);
+         xypts[k + 1] = hy - ((normalizeLatitudeDeg(lat) - cLat) * ppd);
+      }
+      return allVisible;
+   }
+
+   /**
+    * Inverse project an array of x, y pixel pairs into lat, lon decimal
+    * degree pairs.
+    */
+   public void inversePoints(double[] xypts, int xyoff, double[] llpts, int lloff, int count) {
+      for (int i = 0, j = lloff, k = xyoff; i < count; i++, j += 2, k += 2) {
+         llpts[j] = LatLonPoint.normalizeLatitude(((hy - xypts[k + 1]) / ppd) + cLat);
+         llpts[j + 1] = LatLonPoint.wrapLongitude(((xypts[k] - wx) / ppd) + cLon);
+      }
+   }
+
+   /**
+    * Screen x is linear in longitude and y in latitude, both scaled
+    * by the projection scale.
+    */
+   public boolean supportsAffineUpdate() {
+      return true;
+   }
+
    /**
     * Get the name string of the projection.
     */
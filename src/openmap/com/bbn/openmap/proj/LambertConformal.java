@@ -633,6 +633,30 @@ public class LambertConformal
         return visibleTotal;
     }
 
+    /**
+     * Forward project an array of lat, lon decimal degree pairs. As with
+     * isPlotable(), points are only visible if they land on the map.
+     */
+    public boolean forwardPoints(double[] llpts, int lloff, double[] xypts, int xyoff,
+                                 boolean[] visible, int visoff, int count) {
+        Point2D temp = new Point2D.Double();
+        boolean allVisible = true;
+        for (int i = 0, j = lloff, k = xyoff; i < count; i++, j += 2, k += 2) {
+            LLToPixel(llpts[j], llpts[j + 1], temp);
+            double x = temp.getX();
+            double y = temp.getY();
+            xypts[k] = x;
+            xypts[k + 1] = y;
+
+            boolean plotable = llpts[j] >= -70d && x >= 0 && x < width && y >= 0 && y < height;
+            if (visible != null) {
+                visible[visoff + i] = plotable;
+            }
+            allVisible &= plotable;
+        }
+        return allVisible;
+    }
+
     /**
      * Forward project a lat/lon Poly. Remember to specify vertices in radians!
      * 
@@ -23,6 +23,7 @@
 package com.bbn.openmap.proj;
 
 import java.awt.geom.Point2D;
+import java.util.Arrays;
 
 import com.bbn.openmap.MoreMath;
 import com.bbn.openmap.proj.coords.LatLonPoint;
@@ -201,6 +202,38 @@ public class Mercator extends Cylindrical {
         return llp;
     }
 
+    /**
+     * Forward project an array of lat, lon decimal degree pairs. Every point
+     * is plot-able in the Mercator projection.
+     */
+    public boolean forwardPoints(double[] llpts, int lloff, double[] xypts, int xyoff,
+                                 boolean[] visible, int visoff, int count) {
+        for (int i = 0, j = lloff, k = xyoff; i < count; i++, j += 2, k += 2) {
+            double lat = normalizeLatitude(ProjMath.degToRad(llpts[j]));
+            double lon = wrapLongitude(ProjMath.degToRad(llpts[j + 1]));
+            xypts[k] = (scaled_radius * wrapLongitude(lon - centerX)) + wx;
+            xypts[k + 1] = hy - (scaled_radius * (MoreMath.asinh(Math.tan(lat)) - asinh_of_tanCtrLat));
+        }
+        if (visible != null) {
+            Arrays.fill(visible, visoff, visoff + count, true);
+        }
+        return true;
+    }
+
+    /**
+     * Inverse project an array of x, y pixel pairs into lat, lon decimal
+     * degree pairs.
+     */
+    public void inversePoints(double[] xypts, int xyoff, double[] llpts, int lloff, int count) {
+        double wc = asinh_of_tanCtrLat * scaled_radius;
+        for (int i = 0, j = lloff, k = xyoff; i < count; i++, j += 2, k += 2) {
+            double x = xypts[k] - wx;
+            double y = hy - xypts[k + 1];
+            llpts[j] = Math.toDegrees(normalizeLatitude(Math.atan(Math.sinh((y + wc) / scaled_radius))));
+            llpts[j + 1] = Math.toDegrees(wrapLongitude(x / scaled_radius + centerX));
+        }
+    }
+
     /**
      * Computes the best stepping factor for a rhumbline.
      * <p>
@@ -330,6 +363,14 @@ public class Mercator extends Cylindrical {
         return llpts;
     }
 
+    /**
+     * Screen x is linear in longitude and y in asinh(tan(lat)), both scaled
+     * by the projection scale.
+     */
+    public boolean supportsAffineUpdate() {
+        return true;
+    }
+
     /**
      * Get the name string of the projection.
      */
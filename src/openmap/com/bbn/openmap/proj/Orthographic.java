@@ -213,6 +213,42 @@ public class Orthographic extends Azimuth {
         return p;
     }
 
+    /**
+     * Forward project an array of lat, lon decimal degree pairs. Points in
+     * the far hemisphere are marked as not visible and their coordinates are
+     * set to NaN, instead of working out where they would be on the edge of
+     * the view like forward() does.
+     */
+    public boolean forwardPoints(double[] llpts, int lloff, double[] xypts, int xyoff,
+                                 boolean[] visible, int visoff, int count) {
+        boolean allVisible = true;
+        for (int i = 0, j = lloff, k = xyoff; i < count; i++, j += 2, k += 2) {
+            double phi = normalizeLatitude(Math.toRadians(llpts[j]));
+            double lambdaMinusCtrLon = wrapLongitude(Math.toRadians(llpts[j + 1])) - centerX;
+            double cosPhi = Math.cos(phi);
+            double sinPhi = Math.sin(phi);
+            double cosLambdaMinusCtrLon = Math.cos(lambdaMinusCtrLon);
+
+            // cosine of the distance from the center, negative past the
+            // edge of the hemisphere.
+            boolean plotable = sinCtrLat * sinPhi + cosCtrLat * cosPhi * cosLambdaMinusCtrLon >= 0;
+            if (plotable) {
+                xypts[k] = (scaled_radius * cosPhi * Math.sin(lambdaMinusCtrLon)) + wx;
+                xypts[k + 1] = hy
+                        - (scaled_radius * (cosCtrLat * sinPhi - sinCtrLat * cosPhi
+                                * cosLambdaMinusCtrLon));
+            } else {
+                xypts[k] = Double.NaN;
+                xypts[k + 1] = Double.NaN;
+            }
+            if (visible != null) {
+                visible[visoff + i] = plotable;
+            }
+            allVisible &= plotable;
+        }
+        return allVisible;
+    }
+
     /**
      * Inverse project x,y coordinates into a LatLonPoint.
      * 
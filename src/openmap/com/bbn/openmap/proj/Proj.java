@@ -674,6 +674,58 @@ public abstract class Proj implements Projection, Cloneable, Serializable {
         return true;
     }
 
+    /**
+     * Forward project an array of coordinates. This implementation calls
+     * forward(lat, lon, Point2D) for each point, subclasses can do better by
+     * hoisting the work that doesn't change from point to point out of the
+     * loop.
+     * 
+     * @param llpts array of y, x pairs.
+     * @param lloff offset into llpts.
+     * @param xypts array to hold x, y pixel pairs.
+     * @param xyoff offset into xypts.
+     * @param visible array set to whether each point is plot-able, may be
+     *        null.
+     * @param visoff offset into visible.
+     * @param count number of points to project.
+     * @return true if all points are plot-able, false if some are not.
+     */
+    public boolean forwardPoints(double[] llpts, int lloff, double[] xypts, int xyoff,
+                                 boolean[] visible, int visoff, int count) {
+        Point2D temp = new Point2D.Double();
+        boolean allVisible = true;
+        for (int i = 0, j = lloff, k = xyoff; i < count; i++, j += 2, k += 2) {
+            boolean plotable = isPlotable(llpts[j], llpts[j + 1]);
+            forward(llpts[j], llpts[j + 1], temp);
+            xypts[k] = temp.getX();
+            xypts[k + 1] = temp.getY();
+            if (visible != null) {
+                visible[visoff + i] = plotable;
+            }
+            allVisible &= plotable;
+        }
+        return allVisible;
+    }
+
+    /**
+     * Inverse project an array of pixel coordinates, calling inverse(x, y,
+     * Point2D) for each point.
+     * 
+     * @param xypts array of x, y pixel pairs.
+     * @param xyoff offset into xypts.
+     * @param llpts array to hold y, x pairs.
+     * @param lloff offset into llpts.
+     * @param count number of points to inverse project.
+     */
+    public void inversePoints(double[] xypts, int xyoff, double[] llpts, int lloff, int count) {
+        Point2D temp = new Point2D.Double();
+        for (int i = 0, j = lloff, k = xyoff; i < count; i++, j += 2, k += 2) {
+            inverse(xypts[k], xypts[k + 1], temp);
+            llpts[j] = temp.getY();
+            llpts[j + 1] = temp.getX();
+        }
+    }
+
     public ArrayList<float[]> forwardLine(Point2D ll1, Point2D ll2) {
         double[] rawllpts = { ll1.getY(), ll1.getX(), ll2.getY(), ll2.getX() };
         return forwardPoly(rawllpts, false);
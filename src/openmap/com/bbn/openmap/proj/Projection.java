@@ -426,6 +426,40 @@ public interface Projection extends java.io.Serializable {
     public boolean forwardRaw(double[] rawllpts, int rawoff, float[] xcoords, float[] ycoords,
                               boolean[] visible, int copyoff, int copylen);
 
+    /**
+     * Forward project an array of coordinates, in the same units as
+     * forward(lat, lon, Point2D). This is the batch version of that method,
+     * for projecting many unconnected points at once without creating a
+     * Point2D for each of them. The pixel coordinates of points that aren't
+     * plot-able depend on the projection, and shouldn't be used.
+     * 
+     * @param llpts array of y, x (lat, lon in decimal degrees for GeoProj)
+     *        pairs.
+     * @param lloff offset into llpts.
+     * @param xypts array to hold x, y pixel pairs.
+     * @param xyoff offset into xypts.
+     * @param visible array set to whether each point is plot-able, may be
+     *        null.
+     * @param visoff offset into visible.
+     * @param count number of points to project.
+     * @return true if all points are plot-able, false if some are not.
+     */
+    public boolean forwardPoints(double[] llpts, int lloff, double[] xypts, int xyoff,
+                                 boolean[] visible, int visoff, int count);
+
+    /**
+     * Inverse project an array of pixel coordinates, the batch version of
+     * inverse(x, y, Point2D).
+     * 
+     * @param xypts array of x, y pixel pairs.
+     * @param xyoff offset into xypts.
+     * @param llpts array to hold y, x (lat, lon in decimal degrees for
+     *        GeoProj) pairs.
+     * @param lloff offset into llpts.
+     * @param count number of points to inverse project.
+     */
+    public void inversePoints(double[] xypts, int xyoff, double[] llpts, int lloff, int count);
+
     /**
      * Clone the projection.
      * 
@@ -5,6 +5,7 @@ import java.awt.Graphics2D;
 import java.awt.Point;
 import java.awt.geom.Point2D;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import com.bbn.openmap.proj.coords.LatLonPoint;
 import com.bbn.openmap.proj.coords.UTMGCT;
@@ -99,6 +100,45 @@ public class UTMProjection extends GeoProj {
         return pt;
     }
 
+    /**
+     * Forward project an array of lat, lon decimal degree pairs, reusing the
+     * UTM conversion objects for all of them.
+     */
+    public boolean forwardPoints(double[] llpts, int lloff, double[] xypts, int xyoff,
+                                 boolean[] visible, int visoff, int count) {
+        LatLonPoint.Double llp = new LatLonPoint.Double();
+        UTMPoint utmPoint = new UTMPoint();
+        double cx = xycenter.getX();
+        double cy = xycenter.getY();
+        for (int i = 0, j = lloff, k = xyoff; i < count; i++, j += 2, k += 2) {
+            llp.setLatLon(llpts[j], llpts[j + 1]);
+            utmPoint = UTMPoint.LLtoUTM(llp, ellps, utmPoint, zoneNumber, northern);
+            xypts[k] = wx + (ppu * (utmPoint.easting - cx));
+            xypts[k + 1] = hy - (ppu * (utmPoint.northing - cy));
+        }
+        if (visible != null) {
+            Arrays.fill(visible, visoff, visoff + count, true);
+        }
+        return true;
+    }
+
+    /**
+     * Inverse project an array of x, y pixel pairs into lat, lon decimal
+     * degree pairs.
+     */
+    public void inversePoints(double[] xypts, int xyoff, double[] llpts, int lloff, int count) {
+        LatLonPoint.Double llp = new LatLonPoint.Double();
+        double cx = xycenter.getX();
+        double cy = xycenter.getY();
+        for (int i = 0, j = lloff, k = xyoff; i < count; i++, j += 2, k += 2) {
+            double northing = cy + ((hy - xypts[k + 1]) / ppu);
+            double easting = cx + ((xypts[k] - wx) / ppu);
+            UTMPoint.UTMtoLL(ellps, northing, easting, zoneNumber, northern, llp);
+            llpts[j] = llp.getY();
+            llpts[j + 1] = llp.getX();
+        }
+    }
+
     public <T extends Point2D> T inverse(double x, double y, T llpt) {
 
         double northing = xycenter.getY() + ((hy - y) / ppu);
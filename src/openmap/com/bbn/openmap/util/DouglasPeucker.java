@@ -0,0 +1,206 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+
+package com.bbn.openmap.util;
+
+/**
+ * Douglas-Peucker line simplification. Vertices are dropped from a poly as
+ * long as none of them are farther than the tolerance from the simplified
+ * line that replaces them. Unlike FanCompress, the vertices that are kept are
+ * reported by index, so the same simplification can be stored and applied to
+ * the original coordinates later.
+ * <ul>
+ * <li>D.H. Douglas and T.K. Peucker, Algorithms for the Reduction of the
+ * Number of Points Required to Represent a Digitized Line or its Caricature,
+ * The Canadian Cartographer, 10(2), 1973, 112-122.
+ * </ul>
+ * 
+ * @author dietrick
+ */
+public class DouglasPeucker {
+
+    /**
+     * Simplify a poly.
+     * 
+     * @param coords coordinate pairs, y, x, y, x or lat, lon, lat, lon. A
+     *        closed poly, where the first and last points are the same, is
+     *        split at the vertex farthest from the first one, and keeps at
+     *        least four vertices (a triangle) so it doesn't collapse into a
+     *        line.
+     * @param tolerance the farthest a dropped vertex can be from the
+     *        simplified line, in coordinate units.
+     * @return the indexes of the vertices to keep, in order, always including
+     *         the first and last.
+     */
+    public static int[] simplify(double[] coords, double tolerance) {
+        int numPoints = coords.length / 2;
+        if (numPoints < 3) {
+            int[] ret = new int[numPoints];
+            for (int i = 0; i < numPoints; i++) {
+                ret[i] = i;
+            }
+            return ret;
+        }
+
+        boolean[] keep = new boolean[numPoints];
+        int last = numPoints - 1;
+        keep[0] = true;
+        keep[last] = true;
+
+        double tolSq = tolerance * tolerance;
+        int[] stack = new int[64];
+        int top = 0;
+
+        boolean closed = coords[0] == coords[last * 2] && coords[1] == coords[last * 2 + 1];
+        int far = 0;
+        if (closed) {
+            double farDist = -1;
+            for (int i = 1; i < last; i++) {
+                double dy = coords[i * 2] - coords[0];
+                double dx = coords[i * 2 + 1] - coords[1];
+                double dist = dx * dx + dy * dy;
+                if (dist > farDist) {
+                    farDist = dist;
+                    far = i;
+                }
+            }
+            keep[far] = true;
+            stack[top++] = 0;
+            stack[top++] = far;
+            stack[top++] = far;
+            stack[top++] = last;
+        } else {
+            stack[top++] = 0;
+            stack[top++] = last;
+        }
+
+        while (top > 0) {
+            int end = stack[--top];
+            int start = stack[--top];
+            if (end - start < 2) {
+                continue;
+            }
+
+            int index = farthest(coords, start, end, tolSq);
+            if (index >= 0) {
+                keep[index] = true;
+                if (top + 4 > stack.length) {
+                    int[] tmp = new int[stack.length * 2];
+                    System.arraycopy(stack, 0, tmp, 0, top);
+                    stack = tmp;
+                }
+                stack[top++] = start;
+                stack[top++] = index;
+                stack[top++] = index;
+                stack[top++] = end;
+            }
+        }
+
+        int count = 0;
+        for (int i = 0; i < numPoints; i++) {
+            if (keep[i]) {
+                count++;
+            }
+        }
+
+        // A closed poly down to its first, farthest and last vertices is a
+        // line, so put back the vertex farthest from that line.
+        if (closed && count < 4 && numPoints >= 4) {
+            int index = farthest(coords, 0, far, -1);
+            int other = farthest(coords, far, last, -1);
+            if (index < 0 || (other >= 0 && distSq(coords, far, last, other) > distSq(coords, 0, far, index))) {
+                index = other;
+            }
+            if (index >= 0) {
+                keep[index] = true;
+                count++;
+            }
+        }
+
+        int[] ret = new int[count];
+        for (int i = 0, j = 0; i < numPoints; i++) {
+            if (keep[i]) {
+                ret[j++] = i;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Find the vertex between start and end farthest from the segment joining
+     * them.
+     * 
+     * @return the index of the vertex, or -1 if none is farther than
+     *         sqrt(minDistSq).
+     */
+    private static int farthest(double[] coords, int start, int end, double minDistSq) {
+        int index = -1;
+        double maxDist = minDistSq;
+        for (int i = start + 1; i < end; i++) {
+            double dist = distSq(coords, start, end, i);
+            if (dist > maxDist) {
+                maxDist = dist;
+                index = i;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * The squared distance from a vertex to the segment joining two others.
+     */
+    private static double distSq(double[] coords, int start, int end, int i) {
+        double y1 = coords[start * 2];
+        double x1 = coords[start * 2 + 1];
+        double dy = coords[end * 2] - y1;
+        double dx = coords[end * 2 + 1] - x1;
+        double lenSq = dx * dx + dy * dy;
+
+        double py = coords[i * 2] - y1;
+        double px = coords[i * 2 + 1] - x1;
+        if (lenSq == 0) {
+            return px * px + py * py;
+        }
+
+        // Distance to the segment, not the infinite line, so spikes past
+        // the ends are kept.
+        double t = (px * dx + py * dy) / lenSq;
+        if (t < 0) {
+            t = 0;
+        } else if (t > 1) {
+            t = 1;
+        }
+        double ex = px - t * dx;
+        double ey = py - t * dy;
+        return ex * ex + ey * ey;
+    }
+
+    /**
+     * Create a new coordinate array holding only the kept vertices.
+     * 
+     * @param coords coordinate pairs.
+     * @param indexes vertex indexes returned from simplify.
+     * @return coordinate pairs for the kept vertices.
+     */
+    public static double[] subset(double[] coords, int[] indexes) {
+        double[] ret = new double[indexes.length * 2];
+        for (int i = 0, j = 0; i < indexes.length; i++, j += 2) {
+            int k = indexes[i] * 2;
+            ret[j] = coords[k];
+            ret[j + 1] = coords[k + 1];
+        }
+        return ret;
+    }
+}
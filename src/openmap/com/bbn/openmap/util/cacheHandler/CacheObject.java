@@ -29,6 +29,11 @@ public class CacheObject {
     public Object obj = null;
     public int cachedTime = 0;
     public Object id = null;
+    /**
+     * The cost of holding on to this object, in bytes, as set by a cache
+     * that bounds its contents by memory.
+     */
+    public long weight = 0;
 
     /**
      * New object, set the local clock to zero
@@ -0,0 +1,510 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.util.cacheHandler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Properties;
+import java.util.logging.Level;
+
+import com.bbn.openmap.util.ComponentFactory;
+import com.bbn.openmap.util.PropUtils;
+
+/**
+ * A CacheHandler that finds objects with a hashed lookup instead of scanning
+ * the cache array, so it can be used for caches holding thousands of objects.
+ * The cache is split into segments, each with its own lock, HashMap and
+ * EvictionPolicy, so different threads can use the cache at the same time.
+ * <p>
+ * 
+ * In addition to the maximum number of objects, the cache can be bounded by
+ * the memory the objects take up. Subclasses that want to use that bound
+ * should override weigh(CacheObject) to return an estimate of the bytes held
+ * by a cached object.
+ * <p>
+ * 
+ * The get/load/searchCache/replaceLeastUsed contract of the CacheHandler is
+ * kept, so subclasses can switch between the two. Properties that can be set
+ * on subclasses that are PropertyConsumers:
+ * 
+ * <pre>
+ * # LRU (default), LFU, TinyLFU or the class name of an EvictionPolicy
+ * cachePolicy=TinyLFU
+ * # Maximum memory used by cached objects, in megabytes. 0 (default) means only the entry count is used.
+ * cacheMemory=256
+ * </pre>
+ * 
+ * @author dietrick
+ */
+public abstract class ConcurrentCacheHandler extends CacheHandler {
+
+    public final static String CACHE_POLICY_PROPERTY = "cachePolicy";
+    public final static String CACHE_MEMORY_PROPERTY = "cacheMemory";
+
+    public final static String LRU_POLICY = "LRU";
+    public final static String LFU_POLICY = "LFU";
+    public final static String TINYLFU_POLICY = "TinyLFU";
+
+    /**
+     * The most segments (and locks) a cache will be split into.
+     */
+    public final static int MAX_SEGMENTS = 16;
+    /**
+     * The fewest objects a segment should hold, the cache isn't split up
+     * further if the segments would get smaller than this.
+     */
+    public final static int MIN_SEGMENT_SIZE = 16;
+
+    protected Segment[] segments;
+    protected int maxSize;
+    protected long maxWeight = 0;
+    protected String evictionPolicy = LRU_POLICY;
+
+    /**
+     * Standard default constructor
+     */
+    public ConcurrentCacheHandler() {
+        this(DEFAULT_MAX_CACHE_SIZE);
+    }
+
+    /**
+     * Constructor used when you know the limits
+     */
+    public ConcurrentCacheHandler(int max_size) {
+        this(max_size, 0);
+    }
+
+    /**
+     * Create a cache with a limit on the number of objects and the memory they
+     * use.
+     * 
+     * @param max_size maximum number of objects.
+     * @param maxWeight maximum number of bytes held by the objects, 0 for no
+     *        memory limit.
+     */
+    public ConcurrentCacheHandler(int max_size, long maxWeight) {
+        // The superclass array isn't used.
+        super(0);
+        this.maxWeight = maxWeight;
+        initSegments(max_size, null);
+    }
+
+    /**
+     * Create the segments for the given size, adding the objects in the
+     * provided list if it isn't null.
+     */
+    protected synchronized void initSegments(int max_size, List<CacheObject> keep) {
+        maxSize = Math.max(1, max_size);
+
+        int numSegments = 1;
+        while (numSegments < MAX_SEGMENTS && maxSize / (numSegments * 2) >= MIN_SEGMENT_SIZE) {
+            numSegments *= 2;
+        }
+
+        Segment[] segs = new Segment[numSegments];
+        for (int i = 0; i < numSegments; i++) {
+            int segSize = maxSize / numSegments + (i < maxSize % numSegments ? 1 : 0);
+            EvictionPolicy policy = createEvictionPolicy(evictionPolicy);
+            policy.setCapacity(segSize);
+            segs[i] = new Segment(policy, segSize, maxWeight / numSegments);
+        }
+
+        segments = segs;
+
+        if (keep != null) {
+            for (CacheObject co : keep) {
+                replaceLeastUsed(co);
+            }
+        }
+    }
+
+    /**
+     * Create the EvictionPolicy for a segment.
+     * 
+     * @param policyName LRU, LFU, TinyLFU or the class name of an
+     *        EvictionPolicy. LRU is used if the class can't be created.
+     */
+    protected EvictionPolicy createEvictionPolicy(String policyName) {
+        if (policyName == null || LRU_POLICY.equalsIgnoreCase(policyName)) {
+            return new LRUEvictionPolicy();
+        } else if (LFU_POLICY.equalsIgnoreCase(policyName)) {
+            return new LFUEvictionPolicy();
+        } else if (TINYLFU_POLICY.equalsIgnoreCase(policyName)) {
+            return new TinyLFUEvictionPolicy();
+        }
+
+        Object obj = ComponentFactory.create(policyName);
+        if (obj instanceof EvictionPolicy) {
+            return (EvictionPolicy) obj;
+        }
+
+        logger.warning("can't create eviction policy " + policyName + ", using LRU");
+        return new LRUEvictionPolicy();
+    }
+
+    protected Segment segmentFor(Object key) {
+        Segment[] segs = segments;
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        h ^= (h >>> 7);
+        return segs[h & (segs.length - 1)];
+    }
+
+    /**
+     * Return an estimate of the memory used by the object, in bytes. Only used
+     * if the memory limit of the cache is set. Returns 0 by default.
+     */
+    protected long weigh(CacheObject co) {
+        return 0;
+    }
+
+    /**
+     * Called when an object has been pushed out of the cache to make room for
+     * others. Called outside of any cache lock. Does nothing by default.
+     */
+    protected void evicted(CacheObject co) {
+    }
+
+    /**
+     * Search the cache for a match -return null if not found.
+     */
+    public CacheObject searchCache(Object key) {
+        if (key == null) {
+            return null;
+        }
+        return segmentFor(key).get(key);
+    }
+
+    /**
+     * Put the object in the cache, replacing any object with the same key. If
+     * the cache is full, the eviction policy decides what gets removed. The
+     * replaced object and any removed ones are passed to evicted().
+     */
+    protected void replaceLeastUsed(CacheObject newObj) {
+        if (newObj == null || newObj.id == null) {
+            return;
+        }
+
+        newObj.weight = maxWeight > 0 ? weigh(newObj) : 0;
+        List<CacheObject> removed = segmentFor(newObj.id).put(newObj);
+
+        if (removed != null) {
+            for (CacheObject co : removed) {
+                if (logger.isLoggable(Level.FINE)) {
+                    logger.fine("Tossing " + co.id + " from cache to add " + newObj.id);
+                }
+                evicted(co);
+            }
+        }
+    }
+
+    /**
+     * Recalculate the weight of a cached object, for objects that are filled
+     * in after they have been added to the cache. May cause objects to be
+     * evicted.
+     */
+    public void updateWeight(Object key) {
+        if (key == null || maxWeight <= 0) {
+            return;
+        }
+
+        List<CacheObject> removed = segmentFor(key).reweigh(key, this);
+        if (removed != null) {
+            for (CacheObject co : removed) {
+                evicted(co);
+            }
+        }
+    }
+
+    /**
+     * Remove an object from the cache.
+     * 
+     * @return the CacheObject removed, null if it wasn't in the cache.
+     */
+    public CacheObject remove(Object key) {
+        if (key == null) {
+            return null;
+        }
+        return segmentFor(key).remove(key);
+    }
+
+    /**
+     * Remove all the objects from the cache.
+     */
+    public void clear() {
+        Segment[] segs = segments;
+        if (segs != null) {
+            for (int i = 0; i < segs.length; i++) {
+                segs[i].clear();
+            }
+        }
+    }
+
+    /**
+     * Need to clear memory, get gc moving, and ready for new objects
+     */
+    public void resetCache() {
+        initSegments(maxSize, null);
+    }
+
+    /**
+     * Need to clear memory, get gc moving, and ready for new objects.
+     * 
+     * @param max_size the maximum number of objects.
+     */
+    public void resetCache(int max_size) {
+        initSegments(max_size, null);
+    }
+
+    /**
+     * Change the number of objects the cache can hold, keeping the objects
+     * already in the cache that still fit.
+     * 
+     * @param max_size the maximum number of objects.
+     */
+    public void resizeCache(int max_size) {
+        initSegments(max_size, snapshot());
+    }
+
+    /**
+     * Get the maximum number of objects in the cache.
+     */
+    public int getCacheSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return the number of objects currently in the cache.
+     */
+    public int getCachedCount() {
+        int count = 0;
+        Segment[] segs = segments;
+        for (int i = 0; i < segs.length; i++) {
+            count += segs[i].size();
+        }
+        return count;
+    }
+
+    /**
+     * @return the estimated memory used by the cached objects, in bytes. Only
+     *         tracked if the memory limit is set.
+     */
+    public long getCachedWeight() {
+        long weight = 0;
+        Segment[] segs = segments;
+        for (int i = 0; i < segs.length; i++) {
+            weight += segs[i].weight();
+        }
+        return weight;
+    }
+
+    /**
+     * @return the memory limit of the cache in bytes, 0 if there isn't one.
+     */
+    public long getMaxWeight() {
+        return maxWeight;
+    }
+
+    /**
+     * Set the memory limit of the cache, in bytes. Objects in the cache are
+     * kept if they fit.
+     * 
+     * @param maxWeight 0 for no limit.
+     */
+    public void setMaxWeight(long maxWeight) {
+        this.maxWeight = Math.max(0, maxWeight);
+        initSegments(maxSize, snapshot());
+    }
+
+    public String getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
+    /**
+     * Set the eviction policy used by the cache. Clears the cache.
+     * 
+     * @param policyName LRU, LFU, TinyLFU or the class name of an
+     *        EvictionPolicy.
+     */
+    public void setEvictionPolicy(String policyName) {
+        if (policyName != null && !policyName.equals(evictionPolicy)) {
+            evictionPolicy = policyName;
+            initSegments(maxSize, null);
+        }
+    }
+
+    /**
+     * Set the eviction policy and memory limit from properties, using the
+     * CACHE_POLICY_PROPERTY and CACHE_MEMORY_PROPERTY (in megabytes).
+     * 
+     * @param prefix scoped property prefix, with the period.
+     * @param props properties
+     */
+    public void setCacheProperties(String prefix, Properties props) {
+        setEvictionPolicy(props.getProperty(prefix + CACHE_POLICY_PROPERTY, evictionPolicy));
+        int megabytes = PropUtils.intFromProperties(props, prefix + CACHE_MEMORY_PROPERTY, (int) (maxWeight >> 20));
+        if (((long) megabytes << 20) != maxWeight) {
+            setMaxWeight((long) megabytes << 20);
+        }
+    }
+
+    /**
+     * Add the CACHE_POLICY_PROPERTY and CACHE_MEMORY_PROPERTY settings to the
+     * properties.
+     */
+    public void getCacheProperties(String prefix, Properties props) {
+        props.put(prefix + CACHE_POLICY_PROPERTY, evictionPolicy);
+        props.put(prefix + CACHE_MEMORY_PROPERTY, Long.toString(maxWeight >> 20));
+    }
+
+    /**
+     * Add descriptions of the CACHE_POLICY_PROPERTY and CACHE_MEMORY_PROPERTY
+     * to the property info.
+     */
+    public void getCachePropertyInfo(Properties list) {
+        list.put(CACHE_POLICY_PROPERTY, "Cache eviction policy: LRU, LFU or TinyLFU");
+        list.put(CACHE_MEMORY_PROPERTY, "Maximum memory used by the cache, in megabytes (0 for no limit)");
+    }
+
+    /**
+     * @return a List of the objects currently in the cache.
+     */
+    protected List<CacheObject> snapshot() {
+        List<CacheObject> ret = new ArrayList<CacheObject>();
+        Segment[] segs = segments;
+        if (segs != null) {
+            for (int i = 0; i < segs.length; i++) {
+                segs[i].addTo(ret);
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Return a ListIterator over a copy of the cache objects.
+     */
+    public ListIterator<CacheObject> listIterator() {
+        return snapshot().listIterator();
+    }
+
+    /**
+     * A part of the cache with its own lock and eviction policy.
+     */
+    protected static class Segment {
+        protected HashMap<Object, CacheObject> map = new HashMap<Object, CacheObject>();
+        protected EvictionPolicy policy;
+        protected int maxSize;
+        protected long maxWeight;
+        protected long weight;
+
+        protected Segment(EvictionPolicy policy, int maxSize, long maxWeight) {
+            this.policy = policy;
+            this.maxSize = Math.max(1, maxSize);
+            this.maxWeight = maxWeight;
+        }
+
+        protected synchronized CacheObject get(Object key) {
+            CacheObject co = map.get(key);
+            if (co != null) {
+                policy.recordAccess(key);
+            }
+            return co;
+        }
+
+        protected synchronized List<CacheObject> put(CacheObject newObj) {
+            CacheObject old = map.put(newObj.id, newObj);
+            if (old != null) {
+                weight -= old.weight;
+                policy.recordAccess(newObj.id);
+            } else {
+                policy.recordInsertion(newObj.id);
+            }
+            weight += newObj.weight;
+
+            List<CacheObject> removed = trim();
+            // A replaced object is gone from the cache, too.
+            if (old != null && old != newObj) {
+                if (removed == null) {
+                    removed = new ArrayList<CacheObject>(1);
+                }
+                removed.add(old);
+            }
+            return removed;
+        }
+
+        protected synchronized List<CacheObject> reweigh(Object key, ConcurrentCacheHandler handler) {
+            CacheObject co = map.get(key);
+            if (co == null) {
+                return null;
+            }
+            weight -= co.weight;
+            co.weight = handler.weigh(co);
+            weight += co.weight;
+            return trim();
+        }
+
+        /**
+         * Evict objects until the segment is within its limits. An object is
+         * never evicted for weight if it's the only one left.
+         */
+        protected List<CacheObject> trim() {
+            List<CacheObject> removed = null;
+            while (map.size() > maxSize || (maxWeight > 0 && weight > maxWeight && map.size() > 1)) {
+                Object key = policy.evict();
+                if (key == null) {
+                    break;
+                }
+                CacheObject co = map.remove(key);
+                if (co != null) {
+                    weight -= co.weight;
+                    if (removed == null) {
+                        removed = new ArrayList<CacheObject>(2);
+                    }
+                    removed.add(co);
+                }
+            }
+            return removed;
+        }
+
+        protected synchronized CacheObject remove(Object key) {
+            CacheObject co = map.remove(key);
+            if (co != null) {
+                weight -= co.weight;
+                policy.recordRemoval(key);
+            }
+            return co;
+        }
+
+        protected synchronized void clear() {
+            map.clear();
+            policy.clear();
+            weight = 0;
+        }
+
+        protected synchronized int size() {
+            return map.size();
+        }
+
+        protected synchronized long weight() {
+            return weight;
+        }
+
+        protected synchronized void addTo(List<CacheObject> list) {
+            list.addAll(map.values());
+        }
+    }
+}
@@ -0,0 +1,65 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.util.cacheHandler;
+
+/**
+ * An EvictionPolicy decides which entry of a ConcurrentCacheHandler segment
+ * should be removed when the segment is over its entry or weight capacity. The
+ * policy only keeps track of keys, the segment holds on to the CacheObjects.
+ * Policies are not expected to be thread-safe, they are always called while
+ * the owning segment is locked.
+ * 
+ * @author dietrick
+ */
+public interface EvictionPolicy {
+
+    /**
+     * Called before the policy is used, letting it know how many entries the
+     * segment it's working for can hold.
+     * 
+     * @param maxSize maximum number of entries.
+     */
+    void setCapacity(int maxSize);
+
+    /**
+     * Called when a cached entry has been found for a key.
+     */
+    void recordAccess(Object key);
+
+    /**
+     * Called when a new entry has been added for a key.
+     */
+    void recordInsertion(Object key);
+
+    /**
+     * Called when an entry has been removed by the cache, not through
+     * eviction.
+     */
+    void recordRemoval(Object key);
+
+    /**
+     * Pick the key of the entry that should leave the cache next. The key is
+     * forgotten by the policy when returned.
+     * 
+     * @return key of the entry to remove, or null if the policy isn't tracking
+     *         anything.
+     */
+    Object evict();
+
+    /**
+     * Forget about all keys.
+     */
+    void clear();
+}
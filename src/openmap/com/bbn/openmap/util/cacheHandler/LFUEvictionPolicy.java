@@ -0,0 +1,135 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.util.cacheHandler;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+
+/**
+ * An EvictionPolicy that removes the least frequently used entry, breaking
+ * ties by removing the oldest entry with that use count. Entries are kept in
+ * buckets by use count so all operations are constant time.
+ * 
+ * @author dietrick
+ */
+public class LFUEvictionPolicy implements EvictionPolicy {
+
+    protected HashMap<Object, Integer> counts = new HashMap<Object, Integer>();
+    protected HashMap<Integer, LinkedHashSet<Object>> buckets = new HashMap<Integer, LinkedHashSet<Object>>();
+    protected int minCount = 0;
+
+    public void setCapacity(int maxSize) {
+    }
+
+    public void recordAccess(Object key) {
+        Integer count = counts.get(key);
+        if (count == null) {
+            return;
+        }
+
+        int c = count.intValue();
+        LinkedHashSet<Object> bucket = buckets.get(count);
+        bucket.remove(key);
+        if (bucket.isEmpty()) {
+            buckets.remove(count);
+            if (minCount == c) {
+                minCount = c + 1;
+            }
+        }
+
+        counts.put(key, Integer.valueOf(c + 1));
+        addToBucket(key, c + 1);
+    }
+
+    public void recordInsertion(Object key) {
+        if (counts.containsKey(key)) {
+            recordAccess(key);
+            return;
+        }
+        counts.put(key, Integer.valueOf(1));
+        addToBucket(key, 1);
+        minCount = 1;
+    }
+
+    public void recordRemoval(Object key) {
+        Integer count = counts.remove(key);
+        if (count == null) {
+            return;
+        }
+
+        LinkedHashSet<Object> bucket = buckets.get(count);
+        bucket.remove(key);
+        if (bucket.isEmpty()) {
+            buckets.remove(count);
+            if (minCount == count.intValue()) {
+                findMinCount();
+            }
+        }
+    }
+
+    public Object evict() {
+        if (counts.isEmpty()) {
+            return null;
+        }
+
+        LinkedHashSet<Object> bucket = buckets.get(Integer.valueOf(minCount));
+        if (bucket == null) {
+            findMinCount();
+            bucket = buckets.get(Integer.valueOf(minCount));
+        }
+
+        Iterator<Object> it = bucket.iterator();
+        Object key = it.next();
+        it.remove();
+        counts.remove(key);
+
+        if (bucket.isEmpty()) {
+            buckets.remove(Integer.valueOf(minCount));
+            findMinCount();
+        }
+        return key;
+    }
+
+    public void clear() {
+        counts.clear();
+        buckets.clear();
+        minCount = 0;
+    }
+
+    protected void addToBucket(Object key, int count) {
+        Integer c = Integer.valueOf(count);
+        LinkedHashSet<Object> bucket = buckets.get(c);
+        if (bucket == null) {
+            bucket = new LinkedHashSet<Object>();
+            buckets.put(c, bucket);
+        }
+        bucket.add(key);
+    }
+
+    /**
+     * Only called when the lowest bucket empties out through removal, the
+     * number of distinct counts is small compared to the number of entries.
+     */
+    protected void findMinCount() {
+        int min = Integer.MAX_VALUE;
+        for (Integer c : buckets.keySet()) {
+            if (c.intValue() < min) {
+                min = c.intValue();
+            }
+        }
+        minCount = (min == Integer.MAX_VALUE) ? 0 : min;
+    }
+}
@@ -0,0 +1,83 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.util.cacheHandler;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * An EvictionPolicy that removes the least recently used entry. All
+ * operations are constant time.
+ * 
+ * @author dietrick
+ */
+public class LRUEvictionPolicy implements EvictionPolicy {
+
+    /**
+     * Access-ordered map, the eldest entry is the least recently used.
+     */
+    protected LinkedHashMap<Object, Object> order = new LinkedHashMap<Object, Object>(16, .75f, true);
+
+    public void setCapacity(int maxSize) {
+    }
+
+    public void recordAccess(Object key) {
+        order.get(key);
+    }
+
+    public void recordInsertion(Object key) {
+        order.put(key, key);
+    }
+
+    public void recordRemoval(Object key) {
+        order.remove(key);
+    }
+
+    public Object evict() {
+        Iterator<Object> it = order.keySet().iterator();
+        if (it.hasNext()) {
+            Object key = it.next();
+            it.remove();
+            return key;
+        }
+        return null;
+    }
+
+    public void clear() {
+        order.clear();
+    }
+
+    /**
+     * @return the number of keys being tracked.
+     */
+    public int size() {
+        return order.size();
+    }
+
+    /**
+     * @return true if the key is being tracked.
+     */
+    public boolean contains(Object key) {
+        return order.containsKey(key);
+    }
+
+    /**
+     * @return the least recently used key, without removing it.
+     */
+    public Object peek() {
+        Iterator<Object> it = order.keySet().iterator();
+        return it.hasNext() ? it.next() : null;
+    }
+}
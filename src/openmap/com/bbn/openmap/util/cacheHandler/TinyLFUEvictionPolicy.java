@@ -0,0 +1,173 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.util.cacheHandler;
+
+/**
+ * A W-TinyLFU style EvictionPolicy. New entries go into a small LRU window
+ * (about 1% of the capacity). When the window overflows, its least recently
+ * used entry has to compete against the least recently used entry of the main
+ * area for a place in the cache, and the one that has been asked for more
+ * often (as estimated by a FrequencySketch) stays. This keeps one-off requests,
+ * like a fast pan across the map, from flushing out tiles and frames that are
+ * used over and over.
+ * 
+ * @author dietrick
+ */
+public class TinyLFUEvictionPolicy implements EvictionPolicy {
+
+    protected LRUEvictionPolicy window = new LRUEvictionPolicy();
+    protected LRUEvictionPolicy main = new LRUEvictionPolicy();
+    protected FrequencySketch sketch = new FrequencySketch(16);
+    protected int windowMax = 1;
+    protected int maxSize = Integer.MAX_VALUE;
+
+    public void setCapacity(int maxSize) {
+        this.maxSize = maxSize;
+        windowMax = Math.max(1, maxSize / 100);
+        sketch = new FrequencySketch(maxSize);
+    }
+
+    public void recordAccess(Object key) {
+        sketch.increment(key);
+        if (window.contains(key)) {
+            window.recordAccess(key);
+        } else {
+            main.recordAccess(key);
+        }
+    }
+
+    public void recordInsertion(Object key) {
+        sketch.increment(key);
+        window.recordInsertion(key);
+
+        // While the cache is filling up, entries move from the window to the
+        // main area without having to compete.
+        if (window.size() > windowMax && window.size() + main.size() <= maxSize) {
+            main.recordInsertion(window.evict());
+        }
+    }
+
+    public void recordRemoval(Object key) {
+        window.recordRemoval(key);
+        main.recordRemoval(key);
+    }
+
+    public Object evict() {
+        if (main.size() == 0) {
+            return window.evict();
+        }
+
+        if (window.size() <= windowMax) {
+            return main.evict();
+        }
+
+        Object candidate = window.evict();
+        Object victim = main.peek();
+
+        if (sketch.frequency(candidate) > sketch.frequency(victim)) {
+            main.evict();
+            main.recordInsertion(candidate);
+            return victim;
+        }
+
+        return candidate;
+    }
+
+    public void clear() {
+        window.clear();
+        main.clear();
+        sketch.clear();
+    }
+
+    /**
+     * A count-min sketch of 4-bit counters used to estimate how often a key
+     * has been seen. All counters are halved after a sample period
+     * proportional to the capacity, so the estimates favor recent history.
+     */
+    public static class FrequencySketch {
+
+        protected final static int[] SEEDS = {
+            0x97cb3127, 0xb1c9b8a5, 0x5bd1e995, 0x27d4eb2f
+        };
+
+        protected byte[] table;
+        protected int mask;
+        protected int sampleSize;
+        protected int additions;
+
+        public FrequencySketch(int maxSize) {
+            int size = 64;
+            while (size < maxSize * 4 && size < (1 << 24)) {
+                size <<= 1;
+            }
+            table = new byte[size];
+            mask = size - 1;
+            sampleSize = Math.max(10 * maxSize, 100);
+        }
+
+        public void increment(Object key) {
+            int h = spread(key.hashCode());
+            boolean added = false;
+            for (int i = 0; i < SEEDS.length; i++) {
+                int index = indexOf(h, i);
+                if (table[index] < 15) {
+                    table[index]++;
+                    added = true;
+                }
+            }
+
+            if (added && ++additions >= sampleSize) {
+                reset();
+            }
+        }
+
+        public int frequency(Object key) {
+            if (key == null) {
+                return 0;
+            }
+            int h = spread(key.hashCode());
+            int freq = 15;
+            for (int i = 0; i < SEEDS.length; i++) {
+                freq = Math.min(freq, table[indexOf(h, i)]);
+            }
+            return freq;
+        }
+
+        public void clear() {
+            java.util.Arrays.fill(table, (byte) 0);
+            additions = 0;
+        }
+
+        protected void reset() {
+            for (int i = 0; i < table.length; i++) {
+                table[i] = (byte) (table[i] >>> 1);
+            }
+            additions = sampleSize / 2;
+        }
+
+        protected int indexOf(int h, int i) {
+            int hash = (h + SEEDS[i]) * SEEDS[i];
+            hash += hash >>> 16;
+            return hash & mask;
+        }
+
+        protected static int spread(int h) {
+            h ^= (h >>> 17);
+            h *= 0xed5ad4bb;
+            h ^= (h >>> 11);
+            return h;
+        }
+    }
+}
@@ -0,0 +1,966 @@
+// **********************************************************************
+// 
+// <copyright>
+// 
+//  BBN Technologies
+//  10 Moulton Street
+//  Cambridge, MA 02138
+//  (617) 873-8000
+// 
+//  Copyright (C) BBNT Solutions LLC. All rights reserved.
+// 
+// </copyright>
+// **********************************************************************
+
+package com.bbn.openmap.util.quadtree;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import com.bbn.openmap.MoreMath;
+import com.bbn.openmap.util.DataOrganizer;
+
+/**
+ * The PackedQuadTree is a point index for large numbers of objects, and for
+ * objects that are queried by one thread (rendering) while another thread
+ * loads or updates them. Unlike the QuadTree, it doesn't keep a node object
+ * with a list for each cell and a leaf object for each point. The locations
+ * are kept in primitive arrays sorted by quadtree cell (a Morton code of the
+ * location), and the quadtree is implied by the sort order - the points in
+ * any cell are a contiguous range of the arrays, found with a binary search.
+ * <P>
+ * Queries are answered from a Snapshot, an immutable, sorted copy of the
+ * points. Changes (put, remove, clear, load) are made to a separate list of
+ * points, and the next query after a change builds and publishes a new
+ * Snapshot with one sort. Readers never see a partially updated tree, and
+ * never wait for a load to finish, they use the last Snapshot until the new
+ * one is published. Adding points one at a time with put() and then querying
+ * costs one sort, the same as a bulk load.
+ * <P>
+ * The nearest and radius queries measure great circle distance, in decimal
+ * degrees of arc, so they work across the dateline and near the poles. The
+ * bounding box query treats a box whose west edge is east of its east edge as
+ * crossing the dateline, like the QuadTree.
+ * 
+ * @author dietrick
+ */
+public class PackedQuadTree<T> implements DataOrganizer<T> {
+
+    /** The default maximum number of points checked one by one in a cell. */
+    public final static int DEFAULT_LEAF_SIZE = 16;
+
+    /** The number of bits used for each of the lat and lon in the cell code. */
+    protected final static int BITS = 31;
+    protected final static double LAT_SCALE = (1L << BITS) / 180.0;
+    protected final static double LON_SCALE = (1L << BITS) / 360.0;
+
+    protected int leafSize;
+
+    // The points being edited, guarded by this.
+    protected double[] lats;
+    protected double[] lons;
+    protected Object[] objs;
+    protected int count;
+
+    /** Incremented with every change, so readers can tell a Snapshot is old. */
+    protected volatile int modCount = 0;
+    /** The Snapshot queries are answered from. */
+    protected volatile Snapshot<T> snapshot;
+
+    public PackedQuadTree() {
+        this(DEFAULT_LEAF_SIZE);
+    }
+
+    /**
+     * @param leafSize the maximum number of points that will be checked one by
+     *        one in a cell, instead of dividing the cell into quadrants.
+     */
+    public PackedQuadTree(int leafSize) {
+        this.leafSize = Math.max(1, leafSize);
+        lats = new double[16];
+        lons = new double[16];
+        objs = new Object[16];
+        snapshot = new Snapshot<T>(new double[0], new double[0], new Object[0], 0, this.leafSize);
+    }
+
+    /**
+     * Add a object into the tree at a location.
+     * 
+     * @param lat latitude, decimal degrees.
+     * @param lon longitude, decimal degrees.
+     * @param obj the object to insert into the tree
+     * @return true.
+     */
+    public synchronized boolean put(double lat, double lon, T obj) {
+        if (count == lats.length) {
+            int size = count * 2;
+            lats = copyOf(lats, size);
+            lons = copyOf(lons, size);
+            Object[] tmp = new Object[size];
+            System.arraycopy(objs, 0, tmp, 0, count);
+            objs = tmp;
+        }
+        lats[count] = lat;
+        lons[count] = lon;
+        objs[count] = obj;
+        count++;
+        modCount++;
+        return true;
+    }
+
+    /**
+     * Remove a object from the tree.
+     * 
+     * @param lat latitude, decimal degrees.
+     * @param lon longitude, decimal degrees.
+     * @param obj the object to remove
+     * @return the object removed, null if the object not found.
+     */
+    public synchronized T remove(double lat, double lon, T obj) {
+        for (int i = count - 1; i >= 0; i--) {
+            if (objs[i] == obj && lats[i] == lat && lons[i] == lon) {
+                count--;
+                lats[i] = lats[count];
+                lons[i] = lons[count];
+                objs[i] = objs[count];
+                objs[count] = null;
+                modCount++;
+                return obj;
+            }
+        }
+        return null;
+    }
+
+    /** Clear the tree. */
+    public synchronized void clear() {
+        lats = new double[16];
+        lons = new double[16];
+        objs = new Object[16];
+        count = 0;
+        modCount++;
+    }
+
+    /**
+     * Replace the contents of the tree. The new Snapshot is built before the
+     * tree is changed, so queries made during the load get the old contents.
+     * 
+     * @param latitudes decimal degrees.
+     * @param longitudes decimal degrees.
+     * @param objects the objects at the locations.
+     */
+    public void load(double[] latitudes, double[] longitudes, List<? extends T> objects) {
+        int n = objects.size();
+        double[] la = copyOf(latitudes, n);
+        double[] lo = copyOf(longitudes, n);
+        Object[] ob = objects.toArray(new Object[n]);
+        Snapshot<T> s = new Snapshot<T>(la, lo, ob, 0, leafSize);
+
+        synchronized (this) {
+            lats = la;
+            lons = lo;
+            objs = ob;
+            count = n;
+            modCount++;
+            snapshot = new Snapshot<T>(s, modCount);
+        }
+    }
+
+    /** The number of objects in the tree. */
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * Get the current Snapshot of the tree, building it if the tree has
+     * changed. Use the Snapshot directly to make several queries against the
+     * same contents.
+     */
+    public Snapshot<T> getSnapshot() {
+        Snapshot<T> s = snapshot;
+        if (s.version == modCount) {
+            return s;
+        }
+
+        double[] la;
+        double[] lo;
+        Object[] ob;
+        int version;
+        synchronized (this) {
+            s = snapshot;
+            if (s.version == modCount) {
+                return s;
+            }
+            version = modCount;
+            la = copyOf(lats, count);
+            lo = copyOf(lons, count);
+            ob = new Object[count];
+            System.arraycopy(objs, 0, ob, 0, count);
+        }
+
+        // Sort outside of the lock, so changes aren't held up.
+        s = new Snapshot<T>(la, lo, ob, version, leafSize);
+
+        synchronized (this) {
+            if (snapshot.version - version < 0) {
+                snapshot = s;
+            }
+        }
+        return s;
+    }
+
+    /**
+     * Get the object closest to a lat/lon.
+     * 
+     * @param lat latitude, decimal degrees.
+     * @param lon longitude, decimal degrees.
+     * @return the object that was found, null if the tree is empty.
+     */
+    public T get(double lat, double lon) {
+        return getSnapshot().getNearest(lat, lon, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * Get the object closest to a lat/lon, within a maximum distance.
+     * 
+     * @param lat latitude, decimal degrees.
+     * @param lon longitude, decimal degrees.
+     * @param withinDistance the maximum great circle distance to get a hit,
+     *        in decimal degrees.
+     * @return the object that was found, null if nothing is within the
+     *         maximum distance.
+     */
+    public T get(double lat, double lon, double withinDistance) {
+        return getSnapshot().getNearest(lat, lon, withinDistance);
+    }
+
+    /**
+     * Get all the objects within a bounding box.
+     * 
+     * @param north top latitude, decimal degrees.
+     * @param west left longitude, decimal degrees.
+     * @param south bottom latitude, decimal degrees.
+     * @param east right longitude, decimal degrees.
+     * @return Collection of objects.
+     */
+    public Collection<T> get(double north, double west, double south, double east) {
+        return getSnapshot().get(north, west, south, east, null);
+    }
+
+    /**
+     * Get all the objects within a bounding box, and return the objects in the
+     * provided Collection.
+     * 
+     * @param north top latitude, decimal degrees.
+     * @param west left longitude, decimal degrees.
+     * @param south bottom latitude, decimal degrees.
+     * @param east right longitude, decimal degrees.
+     * @param collection a Collection to add objects to, may be null.
+     * @return Collection of objects.
+     */
+    public Collection<T> get(double north, double west, double south, double east,
+                             Collection<T> collection) {
+        return getSnapshot().get(north, west, south, east, collection);
+    }
+
+    /**
+     * Get the k objects closest to a lat/lon, closest first.
+     * 
+     * @param lat latitude, decimal degrees.
+     * @param lon longitude, decimal degrees.
+     * @param k the maximum number of objects to return.
+     * @param withinDistance the maximum great circle distance, in decimal
+     *        degrees. Double.POSITIVE_INFINITY for no limit.
+     * @return List of objects, closest first.
+     */
+    public List<T> getNearest(double lat, double lon, int k, double withinDistance) {
+        return getSnapshot().getNearest(lat, lon, k, withinDistance);
+    }
+
+    /**
+     * Get all the objects within a great circle distance of a lat/lon.
+     * 
+     * @param lat latitude, decimal degrees.
+     * @param lon longitude, decimal degrees.
+     * @param withinDistance the great circle distance, in decimal degrees.
+     * @param collection a Collection to add objects to, may be null.
+     * @return Collection of objects, in no particular order.
+     */
+    public Collection<T> getWithin(double lat, double lon, double withinDistance,
+                                   Collection<T> collection) {
+        return getSnapshot().getWithin(lat, lon, withinDistance, collection);
+    }
+
+    protected static double[] copyOf(double[] array, int length) {
+        double[] copy = new double[length];
+        System.arraycopy(array, 0, copy, 0, Math.min(length, array.length));
+        return copy;
+    }
+
+    /**
+     * An immutable, sorted set of points that queries are answered from. The
+     * points are sorted by a code that interleaves the bits of the quantized
+     * longitude and latitude, so each quadtree cell at each level is a
+     * contiguous range of the arrays.
+     */
+    public static final class Snapshot<T> {
+
+        protected final double[] lats;
+        protected final double[] lons;
+        // Unit vectors for the points, for distances without trig.
+        protected final double[] xs;
+        protected final double[] ys;
+        protected final double[] zs;
+        protected final Object[] objs;
+        protected final long[] codes;
+        protected final int size;
+        protected final int leafSize;
+        protected final int version;
+
+        /**
+         * Sort the points into a new Snapshot. The arrays are copied, not
+         * kept.
+         */
+        protected Snapshot(double[] lats, double[] lons, Object[] objs, int version, int leafSize) {
+            int n = objs.length;
+            this.size = n;
+            this.leafSize = leafSize;
+            this.version = version;
+
+            long[] keys = new long[n];
+            for (int i = 0; i < n; i++) {
+                keys[i] = code(lats[i], wrapLongitude(lons[i]));
+            }
+            int[] order = sort(keys);
+
+            double[] sortedLats = new double[n];
+            double[] sortedLons = new double[n];
+            Object[] sortedObjs = new Object[n];
+            xs = new double[n];
+            ys = new double[n];
+            zs = new double[n];
+            for (int i = 0; i < n; i++) {
+                int j = order[i];
+                sortedLats[i] = lats[j];
+                sortedLons[i] = wrapLongitude(lons[j]);
+                sortedObjs[i] = objs[j];
+                double phi = Math.toRadians(sortedLats[i]);
+                double lambda = Math.toRadians(sortedLons[i]);
+                xs[i] = Math.cos(phi) * Math.cos(lambda);
+                ys[i] = Math.cos(phi) * Math.sin(lambda);
+                zs[i] = Math.sin(phi);
+            }
+            this.lats = sortedLats;
+            this.lons = sortedLons;
+            this.objs = sortedObjs;
+            this.codes = keys;
+        }
+
+        /** A copy of a Snapshot with a different version. */
+        protected Snapshot(Snapshot<T> s, int version) {
+            this.lats = s.lats;
+            this.lons = s.lons;
+            this.xs = s.xs;
+            this.ys = s.ys;
+            this.zs = s.zs;
+            this.objs = s.objs;
+            this.codes = s.codes;
+            this.size = s.size;
+            this.leafSize = s.leafSize;
+            this.version = version;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        @SuppressWarnings("unchecked")
+        protected T object(int i) {
+            return (T) objs[i];
+        }
+
+        /**
+         * Get all the objects within a bounding box, see
+         * PackedQuadTree.get(north, west, south, east, collection).
+         */
+        public Collection<T> get(double north, double west, double south, double east,
+                                 Collection<T> collection) {
+            if (collection == null) {
+                collection = new ArrayList<T>();
+            }
+            if (size == 0 || north < south) {
+                return collection;
+            }
+
+            if (east - west >= 360.0) {
+                west = -180.0;
+                east = 180.0;
+            } else {
+                west = wrapLongitude(west);
+                east = wrapLongitude(east);
+            }
+
+            // Same checks as the QuadTree, for boxes that wrap around or
+            // cover the whole earth.
+            if (west > east || MoreMath.approximately_equal(west, east, .001)) {
+                get(0, 0L, 0, size, north, west, south, 180.0, collection);
+                get(0, 0L, 0, size, north, -180.0, south, east, collection);
+            } else {
+                get(0, 0L, 0, size, north, west, south, east, collection);
+            }
+            return collection;
+        }
+
+        protected void get(int level, long prefix, int lo, int hi, double north, double west,
+                           double south, double east, Collection<T> collection) {
+            int shift = BITS - level;
+            double cellSouth = cellLat(compact(prefix >>> 1) << shift);
+            double cellNorth = cellLat((compact(prefix >>> 1) + 1L) << shift);
+            double cellWest = cellLon(compact(prefix) << shift);
+            double cellEast = cellLon((compact(prefix) + 1L) << shift);
+
+            if (cellSouth > north + EPSILON || cellNorth < south - EPSILON
+                    || cellWest > east + EPSILON || cellEast < west - EPSILON) {
+                return;
+            }
+
+            if (cellSouth >= south + EPSILON && cellNorth <= north - EPSILON
+                    && cellWest >= west + EPSILON && cellEast <= east - EPSILON) {
+                for (int i = lo; i < hi; i++) {
+                    collection.add(object(i));
+                }
+                return;
+            }
+
+            if (hi - lo <= leafSize || level == BITS) {
+                for (int i = lo; i < hi; i++) {
+                    double lat = lats[i];
+                    double lon = lons[i];
+                    if (lat <= north && lat >= south && lon >= west && lon <= east) {
+                        collection.add(object(i));
+                    }
+                }
+                return;
+            }
+
+            int childShift = 2 * (BITS - level - 1);
+            int start = lo;
+            for (int q = 0; q < 4; q++) {
+                long child = (prefix << 2) | q;
+                int end = (q == 3) ? hi : lowerBound(start, hi, (child + 1) << childShift);
+                if (end > start) {
+                    get(level + 1, child, start, end, north, west, south, east, collection);
+                }
+                start = end;
+            }
+        }
+
+        /**
+         * Get the object closest to a lat/lon, within a great circle
+         * distance in decimal degrees.
+         */
+        public T getNearest(double lat, double lon, double withinDistance) {
+            List<T> nearest = getNearest(lat, lon, 1, withinDistance);
+            return nearest.isEmpty() ? null : nearest.get(0);
+        }
+
+        /**
+         * Get the k objects closest to a lat/lon, closest first, within a
+         * great circle distance in decimal degrees.
+         */
+        public List<T> getNearest(double lat, double lon, int k, double withinDistance) {
+            List<T> nearest = new ArrayList<T>(Math.min(Math.max(k, 0), 64));
+            if (size == 0 || k <= 0) {
+                return nearest;
+            }
+
+            double maxHav = havFromDistance(withinDistance);
+            Query query = new Query(lat, lon);
+
+            // The distances of the k closest points queued so far, as a max
+            // heap. Once there are k, nothing farther than the top needs to
+            // be queued.
+            double[] best = new double[Math.min(k, size)];
+            int bestCount = 0;
+
+            // Start with the bound from the points next to the query location
+            // in code order, which are usually close by.
+            int window = Math.max(best.length, leafSize);
+            int wlo = Math.max(0, Math.min(size - window, lowerBound(0, size, code(lat, query.lon))
+                    - window / 2));
+            int whi = Math.min(size, wlo + window);
+            for (int i = wlo; i < whi; i++) {
+                double d = query.hav(xs[i], ys[i], zs[i]);
+                if (bestCount < best.length) {
+                    bestCount = pushBest(best, bestCount, d);
+                } else if (d < best[0]) {
+                    replaceBest(best, bestCount, d);
+                }
+            }
+            if (bestCount == best.length) {
+                maxHav = Math.min(maxHav, best[0]);
+            }
+            bestCount = 0;
+            query.setLimit(maxHav);
+
+            // Best first search. Cells are queued by the distance to their
+            // closest edge, points by their distance, so when a point comes
+            // off the queue nothing left can be closer.
+            Queue queue = new Queue();
+            queue.push(0.0, 0, 0L, 0, size);
+            while (queue.size > 0 && nearest.size() < k) {
+                int e = queue.pop();
+                if (queue.dist[e] > maxHav) {
+                    break;
+                }
+
+                int level = queue.level[e];
+                int lo = queue.lo[e];
+                int hi = queue.hi[e];
+                long prefix = queue.prefix[e];
+
+                if (level < 0) {
+                    nearest.add(object(lo));
+                } else if (hi - lo <= leafSize || level == BITS) {
+                    for (int i = lo; i < hi; i++) {
+                        double d = query.hav(xs[i], ys[i], zs[i]);
+                        if (d <= maxHav) {
+                            queue.push(d, -1, 0L, i, i + 1);
+                            if (bestCount < best.length) {
+                                bestCount = pushBest(best, bestCount, d);
+                            } else if (d < best[0]) {
+                                replaceBest(best, bestCount, d);
+                            }
+                            if (bestCount == best.length && best[0] < maxHav) {
+                                maxHav = best[0];
+                                query.setLimit(maxHav);
+                            }
+                        }
+                    }
+                } else {
+                    int childShift = 2 * (BITS - level - 1);
+                    int start = lo;
+                    for (int q = 0; q < 4; q++) {
+                        long child = (prefix << 2) | q;
+                        int end = (q == 3) ? hi : lowerBound(start, hi, (child + 1) << childShift);
+                        if (end > start) {
+                            double d = cellHav(query, level + 1, child, maxHav);
+                            if (d <= maxHav) {
+                                queue.push(d, level + 1, child, start, end);
+                            }
+                        }
+                        start = end;
+                    }
+                }
+            }
+            return nearest;
+        }
+
+        /**
+         * Get all the objects within a great circle distance of a lat/lon, in
+         * decimal degrees.
+         */
+        public Collection<T> getWithin(double lat, double lon, double withinDistance,
+                                       Collection<T> collection) {
+            if (collection == null) {
+                collection = new ArrayList<T>();
+            }
+            if (size > 0) {
+                double maxHav = havFromDistance(withinDistance);
+                Query query = new Query(lat, lon);
+                query.setLimit(maxHav);
+                getWithin(0, 0L, 0, size, query, maxHav, collection);
+            }
+            return collection;
+        }
+
+        protected void getWithin(int level, long prefix, int lo, int hi, Query query,
+                                 double maxHav, Collection<T> collection) {
+            if (hi - lo <= leafSize || level == BITS) {
+                for (int i = lo; i < hi; i++) {
+                    if (query.hav(xs[i], ys[i], zs[i]) <= maxHav) {
+                        collection.add(object(i));
+                    }
+                }
+                return;
+            }
+
+            int childShift = 2 * (BITS - level - 1);
+            int start = lo;
+            for (int q = 0; q < 4; q++) {
+                long child = (prefix << 2) | q;
+                int end = (q == 3) ? hi : lowerBound(start, hi, (child + 1) << childShift);
+                if (end > start && cellHav(query, level + 1, child, maxHav) <= maxHav) {
+                    getWithin(level + 1, child, start, end, query, maxHav, collection);
+                }
+                start = end;
+            }
+        }
+
+        /**
+         * The haversine of the great circle distance from a point to the
+         * closest part of a cell, 0 if the point is in the cell. If the cell
+         * is farther than limit, the returned value may be any value greater
+         * than limit.
+         */
+        protected double cellHav(Query query, int level, long prefix, double limit) {
+            int shift = BITS - level;
+            double south = cellLat(compact(prefix >>> 1) << shift) - EPSILON;
+            double north = cellLat((compact(prefix >>> 1) + 1L) << shift) + EPSILON;
+            double west = cellLon(compact(prefix) << shift) - EPSILON;
+            double east = cellLon((compact(prefix) + 1L) << shift) + EPSILON;
+            double lat = query.lat;
+            double lon = query.lon;
+
+            // The latitude difference alone is a lower bound, and can be
+            // checked against the limit in degrees without any trig.
+            if (south - lat > query.limitDegrees || lat - north > query.limitDegrees) {
+                return Double.POSITIVE_INFINITY;
+            }
+            double latHav = 0.0;
+            if (lat < south) {
+                latHav = havDelta(lat - south);
+            } else if (lat > north) {
+                latHav = havDelta(lat - north);
+            }
+
+            if (latHav > limit || (lon >= west && lon <= east)) {
+                return latHav;
+            }
+            double cosLat = query.cosLat;
+
+            // The closest point is on the closer of the west and east edges,
+            // either at a corner or where the edge is perpendicular to the
+            // great circle from the point.
+            double havDLon = Math.min(havDelta(west - lon), havDelta(east - lon));
+            double cosDLon = 1.0 - 2.0 * havDLon;
+            double vertexLat;
+            if (cosDLon <= 0.0) {
+                vertexLat = lat > 0 ? 90.0 : -90.0;
+            } else {
+                vertexLat = Math.toDegrees(Math.atan(Math.tan(Math.toRadians(lat)) / cosDLon));
+            }
+
+            if (vertexLat > south && vertexLat < north) {
+                return havPartial(havDLon, cosLat, lat, vertexLat);
+            }
+            return Math.min(havPartial(havDLon, cosLat, lat, south),
+                            havPartial(havDLon, cosLat, lat, north));
+        }
+
+        /**
+         * Find the first index in [lo, hi) with a code not less than key.
+         */
+        protected int lowerBound(int lo, int hi, long key) {
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (codes[mid] < key) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+    }
+
+    /**
+     * A binary heap of cells and points for the nearest search, kept in
+     * parallel arrays. A level of -1 marks a point, whose index is lo.
+     */
+    protected static class Queue {
+        double[] dist = new double[64];
+        int[] level = new int[64];
+        long[] prefix = new long[64];
+        int[] lo = new int[64];
+        int[] hi = new int[64];
+        int[] heap = new int[64];
+        int size = 0;
+        int used = 0;
+        int[] free = new int[64];
+        int freeCount = 0;
+
+        void push(double d, int lvl, long pre, int l, int h) {
+            int e;
+            if (freeCount > 0) {
+                e = free[--freeCount];
+            } else {
+                if (used == dist.length) {
+                    grow();
+                }
+                e = used++;
+            }
+            dist[e] = d;
+            level[e] = lvl;
+            prefix[e] = pre;
+            lo[e] = l;
+            hi[e] = h;
+
+            if (size == heap.length) {
+                int[] tmp = new int[size * 2];
+                System.arraycopy(heap, 0, tmp, 0, size);
+                heap = tmp;
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (dist[heap[parent]] <= d) {
+                    break;
+                }
+                heap[i] = heap[parent];
+                i = parent;
+            }
+            heap[i] = e;
+        }
+
+        /**
+         * Remove the closest entry, returning its index. The entry stays
+         * valid until the next push.
+         */
+        int pop() {
+            int top = heap[0];
+            int last = heap[--size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && dist[heap[child + 1]] < dist[heap[child]]) {
+                    child++;
+                }
+                if (dist[heap[child]] >= dist[last]) {
+                    break;
+                }
+                heap[i] = heap[child];
+                i = child;
+            }
+            if (size > 0) {
+                heap[i] = last;
+            }
+
+            if (freeCount == free.length) {
+                int[] tmp = new int[freeCount * 2];
+                System.arraycopy(free, 0, tmp, 0, freeCount);
+                free = tmp;
+            }
+            free[freeCount++] = top;
+            return top;
+        }
+
+        void grow() {
+            int n = dist.length * 2;
+            dist = PackedQuadTree.copyOf(dist, n);
+            long[] p = new long[n];
+            System.arraycopy(prefix, 0, p, 0, used);
+            prefix = p;
+            level = copyOf(level, n);
+            lo = copyOf(lo, n);
+            hi = copyOf(hi, n);
+        }
+
+        static int[] copyOf(int[] array, int length) {
+            int[] copy = new int[length];
+            System.arraycopy(array, 0, copy, 0, array.length);
+            return copy;
+        }
+    }
+
+    /**
+     * A query location, with what the distance tests need worked out once.
+     */
+    protected static class Query {
+        final double lat;
+        final double lon;
+        final double cosLat;
+        final double x;
+        final double y;
+        final double z;
+        /** The search limit in degrees, a little generous. */
+        double limitDegrees = Double.POSITIVE_INFINITY;
+
+        Query(double lat, double lon) {
+            this.lat = lat;
+            this.lon = wrapLongitude(lon);
+            double phi = Math.toRadians(lat);
+            double lambda = Math.toRadians(this.lon);
+            cosLat = Math.cos(phi);
+            x = cosLat * Math.cos(lambda);
+            y = cosLat * Math.sin(lambda);
+            z = Math.sin(phi);
+        }
+
+        void setLimit(double maxHav) {
+            if (maxHav < 1.0) {
+                limitDegrees = 2.0 * Math.toDegrees(Math.asin(Math.sqrt(Math.max(0.0, maxHav))))
+                        + EPSILON;
+            } else {
+                limitDegrees = Double.POSITIVE_INFINITY;
+            }
+        }
+
+        /**
+         * The haversine of the distance to a unit vector, which is a quarter
+         * of the squared chord length.
+         */
+        double hav(double px, double py, double pz) {
+            double dx = px - x;
+            double dy = py - y;
+            double dz = pz - z;
+            return (dx * dx + dy * dy + dz * dz) / 4.0;
+        }
+    }
+
+    /**
+     * Add a value to a max heap of count values, returning the new count.
+     */
+    protected static int pushBest(double[] best, int count, double d) {
+        int i = count;
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (best[parent] >= d) {
+                break;
+            }
+            best[i] = best[parent];
+            i = parent;
+        }
+        best[i] = d;
+        return count + 1;
+    }
+
+    /**
+     * Replace the largest value in a max heap of count values.
+     */
+    protected static void replaceBest(double[] best, int count, double d) {
+        int i = 0;
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= count) {
+                break;
+            }
+            if (child + 1 < count && best[child + 1] > best[child]) {
+                child++;
+            }
+            if (best[child] <= d) {
+                break;
+            }
+            best[i] = best[child];
+            i = child;
+        }
+        best[i] = d;
+    }
+
+    /** Slop, in degrees, for cell edges compared against locations. */
+    protected final static double EPSILON = 1e-9;
+
+    protected static double wrapLongitude(double lon) {
+        if (lon < -180.0 || lon >= 180.0) {
+            lon = ((lon + 180.0) % 360.0 + 360.0) % 360.0 - 180.0;
+        }
+        return lon;
+    }
+
+    /** The cell code for a location, the quantized lon and lat interleaved. */
+    protected static long code(double lat, double lon) {
+        long y = (long) ((lat + 90.0) * LAT_SCALE);
+        long x = (long) ((lon + 180.0) * LON_SCALE);
+        long max = (1L << BITS) - 1;
+        y = Math.max(0, Math.min(max, y));
+        x = Math.max(0, Math.min(max, x));
+        return spread(x) | (spread(y) << 1);
+    }
+
+    /** Spread the low 32 bits of a value to the even bits of a long. */
+    protected static long spread(long v) {
+        v &= 0xffffffffL;
+        v = (v | (v << 16)) & 0x0000ffff0000ffffL;
+        v = (v | (v << 8)) & 0x00ff00ff00ff00ffL;
+        v = (v | (v << 4)) & 0x0f0f0f0f0f0f0f0fL;
+        v = (v | (v << 2)) & 0x3333333333333333L;
+        v = (v | (v << 1)) & 0x5555555555555555L;
+        return v;
+    }
+
+    /** Gather the even bits of a long, the inverse of spread(). */
+    protected static long compact(long v) {
+        v &= 0x5555555555555555L;
+        v = (v | (v >>> 1)) & 0x3333333333333333L;
+        v = (v | (v >>> 2)) & 0x0f0f0f0f0f0f0f0fL;
+        v = (v | (v >>> 4)) & 0x00ff00ff00ff00ffL;
+        v = (v | (v >>> 8)) & 0x0000ffff0000ffffL;
+        v = (v | (v >>> 16)) & 0x00000000ffffffffL;
+        return v;
+    }
+
+    protected static double cellLat(long y) {
+        return y / LAT_SCALE - 90.0;
+    }
+
+    protected static double cellLon(long x) {
+        return x / LON_SCALE - 180.0;
+    }
+
+    /**
+     * Sort the codes in place with a radix sort, returning the original
+     * index of each sorted code.
+     */
+    protected static int[] sort(long[] keys) {
+        int n = keys.length;
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        if (n < 2) {
+            return order;
+        }
+
+        long[] keyBuf = new long[n];
+        int[] orderBuf = new int[n];
+        int[] counts = new int[1 << 11];
+        for (int shift = 0; shift < 2 * BITS; shift += 11) {
+            java.util.Arrays.fill(counts, 0);
+            for (int i = 0; i < n; i++) {
+                counts[(int) (keys[i] >>> shift) & 0x7ff]++;
+            }
+            // Skip the pass if every key has the same digit.
+            if (counts[(int) (keys[0] >>> shift) & 0x7ff] == n) {
+                continue;
+            }
+            int total = 0;
+            for (int i = 0; i < counts.length; i++) {
+                int c = counts[i];
+                counts[i] = total;
+                total += c;
+            }
+            for (int i = 0; i < n; i++) {
+                int pos = counts[(int) (keys[i] >>> shift) & 0x7ff]++;
+                keyBuf[pos] = keys[i];
+                orderBuf[pos] = order[i];
+            }
+            System.arraycopy(keyBuf, 0, keys, 0, n);
+            System.arraycopy(orderBuf, 0, order, 0, n);
+        }
+        return order;
+    }
+
+    /** sin^2(d/2) for an angle in degrees. */
+    protected static double havDelta(double degrees) {
+        double s = Math.sin(Math.toRadians(degrees) / 2.0);
+        return s * s;
+    }
+
+    protected static double havPartial(double havDLon, double cosLat1, double lat1, double lat2) {
+        return cosLat1 * Math.cos(Math.toRadians(lat2)) * havDLon + havDelta(lat1 - lat2);
+    }
+
+    /** The haversine for a great circle distance in decimal degrees. */
+    protected static double havFromDistance(double degrees) {
+        if (Double.isNaN(degrees) || degrees < 0) {
+            return -1.0;
+        }
+        if (degrees >= 180.0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return havDelta(degrees);
+    }
+}
@@ -15,7 +15,12 @@ package com.bbn.openmap.wmsservlet;
 
 import java.io.IOException;
 import java.net.MalformedURLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -28,10 +33,62 @@ import com.bbn.openmap.image.wms.WmsRequestHandler;
 import com.bbn.openmap.util.Debug;
 
 /**
- * 
+ * The OgcWmsServlet hands WMS requests to a WmsRequestHandler. Creating a
+ * WmsRequestHandler means creating all of the layers, so the handlers are kept
+ * and reused for later requests, one for each context and servlet path. The
+ * server address written into the capabilities document comes from the
+ * "host" and "port" context parameters, or from the request that created the
+ * handler if they aren't set. At most "maxRequestHandlers" handlers (4 by
+ * default) are kept. Set the "reuseRequestHandlers" context parameter to false
+ * to create a new handler for every request, which picks up changes to the map
+ * definition at the cost of speed.
  */
 public class OgcWmsServlet extends HttpServlet {
 
+    /**
+     * Context parameter for turning off the reuse of WmsRequestHandlers
+     * (true by default).
+     */
+    public static final String ReuseRequestHandlersParameter = "reuseRequestHandlers";
+
+    /**
+     * Context parameter for the number of WmsRequestHandlers kept for reuse
+     * (4 by default).
+     */
+    public static final String MaxRequestHandlersParameter = "maxRequestHandlers";
+
+    public static final int DEFAULT_MAX_REQUEST_HANDLERS = 4;
+
+    /**
+     * Context parameter for the server name given to WmsRequestHandlers. The
+     * server name of the request is used if it isn't set.
+     */
+    public static final String HostParameter = "host";
+
+    /**
+     * Context parameter for the server port given to WmsRequestHandlers. The
+     * server port of the request is used if it isn't set.
+     */
+    public static final String PortParameter = "port";
+
+    /**
+     * The most recently used WmsRequestHandlers, by the key from
+     * getRequestHandlerKey(). Each one is created by the first request that
+     * asks for it, and other requests for it wait for that one.
+     */
+    private final Map<String, FutureTask<WmsRequestHandler>> requestHandlers = new LinkedHashMap<String, FutureTask<WmsRequestHandler>>(16, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry<String, FutureTask<WmsRequestHandler>> eldest) {
+            return size() > getMaxRequestHandlers();
+        }
+    };
+
+    private int maxRequestHandlers = -1;
+
+    /**
+     * The contents of the map definition, read once.
+     */
+    private Properties mapDefinitionProperties;
+
     /**
      * A do-nothing constructor - init does all the work.
      */
@@ -68,6 +125,30 @@ public class OgcWmsServlet extends HttpServlet {
 	protected Properties getProperties() throws MalformedURLException,
 			IOException {
 
+		if (isReuseRequestHandlers()) {
+			synchronized (this) {
+				if (mapDefinitionProperties == null) {
+					mapDefinitionProperties = loadProperties();
+				}
+				// the handlers are free to modify their properties
+				Properties props = new Properties();
+				props.putAll(mapDefinitionProperties);
+				return props;
+			}
+		}
+		return loadProperties();
+	}
+
+	/**
+	 * Read the properties from the map definition.
+	 * 
+	 * @return Properties from the map definition.
+	 * @throws MalformedURLException
+	 * @throws IOException
+	 */
+	protected Properties loadProperties() throws MalformedURLException,
+			IOException {
+
 		// use context parameter "mapDefinition" for path to openmap.properties.
 		// default to "openmap.properties".
 		String mapDefinition = getServletContext().getInitParameter(
@@ -93,12 +174,25 @@ public class OgcWmsServlet extends HttpServlet {
             throw new ServletException("schema is not specified");
         }
 
-        String hostName = request.getServerName();
+        String hostName = getServletContext().getInitParameter(HostParameter);
+        if (hostName == null || hostName.trim().length() == 0) {
+            hostName = request.getServerName();
+        } else {
+            hostName = hostName.trim();
+        }
         if (hostName == null) {
             throw new ServletException("server name not specified");
         }
 
         int serverPort = request.getServerPort();
+        String port = getServletContext().getInitParameter(PortParameter);
+        if (port != null && port.trim().length() > 0) {
+            try {
+                serverPort = Integer.parseInt(port.trim());
+            } catch (NumberFormatException nfe) {
+                Debug.error("OgcWmsServlet: bad " + PortParameter + " value: " + port);
+            }
+        }
 
         String contextPath = request.getContextPath();
         if (contextPath == null) {
@@ -134,13 +228,132 @@ public class OgcWmsServlet extends HttpServlet {
 
     }
 
+    /**
+     * @return false if the servlet is configured to create a new
+     *         WmsRequestHandler for every request.
+     */
+    protected boolean isReuseRequestHandlers() {
+        String reuse = getServletContext().getInitParameter(ReuseRequestHandlersParameter);
+        return reuse == null || Boolean.valueOf(reuse.trim()).booleanValue();
+    }
+
+    /**
+     * @return the number of WmsRequestHandlers to keep for reuse.
+     */
+    protected synchronized int getMaxRequestHandlers() {
+        if (maxRequestHandlers < 0) {
+            maxRequestHandlers = DEFAULT_MAX_REQUEST_HANDLERS;
+            String max = getServletContext().getInitParameter(MaxRequestHandlersParameter);
+            if (max != null) {
+                try {
+                    maxRequestHandlers = Math.max(1, Integer.parseInt(max.trim()));
+                } catch (NumberFormatException nfe) {
+                    Debug.error("OgcWmsServlet: bad " + MaxRequestHandlersParameter + " value: "
+                            + max);
+                }
+            }
+        }
+        return maxRequestHandlers;
+    }
+
+    /**
+     * The key for the reused WmsRequestHandler that handles the request. The
+     * context and servlet path are set by the servlet container, not the
+     * client, so there is a handler for each place the servlet is mapped.
+     * Subclasses that use the path info to pick different handlers should add
+     * it here.
+     * 
+     * @param request
+     * @return the key for the request's WmsRequestHandler.
+     */
+    protected String getRequestHandlerKey(HttpServletRequest request) {
+        return request.getContextPath() + request.getServletPath();
+    }
+
+    /**
+     * Get the WmsRequestHandler for the request, creating it the first time
+     * its key is seen. The handler is created outside of the lock on the
+     * handlers, so requests for other handlers don't wait for it.
+     * 
+     * @param request
+     * @return WmsRequestHandler to handle the request.
+     * @throws ServletException
+     * @throws IOException
+     */
+    protected WmsRequestHandler getRequestHandler(final HttpServletRequest request)
+            throws ServletException, IOException {
+        if (!isReuseRequestHandlers()) {
+            return createRequestHandler(request);
+        }
+
+        String key = getRequestHandlerKey(request);
+        FutureTask<WmsRequestHandler> task;
+        boolean create = false;
+        synchronized (requestHandlers) {
+            task = requestHandlers.get(key);
+            if (task == null) {
+                task = new FutureTask<WmsRequestHandler>(new Callable<WmsRequestHandler>() {
+                    public WmsRequestHandler call() throws Exception {
+                        return createRequestHandler(request);
+                    }
+                });
+                requestHandlers.put(key, task);
+                create = true;
+            }
+        }
+
+        if (create) {
+            Debug.message("wms", "OgcWmsServlet: new request handler for " + key);
+            task.run();
+        }
+
+        try {
+            return task.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new ServletException(ie);
+        } catch (ExecutionException ee) {
+            // Let a later request try again.
+            synchronized (requestHandlers) {
+                if (requestHandlers.get(key) == task) {
+                    requestHandlers.remove(key);
+                }
+            }
+
+            Throwable cause = ee.getCause();
+            if (cause instanceof ServletException) {
+                throw (ServletException) cause;
+            } else if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new ServletException(cause);
+        }
+    }
+
+    /**
+     * Let go of the WmsRequestHandlers and the map definition.
+     */
+    public void destroy() {
+        synchronized (requestHandlers) {
+            requestHandlers.clear();
+        }
+        synchronized (this) {
+            mapDefinitionProperties = null;
+        }
+        super.destroy();
+    }
+
     /**
      * 
      */
     public void doGet(HttpServletRequest request, HttpServletResponse response)
             throws ServletException, IOException {
         Debug.message("wms", "OgcWmsServlet.doGet");
-        WmsRequestHandler wmsRequestHandler = createRequestHandler(request);
+        WmsRequestHandler wmsRequestHandler = getRequestHandler(request);
 
         Properties properties = parsePropertiesFromRequest(request);
         HttpResponse httpResponse = new HttpResponse(response);